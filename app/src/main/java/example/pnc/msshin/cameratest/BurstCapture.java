@@ -0,0 +1,322 @@
+package example.pnc.msshin.cameratest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 프리뷰 프레임을 연속으로 골라 여러 인코딩 스레드로 JPEG 변환하는 연속 촬영입니다.
+ * 골라진 프레임은 retain 된 채로 제한된 큐에 들어가며, 큐가 가득 차면 BackpressurePolicy 에 따라 처리합니다.
+ * 큐에 쌓인 프레임과 워커가 인코딩 중인 프레임만큼 프리뷰 버퍼를 점유합니다. 세션이 보관하는 최신 프레임과
+ * 카메라가 채울 버퍼까지 있어야 하므로 버퍼 개수는 queueCapacity + workerCount + 2 이상이어야 합니다.
+ * (Config.checkBufferCount) 기본 설정은 기본 프리뷰 버퍼 4개에 맞춰 워커 1개, 큐 1칸입니다.
+ */
+public class BurstCapture {
+
+    public enum BackpressurePolicy {
+        /** 가장 오래된 대기 프레임을 버리고 새 프레임을 넣습니다. */
+        DROP_OLDEST,
+        /** 새 프레임을 버립니다. */
+        DROP_NEWEST,
+        /** 큐에 자리가 날 때까지 프레임을 전달한 스레드를 멈춥니다. */
+        BLOCK
+    }
+
+    public interface Listener {
+        /**
+         * 인코딩 스레드에서 호출됩니다. 여러 워커를 쓰면 index 순서대로 호출되지 않을 수 있습니다.
+         */
+        void onBurstFrame(int index, long timestampNanos, byte[] jpeg);
+
+        void onBurstComplete(Stats stats);
+    }
+
+    public static class Config {
+        private int mFrameCount;
+        private long mIntervalNanos;
+        private int mEveryNthFrame = 1;
+        private int mWorkerCount = 1;
+        private int mQueueCapacity = 1;
+        private int mQuality = 90;
+        private BackpressurePolicy mPolicy = BackpressurePolicy.DROP_OLDEST;
+
+        /** 0 이면 stop() 할 때까지 계속 촬영합니다. */
+        public Config setFrameCount(int frameCount) {
+            mFrameCount = frameCount;
+            return this;
+        }
+
+        public Config setIntervalMillis(long intervalMillis) {
+            mIntervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+            return this;
+        }
+
+        public Config setEveryNthFrame(int everyNthFrame) {
+            if (everyNthFrame < 1) {
+                throw new IllegalArgumentException("everyNthFrame must be positive: " + everyNthFrame);
+            }
+            mEveryNthFrame = everyNthFrame;
+            return this;
+        }
+
+        public Config setWorkerCount(int workerCount) {
+            if (workerCount < 1) {
+                throw new IllegalArgumentException("workerCount must be positive: " + workerCount);
+            }
+            mWorkerCount = workerCount;
+            return this;
+        }
+
+        public Config setQueueCapacity(int queueCapacity) {
+            if (queueCapacity < 1) {
+                throw new IllegalArgumentException("queueCapacity must be positive: " + queueCapacity);
+            }
+            mQueueCapacity = queueCapacity;
+            return this;
+        }
+
+        public Config setQuality(int quality) {
+            mQuality = quality;
+            return this;
+        }
+
+        public Config setBackpressurePolicy(BackpressurePolicy policy) {
+            mPolicy = policy;
+            return this;
+        }
+
+        /**
+         * 연속 촬영이 동시에 붙잡을 수 있는 프리뷰 버퍼 수입니다. 큐에 대기하는 프레임과 워커마다 인코딩 중인 프레임입니다.
+         */
+        public int getHeldBufferCount() {
+            return mQueueCapacity + mWorkerCount;
+        }
+
+        /**
+         * 프리뷰 버퍼 bufferCount 개로 이 설정을 돌릴 수 있는지 확인합니다. 모자라면 카메라가 채울 버퍼가 없어 프리뷰가 멈추고,
+         * BLOCK 이면 프레임을 전달하는 스레드가 풀리지 않습니다.
+         */
+        public void checkBufferCount(int bufferCount) {
+            int required = getHeldBufferCount() + 2;
+            if (bufferCount < required) {
+                throw new IllegalArgumentException("burst holds " + getHeldBufferCount() + " frames, needs at least "
+                        + required + " preview buffers but has " + bufferCount);
+            }
+        }
+    }
+
+    public static class Stats {
+        public final long selectedFrames;
+        public final long encodedFrames;
+        public final long droppedFrames;
+        public final long failedFrames;
+        public final int maxQueueDepth;
+        public final LatencyHistogram encodeLatency;
+
+        Stats(long selectedFrames, long encodedFrames, long droppedFrames, long failedFrames, int maxQueueDepth,
+              LatencyHistogram encodeLatency) {
+            this.selectedFrames = selectedFrames;
+            this.encodedFrames = encodedFrames;
+            this.droppedFrames = droppedFrames;
+            this.failedFrames = failedFrames;
+            this.maxQueueDepth = maxQueueDepth;
+            this.encodeLatency = encodeLatency;
+        }
+
+        @Override
+        public String toString() {
+            return "selected:" + selectedFrames + ", encoded:" + encodedFrames + ", dropped:" + droppedFrames
+                    + ", failed:" + failedFrames + ", maxQueueDepth:" + maxQueueDepth + ", encode[" + encodeLatency + "]";
+        }
+    }
+
+    private final Config mConfig;
+    private final FrameEncoder mEncoder;
+    private final Listener mListener;
+    private final ArrayBlockingQueue<QueuedFrame> mQueue;
+    private final ExecutorService mWorkers;
+    private final LatencyHistogram mEncodeLatency = new LatencyHistogram();
+    private final AtomicInteger mPendingCount = new AtomicInteger();
+    private final AtomicLong mEncodedFrames = new AtomicLong();
+    private final AtomicLong mDroppedFrames = new AtomicLong();
+    private final AtomicLong mFailedFrames = new AtomicLong();
+    private final AtomicBoolean mIsCompleted = new AtomicBoolean();
+    private volatile boolean mIsProducing = true;
+    private volatile int mMaxQueueDepth;
+    private long mOfferedFrames;
+    private long mSelectedFrames;
+    private long mLastSelectedNanos = -1;
+
+    public BurstCapture(Config config, FrameEncoder encoder, Listener listener) {
+        mConfig = config;
+        mEncoder = encoder;
+        mListener = listener;
+        mQueue = new ArrayBlockingQueue<>(config.mQueueCapacity);
+        mWorkers = Executors.newFixedThreadPool(config.mWorkerCount, new ThreadFactory() {
+            private final AtomicInteger mThreadIndex = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, "BurstEncoder-" + mThreadIndex.getAndIncrement());
+            }
+        });
+        for (int i = 0; i < config.mWorkerCount; i++) {
+            mWorkers.execute(mEncodeLoop);
+        }
+    }
+
+    /**
+     * 프리뷰 프레임마다 호출합니다. 설정에 맞는 프레임만 큐에 넣으며, 촬영이 끝났으면 false 를 돌려줍니다.
+     */
+    public boolean offer(Frame frame) {
+        int index;
+        synchronized (this) {
+            if (!mIsProducing) {
+                return false;
+            }
+            if (mOfferedFrames++ % mConfig.mEveryNthFrame != 0) {
+                return true;
+            }
+            long timestamp = frame.getTimestampNanos();
+            if (mConfig.mIntervalNanos > 0 && mLastSelectedNanos >= 0
+                    && timestamp - mLastSelectedNanos < mConfig.mIntervalNanos) {
+                return true;
+            }
+            mLastSelectedNanos = timestamp;
+            index = (int) mSelectedFrames++;
+            if (mConfig.mFrameCount > 0 && mSelectedFrames >= mConfig.mFrameCount) {
+                mIsProducing = false;
+            }
+            if (!frame.retain()) {
+                return mIsProducing;
+            }
+            mPendingCount.incrementAndGet();
+        }
+        enqueue(new QueuedFrame(frame, index));
+        if (!mIsProducing) {
+            completeIfDone();
+        }
+        return mIsProducing;
+    }
+
+    /**
+     * 더 이상 프레임을 받지 않습니다. 이미 큐에 들어간 프레임은 인코딩을 마친 뒤 onBurstComplete 가 호출됩니다.
+     */
+    public void stop() {
+        synchronized (this) {
+            mIsProducing = false;
+        }
+        completeIfDone();
+    }
+
+    public boolean isCompleted() {
+        return mIsCompleted.get();
+    }
+
+    public Stats getStats() {
+        synchronized (this) {
+            return new Stats(mSelectedFrames, mEncodedFrames.get(), mDroppedFrames.get(), mFailedFrames.get(),
+                    mMaxQueueDepth, mEncodeLatency);
+        }
+    }
+
+    private void enqueue(QueuedFrame queuedFrame) {
+        switch (mConfig.mPolicy) {
+            case BLOCK:
+                try {
+                    mQueue.put(queuedFrame);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    drop(queuedFrame);
+                    return;
+                }
+                break;
+            case DROP_NEWEST:
+                if (!mQueue.offer(queuedFrame)) {
+                    drop(queuedFrame);
+                    return;
+                }
+                break;
+            default:
+                while (!mQueue.offer(queuedFrame)) {
+                    QueuedFrame oldest = mQueue.poll();
+                    if (oldest != null) {
+                        drop(oldest);
+                    }
+                }
+                break;
+        }
+        int depth = mQueue.size();
+        if (depth > mMaxQueueDepth) {
+            mMaxQueueDepth = depth;
+        }
+    }
+
+    private void drop(QueuedFrame queuedFrame) {
+        mDroppedFrames.incrementAndGet();
+        finish(queuedFrame);
+    }
+
+    private void finish(QueuedFrame queuedFrame) {
+        queuedFrame.frame.release();
+        if (mPendingCount.decrementAndGet() == 0 && !mIsProducing) {
+            completeIfDone();
+        }
+    }
+
+    private void completeIfDone() {
+        if (mPendingCount.get() == 0 && mIsCompleted.compareAndSet(false, true)) {
+            mWorkers.shutdown();
+            mListener.onBurstComplete(getStats());
+        }
+    }
+
+    private final Runnable mEncodeLoop = new Runnable() {
+        @Override
+        public void run() {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            while (!mIsCompleted.get()) {
+                QueuedFrame queuedFrame;
+                try {
+                    queuedFrame = mQueue.poll(100, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (queuedFrame == null) {
+                    continue;
+                }
+                Frame frame = queuedFrame.frame;
+                try {
+                    out.reset();
+                    long start = System.nanoTime();
+                    mEncoder.encode(frame.data, frame.getWidth(), frame.getHeight(), mConfig.mQuality, out);
+                    mEncodeLatency.record(System.nanoTime() - start);
+                    mEncodedFrames.incrementAndGet();
+                    mListener.onBurstFrame(queuedFrame.index, frame.getTimestampNanos(), out.toByteArray());
+                } catch (IOException | RuntimeException e) {
+                    // 인코더나 리스너가 실패해도 워커는 계속 돌아야 남은 프레임이 반환되고 onBurstComplete 가 호출됩니다.
+                    mFailedFrames.incrementAndGet();
+                } finally {
+                    finish(queuedFrame);
+                }
+            }
+        }
+    };
+
+    private static class QueuedFrame {
+        final Frame frame;
+        final int index;
+
+        QueuedFrame(Frame frame, int index) {
+            this.frame = frame;
+            this.index = index;
+        }
+    }
+}
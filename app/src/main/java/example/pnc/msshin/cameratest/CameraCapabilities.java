@@ -0,0 +1,340 @@
+package example.pnc.msshin.cameratest;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 카메라 하나가 지원하는 프리뷰/사진 크기, fps 범위, 포커스 모드입니다.
+ * 만들 때 한 번 정렬하고 프리뷰 크기를 비율별로 묶어 두므로, 크기와 fps 선택은 목록 전체를 훑지 않습니다.
+ * <ul>
+ * <li>프리뷰/사진 크기: 높이, 너비 오름차순 (프리뷰 크기는 카메라가 알려준 순서도 함께 둡니다)</li>
+ * <li>fps 범위: 최대 fps 내림차순, 같으면 최소 fps 내림차순 (0번이 가장 좋은 범위)</li>
+ * </ul>
+ */
+public final class CameraCapabilities {
+    private final int mCameraId;
+    private final int[] mPreviewWidths;
+    private final int[] mPreviewHeights;
+    /** 프리뷰 크기마다 카메라가 알려준 목록에서의 위치입니다. 높이 차이가 같을 때 SizeSelector 처럼 앞의 것을 고르는 데 씁니다. */
+    private final int[] mPreviewOrder;
+    private final int[] mPictureWidths;
+    private final int[] mPictureHeights;
+    private final int[] mFpsMin;
+    private final int[] mFpsMax;
+    private final String[] mFocusModes;
+    /**
+     * 비율별 프리뷰 크기 인덱스입니다. 각 묶음 안에서도 높이 오름차순입니다.
+     * 비율이 정확히 같은 크기끼리만 묶으므로 묶음의 비율을 검사하면 크기마다 비율을 검사한 것과 같습니다.
+     */
+    private final double[] mAspectRatios;
+    private final int[][] mAspectGroups;
+
+    private CameraCapabilities(int cameraId, int[] previewWidths, int[] previewHeights, int[] previewOrder,
+                               int[] pictureWidths, int[] pictureHeights, int[] fpsMin, int[] fpsMax,
+                               String[] focusModes) {
+        mCameraId = cameraId;
+        mPreviewWidths = previewWidths;
+        mPreviewHeights = previewHeights;
+        mPreviewOrder = previewOrder;
+        mPictureWidths = pictureWidths;
+        mPictureHeights = pictureHeights;
+        mFpsMin = fpsMin;
+        mFpsMax = fpsMax;
+        mFocusModes = focusModes;
+
+        List<Double> ratios = new ArrayList<>();
+        List<List<Integer>> groups = new ArrayList<>();
+        for (int i = 0; i < previewWidths.length; i++) {
+            double ratio = (double) previewWidths[i] / previewHeights[i];
+            int group = -1;
+            for (int g = 0; g < ratios.size(); g++) {
+                if (ratios.get(g) == ratio) {
+                    group = g;
+                    break;
+                }
+            }
+            if (group < 0) {
+                group = ratios.size();
+                ratios.add(ratio);
+                groups.add(new ArrayList<Integer>());
+            }
+            groups.get(group).add(i);
+        }
+        mAspectRatios = new double[ratios.size()];
+        mAspectGroups = new int[ratios.size()][];
+        for (int g = 0; g < ratios.size(); g++) {
+            mAspectRatios[g] = ratios.get(g);
+            List<Integer> indices = groups.get(g);
+            mAspectGroups[g] = new int[indices.size()];
+            for (int i = 0; i < indices.size(); i++) {
+                mAspectGroups[g][i] = indices.get(i);
+            }
+        }
+    }
+
+    /**
+     * 카메라가 알려준 목록을 정렬해서 만듭니다. 인자로 받은 배열은 바뀌지 않습니다.
+     */
+    public static CameraCapabilities create(int cameraId, int[] previewWidths, int[] previewHeights,
+                                            int[] pictureWidths, int[] pictureHeights, int[] fpsMin, int[] fpsMax,
+                                            String[] focusModes) {
+        int[][] previews = sortSizes(previewWidths, previewHeights);
+        int[][] pictures = sortSizes(pictureWidths, pictureHeights);
+        int[][] fpsRanges = sortFpsRanges(fpsMin, fpsMax);
+        return new CameraCapabilities(cameraId, previews[0], previews[1], previews[2], pictures[0], pictures[1],
+                fpsRanges[0], fpsRanges[1], focusModes.clone());
+    }
+
+    /**
+     * 돌려주는 배열은 [widths, heights, 원래 위치] 입니다. 크기가 같으면 원래 위치 오름차순입니다.
+     */
+    private static int[][] sortSizes(int[] widths, int[] heights) {
+        // 캐시에 short 로 저장하므로 너비와 위치는 16비트 안에 들어갑니다.
+        long[] keys = new long[widths.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = ((long) heights[i] << 32) | ((long) widths[i] << 16) | i;
+        }
+        Arrays.sort(keys);
+        int[][] sorted = new int[3][keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            sorted[0][i] = (int) (keys[i] >>> 16) & 0xffff;
+            sorted[1][i] = (int) (keys[i] >>> 32);
+            sorted[2][i] = (int) keys[i] & 0xffff;
+        }
+        return sorted;
+    }
+
+    private static int[][] sortFpsRanges(int[] fpsMin, int[] fpsMax) {
+        long[] keys = new long[fpsMin.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = ((long) fpsMax[i] << 32) | fpsMin[i];
+        }
+        Arrays.sort(keys);
+        int[][] sorted = new int[2][keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            long key = keys[keys.length - 1 - i];
+            sorted[0][i] = (int) key;
+            sorted[1][i] = (int) (key >>> 32);
+        }
+        return sorted;
+    }
+
+    public int getCameraId() {
+        return mCameraId;
+    }
+
+    public int getPreviewSizeCount() {
+        return mPreviewWidths.length;
+    }
+
+    public int getPreviewWidth(int index) {
+        return mPreviewWidths[index];
+    }
+
+    public int getPreviewHeight(int index) {
+        return mPreviewHeights[index];
+    }
+
+    public int getPictureSizeCount() {
+        return mPictureWidths.length;
+    }
+
+    public int getPictureWidth(int index) {
+        return mPictureWidths[index];
+    }
+
+    public int getPictureHeight(int index) {
+        return mPictureHeights[index];
+    }
+
+    public int getFpsRangeCount() {
+        return mFpsMin.length;
+    }
+
+    public int getFpsMin(int index) {
+        return mFpsMin[index];
+    }
+
+    public int getFpsMax(int index) {
+        return mFpsMax[index];
+    }
+
+    /**
+     * 최대 fps 가 가장 높고, 그중 최소 fps 가 가장 높은 범위입니다. 목록이 비어 있으면 -1 입니다.
+     */
+    public int getBestFpsRangeIndex() {
+        return mFpsMin.length > 0 ? 0 : -1;
+    }
+
+    /**
+     * 높이가 가장 큰(같으면 너비가 가장 큰) 사진 크기입니다. 목록이 비어 있으면 -1 입니다.
+     */
+    public int getLargestPictureIndex() {
+        return mPictureWidths.length - 1;
+    }
+
+    public boolean supportsFocusMode(String focusMode) {
+        for (String mode : mFocusModes) {
+            if (mode.equals(focusMode)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 높이가 height 인 프리뷰 크기 중 너비가 가장 큰 것입니다. 없으면 -1 입니다.
+     */
+    public int findPreviewSizeByHeight(int height) {
+        int index = upperBound(mPreviewHeights, null, height) - 1;
+        return index >= 0 && mPreviewHeights[index] == height ? index : -1;
+    }
+
+    /**
+     * SizeSelector.findOptimalSize 와 같은 크기를 고릅니다. 목표 비율과 맞는 묶음에서 높이가 가장 가까운 크기를 찾고,
+     * 맞는 묶음이 없으면 전체에서 높이만으로 고릅니다. 높이 차이가 같으면 카메라가 알려준 목록에서 앞선 크기입니다.
+     */
+    public int findOptimalPreviewSize(int targetWidth, int targetHeight) {
+        double targetRatio = (double) targetWidth / targetHeight;
+        int optimalIndex = -1;
+        int minDiff = Integer.MAX_VALUE;
+        for (int g = 0; g < mAspectRatios.length; g++) {
+            if (Math.abs(mAspectRatios[g] - targetRatio) > SizeSelector.PREVIEW_ASPECT_TOLERANCE) {
+                continue;
+            }
+            int index = nearestHeight(mAspectGroups[g], targetHeight);
+            int diff = Math.abs(mPreviewHeights[index] - targetHeight);
+            if (diff < minDiff || diff == minDiff && mPreviewOrder[index] < mPreviewOrder[optimalIndex]) {
+                optimalIndex = index;
+                minDiff = diff;
+            }
+        }
+        if (optimalIndex < 0 && mPreviewHeights.length > 0) {
+            optimalIndex = nearestHeight(null, targetHeight);
+        }
+        return optimalIndex;
+    }
+
+    /**
+     * group 이 null 이면 전체 프리뷰 크기에서, 아니면 group 의 인덱스 중에서 높이가 가장 가까운 것을 이진 탐색합니다.
+     * 높이 차이가 같은 크기가 여럿이면 카메라가 알려준 목록에서 앞선 것입니다.
+     */
+    private int nearestHeight(int[] group, int targetHeight) {
+        int length = group != null ? group.length : mPreviewHeights.length;
+        int upper = upperBound(mPreviewHeights, group, targetHeight);
+        int belowDiff = upper > 0 ? targetHeight - mPreviewHeights[indexAt(group, upper - 1)] : Integer.MAX_VALUE;
+        int aboveDiff = upper < length ? mPreviewHeights[indexAt(group, upper)] - targetHeight : Integer.MAX_VALUE;
+        int minDiff = Math.min(belowDiff, aboveDiff);
+        int nearest = -1;
+        if (belowDiff == minDiff) {
+            nearest = firstInPreviewOrder(group, upper - 1, -1, nearest);
+        }
+        if (aboveDiff == minDiff) {
+            nearest = firstInPreviewOrder(group, upper, 1, nearest);
+        }
+        return nearest;
+    }
+
+    /**
+     * position 에서 step 방향으로 높이가 같은 크기들을 훑어 nearest 와 함께 목록에서 가장 앞선 것을 돌려줍니다.
+     */
+    private int firstInPreviewOrder(int[] group, int position, int step, int nearest) {
+        int length = group != null ? group.length : mPreviewHeights.length;
+        int height = mPreviewHeights[indexAt(group, position)];
+        for (int i = position; i >= 0 && i < length; i += step) {
+            int index = indexAt(group, i);
+            if (mPreviewHeights[index] != height) {
+                break;
+            }
+            if (nearest < 0 || mPreviewOrder[index] < mPreviewOrder[nearest]) {
+                nearest = index;
+            }
+        }
+        return nearest;
+    }
+
+    private static int indexAt(int[] group, int position) {
+        return group != null ? group[position] : position;
+    }
+
+    /**
+     * 정렬된 heights(group 이 있으면 group 순서)에서 value 보다 큰 첫 위치입니다.
+     */
+    private static int upperBound(int[] heights, int[] group, int value) {
+        int low = 0;
+        int high = group != null ? group.length : heights.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int height = heights[group != null ? group[mid] : mid];
+            if (height <= value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(mCameraId);
+        writeSizes(out, mPreviewWidths, mPreviewHeights);
+        for (int order : mPreviewOrder) {
+            out.writeShort(order);
+        }
+        writeSizes(out, mPictureWidths, mPictureHeights);
+        // fps 는 1000 배 값이라 short 범위를 넘을 수 있습니다.
+        out.writeShort(mFpsMin.length);
+        for (int i = 0; i < mFpsMin.length; i++) {
+            out.writeInt(mFpsMin[i]);
+            out.writeInt(mFpsMax[i]);
+        }
+        out.writeShort(mFocusModes.length);
+        for (String mode : mFocusModes) {
+            out.writeUTF(mode);
+        }
+    }
+
+    static CameraCapabilities readFrom(DataInputStream in) throws IOException {
+        int cameraId = in.readInt();
+        int[][] previews = readSizes(in);
+        int[] previewOrder = new int[previews[0].length];
+        for (int i = 0; i < previewOrder.length; i++) {
+            previewOrder[i] = in.readUnsignedShort();
+        }
+        int[][] pictures = readSizes(in);
+        int[][] fpsRanges = new int[2][in.readUnsignedShort()];
+        for (int i = 0; i < fpsRanges[0].length; i++) {
+            fpsRanges[0][i] = in.readInt();
+            fpsRanges[1][i] = in.readInt();
+        }
+        String[] focusModes = new String[in.readUnsignedShort()];
+        for (int i = 0; i < focusModes.length; i++) {
+            focusModes[i] = in.readUTF();
+        }
+        // 저장할 때 이미 정렬되어 있으므로 다시 정렬하지 않습니다.
+        return new CameraCapabilities(cameraId, previews[0], previews[1], previewOrder, pictures[0], pictures[1],
+                fpsRanges[0], fpsRanges[1], focusModes);
+    }
+
+    private static void writeSizes(DataOutputStream out, int[] first, int[] second) throws IOException {
+        out.writeShort(first.length);
+        for (int i = 0; i < first.length; i++) {
+            out.writeShort(first[i]);
+            out.writeShort(second[i]);
+        }
+    }
+
+    private static int[][] readSizes(DataInputStream in) throws IOException {
+        int count = in.readUnsignedShort();
+        int[][] values = new int[2][count];
+        for (int i = 0; i < count; i++) {
+            values[0][i] = in.readUnsignedShort();
+            values[1][i] = in.readUnsignedShort();
+        }
+        return values;
+    }
+}
@@ -0,0 +1,48 @@
+package example.pnc.msshin.cameratest;
+
+/**
+ * 카메라에 적용된 파라미터의 불변 스냅샷입니다.
+ * 프레임 처리 경로에서 Camera.getParameters() 대신 사용하며, setParameters 할 때만 새로 만듭니다.
+ */
+public final class CameraConfig {
+    /** android.graphics.ImageFormat.NV21 */
+    public static final int FORMAT_NV21 = 17;
+
+    public final int previewWidth;
+    public final int previewHeight;
+    public final int previewFormat;
+    public final int pictureWidth;
+    public final int pictureHeight;
+    public final int minFps;
+    public final int maxFps;
+    public final String focusMode;
+    public final int orientation;
+
+    public CameraConfig(int previewWidth, int previewHeight, int previewFormat, int pictureWidth, int pictureHeight,
+                        int minFps, int maxFps, String focusMode, int orientation) {
+        this.previewWidth = previewWidth;
+        this.previewHeight = previewHeight;
+        this.previewFormat = previewFormat;
+        this.pictureWidth = pictureWidth;
+        this.pictureHeight = pictureHeight;
+        this.minFps = minFps;
+        this.maxFps = maxFps;
+        this.focusMode = focusMode;
+        this.orientation = orientation;
+    }
+
+    /**
+     * fps 범위는 1000 배 스케일이므로 최대 fps 기준의 프레임 간격을 나노초로 돌려줍니다.
+     */
+    public long getFrameIntervalNanos() {
+        return maxFps > 0 ? 1000000000000L / maxFps : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "preview[" + previewWidth + "x" + previewHeight + ", format:" + previewFormat + "]"
+                + ", picture[" + pictureWidth + "x" + pictureHeight + "]"
+                + ", fps[" + minFps + "," + maxFps + "]"
+                + ", focus:" + focusMode + ", orientation:" + orientation;
+    }
+}
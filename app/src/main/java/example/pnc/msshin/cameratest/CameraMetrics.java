@@ -0,0 +1,191 @@
+package example.pnc.msshin.cameratest;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 프리뷰 fps, 드롭 프레임, 콜백 시간, 촬영 지연, 인코딩 시간, 저장 바이트를 집계합니다.
+ * record 메서드는 객체를 생성하지 않으며, snapshot() 과 Listener 호출 때만 Snapshot 을 만듭니다.
+ */
+public class CameraMetrics {
+    /** 프레임 간격 이동 평균의 가중치(1/8)입니다. */
+    private static final int INTERVAL_EWMA_SHIFT = 3;
+
+    public interface Listener {
+        /**
+         * 프레임을 전달하는 스레드(카메라 스레드)에서 호출되므로 오래 걸리는 작업은 하지 않습니다.
+         */
+        void onMetrics(Snapshot snapshot);
+    }
+
+    public static class Latency {
+        public final long count;
+        public final long meanNanos;
+        public final long p50Nanos;
+        public final long p99Nanos;
+        public final long maxNanos;
+
+        Latency(LatencyHistogram histogram) {
+            this.count = histogram.getCount();
+            this.meanNanos = histogram.getMeanNanos();
+            this.p50Nanos = histogram.getPercentileNanos(50);
+            this.p99Nanos = histogram.getPercentileNanos(99);
+            this.maxNanos = histogram.getMaxNanos();
+        }
+
+        @Override
+        public String toString() {
+            return "count:" + count + ", mean:" + meanNanos / 1000 + "us, p50:" + p50Nanos / 1000
+                    + "us, p99:" + p99Nanos / 1000 + "us, max:" + maxNanos / 1000 + "us";
+        }
+    }
+
+    public static class Snapshot {
+        public final long deliveredFrames;
+        public final long droppedFrames;
+        public final double fps;
+        public final Latency callbackDuration;
+        public final Latency captureLatency;
+        public final Latency encodeDuration;
+        public final Latency timeToFirstFrame;
+        public final Latency resumeToFirstFrame;
+        public final long filesWritten;
+        public final long bytesWritten;
+
+        Snapshot(long deliveredFrames, long droppedFrames, double fps, Latency callbackDuration,
+                 Latency captureLatency, Latency encodeDuration, Latency timeToFirstFrame, Latency resumeToFirstFrame,
+                 long filesWritten, long bytesWritten) {
+            this.deliveredFrames = deliveredFrames;
+            this.droppedFrames = droppedFrames;
+            this.fps = fps;
+            this.callbackDuration = callbackDuration;
+            this.captureLatency = captureLatency;
+            this.encodeDuration = encodeDuration;
+            this.timeToFirstFrame = timeToFirstFrame;
+            this.resumeToFirstFrame = resumeToFirstFrame;
+            this.filesWritten = filesWritten;
+            this.bytesWritten = bytesWritten;
+        }
+
+        @Override
+        public String toString() {
+            return "frames:" + deliveredFrames + "(dropped " + droppedFrames + "), fps:" + String.format("%.1f", fps)
+                    + ", callback[" + callbackDuration + "], capture[" + captureLatency + "]"
+                    + ", encode[" + encodeDuration + "], firstFrame[" + timeToFirstFrame + "]"
+                    + ", resumeFirstFrame[" + resumeToFirstFrame + "]"
+                    + ", files:" + filesWritten + ", bytes:" + bytesWritten;
+        }
+    }
+
+    private final LatencyHistogram mCallbackDuration = new LatencyHistogram();
+    private final LatencyHistogram mCaptureLatency = new LatencyHistogram();
+    private final LatencyHistogram mEncodeDuration = new LatencyHistogram();
+    private final LatencyHistogram mTimeToFirstFrame = new LatencyHistogram();
+    private final LatencyHistogram mResumeToFirstFrame = new LatencyHistogram();
+    private final AtomicLong mFilesWritten = new AtomicLong();
+    private final AtomicLong mBytesWritten = new AtomicLong();
+    private volatile long mFrameIntervalNanos;
+    private volatile long mDeliveredFrames;
+    private volatile long mDroppedFrames;
+    private volatile long mAverageIntervalNanos;
+    // 아래 필드는 recordFrame 을 호출하는 스레드에서만 사용합니다.
+    private long mLastSequence = -1;
+    private long mLastTimestampNanos;
+    private volatile Listener mListener;
+    private volatile long mReportIntervalNanos;
+    private long mLastReportNanos;
+
+    /**
+     * 기대 프레임 간격입니다. 0 이면 측정한 평균 간격을 기준으로 드롭을 추정합니다.
+     */
+    public void setFrameIntervalNanos(long frameIntervalNanos) {
+        mFrameIntervalNanos = frameIntervalNanos;
+    }
+
+    /**
+     * intervalMillis 마다 listener 에 Snapshot 을 전달합니다. null 이면 전달하지 않습니다.
+     */
+    public void setListener(Listener listener, long intervalMillis) {
+        mReportIntervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        mListener = listener;
+    }
+
+    /**
+     * 프레임이 도착할 때마다 같은 스레드에서 호출합니다.
+     * 버퍼 풀이 바뀌어 시퀀스가 줄어들면 그 프레임부터 다시 셉니다.
+     */
+    public void recordFrame(Frame frame) {
+        long sequence = frame.getSequence();
+        long timestamp = frame.getTimestampNanos();
+        long dropped = 0;
+        if (mLastSequence >= 0 && sequence > mLastSequence) {
+            long sequenceGap = sequence - mLastSequence - 1;
+            long interval = timestamp - mLastTimestampNanos;
+            long expected = mFrameIntervalNanos > 0 ? mFrameIntervalNanos : mAverageIntervalNanos;
+            long timestampGap = expected > 0 ? (interval + expected / 2) / expected - 1 : 0;
+            dropped = Math.max(sequenceGap, timestampGap);
+            if (dropped == 0 && interval > 0) {
+                // 드롭이 섞인 간격은 평균에 넣지 않아야 fps 가 실제보다 낮게 보이지 않습니다.
+                long average = mAverageIntervalNanos;
+                mAverageIntervalNanos = average == 0 ? interval : average + ((interval - average) >> INTERVAL_EWMA_SHIFT);
+            }
+        }
+        mLastSequence = sequence;
+        mLastTimestampNanos = timestamp;
+        mDeliveredFrames++;
+        if (dropped > 0) {
+            mDroppedFrames += dropped;
+        }
+
+        Listener listener = mListener;
+        if (listener != null) {
+            long now = System.nanoTime();
+            if (now - mLastReportNanos >= mReportIntervalNanos) {
+                mLastReportNanos = now;
+                listener.onMetrics(snapshot());
+            }
+        }
+    }
+
+    public void recordCallbackDuration(long nanos) {
+        mCallbackDuration.record(nanos);
+    }
+
+    /**
+     * takePicture() 요청부터 onCapturedData() 직전까지의 시간입니다.
+     */
+    public void recordCaptureLatency(long nanos) {
+        mCaptureLatency.record(nanos);
+    }
+
+    public void recordEncodeDuration(long nanos) {
+        mEncodeDuration.record(nanos);
+    }
+
+    /**
+     * 카메라 시작을 요청한 시점부터 첫 프리뷰 프레임이 도착할 때까지의 시간입니다.
+     */
+    public void recordTimeToFirstFrame(long nanos) {
+        mTimeToFirstFrame.record(nanos);
+    }
+
+    /**
+     * 일시 정지했던 카메라의 재개를 요청한 시점부터 첫 프리뷰 프레임이 도착할 때까지의 시간입니다.
+     */
+    public void recordResumeToFirstFrame(long nanos) {
+        mResumeToFirstFrame.record(nanos);
+    }
+
+    public void recordFileWritten(long bytes) {
+        mFilesWritten.incrementAndGet();
+        mBytesWritten.addAndGet(bytes);
+    }
+
+    public Snapshot snapshot() {
+        long average = mAverageIntervalNanos;
+        double fps = average > 0 ? 1e9 / average : 0;
+        return new Snapshot(mDeliveredFrames, mDroppedFrames, fps, new Latency(mCallbackDuration),
+                new Latency(mCaptureLatency), new Latency(mEncodeDuration), new Latency(mTimeToFirstFrame),
+                new Latency(mResumeToFirstFrame), mFilesWritten.get(), mBytesWritten.get());
+    }
+}
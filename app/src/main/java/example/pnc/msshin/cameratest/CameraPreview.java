@@ -2,62 +2,203 @@ package example.pnc.msshin.cameratest;
 
 import android.app.Activity;
 import android.content.Context;
-import android.content.Intent;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.Matrix;
-import android.graphics.Rect;
-import android.graphics.YuvImage;
+import android.graphics.ImageFormat;
 import android.hardware.Camera;
 import android.hardware.Camera.Size;
-import android.net.Uri;
-import android.os.AsyncTask;
+import android.media.MediaScannerConnection;
+import android.os.Build;
 import android.os.Environment;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
 import android.util.Log;
 import android.view.Surface;
 import android.view.SurfaceHolder;
 import android.view.SurfaceView;
 import android.view.View;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
-
-
-public class CameraPreview {
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+public class CameraPreview implements CameraSource {
     private final String TAG = "CameraPreview";
+    private static final int DEFAULT_PREVIEW_BUFFER_COUNT = 4;
+    private static final int ENCODE_QUEUE_CAPACITY = 2;
+    private static final String DEFAULT_STORAGE_DIRECTORY = "camtest";
+    private static final int STORAGE_QUEUE_CAPACITY = 16;
+    private static final int STORAGE_BATCH_SIZE = 8;
+    private static final CameraSettingsCache sSettingsCache = new CameraSettingsCache();
+    private static final Map<Integer, Camera.CameraInfo> sCameraInfos = new ConcurrentHashMap<>();
+    private static final String CAPABILITY_CACHE_FILE = "camera_capabilities.bin";
+    private static CapabilityCache sCapabilityCache;
 
     private Context mContext;
     private int mCameraID;
     private SurfaceView mSurfaceView;
     private SurfaceHolder mHolder;
-    private Camera mCamera;
+    private volatile Camera mCamera;
     private Camera.CameraInfo mCameraInfo;
     private int mDisplayOrientation;
-    private List<Size> mSupportedPreviewSizes, mSupportedPictureSizes;
+    private int mSurfaceWidth, mSurfaceHeight;
     private Size mPreviewSize, mPictureSize;
-    private boolean isPreview = false;
+    private volatile CameraConfig mCameraConfig;
+    private final AtomicInteger mGetParametersCount = new AtomicInteger();
+    private int mPreviewBufferCount = DEFAULT_PREVIEW_BUFFER_COUNT;
+    private int mFrameRingCapacity;
+    private PreviewBufferPool mBufferPool;
+    /** 프리뷰 버퍼 풀을 멈출 때마다 늘어납니다. 멈추기 전에 넘긴 버퍼 반환을 가려냅니다. */
+    private volatile int mRecycleGeneration;
+    private HandlerThread mCameraThread;
+    private volatile Handler mCameraHandler;
+    private ThreadPoolExecutor mEncodeExecutor;
+    private final Handler mUiHandler = new Handler(Looper.getMainLooper());
+    private final LatencyHistogram mCallbackToUiLatency = new LatencyHistogram();
+    private final AtomicBoolean mUiProbePending = new AtomicBoolean();
+    private volatile long mUiProbeStartNanos;
+    private volatile long mFirstFrameRequestNanos;
+    private volatile long mResumeRequestNanos;
+    /** suspend() 로 카메라만 닫은 상태입니다. 다음 startCamera() 는 저장한 파라미터로 카메라를 다시 엽니다. */
+    private volatile boolean mIsSuspended;
+    /** 마지막으로 적용한 Camera.Parameters 를 flatten() 한 문자열입니다. 카메라 스레드에서만 사용합니다. */
+    private String mAppliedParameters;
+    private volatile boolean isPreview = false;
     private boolean mIsSilentMode;
     private int mProgressive;
     private Activity mActivity;
-    private byte[] mPreviewData;
-    private Timer mCaptureTimer;
-    private OnTakePictureListener onTakePictureListener;
+    private final CaptureSession mCaptureSession;
+    private volatile FrameListener mFrameListener;
     private OnPreviewCallback onPreviewCallback;
+    private OnPreviewFrameCallback onPreviewFrameCallback;
+    private volatile OnPreviewRegionCallback onPreviewRegionCallback;
+    private volatile CaptureRegion mPreviewRegion;
+    /** 카메라 스레드에서만 사용합니다. */
+    private final Nv21Resampler mPreviewResampler = new Nv21Resampler();
     private Camera.PreviewCallback previewCallback = new Camera.PreviewCallback() {
         @Override
         public void onPreviewFrame(byte[] data, Camera camera) {
-            mPreviewData = data;
-            if (onPreviewCallback != null){
-                onPreviewCallback.onPreviewFrame(data);
+            long start = System.nanoTime();
+            PreviewBufferPool bufferPool = mBufferPool;
+            Frame frame = bufferPool != null ? bufferPool.onFrameDelivered(data, System.nanoTime()) : null;
+            if (frame == null) {
+                camera.addCallbackBuffer(data);
+                return;
+            }
+            long resumeRequestNanos = mResumeRequestNanos;
+            long firstFrameRequestNanos = mFirstFrameRequestNanos;
+            if (resumeRequestNanos != 0) {
+                mResumeRequestNanos = 0;
+                mFirstFrameRequestNanos = 0;
+                mCaptureSession.getMetrics().recordResumeToFirstFrame(start - resumeRequestNanos);
+            } else if (firstFrameRequestNanos != 0) {
+                mFirstFrameRequestNanos = 0;
+                mCaptureSession.getMetrics().recordTimeToFirstFrame(start - firstFrameRequestNanos);
+            }
+            probeCallbackToUiLatency();
+            // 소비자가 예외를 던져도 버퍼가 풀로 돌아가도록 finally 에서 놓습니다.
+            try {
+                // 변화 없는 프레임은 분석용 소비자에게 넘기지 않습니다.
+                boolean changed = mCaptureSession.acceptMotion(frame);
+                if (changed) {
+                    if (onPreviewCallback != null){
+                        onPreviewCallback.onPreviewFrame(data);
+                    }
+                    if (onPreviewFrameCallback != null) {
+                        onPreviewFrameCallback.onPreviewFrame(frame);
+                    }
+                    OnPreviewRegionCallback regionCallback = onPreviewRegionCallback;
+                    CaptureRegion previewRegion = mPreviewRegion;
+                    if (regionCallback != null && previewRegion != null) {
+                        byte[] region = mPreviewResampler.resample(data, frame.getWidth(), frame.getHeight(), previewRegion, 1);
+                        regionCallback.onPreviewRegion(region, mPreviewResampler.getOutputWidth(),
+                                mPreviewResampler.getOutputHeight(), frame.getTimestampNanos());
+                    }
+                }
+                mCaptureSession.onFrame(frame, changed);
+                FrameListener frameListener = mFrameListener;
+                // CameraSource 소비자는 움직임 감지와 관계없이 모든 프레임을 받습니다.
+                if (frameListener != null) {
+                    frameListener.onFrame(frame);
+                }
+            } finally {
+                frame.release();
+                mCaptureSession.getMetrics().recordCallbackDuration(System.nanoTime() - start);
+            }
+        }
+    };
+    /**
+     * 프레임은 인코딩, 연사, 파이프라인 스레드에서도 release 되므로 버퍼 반환은 카메라를 다루는 스레드로 넘깁니다.
+     * 넘기는 사이에 stopCamera() 가 풀을 멈췄으면 그 버퍼는 다음 startCamera() 의 start() 가 다시 넣으므로 버립니다.
+     */
+    private PreviewBufferPool.Recycler bufferRecycler = new PreviewBufferPool.Recycler() {
+        @Override
+        public void recycle(final byte[] buffer) {
+            // 풀의 락 안에서 불리므로 stopBufferPool() 의 세대 증가와 겹치지 않습니다.
+            final int generation = mRecycleGeneration;
+            Handler handler = mCameraHandler;
+            if (handler == null) {
+                handler = mUiHandler;
+            }
+            if (Looper.myLooper() == handler.getLooper()) {
+                addCallbackBuffer(buffer, generation);
+                return;
+            }
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    addCallbackBuffer(buffer, generation);
+                }
+            });
+        }
+    };
+    /**
+     * 카메라 스레드(카메라 스레드를 쓰지 않으면 UI 스레드)에서 호출합니다.
+     */
+    private void addCallbackBuffer(byte[] buffer, int generation) {
+        Camera camera = mCamera;
+        if (camera != null && generation == mRecycleGeneration) {
+            camera.addCallbackBuffer(buffer);
+        }
+    }
+
+    private StorageWriter.Listener storageListener = new StorageWriter.Listener() {
+        @Override
+        public void onFilesWritten(List<File> files) {
+            Log.d(TAG, "onFilesWritten() - " + files.size() + " files to " + files.get(0).getParent());
+            CameraMetrics metrics = mCaptureSession.getMetrics();
+            for (File file : files) {
+                metrics.recordFileWritten(file.length());
             }
-            onCapturedData(data, onTakePictureListener);
-            camera.addCallbackBuffer(data);
+            if (mContext != null) {
+                // 갤러리에 반영
+                String[] paths = new String[files.size()];
+                for (int i = 0; i < paths.length; i++) {
+                    paths[i] = files.get(i).getAbsolutePath();
+                }
+                MediaScannerConnection.scanFile(mContext, paths, null, null);
+            }
+        }
+
+        @Override
+        public void onWriteFailed(File file, IOException e) {
+            Log.e(TAG, "onWriteFailed() - " + file.getAbsolutePath() + ": " + e.getMessage());
+        }
+    };
+    private Runnable uiLatencyProbe = new Runnable() {
+        @Override
+        public void run() {
+            mCallbackToUiLatency.record(System.nanoTime() - mUiProbeStartNanos);
+            mUiProbePending.set(false);
         }
     };
     private SurfaceHolder.Callback surfaceHolderCallback = new SurfaceHolder.Callback() {
@@ -69,9 +210,9 @@ public class CameraPreview {
 
         @Override
         public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
-            Log.d(TAG, "surfaceChanged()");
+            Log.d(TAG, "surfaceChanged() - " + width + "x" + height);
 //            changeCalculatePreviewOrientation();
-            startCamera();
+            restartIfNeeded(width, height);
         }
 
         @Override
@@ -81,6 +222,14 @@ public class CameraPreview {
     };
 
     public CameraPreview(Context context, Activity activity, int cameraID, SurfaceView surfaceView, boolean isSilentMode, int progressive) {
+        this(context, activity, cameraID, surfaceView, isSilentMode, progressive, false);
+    }
+
+    /**
+     * useCameraThread 가 true 이면 카메라를 전용 HandlerThread 에서 열어 프리뷰 콜백이 UI 스레드를 막지 않게 하고,
+     * JPEG 인코딩은 별도의 인코딩 스레드에서 처리합니다. 이 경우 OnTakePictureListener 는 인코딩 스레드에서 호출됩니다.
+     */
+    public CameraPreview(Context context, Activity activity, int cameraID, SurfaceView surfaceView, boolean isSilentMode, int progressive, boolean useCameraThread) {
         Log.d(TAG, "Preview");
         mContext = context;
         mActivity = activity;
@@ -93,7 +242,24 @@ public class CameraPreview {
         mHolder = mSurfaceView.getHolder();
         mHolder.addCallback(surfaceHolderCallback);
         mProgressive = progressive;
-        createCamera(mHolder);
+        if (useCameraThread) {
+            mCameraThread = new HandlerThread("CameraThread");
+            mCameraThread.start();
+            mCameraHandler = new Handler(mCameraThread.getLooper());
+            mEncodeExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<Runnable>(ENCODE_QUEUE_CAPACITY), new ThreadPoolExecutor.AbortPolicy());
+        }
+        mCaptureSession = new CaptureSession(new YuvJpegEncoder(), mEncodeExecutor);
+        if (useCameraThread) {
+            mCameraHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    createCamera(mHolder);
+                }
+            });
+        } else {
+            createCamera(mHolder);
+        }
     }
 
     /**
@@ -128,16 +294,108 @@ public class CameraPreview {
         return result;
     }
 
+    /**
+     * CameraSource 로 사용할 때 호출합니다. listener 는 내장 CaptureSession 다음에 카메라 스레드에서 프레임을 받습니다.
+     */
+    @Override
+    public void start(FrameListener listener) {
+        mFrameListener = listener;
+        startCamera();
+    }
+
+    @Override
+    public void stop() {
+        stopCamera();
+        mFrameListener = null;
+    }
+
+    @Override
+    public CameraConfig getConfig() {
+        return mCameraConfig;
+    }
+
+    @Override
+    public PreviewBufferPool.Stats getBufferStats() {
+        return getPreviewBufferStats();
+    }
+
+    /**
+     * surface 크기가 바뀌어도 프리뷰 크기와 화면 방향이 그대로면 카메라를 다시 시작하지 않습니다.
+     */
+    private boolean needsRestart(int surfaceWidth, int surfaceHeight) {
+        if (!isPreview) {
+            return true;
+        }
+        if (mActivity.getWindowManager().getDefaultDisplay().getRotation() != mDisplayOrientation) {
+            return true;
+        }
+        if (surfaceWidth == mSurfaceWidth && surfaceHeight == mSurfaceHeight) {
+            return false;
+        }
+        CameraConfig config = mCameraConfig;
+        CameraSettings settings = sSettingsCache.get(
+                CameraSettingsCache.key(mCameraID, surfaceWidth, surfaceHeight, mProgressive));
+        return settings == null || config == null
+                || settings.previewWidth != config.previewWidth || settings.previewHeight != config.previewHeight;
+    }
+
+    /**
+     * 카메라 스레드를 쓰면 surfaceCreated() 가 post 한 startCamera() 가 끝난 뒤 카메라 스레드에서 판단합니다.
+     * UI 스레드에서 판단하면 isPreview 가 아직 false 라서 시작 직후 카메라를 닫고 다시 엽니다.
+     */
+    private void restartIfNeeded(final int surfaceWidth, final int surfaceHeight) {
+        if (mCameraHandler != null && Looper.myLooper() != mCameraHandler.getLooper()) {
+            mCameraHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    restartIfNeeded(surfaceWidth, surfaceHeight);
+                }
+            });
+            return;
+        }
+        if (needsRestart(surfaceWidth, surfaceHeight)) {
+            startCamera();
+        } else {
+            Log.d(TAG, "surfaceChanged() - preview size and orientation unchanged, keep preview");
+        }
+    }
+
     public void startCamera() {
+        if (mFirstFrameRequestNanos == 0) {
+            mFirstFrameRequestNanos = System.nanoTime();
+        }
+        if (mCameraHandler != null && Looper.myLooper() != mCameraHandler.getLooper()) {
+            mCameraHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    startCamera();
+                }
+            });
+            return;
+        }
         Log.d(TAG, "startCamera()");
         if (mHolder != null) {
             if (isPreview) {
                 stopCamera();
             }
+            if (mCamera == null && mIsSuspended) {
+                reopenCamera(mHolder);
+            }
             if (mCamera == null) {
                 createCamera(mHolder);
             }
-            mCamera.addCallbackBuffer(new byte[mPreviewSize.height * mPreviewSize.width * 3 / 2]);
+            CameraConfig config = mCameraConfig;
+            if (mBufferPool == null || mBufferPool.getWidth() != config.previewWidth
+                    || mBufferPool.getHeight() != config.previewHeight || mBufferPool.getFormat() != config.previewFormat
+                    || mBufferPool.getBufferCount() != mPreviewBufferCount) {
+                mCaptureSession.clearLatestFrame();
+                mBufferPool = new PreviewBufferPool(mPreviewBufferCount, config.previewWidth, config.previewHeight,
+                        config.previewFormat, ImageFormat.getBitsPerPixel(config.previewFormat));
+            }
+            mBufferPool.setFrameIntervalNanos(config.getFrameIntervalNanos());
+            mCaptureSession.getMetrics().setFrameIntervalNanos(config.getFrameIntervalNanos());
+            updateFrameRing(config);
+            mBufferPool.start(bufferRecycler);
             mCamera.setPreviewCallbackWithBuffer(previewCallback);
             mCamera.startPreview();
             isPreview = true;
@@ -145,30 +403,232 @@ public class CameraPreview {
         }
     }
 
-    private void onCapturedData(byte[] data, OnTakePictureListener onTakePictureListener) {
-        if (onTakePictureListener != null) {
-            Camera.Parameters parameters = mCamera.getParameters();
-            int width = parameters.getPreviewSize().width;
-            int height = parameters.getPreviewSize().height;
-            YuvImage yuv = new YuvImage(data, parameters.getPreviewFormat(), width, height, null);
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
-            yuv.compressToJpeg(new Rect(0, 0, width, height), 100, out);
-            onTakePictureListener.onCapturedData(out.toByteArray());
-            this.onTakePictureListener = null;
+    /**
+     * 프레임 링이 켜져 있으면 프리뷰 크기에 맞는 링을 만듭니다. 크기와 용량이 같으면 있던 링을 그대로 씁니다.
+     */
+    private void updateFrameRing(CameraConfig config) {
+        FrameRing frameRing = mCaptureSession.getFrameRing();
+        if (mFrameRingCapacity == 0) {
+            mCaptureSession.setFrameRing(null);
+            return;
+        }
+        if (frameRing == null || frameRing.getCapacity() != mFrameRingCapacity
+                || frameRing.getWidth() != config.previewWidth || frameRing.getHeight() != config.previewHeight) {
+            frameRing = new FrameRing(mFrameRingCapacity, config.previewWidth, config.previewHeight);
+            mCaptureSession.setFrameRing(frameRing);
+            Log.d(TAG, "frame ring - " + mFrameRingCapacity + " frames, " + frameRing.getFootprintBytes() + " bytes");
+        }
+    }
+
+    /**
+     * 촬영한 이미지를 저장하는 StorageWriter 입니다. 저장 위치를 지정하지 않았으면 외부 저장소의 camtest 폴더를 사용합니다.
+     */
+    public synchronized StorageWriter getStorageWriter() {
+        StorageWriter storageWriter = mCaptureSession.getStorageWriter();
+        if (storageWriter == null) {
+            storageWriter = createStorageWriter(new File(Environment.getExternalStorageDirectory(), DEFAULT_STORAGE_DIRECTORY));
+            mCaptureSession.setStorageWriter(storageWriter);
         }
+        return storageWriter;
+    }
+
+    public synchronized void setStorageDirectory(File directory) {
+        StorageWriter storageWriter = mCaptureSession.getStorageWriter();
+        if (storageWriter != null) {
+            storageWriter.close();
+        }
+        mCaptureSession.setStorageWriter(createStorageWriter(directory));
+    }
+
+    private StorageWriter createStorageWriter(File directory) {
+        return new StorageWriter(directory, STORAGE_QUEUE_CAPACITY, STORAGE_BATCH_SIZE,
+                StorageWriter.SyncPolicy.PER_BATCH, storageListener);
+    }
+
+    public void setFrameEncoder(FrameEncoder frameEncoder) {
+        mCaptureSession.setFrameEncoder(frameEncoder);
+    }
+
+    /**
+     * takePicture() 와 저장에 쓰는 JPEG 품질 정책입니다. 목표 크기/시간을 주면 측정 결과에 맞춰 품질을 조절합니다.
+     */
+    public void setJpegQualityController(JpegQualityController qualityController) {
+        mCaptureSession.setQualityController(qualityController);
+    }
+
+    /**
+     * 촬영/저장용 JPEG 버퍼가 쓸 수 있는 최대 메모리입니다. 넘으면 촬영은 onSkipped() 로 건너뜁니다.
+     */
+    public void setCaptureMemoryBudget(long budgetBytes) {
+        mCaptureSession.getMemoryManager().setBudget(budgetBytes);
+    }
+
+    /**
+     * 연속 촬영을 시작합니다. 진행 중인 연속 촬영이 있으면 먼저 멈춥니다.
+     * 큐에 대기하는 프레임이 프리뷰 버퍼를 점유하므로 버퍼가 모자라면 IllegalArgumentException 을 던집니다.
+     * 이 경우 setPreviewBufferCount() 로 버퍼를 늘리고 카메라를 다시 시작합니다.
+     */
+    public BurstCapture startBurst(BurstCapture.Config config, BurstCapture.Listener listener) {
+        PreviewBufferPool bufferPool = mBufferPool;
+        config.checkBufferCount(bufferPool != null ? bufferPool.getBufferCount() : mPreviewBufferCount);
+        return mCaptureSession.startBurst(config, listener);
+    }
+
+    public void stopBurst() {
+        mCaptureSession.stopBurst();
+    }
+
+    /**
+     * 프리뷰를 MJPEG AVI 로 녹화합니다. 인코딩은 전용 스레드에서 하며 밀린 프레임은 버려져 프리뷰는 멈추지 않습니다.
+     * 큐에 대기하는 프레임이 프리뷰 버퍼를 점유하므로 queueCapacity 만큼 setPreviewBufferCount() 로 버퍼를 늘립니다.
+     */
+    public VideoRecorder startRecording(File file, int fps, int quality, int queueCapacity) throws IOException {
+        return mCaptureSession.startRecording(file, fps, quality, queueCapacity, FramePipeline.DeliveryMode.EVERY_FRAME);
+    }
+
+    /**
+     * 녹화를 끝내고 파일을 갤러리에 반영합니다. 녹화 중이 아니면 null 입니다.
+     */
+    public VideoRecorder.Stats stopRecording() throws IOException {
+        VideoRecorder recorder = mCaptureSession.getVideoRecorder();
+        VideoRecorder.Stats stats = mCaptureSession.stopRecording();
+        if (stats != null) {
+            Log.d(TAG, "stopRecording() - " + recorder.getFile().getAbsolutePath() + ", " + stats);
+            File file = recorder.getFile();
+            if (file.exists()) {
+                mCaptureSession.getMetrics().recordFileWritten(file.length());
+                if (mContext != null) {
+                    MediaScannerConnection.scanFile(mContext, new String[]{file.getAbsolutePath()}, null, null);
+                }
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * 같은 네트워크의 다른 기기에서 http://기기주소:port/ 로 프리뷰를 볼 수 있게 합니다.
+     * 느린 클라이언트는 프레임을 건너뛰므로 카메라나 다른 클라이언트를 막지 않습니다.
+     */
+    public MjpegStreamServer startStreaming(int port, int quality) throws IOException {
+        MjpegStreamServer server = mCaptureSession.startStreaming(port, quality);
+        Log.d(TAG, "startStreaming() - port " + server.getPort());
+        return server;
+    }
+
+    public void stopStreaming() {
+        MjpegStreamServer server = mCaptureSession.getStreamServer();
+        if (server != null) {
+            for (MjpegStreamServer.ClientStats stats : server.getClientStats()) {
+                Log.d(TAG, "stopStreaming() - " + stats);
+            }
+        }
+        mCaptureSession.stopStreaming();
+    }
+
+    /**
+     * 가장 최근 프리뷰 프레임을 retain 해서 돌려줍니다. 없으면 null 이며, 사용 후 반드시 release() 해야 합니다.
+     */
+    public Frame acquireLatestFrame() {
+        return mCaptureSession.acquireLatestFrame();
+    }
+
+    /**
+     * 변화 없는 프리뷰 프레임을 프리뷰 콜백(byte[], Frame), 영역 콜백, 파이프라인 단계에 넘기지 않도록 거릅니다.
+     * FrameListener, 촬영, 연사, 프레임 링은 걸러지지 않고 모든 프레임을 받습니다.
+     * 감지 비용과 걸러진 비율은 MotionDetector.getStats() 로 확인합니다. null 이면 거르지 않습니다.
+     */
+    public void setMotionDetector(MotionDetector motionDetector) {
+        mCaptureSession.setMotionDetector(motionDetector);
+    }
+
+    /**
+     * 카메라와 무관한 촬영/연속 촬영/저장 처리를 담당합니다.
+     */
+    public CaptureSession getCaptureSession() {
+        return mCaptureSession;
+    }
+
+    /**
+     * 프리뷰 콜백 시점부터 UI 스레드가 메시지를 처리할 때까지의 지연을 측정합니다.
+     * 한 번에 하나의 측정만 진행하므로 프레임마다 객체를 생성하지 않습니다.
+     */
+    private void probeCallbackToUiLatency() {
+        if (mUiProbePending.compareAndSet(false, true)) {
+            mUiProbeStartNanos = System.nanoTime();
+            mUiHandler.post(uiLatencyProbe);
+        }
+    }
+
+    /**
+     * 프리뷰 fps, 드롭 프레임, 콜백 시간, 촬영 지연 등입니다. snapshot() 으로 조회하거나 Listener 를 등록합니다.
+     */
+    public CameraMetrics getMetrics() {
+        return mCaptureSession.getMetrics();
+    }
+
+    public LatencyHistogram getCallbackToUiLatency() {
+        return mCallbackToUiLatency;
     }
 
     public Camera.Parameters getCameraParam(){
         if (mCamera != null) {
-            return mCamera.getParameters();
+            return getParameters();
         }else{
             return null;
         }
     }
 
+    /**
+     * 현재 카메라에 적용된 설정입니다. getCameraParam() 과 달리 카메라 서비스를 호출하지 않습니다.
+     */
+    public CameraConfig getCameraConfig() {
+        return mCameraConfig;
+    }
+
+    /**
+     * 이번 카메라 세션(createCamera 이후)에서 Camera.getParameters() 가 호출된 횟수입니다.
+     */
+    public int getParametersCallCount() {
+        return mGetParametersCount.get();
+    }
+
+    private Camera.Parameters getParameters() {
+        mGetParametersCount.incrementAndGet();
+        return mCamera.getParameters();
+    }
+
+    private void setParameters(Camera.Parameters params) {
+        mCamera.setParameters(params);
+        mAppliedParameters = params.flatten();
+        mCameraConfig = createCameraConfig(params);
+        Log.d(TAG, "camera config - " + mCameraConfig);
+    }
+
+    private CameraConfig createCameraConfig(Camera.Parameters params) {
+        Size previewSize = params.getPreviewSize();
+        Size pictureSize = params.getPictureSize();
+        int[] fpsRange = new int[2];
+        params.getPreviewFpsRange(fpsRange);
+        return new CameraConfig(previewSize.width, previewSize.height, params.getPreviewFormat(),
+                pictureSize.width, pictureSize.height,
+                fpsRange[Camera.Parameters.PREVIEW_FPS_MIN_INDEX], fpsRange[Camera.Parameters.PREVIEW_FPS_MAX_INDEX],
+                params.getFocusMode(), calculatePreviewOrientation(mCameraInfo, mDisplayOrientation));
+    }
+
     public void stopCamera() {
+        if (mCameraHandler != null && Looper.myLooper() != mCameraHandler.getLooper()) {
+            // surface 가 파괴되기 전에 프리뷰가 멈춰야 하므로 완료될 때까지 기다립니다.
+            runOnCameraThreadAndWait(new Runnable() {
+                @Override
+                public void run() {
+                    stopCamera();
+                }
+            });
+            return;
+        }
         Log.d(TAG, "stopCamera()");
         if (mCamera != null) {
+            stopBufferPool();
             if (isPreview) {
                 mCamera.stopPreview();
                 mCamera.setPreviewCallback(null);
@@ -180,6 +640,120 @@ public class CameraPreview {
         }
     }
 
+    /**
+     * 풀이 멈춘 뒤에는 recycler 를 부르지 않으므로, 세대는 멈춘 다음에 늘려야 멈추기 전에 넘긴 반환만 버려집니다.
+     */
+    private void stopBufferPool() {
+        if (mBufferPool != null) {
+            mBufferPool.stop();
+            mRecycleGeneration++;
+        }
+    }
+
+    /**
+     * 앱이 가려질 때(onPause) 카메라 하드웨어만 반환합니다. 프리뷰 버퍼 풀, 고른 크기와 적용한 파라미터,
+     * 인코더와 파이프라인 스레드는 그대로 두므로 resume() 은 카메라를 열고 파라미터를 되돌리기만 합니다.
+     * 오래된 프레임으로 촬영하지 않도록 최신 프레임은 비웁니다.
+     */
+    public void suspend() {
+        if (mCameraHandler != null && Looper.myLooper() != mCameraHandler.getLooper()) {
+            runOnCameraThreadAndWait(new Runnable() {
+                @Override
+                public void run() {
+                    suspend();
+                }
+            });
+            return;
+        }
+        Log.d(TAG, "suspend()");
+        if (mCamera == null) {
+            return;
+        }
+        mIsSuspended = true;
+        mResumeRequestNanos = 0;
+        stopCamera();
+        mCaptureSession.clearLatestFrame();
+    }
+
+    /**
+     * suspend() 한 카메라를 다시 엽니다. surface 가 아직 없으면 surfaceCreated() 에서 열립니다.
+     * 재개 요청부터 첫 프레임까지의 시간은 CameraMetrics 의 resumeToFirstFrame 으로 집계합니다.
+     */
+    public void resume() {
+        if (!mIsSuspended) {
+            return;
+        }
+        Log.d(TAG, "resume()");
+        mResumeRequestNanos = System.nanoTime();
+        Surface surface = mHolder.getSurface();
+        if (surface != null && surface.isValid()) {
+            startCamera();
+        }
+    }
+
+    public boolean isSuspended() {
+        return mIsSuspended;
+    }
+
+    /**
+     * takePicture() 와 같은 인코딩 스레드에서 task 를 실행합니다. 카메라 스레드를 쓰지 않는 모드면 바로 실행합니다.
+     * 대기열이 가득 찼거나 release() 뒤이면 호출한 스레드(보통 UI 스레드)에서 대신 실행하지 않고 false 를 돌려줍니다.
+     */
+    public boolean runOnEncodeThread(Runnable task) {
+        ThreadPoolExecutor encodeExecutor = mEncodeExecutor;
+        if (encodeExecutor == null) {
+            task.run();
+            return true;
+        }
+        try {
+            encodeExecutor.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    private void runOnCameraThreadAndWait(final Runnable runnable) {
+        final CountDownLatch latch = new CountDownLatch(1);
+        mCameraHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                runnable.run();
+                latch.countDown();
+            }
+        });
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 카메라를 닫고 카메라 스레드와 인코딩 스레드를 정리합니다. 이후에는 이 인스턴스를 다시 사용할 수 없습니다.
+     */
+    public void release() {
+        stopCamera();
+        mCaptureSession.close();
+        mUiHandler.removeCallbacks(uiLatencyProbe);
+        if (mCameraThread != null) {
+            mCameraThread.quitSafely();
+            mCameraThread = null;
+            mCameraHandler = null;
+        }
+        if (mEncodeExecutor != null) {
+            // null 로 두면 runOnEncodeThread() 가 호출한 스레드에서 실행하므로, 종료만 해서 이후 요청이 거절되게 합니다.
+            mEncodeExecutor.shutdown();
+        }
+        synchronized (this) {
+            StorageWriter storageWriter = mCaptureSession.getStorageWriter();
+            if (storageWriter != null) {
+                storageWriter.close();
+                mCaptureSession.setStorageWriter(null);
+            }
+        }
+    }
+
     private void changeCalculatePreviewOrientation() {
         // If your preview can change or rotate, take care of those events here.
         // Make sure to stop the preview before resizing or reformatting it.
@@ -201,6 +775,8 @@ public class CameraPreview {
 
     private void createCamera(SurfaceHolder holder) {
         if (mCamera == null) {
+            long openStart = System.nanoTime();
+            mGetParametersCount.set(0);
 
             // Open an instance of the camera
             try {
@@ -210,238 +786,348 @@ public class CameraPreview {
             }
 
             // retrieve camera's info.
-            Camera.CameraInfo cameraInfo = new Camera.CameraInfo();
-            Camera.getCameraInfo(mCameraID, cameraInfo);
-
-            mCameraInfo = cameraInfo;
+            mCameraInfo = getCameraInfo(mCameraID);
             mDisplayOrientation = mActivity.getWindowManager().getDefaultDisplay().getRotation();
 
             // Orientation
             int orientation = calculatePreviewOrientation(mCameraInfo, mDisplayOrientation);
             mCamera.setDisplayOrientation(orientation);
 
-            mSupportedPreviewSizes = mCamera.getParameters().getSupportedPreviewSizes();
-            Camera.Parameters params = mCamera.getParameters();
-
-            // FPS
-            int[] frameRates = getMaxPreviewFpsRange(params);
-            if (frameRates != null) {
-                int minFps = frameRates[Camera.Parameters.PREVIEW_FPS_MIN_INDEX];
-                int maxFps = frameRates[Camera.Parameters.PREVIEW_FPS_MAX_INDEX];
-                Log.d(TAG, "set fps[min:" + minFps + ",max:" + maxFps + "]");
-                params.setPreviewFpsRange(minFps, maxFps);
+            Camera.Parameters params = getParameters();
+
+            // 같은 카메라, 같은 화면 크기면 지난번에 고른 크기/fps 를 그대로 사용
+            mSurfaceWidth = mSurfaceView != null ? mSurfaceView.getWidth() : 0;
+            mSurfaceHeight = mSurfaceView != null ? mSurfaceView.getHeight() : 0;
+            String settingsKey = CameraSettingsCache.key(mCameraID, mSurfaceWidth, mSurfaceHeight, mProgressive);
+            CameraSettings settings = sSettingsCache.get(settingsKey);
+            if (settings == null) {
+                settings = computeSettings(params);
+                sSettingsCache.put(settingsKey, settings);
+            } else {
+                Log.d(TAG, "use cached settings - " + settings);
             }
-
-            // Focus mode
-            List<String> focusModes = params.getSupportedFocusModes();
-            if (focusModes.contains(Camera.Parameters.FOCUS_MODE_AUTO)) {
-                // set the focus mode
-                params.setFocusMode(Camera.Parameters.FOCUS_MODE_AUTO);
-            }
-
-            // Preview size
-            Size previewSize = params.getPreviewSize();
-            if (mSurfaceView != null) {
-                if (mSupportedPreviewSizes != null) {
-                    Size preSize = null;
-                    for (Size size : mSupportedPreviewSizes) {
-                        if (size.height == mProgressive){
-                            preSize = size;
-                            break;
-                        }
-                    }
-                    if (preSize == null){
-                        preSize = getOptimalPreviewSize(mSupportedPreviewSizes, mSurfaceView.getWidth(), mSurfaceView.getHeight());
-                    }
-                    if (preSize != null){
-                        params.setPreviewSize(preSize.width, preSize.height);
-                        previewSize = preSize;
-                    }
-                }
-            }
-            mPreviewSize = previewSize;
-            Log.d(TAG, "preview[w:" + previewSize.width + ", h:" + previewSize.height);
-
-            // Picture size
-            Size pictureSize = params.getPictureSize();
-            mSupportedPictureSizes = getSupportedPictureSizes(mCamera);
-            if (mSupportedPictureSizes != null && mSupportedPictureSizes.size() > 0) {
-                Size maxSize = null;
-                for (Size size : mSupportedPictureSizes) {
-                    Log.d(TAG, "supported picture size - w:" + size.width + ",h:" + size.height);
-                    if (maxSize == null) {
-                        maxSize = size;
-                    } else {
-                        if (maxSize.height < size.height) {
-                            maxSize = size;
-                        }
-                    }
-                }
-                if (maxSize != null) {
-                    Log.d(TAG, "maxSize - width: " + maxSize.width + ", height: " + maxSize.height);
-                    params.setPictureSize(maxSize.width, maxSize.height);
-                    pictureSize = maxSize;
-                } else {
-                    Log.d(TAG, "maxSize is null");
-                }
-            }
-            mPictureSize = pictureSize;
-            Log.d(TAG, "picture[w:" + pictureSize.width + ", h:" + pictureSize.height + "]");
+            applySettings(params, settings);
+            mPreviewSize = params.getPreviewSize();
+            mPictureSize = params.getPictureSize();
 
             try {
-                mCamera.setParameters(params);
+                setParameters(params);
                 mCamera.setPreviewDisplay(holder);
                 mCamera.enableShutterSound(!mIsSilentMode);
             } catch (IOException e) {
                 e.printStackTrace();
             }
+            Log.d(TAG, "createCamera() - " + (System.nanoTime() - openStart) / 1000000 + "ms");
+        }
+    }
+
+    /**
+     * suspend() 로 닫은 카메라를 지난번에 적용한 파라미터 그대로 다시 엽니다. 설정 계산과 CameraConfig 생성을 건너뜁니다.
+     * 화면 방향이 바뀌었거나 파라미터가 거부되면 카메라를 열지 않은 상태로 두어 createCamera() 가 처음부터 설정하게 합니다.
+     */
+    private void reopenCamera(SurfaceHolder holder) {
+        mIsSuspended = false;
+        if (mAppliedParameters == null
+                || mActivity.getWindowManager().getDefaultDisplay().getRotation() != mDisplayOrientation) {
+            return;
+        }
+        long openStart = System.nanoTime();
+        try {
+            mCamera = Camera.open(mCameraID);
+        } catch (Exception e) {
+            Log.e(TAG, "Camera " + mCameraID + " is not available: " + e.getMessage());
+            return;
+        }
+        try {
+            mCamera.setDisplayOrientation(calculatePreviewOrientation(mCameraInfo, mDisplayOrientation));
+            Camera.Parameters params = getParameters();
+            params.unflatten(mAppliedParameters);
+            mCamera.setParameters(params);
+            mCamera.setPreviewDisplay(holder);
+            mCamera.enableShutterSound(!mIsSilentMode);
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "reopenCamera() - " + e.getMessage() + ", configure again");
+            mCamera.release();
+            mCamera = null;
+            return;
+        }
+        Log.d(TAG, "reopenCamera() - " + (System.nanoTime() - openStart) / 1000000 + "ms");
+    }
+
+    /**
+     * CameraInfo 는 기기에서 바뀌지 않으므로 카메라 ID 별로 한 번만 조회합니다.
+     */
+    private static Camera.CameraInfo getCameraInfo(int cameraId) {
+        Camera.CameraInfo cameraInfo = sCameraInfos.get(cameraId);
+        if (cameraInfo == null) {
+            cameraInfo = new Camera.CameraInfo();
+            Camera.getCameraInfo(cameraId, cameraInfo);
+            sCameraInfos.put(cameraId, cameraInfo);
+        }
+        return cameraInfo;
+    }
+
+    /**
+     * 지원 목록은 CapabilityCache 에서 가져오므로 처음 실행할 때만 카메라에 묻습니다.
+     */
+    private CameraSettings computeSettings(Camera.Parameters params) {
+        CameraCapabilities capabilities = getCapabilities(params);
+
+        // FPS
+        int minFps = 0;
+        int maxFps = 0;
+        int fpsIndex = capabilities.getBestFpsRangeIndex();
+        if (fpsIndex >= 0) {
+            minFps = capabilities.getFpsMin(fpsIndex);
+            maxFps = capabilities.getFpsMax(fpsIndex);
+            Log.d(TAG, "set fps[min:" + minFps + ",max:" + maxFps + "]");
+        }
+
+        // Focus mode
+        String focusMode = null;
+        if (capabilities.supportsFocusMode(Camera.Parameters.FOCUS_MODE_AUTO)) {
+            focusMode = Camera.Parameters.FOCUS_MODE_AUTO;
+        }
+
+        // Preview size
+        Size previewSize = params.getPreviewSize();
+        int previewWidth = previewSize.width;
+        int previewHeight = previewSize.height;
+        if (mSurfaceView != null) {
+            int index = capabilities.findPreviewSizeByHeight(mProgressive);
+            if (index < 0) {
+                index = capabilities.findOptimalPreviewSize(mSurfaceWidth, mSurfaceHeight);
+            }
+            if (index >= 0) {
+                previewWidth = capabilities.getPreviewWidth(index);
+                previewHeight = capabilities.getPreviewHeight(index);
+            }
+        }
+        Log.d(TAG, "preview[w:" + previewWidth + ", h:" + previewHeight);
+
+        // Picture size
+        Size pictureSize = params.getPictureSize();
+        int pictureWidth = pictureSize.width;
+        int pictureHeight = pictureSize.height;
+        int pictureIndex = capabilities.getLargestPictureIndex();
+        if (pictureIndex >= 0) {
+            pictureWidth = capabilities.getPictureWidth(pictureIndex);
+            pictureHeight = capabilities.getPictureHeight(pictureIndex);
+        }
+        Log.d(TAG, "picture[w:" + pictureWidth + ", h:" + pictureHeight + "]");
+
+        return new CameraSettings(previewWidth, previewHeight, pictureWidth, pictureHeight, minFps, maxFps, focusMode);
+    }
+
+    private CameraCapabilities getCapabilities(Camera.Parameters params) {
+        CapabilityCache capabilityCache = getCapabilityCache(mContext);
+        CameraCapabilities capabilities = capabilityCache.get(mCameraID);
+        if (capabilities == null) {
+            capabilities = queryCapabilities(params);
+            capabilityCache.put(capabilities);
+            Log.d(TAG, "camera " + mCameraID + " capabilities cached");
+        }
+        return capabilities;
+    }
+
+    private static synchronized CapabilityCache getCapabilityCache(Context context) {
+        if (sCapabilityCache == null) {
+            sCapabilityCache = new CapabilityCache(new File(context.getCacheDir(), CAPABILITY_CACHE_FILE), Build.FINGERPRINT);
+        }
+        return sCapabilityCache;
+    }
+
+    private CameraCapabilities queryCapabilities(Camera.Parameters params) {
+        List<Size> previewSizes = params.getSupportedPreviewSizes();
+        int[] previewWidths = new int[previewSizes.size()];
+        int[] previewHeights = new int[previewSizes.size()];
+        toSizeArrays(previewSizes, previewWidths, previewHeights);
+
+        List<Size> pictureSizes = getSupportedPictureSizes(params);
+        int[] pictureWidths = new int[pictureSizes.size()];
+        int[] pictureHeights = new int[pictureSizes.size()];
+        toSizeArrays(pictureSizes, pictureWidths, pictureHeights);
+
+        List<int[]> fpsRanges = params.getSupportedPreviewFpsRange();
+        int fpsCount = fpsRanges != null ? fpsRanges.size() : 0;
+        int[] fpsMin = new int[fpsCount];
+        int[] fpsMax = new int[fpsCount];
+        for (int i = 0; i < fpsCount; i++) {
+            fpsMin[i] = fpsRanges.get(i)[Camera.Parameters.PREVIEW_FPS_MIN_INDEX];
+            fpsMax[i] = fpsRanges.get(i)[Camera.Parameters.PREVIEW_FPS_MAX_INDEX];
+        }
+
+        List<String> focusModes = params.getSupportedFocusModes();
+        return CameraCapabilities.create(mCameraID, previewWidths, previewHeights, pictureWidths, pictureHeights,
+                fpsMin, fpsMax, focusModes.toArray(new String[focusModes.size()]));
+    }
+
+    private static void applySettings(Camera.Parameters params, CameraSettings settings) {
+        if (settings.maxFps > 0) {
+            params.setPreviewFpsRange(settings.minFps, settings.maxFps);
         }
+        if (settings.focusMode != null) {
+            params.setFocusMode(settings.focusMode);
+        }
+        params.setPreviewSize(settings.previewWidth, settings.previewHeight);
+        params.setPictureSize(settings.pictureWidth, settings.pictureHeight);
     }
 
     public List<Size> getSupportedPictureSizes(Camera camera) {
         if (camera == null) {
             return null;
         }
-        List<Size> pictureSizes = camera.getParameters().getSupportedPictureSizes();
-        checkSupportedPictureSizeAtPreviewSize(pictureSizes, camera);
+        return getSupportedPictureSizes(camera.getParameters());
+    }
+
+    public List<Size> getSupportedPictureSizes(Camera.Parameters params) {
+        List<Size> pictureSizes = params.getSupportedPictureSizes();
+        checkSupportedPictureSizeAtPreviewSize(pictureSizes, params.getSupportedPreviewSizes());
         return pictureSizes;
     }
 
-    private void checkSupportedPictureSizeAtPreviewSize(List<Size> pictureSizes, Camera camera) {
-        List<Size> previewSizes = camera.getParameters().getSupportedPreviewSizes();
-        Size pictureSize;
-        Size previewSize;
-        double pictureRatio = 0;
-        double previewRatio = 0;
-        final double aspectTolerance = 0.05;
-        boolean isUsablePicture = false;
+    private void checkSupportedPictureSizeAtPreviewSize(List<Size> pictureSizes, List<Size> previewSizes) {
+        int[] previewWidths = new int[previewSizes.size()];
+        int[] previewHeights = new int[previewSizes.size()];
+        toSizeArrays(previewSizes, previewWidths, previewHeights);
 
         for (int indexOfPicture = pictureSizes.size() - 1; indexOfPicture >= 0; --indexOfPicture) {
-            pictureSize = pictureSizes.get(indexOfPicture);
-            pictureRatio = (double) pictureSize.width / (double) pictureSize.height;
-            isUsablePicture = false;
-
-            for (int indexOfPreview = previewSizes.size() - 1; indexOfPreview >= 0; --indexOfPreview) {
-                previewSize = previewSizes.get(indexOfPreview);
-
-                previewRatio = (double) previewSize.width / (double) previewSize.height;
-
-                if (Math.abs(pictureRatio - previewRatio) < aspectTolerance) {
-                    isUsablePicture = true;
-                    break;
-                }
-            }
-
-            if (isUsablePicture == false) {
+            Size pictureSize = pictureSizes.get(indexOfPicture);
+            if (!SizeSelector.hasMatchingAspectRatio(pictureSize.width, pictureSize.height,
+                    previewWidths, previewHeights, SizeSelector.PICTURE_ASPECT_TOLERANCE)) {
                 pictureSizes.remove(indexOfPicture);
                 Log.d(TAG, "remove picture size : " + pictureSize.width + ", " + pictureSize.height);
             }
         }
     }
 
+    private static void toSizeArrays(List<Size> sizes, int[] widths, int[] heights) {
+        for (int i = 0; i < widths.length; i++) {
+            Size size = sizes.get(i);
+            widths[i] = size.width;
+            heights[i] = size.height;
+        }
+    }
+
+    /**
+     * 최대 fps 가 가장 높은 범위를, 같으면 최소 fps 가 더 높은 범위를 돌려줍니다.
+     */
     public int[] getMaxPreviewFpsRange(Camera.Parameters params) {
         List<int[]> frameRates = params.getSupportedPreviewFpsRange();
-        if (frameRates != null && frameRates.size() > 0) {
-            return frameRates.get(frameRates.size() - 1);
+        int[] best = null;
+        if (frameRates != null) {
+            for (int[] range : frameRates) {
+                if (best == null
+                        || range[Camera.Parameters.PREVIEW_FPS_MAX_INDEX] > best[Camera.Parameters.PREVIEW_FPS_MAX_INDEX]
+                        || (range[Camera.Parameters.PREVIEW_FPS_MAX_INDEX] == best[Camera.Parameters.PREVIEW_FPS_MAX_INDEX]
+                        && range[Camera.Parameters.PREVIEW_FPS_MIN_INDEX] > best[Camera.Parameters.PREVIEW_FPS_MIN_INDEX])) {
+                    best = range;
+                }
+            }
         }
-        return null;
+        return best;
     }
 
-    private Size getOptimalPreviewSize(List<Size> sizes, int w, int h) {
-        Log.d(TAG, "getOptimalPreviewSize() - w: " + w + ", h: " + h);
-        final double ASPECT_TOLERANCE = 0.1;
-        double targetRatio = (double) w / h;
-        if (sizes == null) return null;
-
-        Size optimalSize = null;
-        double minDiff = Double.MAX_VALUE;
+    public void takePicture(final OnTakePictureListener onTakePictureListener, int timeOut) {
+        Log.d(TAG, "takePicture()");
+        mCaptureSession.takePicture(onTakePictureListener, timeOut);
+    }
 
-        int targetHeight = h;
+    /**
+     * region 만큼 잘라내고 줄여서 인코딩합니다. 썸네일이나 일부 영역만 필요할 때 인코딩 비용과 크기가 줄어듭니다.
+     */
+    public void takePicture(final OnTakePictureListener onTakePictureListener, int timeOut, CaptureRegion region) {
+        Log.d(TAG, "takePicture() - region");
+        mCaptureSession.takePicture(onTakePictureListener, timeOut, region);
+    }
 
-        // Try to find an size match aspect ratio and size
-        for (Size size : sizes) {
-            double ratio = (double) size.width / size.height;
-            if (Math.abs(ratio - targetRatio) > ASPECT_TOLERANCE) continue;
-            if (Math.abs(size.height - targetHeight) < minDiff) {
-                optimalSize = size;
-                minDiff = Math.abs(size.height - targetHeight);
-            }
-        }
+    /**
+     * 셔터를 누른 시각(System.nanoTime())에 맞는 프레임을 프레임 링에서 골라 인코딩합니다. 프레임을 기다리지 않으므로
+     * 셔터 지연 동안 지나간 순간도 담을 수 있습니다. 링이 꺼져 있거나 비었으면 onSkipped() 가 호출됩니다.
+     */
+    public void takePicture(final OnTakePictureListener onTakePictureListener, long triggerNanos,
+                            FrameRing.Selection selection) {
+        Log.d(TAG, "takePicture() - " + selection);
+        mCaptureSession.takePicture(onTakePictureListener, triggerNanos, selection, null);
+    }
 
-        // Cannot find the one match the aspect ratio, ignore the requirement
-        if (optimalSize == null) {
-            minDiff = Double.MAX_VALUE;
-            for (Size size : sizes) {
-                if (Math.abs(size.height - targetHeight) < minDiff) {
-                    optimalSize = size;
-                    minDiff = Math.abs(size.height - targetHeight);
-                }
-            }
+    private void saveImage(Frame frame) {
+        //NV21 상태에서 디바이스 방향으로 회전한 뒤 한 번만 인코딩해서 파일로 저장
+        getStorageWriter();
+        try {
+            mCaptureSession.saveFrame(frame, mCameraConfig.orientation);
+        } catch (IOException e) {
+            Log.e(TAG, "saveImage() - " + e.getMessage());
         }
+    }
 
-        if (optimalSize != null) {
-            Log.d(TAG, "getOptimalPreviewSize() - width:" + optimalSize.width + ", height:" + optimalSize.height);
+    /**
+     * 프리뷰 콜백 버퍼 개수를 지정합니다. 다음 startCamera() 부터 적용됩니다.
+     */
+    public void setPreviewBufferCount(int bufferCount) {
+        if (bufferCount < 1) {
+            throw new IllegalArgumentException("bufferCount must be positive: " + bufferCount);
         }
-        return optimalSize;
+        mPreviewBufferCount = bufferCount;
     }
 
-    public void takePicture(OnTakePictureListener onTakePictureListener, int timeOut) {
-        Log.d(TAG, "takePicture() - mPreviewData: "+(mPreviewData != null ? mPreviewData.length : "null"));
-        if (mPreviewData != null) {
-            onCapturedData(mPreviewData, onTakePictureListener);
-        } else {
-            if (this.onTakePictureListener != null) {
-                this.onTakePictureListener.onSkipped();
-            }
-            this.onTakePictureListener = onTakePictureListener;
-            startCaptureTimer(timeOut);
+    /**
+     * 최근 프리뷰 프레임 capacity 장을 보관합니다. 0 이면 보관하지 않습니다. 다음 startCamera() 부터 적용되며,
+     * 프레임마다 카메라 스레드에서 한 번 복사하고 메모리는 FrameRing.getFootprintBytes() 만큼 씁니다.
+     */
+    public void setFrameRingCapacity(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity must not be negative: " + capacity);
         }
+        mFrameRingCapacity = capacity;
     }
 
-    private void startCaptureTimer(int timeOut) {
-        stopCaptureTimer();
-        mCaptureTimer = new Timer();
-        mCaptureTimer.schedule(new TimerTask() {
-            @Override
-            public void run() {
-                if (onTakePictureListener != null) {
-                    onTakePictureListener.onTimeOut();
-                    onTakePictureListener = null;
-                }
-            }
-        }, timeOut);
+    /**
+     * onPreviewFrame() 에서 받은 버퍼를 콜백이 끝난 뒤에도 사용하려면 호출합니다.
+     * 사용이 끝나면 반드시 releasePreviewBuffer() 로 반환해야 카메라가 다시 채울 수 있습니다.
+     */
+    public boolean acquirePreviewBuffer(byte[] data) {
+        PreviewBufferPool bufferPool = mBufferPool;
+        return bufferPool != null && bufferPool.acquire(data);
     }
 
-    private void stopCaptureTimer() {
-        if (mCaptureTimer != null) {
-            mCaptureTimer.cancel();
-            mCaptureTimer = null;
+    public void releasePreviewBuffer(byte[] data) {
+        PreviewBufferPool bufferPool = mBufferPool;
+        if (bufferPool != null) {
+            bufferPool.release(data);
         }
     }
 
-    private void saveImage(byte[] data, Camera camera) {
-        //이미지의 너비와 높이 결정
-        int w = camera.getParameters().getPictureSize().width;
-        int h = camera.getParameters().getPictureSize().height;
-        int orientation = calculatePreviewOrientation(mCameraInfo, mDisplayOrientation);
+    public PreviewBufferPool.Stats getPreviewBufferStats() {
+        PreviewBufferPool bufferPool = mBufferPool;
+        return bufferPool != null ? bufferPool.getStats() : null;
+    }
 
-        //byte array를 bitmap으로 변환
-        BitmapFactory.Options options = new BitmapFactory.Options();
-        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
-        Bitmap bitmap = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+    /**
+     * 카메라 스레드를 막지 않고 프레임을 처리하려면 이 파이프라인에 단계를 추가합니다.
+     * 단계마다 대기하는 프레임이 프리뷰 버퍼를 점유하므로 필요하면 setPreviewBufferCount() 로 버퍼를 늘립니다.
+     */
+    public FramePipeline getFramePipeline() {
+        return mCaptureSession.getFramePipeline();
+    }
 
-        //이미지를 디바이스 방향으로 회전
-        Matrix matrix = new Matrix();
-        matrix.postRotate(orientation);
-        bitmap = Bitmap.createBitmap(bitmap, 0, 0, w, h, matrix, true);
+    public OnPreviewFrameCallback getOnPreviewFrameCallback() {
+        return onPreviewFrameCallback;
+    }
 
-        //bitmap을 byte array로 변환
-        ByteArrayOutputStream stream = new ByteArrayOutputStream();
-        bitmap.compress(Bitmap.CompressFormat.JPEG, 100, stream);
-        byte[] currentData = stream.toByteArray();
+    /**
+     * OnPreviewCallback 과 달리 Frame 을 전달하므로, retain() 하면 콜백 밖에서도 버퍼를 안전하게 사용할 수 있습니다.
+     */
+    public void setOnPreviewFrameCallback(OnPreviewFrameCallback onPreviewFrameCallback) {
+        this.onPreviewFrameCallback = onPreviewFrameCallback;
+    }
 
-        //파일로 저장
-        new SaveImageTask().execute(currentData);
+    /**
+     * 프리뷰 프레임마다 region 으로 잘라내고 줄인 NV21 을 전달합니다. callback 이 null 이면 전달하지 않습니다.
+     */
+    public void setOnPreviewRegionCallback(OnPreviewRegionCallback callback, CaptureRegion region) {
+        mPreviewRegion = region;
+        onPreviewRegionCallback = callback;
     }
 
     public OnPreviewCallback getOnPreviewCallback() {
@@ -452,59 +1138,21 @@ public class CameraPreview {
         this.onPreviewCallback = onPreviewCallback;
     }
 
-    public interface OnTakePictureListener {
-        void onCapturedData(byte[] data);
-
-        void onTimeOut();
-
-        void onSkipped();
+    public interface OnTakePictureListener extends CaptureSession.OnCaptureListener {
     }
 
     public interface OnPreviewCallback{
         void onPreviewFrame(byte[] data);
     }
 
-    private class SaveImageTask extends AsyncTask<byte[], Void, Void> {
-
-        @Override
-        protected Void doInBackground(byte[]... data) {
-            FileOutputStream outStream = null;
-
-
-            try {
-
-                File path = new File(Environment.getExternalStorageDirectory().getAbsolutePath() + "/camtest");
-                if (!path.exists()) {
-                    path.mkdirs();
-                }
-
-                String fileName = String.format("%d.jpg", System.currentTimeMillis());
-                File outputFile = new File(path, fileName);
-
-                outStream = new FileOutputStream(outputFile);
-                outStream.write(data[0]);
-                outStream.flush();
-                outStream.close();
-
-                Log.d(TAG, "onPictureTaken - wrote bytes: " + data.length + " to "
-                        + outputFile.getAbsolutePath());
-
-                if (mContext != null) {
-                    // 갤러리에 반영
-                    Intent mediaScanIntent = new Intent(Intent.ACTION_MEDIA_SCANNER_SCAN_FILE);
-                    mediaScanIntent.setData(Uri.fromFile(outputFile));
-                    mContext.sendBroadcast(mediaScanIntent);
-                }
-
-                startCamera();
-            } catch (FileNotFoundException e) {
-                e.printStackTrace();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-
-            return null;
-        }
+    public interface OnPreviewFrameCallback {
+        void onPreviewFrame(Frame frame);
+    }
 
+    public interface OnPreviewRegionCallback {
+        /**
+         * 카메라 스레드에서 호출됩니다. nv21 은 다음 프레임에서 재사용되므로 필요하면 복사합니다.
+         */
+        void onPreviewRegion(byte[] nv21, int width, int height, long timestampNanos);
     }
-}
\ No newline at end of file
+}
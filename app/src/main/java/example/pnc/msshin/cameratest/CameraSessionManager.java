@@ -0,0 +1,279 @@
+package example.pnc.msshin.cameratest;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * 여러 카메라를 동시에 열어 두고 그중 하나를 활성 카메라로 씁니다. 카메라를 바꿀 때 닫고 다시 열지 않고
+ * 이미 프레임을 보내고 있는 카메라로 활성만 넘기므로(warm handoff) 전환이 한 프레임 간격 안에 끝납니다.
+ * <ul>
+ * <li>카메라마다 CameraSource 와 CaptureSession 이 따로 있어 프레임 전달과 파이프라인 단계가 각자의 스레드에서 동시에 돕니다.</li>
+ * <li>인코더, 인코딩 Executor, JPEG 출력 버퍼 예산, StorageWriter 는 모든 카메라가 함께 씁니다.</li>
+ * <li>활성 카메라의 프레임만 setActiveFrameListener() 로 받은 리스너(프리뷰 표시 등)에 전달합니다.</li>
+ * </ul>
+ * 전환 지연은 switchTo() 호출부터 새 카메라의 첫 프레임이 리스너에 전달되기 직전까지의 시간입니다.
+ * Camera API 1 기기는 대부분 카메라를 하나만 열 수 있으므로, 실제 카메라(CameraPreview)를 둘 이상 열기 전에
+ * 기기가 동시에 여는 것을 지원하는지 확인해야 합니다. 예제 앱(MainActivity)은 카메라 하나만 쓰므로 이 클래스를 쓰지 않습니다.
+ */
+public class CameraSessionManager {
+    private static final long DEFAULT_MEMORY_BUDGET = 32 * 1024 * 1024;
+    private static final int DEFAULT_CAPTURE_BUFFER_SIZE = 1024 * 1024;
+
+    public interface Listener {
+        /**
+         * 전환한 카메라의 첫 프레임이 도착하면 그 카메라의 스레드에서 호출됩니다.
+         */
+        void onSwitched(String cameraId, long latencyNanos);
+    }
+
+    public static class CameraStats {
+        public final String cameraId;
+        public final boolean active;
+        public final CameraMetrics.Snapshot metrics;
+
+        CameraStats(String cameraId, boolean active, CameraMetrics.Snapshot metrics) {
+            this.cameraId = cameraId;
+            this.active = active;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public String toString() {
+            return cameraId + (active ? "(active)" : "") + " - frames:" + metrics.deliveredFrames
+                    + "(dropped " + metrics.droppedFrames + "), fps:" + String.format("%.1f", metrics.fps)
+                    + ", firstFrame[" + metrics.timeToFirstFrame + "]";
+        }
+    }
+
+    public static class Stats {
+        public final List<CameraStats> cameras;
+        public final CameraMetrics.Latency switchLatency;
+        public final CaptureMemoryManager.Stats memory;
+
+        Stats(List<CameraStats> cameras, CameraMetrics.Latency switchLatency, CaptureMemoryManager.Stats memory) {
+            this.cameras = cameras;
+            this.switchLatency = switchLatency;
+            this.memory = memory;
+        }
+
+        @Override
+        public String toString() {
+            return "cameras:" + cameras + ", switch[" + switchLatency + "], memory[" + memory + "]";
+        }
+    }
+
+    private final FrameEncoder mFrameEncoder;
+    private final Executor mEncodeExecutor;
+    private final CaptureMemoryManager mMemoryManager;
+    private final Map<String, Camera> mCameras = new LinkedHashMap<>();
+    private final LatencyHistogram mSwitchLatency = new LatencyHistogram();
+    private volatile Camera mActiveCamera;
+    private volatile CameraSource.FrameListener mActiveFrameListener;
+    private volatile Listener mListener;
+    private StorageWriter mStorageWriter;
+
+    /**
+     * encodeExecutor 가 null 이면 촬영 요청을 프레임을 전달한 스레드에서 바로 인코딩합니다.
+     */
+    public CameraSessionManager(FrameEncoder frameEncoder, Executor encodeExecutor) {
+        this(frameEncoder, encodeExecutor, new CaptureMemoryManager(DEFAULT_MEMORY_BUDGET, DEFAULT_CAPTURE_BUFFER_SIZE));
+    }
+
+    public CameraSessionManager(FrameEncoder frameEncoder, Executor encodeExecutor, CaptureMemoryManager memoryManager) {
+        mFrameEncoder = frameEncoder;
+        mEncodeExecutor = encodeExecutor;
+        mMemoryManager = memoryManager;
+    }
+
+    /**
+     * source 를 cameraId 로 열고 프레임을 받기 시작합니다. 활성 카메라가 없으면 이 카메라가 활성이 됩니다.
+     * 같은 cameraId 가 이미 열려 있으면 먼저 닫습니다.
+     */
+    public CaptureSession openCamera(String cameraId, CameraSource source) {
+        Camera camera;
+        Camera replaced;
+        // 꺼내기와 넣기를 한 번에 해야 같은 cameraId 를 동시에 열 때 한쪽 소스가 맵에서 빠진 채 계속 돌지 않습니다.
+        synchronized (this) {
+            CaptureSession session = new CaptureSession(mFrameEncoder, mEncodeExecutor, mMemoryManager);
+            session.setStorageWriter(mStorageWriter);
+            session.getMetrics().setFrameIntervalNanos(source.getConfig().getFrameIntervalNanos());
+            camera = new Camera(cameraId, source, session);
+            replaced = mCameras.put(cameraId, camera);
+            if (mActiveCamera == null || mActiveCamera == replaced) {
+                mActiveCamera = camera;
+            }
+        }
+        if (replaced != null) {
+            replaced.close();
+        }
+        camera.start();
+        return camera.mSession;
+    }
+
+    /**
+     * 카메라를 멈추고 세션을 정리합니다. 활성 카메라였으면 활성 카메라가 없어집니다.
+     */
+    public void closeCamera(String cameraId) {
+        Camera camera;
+        synchronized (this) {
+            camera = mCameras.remove(cameraId);
+            if (camera == null) {
+                return;
+            }
+            if (mActiveCamera == camera) {
+                mActiveCamera = null;
+            }
+        }
+        camera.close();
+    }
+
+    /**
+     * 열려 있는 cameraId 를 활성 카메라로 바꿉니다. 카메라는 이미 프레임을 보내고 있으므로 다음 프레임부터
+     * 활성 프레임 리스너에 전달됩니다. 이미 활성이면 아무것도 하지 않고 false 를 돌려줍니다.
+     */
+    public boolean switchTo(String cameraId) {
+        Camera camera;
+        synchronized (this) {
+            camera = mCameras.get(cameraId);
+            if (camera == null) {
+                throw new IllegalArgumentException("camera is not open: " + cameraId);
+            }
+            if (mActiveCamera == camera) {
+                return false;
+            }
+            camera.mSwitchRequestNanos = System.nanoTime();
+            mActiveCamera = camera;
+        }
+        return true;
+    }
+
+    public String getActiveCameraId() {
+        Camera camera = mActiveCamera;
+        return camera != null ? camera.mId : null;
+    }
+
+    /**
+     * 활성 카메라의 세션입니다. 촬영, 녹화, 스트리밍은 이 세션에 요청합니다. 활성 카메라가 없으면 null 입니다.
+     */
+    public CaptureSession getActiveSession() {
+        Camera camera = mActiveCamera;
+        return camera != null ? camera.mSession : null;
+    }
+
+    public synchronized CaptureSession getSession(String cameraId) {
+        Camera camera = mCameras.get(cameraId);
+        return camera != null ? camera.mSession : null;
+    }
+
+    public synchronized List<String> getCameraIds() {
+        return new ArrayList<>(mCameras.keySet());
+    }
+
+    /**
+     * 활성 카메라의 프레임만 받는 리스너입니다. 카메라의 스레드에서 호출되므로 전환 직후에는 잠깐 두 스레드에서
+     * 번갈아 호출될 수 있습니다.
+     */
+    public void setActiveFrameListener(CameraSource.FrameListener listener) {
+        mActiveFrameListener = listener;
+    }
+
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * 모든 카메라가 함께 쓰는 StorageWriter 입니다. 이후에 여는 카메라에도 적용됩니다.
+     */
+    public synchronized void setStorageWriter(StorageWriter storageWriter) {
+        mStorageWriter = storageWriter;
+        for (Camera camera : mCameras.values()) {
+            camera.mSession.setStorageWriter(storageWriter);
+        }
+    }
+
+    public CaptureMemoryManager getMemoryManager() {
+        return mMemoryManager;
+    }
+
+    public synchronized Stats getStats() {
+        List<CameraStats> cameras = new ArrayList<>(mCameras.size());
+        Camera activeCamera = mActiveCamera;
+        for (Camera camera : mCameras.values()) {
+            cameras.add(new CameraStats(camera.mId, camera == activeCamera, camera.mSession.getMetrics().snapshot()));
+        }
+        return new Stats(cameras, new CameraMetrics.Latency(mSwitchLatency), mMemoryManager.getStats());
+    }
+
+    /**
+     * 모든 카메라를 닫습니다. StorageWriter 와 인코딩 Executor 는 만든 쪽에서 정리합니다.
+     */
+    public void close() {
+        for (String cameraId : getCameraIds()) {
+            closeCamera(cameraId);
+        }
+    }
+
+    private class Camera implements CameraSource.FrameListener {
+        private final String mId;
+        private final CameraSource mSource;
+        private final CaptureSession mSession;
+        private volatile long mStartNanos;
+        private volatile long mSwitchRequestNanos;
+        /** start() 와 close() 에서 이 객체를 잠그고 사용합니다. */
+        private boolean mIsClosed;
+        // 카메라 스레드에서만 사용합니다.
+        private boolean mHasFirstFrame;
+
+        Camera(String id, CameraSource source, CaptureSession session) {
+            mId = id;
+            mSource = source;
+            mSession = session;
+        }
+
+        /**
+         * 다른 openCamera() 가 시작 전에 이 카메라를 바꿔 끼웠으면 시작하지 않습니다.
+         */
+        synchronized void start() {
+            if (mIsClosed) {
+                return;
+            }
+            mStartNanos = System.nanoTime();
+            mSource.start(this);
+        }
+
+        synchronized void close() {
+            mIsClosed = true;
+            mSource.stop();
+            mSession.close();
+        }
+
+        @Override
+        public void onFrame(Frame frame) {
+            if (!mHasFirstFrame) {
+                mHasFirstFrame = true;
+                mSession.getMetrics().recordTimeToFirstFrame(System.nanoTime() - mStartNanos);
+            }
+            mSession.onFrame(frame);
+            if (mActiveCamera != this) {
+                return;
+            }
+            long switchRequestNanos = mSwitchRequestNanos;
+            if (switchRequestNanos != 0) {
+                mSwitchRequestNanos = 0;
+                long latency = System.nanoTime() - switchRequestNanos;
+                mSwitchLatency.record(latency);
+                Listener listener = mListener;
+                if (listener != null) {
+                    listener.onSwitched(mId, latency);
+                }
+            }
+            CameraSource.FrameListener frameListener = mActiveFrameListener;
+            if (frameListener != null) {
+                frameListener.onFrame(frame);
+            }
+        }
+    }
+}
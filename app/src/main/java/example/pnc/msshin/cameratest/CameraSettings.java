@@ -0,0 +1,34 @@
+package example.pnc.msshin.cameratest;
+
+/**
+ * createCamera 에서 지원 목록을 보고 고른 프리뷰/사진 크기, fps, 포커스 모드입니다.
+ * 같은 카메라와 같은 화면 조건이면 결과가 같으므로 CameraSettingsCache 에 보관해 다시 계산하지 않습니다.
+ */
+public final class CameraSettings {
+    public final int previewWidth;
+    public final int previewHeight;
+    public final int pictureWidth;
+    public final int pictureHeight;
+    /** 0 이면 fps 범위를 바꾸지 않습니다. */
+    public final int minFps;
+    public final int maxFps;
+    /** null 이면 포커스 모드를 바꾸지 않습니다. */
+    public final String focusMode;
+
+    public CameraSettings(int previewWidth, int previewHeight, int pictureWidth, int pictureHeight,
+                          int minFps, int maxFps, String focusMode) {
+        this.previewWidth = previewWidth;
+        this.previewHeight = previewHeight;
+        this.pictureWidth = pictureWidth;
+        this.pictureHeight = pictureHeight;
+        this.minFps = minFps;
+        this.maxFps = maxFps;
+        this.focusMode = focusMode;
+    }
+
+    @Override
+    public String toString() {
+        return "preview[" + previewWidth + "x" + previewHeight + "], picture[" + pictureWidth + "x" + pictureHeight
+                + "], fps[" + minFps + "," + maxFps + "], focus:" + focusMode;
+    }
+}
@@ -0,0 +1,31 @@
+package example.pnc.msshin.cameratest;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 카메라 ID 와 화면 조건별로 계산해 둔 CameraSettings 를 보관합니다.
+ * 카메라를 다시 열 때 지원 크기 목록을 훑고 걸러내는 작업을 건너뛰기 위해 사용합니다.
+ */
+public class CameraSettingsCache {
+    private final Map<String, CameraSettings> mSettings = new ConcurrentHashMap<>();
+
+    /**
+     * progressive 에 맞는 프리뷰 크기가 없으면 화면 크기로 고르므로 화면 크기도 키에 넣습니다.
+     */
+    public static String key(int cameraId, int surfaceWidth, int surfaceHeight, int progressive) {
+        return cameraId + ":" + surfaceWidth + "x" + surfaceHeight + ":" + progressive;
+    }
+
+    public CameraSettings get(String key) {
+        return mSettings.get(key);
+    }
+
+    public void put(String key, CameraSettings settings) {
+        mSettings.put(key, settings);
+    }
+
+    public void clear() {
+        mSettings.clear();
+    }
+}
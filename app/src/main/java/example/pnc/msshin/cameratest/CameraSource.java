@@ -0,0 +1,23 @@
+package example.pnc.msshin.cameratest;
+
+/**
+ * 프리뷰 프레임을 만들어 내는 카메라입니다. 실제 카메라 외에 합성 프레임이나 녹화된 프레임을 재생하는 구현이 있어
+ * 기기 없이도 CaptureSession 의 촬영/인코딩/저장 경로를 JVM 에서 실행할 수 있습니다.
+ */
+public interface CameraSource {
+
+    interface FrameListener {
+        /**
+         * 소스의 스레드에서 호출됩니다. frame 은 호출되는 동안만 유효하며, 더 사용하려면 retain() 합니다.
+         */
+        void onFrame(Frame frame);
+    }
+
+    void start(FrameListener listener);
+
+    void stop();
+
+    CameraConfig getConfig();
+
+    PreviewBufferPool.Stats getBufferStats();
+}
@@ -0,0 +1,114 @@
+package example.pnc.msshin.cameratest;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 카메라별 CameraCapabilities 를 파일에 저장해 두고 다음 실행부터는 카메라에 다시 묻지 않습니다.
+ * 형식: [magic "CAPS", version, build fingerprint, 카메라 수] 뒤에 카메라마다 CameraCapabilities 가 이어집니다.
+ * 형식 버전이나 OS 빌드가 다르면 파일을 버리고 새로 만듭니다.
+ */
+public class CapabilityCache {
+    static final int MAGIC = 0x43415053;
+    /** 2: 프리뷰 크기마다 카메라가 알려준 순서를 함께 저장합니다. */
+    static final int VERSION = 2;
+
+    private final File mFile;
+    private final String mBuildFingerprint;
+    private final Map<Integer, CameraCapabilities> mCapabilities = new HashMap<>();
+
+    /**
+     * buildFingerprint 는 android.os.Build.FINGERPRINT 처럼 OS 업데이트 때 바뀌는 값을 씁니다.
+     */
+    public CapabilityCache(File file, String buildFingerprint) {
+        mFile = file;
+        mBuildFingerprint = buildFingerprint;
+        load();
+    }
+
+    public synchronized CameraCapabilities get(int cameraId) {
+        return mCapabilities.get(cameraId);
+    }
+
+    /**
+     * 저장에 실패해도 메모리에는 남으므로 이번 실행 동안은 계속 사용할 수 있습니다.
+     */
+    public synchronized void put(CameraCapabilities capabilities) {
+        mCapabilities.put(capabilities.getCameraId(), capabilities);
+        save();
+    }
+
+    public synchronized void clear() {
+        mCapabilities.clear();
+        mFile.delete();
+    }
+
+    private void load() {
+        if (!mFile.exists()) {
+            return;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(mBuildFingerprint)) {
+                in.close();
+                in = null;
+                mFile.delete();
+                return;
+            }
+            int count = in.readUnsignedShort();
+            for (int i = 0; i < count; i++) {
+                CameraCapabilities capabilities = CameraCapabilities.readFrom(in);
+                mCapabilities.put(capabilities.getCameraId(), capabilities);
+            }
+        } catch (IOException e) {
+            // 깨진 캐시는 버리고 카메라에서 다시 읽습니다.
+            mCapabilities.clear();
+            mFile.delete();
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private void save() {
+        File tempFile = new File(mFile.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(mBuildFingerprint);
+            out.writeShort(mCapabilities.size());
+            for (CameraCapabilities capabilities : mCapabilities.values()) {
+                capabilities.writeTo(out);
+            }
+            out.close();
+            out = null;
+            if (!tempFile.renameTo(mFile)) {
+                tempFile.delete();
+            }
+        } catch (IOException e) {
+            tempFile.delete();
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package example.pnc.msshin.cameratest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * CaptureMemoryManager 에서 빌려 쓰는 JPEG 출력 버퍼입니다. 반환한 뒤에도 배열을 버리지 않고 다음 촬영에 재사용합니다.
+ * 용량이 모자라 늘릴 때 예산을 넘으면 IOException 을 던지므로, 인코딩이 실패한 것처럼 처리하면 됩니다.
+ */
+public final class CaptureBuffer extends OutputStream {
+    private final CaptureMemoryManager mManager;
+    private byte[] mData;
+    private int mSize;
+
+    CaptureBuffer(CaptureMemoryManager manager, int capacity) {
+        mManager = manager;
+        mData = new byte[capacity];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureCapacity(mSize + 1);
+        mData[mSize++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureCapacity(mSize + len);
+        System.arraycopy(b, off, mData, mSize, len);
+        mSize += len;
+    }
+
+    private void ensureCapacity(int capacity) throws IOException {
+        if (capacity > mData.length) {
+            int newCapacity = Math.max(capacity, mData.length + (mData.length >> 1));
+            mManager.onGrow(mData.length, newCapacity);
+            mData = Arrays.copyOf(mData, newCapacity);
+        }
+    }
+
+    /**
+     * 내부 배열을 그대로 돌려줍니다. 유효한 데이터는 size() 까지이며 release() 한 뒤에는 사용하면 안 됩니다.
+     */
+    public byte[] getData() {
+        return mData;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public int capacity() {
+        return mData.length;
+    }
+
+    public void reset() {
+        mSize = 0;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(mData, mSize);
+    }
+
+    /**
+     * 버퍼를 풀에 돌려줍니다. 한 번만 호출해야 합니다.
+     */
+    public void release() {
+        mSize = 0;
+        mManager.recycle(this);
+    }
+}
@@ -0,0 +1,111 @@
+package example.pnc.msshin.cameratest;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+
+/**
+ * 촬영/저장에 쓰는 JPEG 출력 버퍼를 풀로 관리하고 전체 메모리 사용량을 예산 안으로 제한합니다.
+ * 예산이 모자라면 acquire() 가 null 을 돌려주거나 버퍼 확장이 실패하므로, 호출한 쪽은 촬영을 건너뛰면 됩니다.
+ */
+public class CaptureMemoryManager {
+
+    public static class Stats {
+        public final long budgetBytes;
+        public final long allocatedBytes;
+        public final int pooledBuffers;
+        public final int inUseBuffers;
+        public final long rejectedCount;
+
+        Stats(long budgetBytes, long allocatedBytes, int pooledBuffers, int inUseBuffers, long rejectedCount) {
+            this.budgetBytes = budgetBytes;
+            this.allocatedBytes = allocatedBytes;
+            this.pooledBuffers = pooledBuffers;
+            this.inUseBuffers = inUseBuffers;
+            this.rejectedCount = rejectedCount;
+        }
+
+        @Override
+        public String toString() {
+            return "allocated:" + allocatedBytes + "/" + budgetBytes + ", pooled:" + pooledBuffers
+                    + ", inUse:" + inUseBuffers + ", rejected:" + rejectedCount;
+        }
+    }
+
+    private final ArrayDeque<CaptureBuffer> mPool = new ArrayDeque<>();
+    private final int mInitialBufferSize;
+    private long mBudgetBytes;
+    private long mAllocatedBytes;
+    private int mInUseBuffers;
+    private long mRejectedCount;
+
+    /**
+     * initialBufferSize 는 새 버퍼의 크기입니다. 예상 JPEG 크기로 잡으면 인코딩 중 배열을 늘리는 복사가 생기지 않습니다.
+     */
+    public CaptureMemoryManager(long budgetBytes, int initialBufferSize) {
+        mBudgetBytes = budgetBytes;
+        mInitialBufferSize = initialBufferSize;
+    }
+
+    /**
+     * 예산을 줄이면 남는 풀 버퍼를 바로 버립니다. 사용 중인 버퍼는 반환될 때 정리됩니다.
+     */
+    public synchronized void setBudget(long budgetBytes) {
+        mBudgetBytes = budgetBytes;
+        trim();
+    }
+
+    /**
+     * 풀에 버퍼가 있으면 재사용하고, 없으면 예산 안에서 새로 만듭니다. 예산을 넘으면 null 입니다.
+     */
+    public synchronized CaptureBuffer acquire() {
+        CaptureBuffer buffer = mPool.pollFirst();
+        if (buffer == null) {
+            if (mAllocatedBytes + mInitialBufferSize > mBudgetBytes) {
+                mRejectedCount++;
+                return null;
+            }
+            mAllocatedBytes += mInitialBufferSize;
+            buffer = new CaptureBuffer(this, mInitialBufferSize);
+        }
+        mInUseBuffers++;
+        return buffer;
+    }
+
+    synchronized void onGrow(int oldCapacity, int newCapacity) throws IOException {
+        long allocated = mAllocatedBytes - oldCapacity + newCapacity;
+        if (allocated > mBudgetBytes) {
+            // 다른 풀 버퍼를 버려서라도 자리를 만들어 봅니다.
+            while (allocated > mBudgetBytes && !mPool.isEmpty()) {
+                long freed = mPool.pollLast().capacity();
+                mAllocatedBytes -= freed;
+                allocated -= freed;
+            }
+            if (allocated > mBudgetBytes) {
+                mRejectedCount++;
+                throw new IOException("capture memory budget exceeded: " + allocated + "/" + mBudgetBytes);
+            }
+        }
+        mAllocatedBytes = allocated;
+    }
+
+    synchronized void recycle(CaptureBuffer buffer) {
+        mInUseBuffers--;
+        // 큰 버퍼부터 다시 쓰도록 앞쪽에 넣습니다.
+        if (!mPool.isEmpty() && buffer.capacity() < mPool.peekFirst().capacity()) {
+            mPool.addLast(buffer);
+        } else {
+            mPool.addFirst(buffer);
+        }
+        trim();
+    }
+
+    private void trim() {
+        while (mAllocatedBytes > mBudgetBytes && !mPool.isEmpty()) {
+            mAllocatedBytes -= mPool.pollLast().capacity();
+        }
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(mBudgetBytes, mAllocatedBytes, mPool.size(), mInUseBuffers, mRejectedCount);
+    }
+}
@@ -0,0 +1,92 @@
+package example.pnc.msshin.cameratest;
+
+/**
+ * 촬영이나 프리뷰 콜백에서 프레임의 일부만, 또는 줄인 크기로 받을 때의 설정입니다.
+ * 영역과 크기는 NV21 색차 단위에 맞춰 짝수로 내림되며, 프레임 밖으로 나간 부분은 잘립니다.
+ */
+public class CaptureRegion {
+    private int mLeft;
+    private int mTop;
+    private int mWidth;
+    private int mHeight;
+    private int mDownscale = 1;
+    private int mOutputWidth;
+    private int mOutputHeight;
+    private Nv21Scaler.Filter mFilter = Nv21Scaler.Filter.BOX;
+
+    /**
+     * 잘라낼 영역입니다. 설정하지 않으면 프레임 전체입니다.
+     */
+    public CaptureRegion setCrop(int left, int top, int width, int height) {
+        if (left < 0 || top < 0 || width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("invalid crop: " + left + "," + top + " " + width + "x" + height);
+        }
+        mLeft = left;
+        mTop = top;
+        mWidth = width;
+        mHeight = height;
+        return this;
+    }
+
+    /**
+     * 잘라낸 영역을 factor 분의 1 로 줄입니다. setOutputSize() 를 설정하면 무시됩니다.
+     */
+    public CaptureRegion setDownscale(int factor) {
+        if (factor < 1) {
+            throw new IllegalArgumentException("downscale must be positive: " + factor);
+        }
+        mDownscale = factor;
+        return this;
+    }
+
+    /**
+     * 잘라낸 영역을 이 크기로 바꿉니다. 비율이 다르면 늘어나거나 찌그러집니다.
+     */
+    public CaptureRegion setOutputSize(int width, int height) {
+        if (width < 2 || height < 2) {
+            throw new IllegalArgumentException("invalid output size: " + width + "x" + height);
+        }
+        mOutputWidth = width;
+        mOutputHeight = height;
+        return this;
+    }
+
+    public CaptureRegion setFilter(Nv21Scaler.Filter filter) {
+        mFilter = filter;
+        return this;
+    }
+
+    public int getLeft() {
+        return mLeft;
+    }
+
+    public int getTop() {
+        return mTop;
+    }
+
+    /** 0 이면 프레임 전체입니다. */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public int getDownscale() {
+        return mDownscale;
+    }
+
+    /** 0 이면 getDownscale() 로 크기를 정합니다. */
+    public int getOutputWidth() {
+        return mOutputWidth;
+    }
+
+    public int getOutputHeight() {
+        return mOutputHeight;
+    }
+
+    public Nv21Scaler.Filter getFilter() {
+        return mFilter;
+    }
+}
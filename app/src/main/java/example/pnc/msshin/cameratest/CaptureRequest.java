@@ -0,0 +1,75 @@
+package example.pnc.msshin.cameratest;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 프레임을 기다리는 촬영 요청 하나입니다. 프레임, 타임아웃, 건너뜀 중 가장 먼저 일어난 한 가지로만 끝납니다.
+ */
+public class CaptureRequest {
+
+    public interface Callback {
+        /**
+         * frame 은 호출되는 동안만 유효합니다. 더 사용하려면 retain() 합니다.
+         */
+        void onFrame(Frame frame);
+
+        void onTimeOut();
+
+        void onSkipped();
+    }
+
+    private final Callback mCallback;
+    private final AtomicBoolean mIsResolved = new AtomicBoolean();
+    private volatile ScheduledFuture<?> mTimeout;
+
+    public CaptureRequest(Callback callback) {
+        mCallback = callback;
+    }
+
+    public boolean isResolved() {
+        return mIsResolved.get();
+    }
+
+    void setTimeout(ScheduledFuture<?> timeout) {
+        mTimeout = timeout;
+        if (mIsResolved.get()) {
+            timeout.cancel(false);
+        }
+    }
+
+    boolean resolveWithFrame(Frame frame) {
+        if (!resolve()) {
+            return false;
+        }
+        mCallback.onFrame(frame);
+        return true;
+    }
+
+    boolean resolveTimeOut() {
+        if (!resolve()) {
+            return false;
+        }
+        mCallback.onTimeOut();
+        return true;
+    }
+
+    boolean resolveSkipped() {
+        if (!resolve()) {
+            return false;
+        }
+        mCallback.onSkipped();
+        return true;
+    }
+
+    private boolean resolve() {
+        if (!mIsResolved.compareAndSet(false, true)) {
+            return false;
+        }
+        ScheduledFuture<?> timeout = mTimeout;
+        if (timeout != null) {
+            timeout.cancel(false);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,487 @@
+package example.pnc.msshin.cameratest;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 프리뷰 프레임을 받아 최신 프레임 보관, 촬영 요청, 연속 촬영, 처리 파이프라인, 저장을 처리합니다.
+ * 안드로이드에 의존하지 않으므로 CameraPreview 뿐 아니라 합성/재생 CameraSource 와 함께 JVM 에서도 동작합니다.
+ */
+public class CaptureSession implements CameraSource.FrameListener {
+    private static final long DEFAULT_MEMORY_BUDGET = 32 * 1024 * 1024;
+    private static final int DEFAULT_CAPTURE_BUFFER_SIZE = 1024 * 1024;
+    public interface OnCaptureListener {
+        void onCapturedData(byte[] data);
+
+        void onTimeOut();
+
+        void onSkipped();
+    }
+
+    private final Object mLatestFrameLock = new Object();
+    private final CaptureSlot mCaptureSlot = new CaptureSlot();
+    private final FramePipeline mFramePipeline = new FramePipeline();
+    private final Nv21Transform mSaveTransform = new Nv21Transform();
+    private final CameraMetrics mMetrics = new CameraMetrics();
+    private final CaptureMemoryManager mMemoryManager;
+    /** 영역 없이 축소만 할 때 쓰는 전체 프레임 영역입니다. 변경하지 않습니다. */
+    private static final CaptureRegion FULL_FRAME = new CaptureRegion();
+    private final Object mResampleLock = new Object();
+    private final Nv21Resampler mResampler = new Nv21Resampler();
+    private final Executor mEncodeExecutor;
+    private Frame mLatestFrame;
+    private volatile FrameEncoder mFrameEncoder;
+    private volatile JpegQualityController mQualityController = JpegQualityController.fixed(JpegQualityController.DEFAULT_QUALITY);
+    private final AtomicReference<BurstCapture> mBurstCapture = new AtomicReference<>();
+    private volatile StorageWriter mStorageWriter;
+    private volatile MotionDetector mMotionDetector;
+    private volatile FrameRing mFrameRing;
+    private VideoRecorder mVideoRecorder;
+    private FramePipeline.Stage mRecordStage;
+    private MjpegStreamServer mStreamServer;
+    private FramePipeline.Stage mStreamStage;
+
+    /**
+     * encodeExecutor 가 null 이면 촬영 요청을 프레임을 전달한 스레드에서 바로 인코딩합니다.
+     */
+    public CaptureSession(FrameEncoder frameEncoder, Executor encodeExecutor) {
+        this(frameEncoder, encodeExecutor, new CaptureMemoryManager(DEFAULT_MEMORY_BUDGET, DEFAULT_CAPTURE_BUFFER_SIZE));
+    }
+
+    /**
+     * 여러 세션이 JPEG 출력 버퍼 예산을 나눠 쓸 때 memoryManager 를 함께 넘깁니다.
+     */
+    public CaptureSession(FrameEncoder frameEncoder, Executor encodeExecutor, CaptureMemoryManager memoryManager) {
+        mFrameEncoder = frameEncoder;
+        mEncodeExecutor = encodeExecutor;
+        mMemoryManager = memoryManager;
+    }
+
+    @Override
+    public void onFrame(Frame frame) {
+        onFrame(frame, acceptMotion(frame));
+    }
+
+    /**
+     * MotionDetector 가 있으면 frame 이 이전에 통과한 프레임과 충분히 다른지 검사합니다. 없으면 항상 true 입니다.
+     * 프레임마다 한 번, 다른 소비자에게 넘기기 전에 프레임을 전달하는 스레드에서 호출합니다.
+     */
+    public boolean acceptMotion(Frame frame) {
+        MotionDetector motionDetector = mMotionDetector;
+        return motionDetector == null || motionDetector.process(frame);
+    }
+
+    /**
+     * changed 가 false 면 파이프라인 단계(분석, 녹화 등)에는 넘기지 않습니다.
+     * 최신 프레임, 프레임 링, 촬영 요청, 연속 촬영은 변화와 관계없이 모든 프레임을 받습니다.
+     */
+    public void onFrame(Frame frame, boolean changed) {
+        mMetrics.recordFrame(frame);
+        setLatestFrame(frame);
+        FrameRing frameRing = mFrameRing;
+        if (frameRing != null) {
+            frameRing.publish(frame);
+        }
+        if (changed) {
+            mFramePipeline.dispatch(frame);
+        }
+        mCaptureSlot.deliver(frame);
+        BurstCapture burstCapture = mBurstCapture.get();
+        if (burstCapture != null && !burstCapture.offer(frame)) {
+            // 그사이 startBurst() 가 새 연사로 바꿨으면 그대로 둡니다.
+            mBurstCapture.compareAndSet(burstCapture, null);
+        }
+    }
+
+    /**
+     * 가장 최근 프레임이 있으면 바로 인코딩하고, 없으면 timeOut 밀리초 동안 다음 프레임을 기다립니다.
+     */
+    public void takePicture(OnCaptureListener listener, int timeOut) {
+        takePicture(listener, timeOut, null);
+    }
+
+    /**
+     * region 이 있으면 프레임을 인코딩하기 전에 YUV 상태에서 잘라내고 줄입니다. null 이면 전체 프레임입니다.
+     */
+    public void takePicture(final OnCaptureListener listener, int timeOut, final CaptureRegion region) {
+        final long requestNanos = System.nanoTime();
+        Frame latestFrame = acquireLatestFrame();
+        if (latestFrame != null) {
+            encodeCapture(latestFrame, requestNanos, region, listener);
+            latestFrame.release();
+            return;
+        }
+        mCaptureSlot.submit(new CaptureRequest(new CaptureRequest.Callback() {
+            @Override
+            public void onFrame(Frame frame) {
+                encodeCapture(frame, requestNanos, region, listener);
+            }
+
+            @Override
+            public void onTimeOut() {
+                listener.onTimeOut();
+            }
+
+            @Override
+            public void onSkipped() {
+                listener.onSkipped();
+            }
+        }), timeOut);
+    }
+
+    /**
+     * FrameRing 에 보관된 프레임 중 triggerNanos(System.nanoTime() 기준, 보통 셔터를 누른 시각)에 맞는 프레임을
+     * selection 에 따라 골라 인코딩합니다. 프레임을 기다리지 않으며, 링이 없거나 고를 프레임이 없으면 onSkipped() 입니다.
+     */
+    public void takePicture(final OnCaptureListener listener, long triggerNanos, FrameRing.Selection selection,
+                            final CaptureRegion region) {
+        final long requestNanos = System.nanoTime();
+        FrameRing frameRing = mFrameRing;
+        final FrameRing.Snapshot snapshot = frameRing != null ? frameRing.acquire(triggerNanos, selection) : null;
+        if (snapshot == null) {
+            listener.onSkipped();
+            return;
+        }
+        Runnable encode = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    deliverCapture(snapshot.data, snapshot.getWidth(), snapshot.getHeight(), requestNanos, region,
+                            listener);
+                } finally {
+                    snapshot.release();
+                }
+            }
+        };
+        if (mEncodeExecutor == null) {
+            encode.run();
+        } else if (!executeEncode(encode)) {
+            snapshot.release();
+            listener.onSkipped();
+        }
+    }
+
+    /**
+     * frame 은 호출하는 동안 호출자가 참조를 가지고 있어야 합니다. 비동기로 인코딩할 때는 별도로 retain 합니다.
+     */
+    private void encodeCapture(final Frame frame, final long requestNanos, final CaptureRegion region,
+                               final OnCaptureListener listener) {
+        if (mEncodeExecutor == null || !frame.retain()) {
+            deliverCapture(frame.data, frame.getWidth(), frame.getHeight(), requestNanos, region, listener);
+            return;
+        }
+        boolean isQueued = executeEncode(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    deliverCapture(frame.data, frame.getWidth(), frame.getHeight(), requestNanos, region, listener);
+                } finally {
+                    frame.release();
+                }
+            }
+        });
+        if (!isQueued) {
+            frame.release();
+            listener.onSkipped();
+        }
+    }
+
+    /**
+     * 인코딩 Executor 가 가득 찼거나 종료되어 거절하면 false 입니다. 호출한 쪽이 잡은 자원을 놓고 촬영을 실패로 끝냅니다.
+     */
+    private boolean executeEncode(Runnable encode) {
+        try {
+            mEncodeExecutor.execute(encode);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    private void deliverCapture(byte[] nv21, int width, int height, long requestNanos, CaptureRegion region,
+                                OnCaptureListener listener) {
+        // 메모리 예산을 넘으면 촬영을 건너뜁니다.
+        CaptureBuffer out = mMemoryManager.acquire();
+        if (out == null) {
+            listener.onSkipped();
+            return;
+        }
+        byte[] jpeg;
+        try {
+            encodeJpeg(nv21, width, height, region, out);
+            jpeg = out.toByteArray();
+        } catch (IOException e) {
+            listener.onSkipped();
+            return;
+        } finally {
+            out.release();
+        }
+        mMetrics.recordCaptureLatency(System.nanoTime() - requestNanos);
+        listener.onCapturedData(jpeg);
+    }
+
+    /**
+     * 프레임을 rotation 만큼 회전해 인코딩한 뒤 StorageWriter 에 저장을 요청합니다.
+     * 메모리 예산이 모자라거나 저장 큐가 가득 차면 저장하지 않고 false 를 돌려줍니다.
+     */
+    public boolean saveFrame(Frame frame, int rotation) throws IOException {
+        StorageWriter storageWriter = mStorageWriter;
+        if (storageWriter == null) {
+            throw new IllegalStateException("StorageWriter is not set");
+        }
+        CaptureBuffer buffer = mMemoryManager.acquire();
+        if (buffer == null) {
+            return false;
+        }
+        try {
+            synchronized (mSaveTransform) {
+                byte[] rotated = mSaveTransform.transform(frame.data, frame.getWidth(), frame.getHeight(), rotation, false);
+                encodeJpeg(rotated, mSaveTransform.getOutputWidth(), mSaveTransform.getOutputHeight(), buffer);
+            }
+        } catch (IOException e) {
+            buffer.release();
+            throw e;
+        }
+        return storageWriter.write(storageWriter.nextFileName(), buffer);
+    }
+
+    /**
+     * JpegQualityController 가 정한 품질과 축소 배율로 인코딩하고, 결과 크기와 시간을 다시 알려 줍니다.
+     */
+    public void encodeJpeg(byte[] nv21, int width, int height, CaptureBuffer out) throws IOException {
+        encodeJpeg(nv21, width, height, null, out);
+    }
+
+    /**
+     * region 으로 잘라내고 줄인 뒤 인코딩합니다. 품질 정책의 축소 배율은 region 의 출력 크기에 한 번 더 적용됩니다.
+     */
+    public void encodeJpeg(byte[] nv21, int width, int height, CaptureRegion region, CaptureBuffer out)
+            throws IOException {
+        encodeJpeg(nv21, width, height, region, mQualityController, out);
+    }
+
+    /**
+     * 세션의 품질 정책 대신 controller 로 인코딩합니다. 특정 요청에만 목표 크기를 적용할 때 씁니다.
+     */
+    public void encodeJpeg(byte[] nv21, int width, int height, CaptureRegion region, JpegQualityController controller,
+                           CaptureBuffer out) throws IOException {
+        int quality = controller.getQuality();
+        int downscale = controller.getDownscale();
+        int sizeBefore = out.size();
+        long start = System.nanoTime();
+        if (region == null && downscale == 1) {
+            mFrameEncoder.encode(nv21, width, height, quality, out);
+        } else {
+            synchronized (mResampleLock) {
+                byte[] resampled = mResampler.resample(nv21, width, height, region != null ? region : FULL_FRAME,
+                        downscale);
+                mFrameEncoder.encode(resampled, mResampler.getOutputWidth(), mResampler.getOutputHeight(),
+                        quality, out);
+            }
+        }
+        long encodeNanos = System.nanoTime() - start;
+        mMetrics.recordEncodeDuration(encodeNanos);
+        controller.onEncoded(quality, downscale, out.size() - sizeBefore, encodeNanos);
+    }
+
+    /**
+     * JPEG 출력 버퍼 풀입니다. encodeJpeg() 에 쓸 버퍼는 여기서 acquire 하고, 다 쓰면 release 합니다.
+     */
+    public CaptureMemoryManager getMemoryManager() {
+        return mMemoryManager;
+    }
+
+    /**
+     * 촬영과 저장에 쓰는 JPEG 품질 정책입니다. 기본값은 품질 90 고정입니다.
+     */
+    public void setQualityController(JpegQualityController qualityController) {
+        mQualityController = qualityController;
+    }
+
+    public JpegQualityController getQualityController() {
+        return mQualityController;
+    }
+
+    /**
+     * 가장 최근 프레임을 retain 해서 돌려줍니다. 없으면 null 이며, 사용 후 반드시 release() 해야 합니다.
+     */
+    public Frame acquireLatestFrame() {
+        synchronized (mLatestFrameLock) {
+            if (mLatestFrame != null && mLatestFrame.retain()) {
+                return mLatestFrame;
+            }
+            return null;
+        }
+    }
+
+    public void clearLatestFrame() {
+        setLatestFrame(null);
+    }
+
+    private void setLatestFrame(Frame frame) {
+        Frame oldFrame;
+        synchronized (mLatestFrameLock) {
+            if (frame != null && !frame.retain()) {
+                frame = null;
+            }
+            oldFrame = mLatestFrame;
+            mLatestFrame = frame;
+        }
+        if (oldFrame != null) {
+            oldFrame.release();
+        }
+    }
+
+    /**
+     * 연속 촬영을 시작합니다. 진행 중인 연속 촬영이 있으면 먼저 멈춥니다.
+     */
+    public BurstCapture startBurst(BurstCapture.Config config, BurstCapture.Listener listener) {
+        BurstCapture burstCapture = new BurstCapture(config, mFrameEncoder, listener);
+        // 바꿔 끼운 쪽이 밀려난 연사를 멈추므로 동시에 호출해도 멈추지 않고 남는 연사가 없습니다.
+        BurstCapture previous = mBurstCapture.getAndSet(burstCapture);
+        if (previous != null) {
+            previous.stop();
+        }
+        return burstCapture;
+    }
+
+    public void stopBurst() {
+        BurstCapture burstCapture = mBurstCapture.getAndSet(null);
+        if (burstCapture != null) {
+            burstCapture.stop();
+        }
+    }
+
+    /**
+     * 프리뷰 프레임을 MJPEG AVI 로 녹화합니다. 진행 중인 녹화가 있으면 먼저 끝냅니다.
+     * 인코딩은 전용 스레드의 파이프라인 단계에서 하며, queueCapacity 를 넘게 밀린 프레임은 mode 에 따라 버립니다.
+     */
+    public synchronized VideoRecorder startRecording(File file, int fps, int quality, int queueCapacity,
+                                                     FramePipeline.DeliveryMode mode) throws IOException {
+        stopRecording();
+        VideoRecorder recorder = new VideoRecorder(file, fps, quality, mFrameEncoder, mMemoryManager);
+        mRecordStage = mFramePipeline.addStage("Recorder", recorder, queueCapacity, mode);
+        recorder.setStage(mRecordStage);
+        mVideoRecorder = recorder;
+        return recorder;
+    }
+
+    /**
+     * 녹화를 끝내고 파일을 마무리합니다. 녹화 중이 아니면 null 입니다.
+     */
+    public synchronized VideoRecorder.Stats stopRecording() throws IOException {
+        VideoRecorder recorder = mVideoRecorder;
+        if (recorder == null) {
+            return null;
+        }
+        mVideoRecorder = null;
+        mFramePipeline.removeStage(mRecordStage);
+        mRecordStage = null;
+        // 단계를 제거해도 처리 중인 프레임은 끝까지 기록되며, close() 는 그 프레임이 끝날 때까지 기다립니다.
+        recorder.close();
+        return recorder.getStats();
+    }
+
+    public synchronized VideoRecorder getVideoRecorder() {
+        return mVideoRecorder;
+    }
+
+    /**
+     * 프리뷰를 port 에서 HTTP MJPEG 로 내보냅니다. 진행 중인 스트리밍이 있으면 먼저 멈춥니다.
+     * 인코딩은 전용 스레드의 LATEST_ONLY 단계에서 하므로 밀리면 최신 프레임만 인코딩합니다.
+     */
+    public synchronized MjpegStreamServer startStreaming(int port, int quality) throws IOException {
+        stopStreaming();
+        MjpegStreamServer server = new MjpegStreamServer(mFrameEncoder, quality, mMemoryManager);
+        server.start(port);
+        mStreamStage = mFramePipeline.addStage("Streaming", server, 1, FramePipeline.DeliveryMode.LATEST_ONLY);
+        mStreamServer = server;
+        return server;
+    }
+
+    public synchronized void stopStreaming() {
+        MjpegStreamServer server = mStreamServer;
+        if (server == null) {
+            return;
+        }
+        mStreamServer = null;
+        mFramePipeline.removeStage(mStreamStage);
+        mStreamStage = null;
+        server.stop();
+    }
+
+    public synchronized MjpegStreamServer getStreamServer() {
+        return mStreamServer;
+    }
+
+    /**
+     * 변화 없는 프레임을 거를 감지기입니다. 세션 안에서는 파이프라인 단계만 걸러지며, 프리뷰 콜백은
+     * acceptMotion() 결과로 호출한 쪽(CameraPreview)이 거릅니다. null 이면 모든 프레임을 넘깁니다.
+     * 녹화 중이면 걸러진 프레임 자리는 앞 프레임이 반복됩니다.
+     */
+    public void setMotionDetector(MotionDetector motionDetector) {
+        mMotionDetector = motionDetector;
+    }
+
+    public MotionDetector getMotionDetector() {
+        return mMotionDetector;
+    }
+
+    /**
+     * 최근 프레임을 보관할 링입니다. 있으면 모든 프레임을 프레임을 전달하는 스레드에서 복사해 넣습니다. null 이면 보관하지 않습니다.
+     */
+    public void setFrameRing(FrameRing frameRing) {
+        mFrameRing = frameRing;
+    }
+
+    public FrameRing getFrameRing() {
+        return mFrameRing;
+    }
+
+    /**
+     * 프레임 도착, 촬영 지연, 인코딩 시간을 기록합니다. 저장 바이트는 StorageWriter.Listener 에서 직접 기록합니다.
+     */
+    public CameraMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    public FramePipeline getFramePipeline() {
+        return mFramePipeline;
+    }
+
+    public FrameEncoder getFrameEncoder() {
+        return mFrameEncoder;
+    }
+
+    public void setFrameEncoder(FrameEncoder frameEncoder) {
+        mFrameEncoder = frameEncoder;
+    }
+
+    public StorageWriter getStorageWriter() {
+        return mStorageWriter;
+    }
+
+    public void setStorageWriter(StorageWriter storageWriter) {
+        mStorageWriter = storageWriter;
+    }
+
+    /**
+     * 대기 중인 촬영 요청과 연속 촬영, 녹화, 스트리밍, 파이프라인을 정리하고 최신 프레임을 반환합니다.
+     * StorageWriter 와 인코딩 Executor 는 만든 쪽에서 정리합니다.
+     */
+    public void close() {
+        mCaptureSlot.cancel();
+        stopBurst();
+        try {
+            stopRecording();
+        } catch (IOException e) {
+            // 녹화 파일만 불완전하게 남으므로 나머지 정리는 계속합니다.
+        }
+        stopStreaming();
+        mFramePipeline.close();
+        clearLatestFrame();
+    }
+}
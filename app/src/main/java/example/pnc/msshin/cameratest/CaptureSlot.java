@@ -0,0 +1,67 @@
+package example.pnc.msshin.cameratest;
+
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 프레임을 기다리는 촬영 요청을 하나만 보관합니다. 잠금 없이 교체되며, 새 요청이 들어오면 이전 요청은 건너뜀으로 끝납니다.
+ * 타임아웃은 모든 인스턴스가 공유하는 스케줄러 스레드 하나에서 처리합니다.
+ */
+public class CaptureSlot {
+    private static final ScheduledThreadPoolExecutor sTimeoutScheduler;
+
+    static {
+        sTimeoutScheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "CaptureTimeout");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        sTimeoutScheduler.setRemoveOnCancelPolicy(true);
+    }
+
+    private final AtomicReference<CaptureRequest> mPending = new AtomicReference<>();
+
+    public void submit(final CaptureRequest request, long timeoutMillis) {
+        CaptureRequest previous = mPending.getAndSet(request);
+        if (previous != null) {
+            previous.resolveSkipped();
+        }
+        request.setTimeout(sTimeoutScheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                mPending.compareAndSet(request, null);
+                request.resolveTimeOut();
+            }
+        }, timeoutMillis, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * 기다리는 요청이 있으면 frame 으로 끝냅니다. 이 호출로 요청이 끝났으면 true 입니다.
+     */
+    public boolean deliver(Frame frame) {
+        if (mPending.get() == null) {
+            return false;
+        }
+        CaptureRequest request = mPending.getAndSet(null);
+        return request != null && request.resolveWithFrame(frame);
+    }
+
+    public boolean hasPending() {
+        return mPending.get() != null;
+    }
+
+    /**
+     * 기다리는 요청을 건너뜀으로 끝냅니다.
+     */
+    public void cancel() {
+        CaptureRequest request = mPending.getAndSet(null);
+        if (request != null) {
+            request.resolveSkipped();
+        }
+    }
+}
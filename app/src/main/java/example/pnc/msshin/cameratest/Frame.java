@@ -0,0 +1,87 @@
+package example.pnc.msshin.cameratest;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 카메라 프리뷰 버퍼 하나를 감싸는 참조 카운트 프레임입니다.
+ * 마지막 release() 가 호출되어야 버퍼가 카메라로 돌아가므로, 콜백 밖에서 사용하려면 retain() 후 사용합니다.
+ * release 된 프레임의 필드와 data 는 다음 프레임으로 재사용되므로 더 이상 읽으면 안 됩니다.
+ */
+public class Frame {
+    public final byte[] data;
+    private final PreviewBufferPool mPool;
+    private final AtomicInteger mRefCount = new AtomicInteger();
+    private int mWidth;
+    private int mHeight;
+    private int mFormat;
+    private long mTimestampNanos;
+    private long mSequence;
+
+    Frame(PreviewBufferPool pool, byte[] data) {
+        mPool = pool;
+        this.data = data;
+    }
+
+    void reset(int width, int height, int format, long timestampNanos, long sequence) {
+        mWidth = width;
+        mHeight = height;
+        mFormat = format;
+        mTimestampNanos = timestampNanos;
+        mSequence = sequence;
+        mRefCount.set(1);
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public int getFormat() {
+        return mFormat;
+    }
+
+    public long getTimestampNanos() {
+        return mTimestampNanos;
+    }
+
+    public long getSequence() {
+        return mSequence;
+    }
+
+    public int getRefCount() {
+        return mRefCount.get();
+    }
+
+    /**
+     * 이미 버퍼가 반환된 프레임이면 false 를 돌려줍니다.
+     */
+    public boolean retain() {
+        while (true) {
+            int count = mRefCount.get();
+            if (count <= 0) {
+                return false;
+            }
+            if (mRefCount.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    public void release() {
+        while (true) {
+            int count = mRefCount.get();
+            if (count <= 0) {
+                return;
+            }
+            if (mRefCount.compareAndSet(count, count - 1)) {
+                if (count == 1) {
+                    mPool.recycle(this);
+                }
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package example.pnc.msshin.cameratest;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * 프리뷰 프레임을 파일에 그대로 기록합니다. ReplayCameraSource 로 다시 재생할 수 있습니다.
+ * 형식: 헤더 [magic "NV21", version, width, height, format] 뒤에 프레임마다 [timestampNanos, data] 가 이어집니다.
+ */
+public class FrameDump implements FramePipeline.FrameProcessor {
+    static final int MAGIC = 0x4e563231;
+    static final int VERSION = 1;
+
+    private final File mFile;
+    private DataOutputStream mOut;
+    private int mWidth;
+    private int mHeight;
+    private long mFrameCount;
+    private IOException mError;
+    private boolean mIsClosed;
+
+    public FrameDump(File file) {
+        mFile = file;
+    }
+
+    public File getFile() {
+        return mFile;
+    }
+
+    /**
+     * 첫 프레임의 크기로 헤더를 쓰며, 크기가 다른 프레임과 close() 뒤의 프레임은 기록하지 않습니다.
+     */
+    @Override
+    public synchronized void process(Frame frame) {
+        // 닫은 뒤 파일을 다시 열면 기록한 내용을 덮어쓰므로 닫힌 뒤에는 무시합니다.
+        if (mIsClosed || mError != null) {
+            return;
+        }
+        try {
+            if (mOut == null) {
+                mOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(mFile), 1 << 16));
+                mWidth = frame.getWidth();
+                mHeight = frame.getHeight();
+                mOut.writeInt(MAGIC);
+                mOut.writeInt(VERSION);
+                mOut.writeInt(mWidth);
+                mOut.writeInt(mHeight);
+                mOut.writeInt(frame.getFormat());
+            }
+            if (frame.getWidth() != mWidth || frame.getHeight() != mHeight) {
+                return;
+            }
+            mOut.writeLong(frame.getTimestampNanos());
+            mOut.write(frame.data, 0, frameSize(mWidth, mHeight));
+            mFrameCount++;
+        } catch (IOException e) {
+            mError = e;
+        }
+    }
+
+    public synchronized long getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * 기록 중 발생한 첫 오류를 돌려줍니다. 오류가 나면 이후 프레임은 기록하지 않습니다.
+     */
+    public synchronized IOException getError() {
+        return mError;
+    }
+
+    public synchronized void close() throws IOException {
+        mIsClosed = true;
+        if (mOut != null) {
+            mOut.close();
+            mOut = null;
+        }
+    }
+
+    static int frameSize(int width, int height) {
+        return width * height * 3 / 2;
+    }
+
+    /**
+     * 헤더를 읽고 검사합니다. 돌려주는 배열은 [width, height, format] 입니다.
+     */
+    static int[] readHeader(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("not a frame dump");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("unsupported frame dump version: " + version);
+        }
+        return new int[]{in.readInt(), in.readInt(), in.readInt()};
+    }
+}
@@ -0,0 +1,11 @@
+package example.pnc.msshin.cameratest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * NV21 프레임을 JPEG 으로 인코딩합니다. 여러 스레드에서 동시에 호출될 수 있어야 합니다.
+ */
+public interface FrameEncoder {
+    void encode(byte[] nv21, int width, int height, int quality, OutputStream out) throws IOException;
+}
@@ -0,0 +1,245 @@
+package example.pnc.msshin.cameratest;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 프리뷰 프레임을 여러 처리 단계(분석, 인코딩, 스트리밍 등)에 나눠 전달합니다.
+ * 단계마다 자기 Executor 에서 실행되므로 느린 단계가 카메라 스레드나 다른 단계를 막지 않습니다.
+ * 대기 중인 프레임은 프리뷰 버퍼를 점유하므로, 단계별 대기 프레임 수만큼 버퍼를 늘려야 드롭이 줄어듭니다.
+ */
+public class FramePipeline {
+
+    public enum DeliveryMode {
+        /** 처리 중에 들어온 프레임은 가장 최신 것 하나만 남깁니다. */
+        LATEST_ONLY,
+        /** queueCapacity 까지 모든 프레임을 순서대로 처리하고, 넘치면 새 프레임을 버립니다. */
+        EVERY_FRAME
+    }
+
+    public interface FrameProcessor {
+        /**
+         * 단계의 Executor 에서 호출됩니다. frame 은 호출되는 동안만 유효하며, 더 사용하려면 retain() 합니다.
+         */
+        void process(Frame frame);
+    }
+
+    private final List<Stage> mStages = new CopyOnWriteArrayList<>();
+
+    /**
+     * 전용 스레드 하나를 가진 단계를 추가합니다. 스레드는 단계를 제거하거나 close() 할 때 종료됩니다.
+     */
+    public Stage addStage(final String name, FrameProcessor processor, int queueCapacity, DeliveryMode mode) {
+        ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, "FrameStage-" + name);
+            }
+        });
+        Stage stage = new Stage(name, processor, executor, executor, queueCapacity, mode);
+        mStages.add(stage);
+        return stage;
+    }
+
+    /**
+     * 외부 Executor 를 쓰는 단계를 추가합니다. Executor 의 종료는 호출한 쪽이 책임집니다.
+     */
+    public Stage addStage(String name, FrameProcessor processor, Executor executor, int queueCapacity, DeliveryMode mode) {
+        Stage stage = new Stage(name, processor, executor, null, queueCapacity, mode);
+        mStages.add(stage);
+        return stage;
+    }
+
+    public void removeStage(Stage stage) {
+        if (mStages.remove(stage)) {
+            stage.close();
+        }
+    }
+
+    public List<Stage> getStages() {
+        return mStages;
+    }
+
+    public boolean isEmpty() {
+        return mStages.isEmpty();
+    }
+
+    /**
+     * 모든 단계에 프레임을 넘깁니다. 호출하는 동안 frame 의 참조를 가지고 있어야 합니다.
+     */
+    public void dispatch(Frame frame) {
+        for (Stage stage : mStages) {
+            stage.offer(frame);
+        }
+    }
+
+    public void close() {
+        for (Stage stage : mStages) {
+            removeStage(stage);
+        }
+    }
+
+    public static class Stage {
+        private final String mName;
+        private final FrameProcessor mProcessor;
+        private final Executor mExecutor;
+        private final ExecutorService mOwnedExecutor;
+        private final DeliveryMode mMode;
+        private final ArrayBlockingQueue<Frame> mQueue;
+        private final AtomicReference<Frame> mLatest = new AtomicReference<>();
+        private final AtomicBoolean mIsScheduled = new AtomicBoolean();
+        private final LatencyHistogram mProcessLatency = new LatencyHistogram();
+        private final LatencyHistogram mEndToEndLatency = new LatencyHistogram();
+        private final AtomicLong mProcessedFrames = new AtomicLong();
+        private final AtomicLong mDroppedFrames = new AtomicLong();
+        private final AtomicLong mFailedFrames = new AtomicLong();
+        private volatile boolean mIsClosed;
+
+        Stage(String name, FrameProcessor processor, Executor executor, ExecutorService ownedExecutor,
+              int queueCapacity, DeliveryMode mode) {
+            mName = name;
+            mProcessor = processor;
+            mExecutor = executor;
+            mOwnedExecutor = ownedExecutor;
+            mMode = mode;
+            mQueue = mode == DeliveryMode.EVERY_FRAME ? new ArrayBlockingQueue<Frame>(queueCapacity) : null;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        /**
+         * process() 한 번에 걸린 시간입니다.
+         */
+        public LatencyHistogram getProcessLatency() {
+            return mProcessLatency;
+        }
+
+        /**
+         * 프레임이 카메라에서 도착한 시점부터 이 단계의 처리가 끝날 때까지의 시간입니다.
+         */
+        public LatencyHistogram getEndToEndLatency() {
+            return mEndToEndLatency;
+        }
+
+        public long getProcessedFrames() {
+            return mProcessedFrames.get();
+        }
+
+        public long getDroppedFrames() {
+            return mDroppedFrames.get();
+        }
+
+        /**
+         * process() 가 RuntimeException 을 던진 프레임 수입니다. 예외가 나도 단계는 다음 프레임을 계속 처리합니다.
+         */
+        public long getFailedFrames() {
+            return mFailedFrames.get();
+        }
+
+        void offer(Frame frame) {
+            if (mIsClosed || !frame.retain()) {
+                return;
+            }
+            if (mMode == DeliveryMode.LATEST_ONLY) {
+                Frame replaced = mLatest.getAndSet(frame);
+                if (replaced != null) {
+                    replaced.release();
+                    mDroppedFrames.incrementAndGet();
+                }
+            } else if (!mQueue.offer(frame)) {
+                frame.release();
+                mDroppedFrames.incrementAndGet();
+                return;
+            }
+            // 위의 mIsClosed 확인과 넣는 사이에 close() 가 releasePending() 을 끝냈으면 여기서 반환합니다.
+            if (mIsClosed) {
+                releasePending();
+                return;
+            }
+            schedule();
+        }
+
+        private void schedule() {
+            if (mIsScheduled.compareAndSet(false, true)) {
+                try {
+                    mExecutor.execute(mDrain);
+                } catch (RejectedExecutionException e) {
+                    mIsScheduled.set(false);
+                    releasePending();
+                }
+            }
+        }
+
+        private Frame poll() {
+            return mMode == DeliveryMode.LATEST_ONLY ? mLatest.getAndSet(null) : mQueue.poll();
+        }
+
+        private boolean hasPending() {
+            return mMode == DeliveryMode.LATEST_ONLY ? mLatest.get() != null : !mQueue.isEmpty();
+        }
+
+        private final Runnable mDrain = new Runnable() {
+            @Override
+            public void run() {
+                while (true) {
+                    Frame frame = poll();
+                    if (frame == null) {
+                        mIsScheduled.set(false);
+                        // set(false) 직전에 들어온 프레임을 놓치지 않도록 한 번 더 확인합니다.
+                        if (hasPending() && mIsScheduled.compareAndSet(false, true)) {
+                            continue;
+                        }
+                        return;
+                    }
+                    try {
+                        if (!mIsClosed) {
+                            long start = System.nanoTime();
+                            mProcessor.process(frame);
+                            long end = System.nanoTime();
+                            mProcessLatency.record(end - start);
+                            mEndToEndLatency.record(end - frame.getTimestampNanos());
+                            mProcessedFrames.incrementAndGet();
+                        }
+                    } catch (RuntimeException e) {
+                        // 여기서 빠져나가면 mIsScheduled 가 true 로 남아 단계가 다시 실행되지 않고 대기 프레임이 버퍼를 붙잡습니다.
+                        mFailedFrames.incrementAndGet();
+                    } finally {
+                        frame.release();
+                    }
+                }
+            }
+        };
+
+        private void releasePending() {
+            Frame frame;
+            while ((frame = poll()) != null) {
+                frame.release();
+            }
+        }
+
+        void close() {
+            mIsClosed = true;
+            releasePending();
+            if (mOwnedExecutor != null) {
+                mOwnedExecutor.shutdown();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return mName + " - processed:" + getProcessedFrames() + ", dropped:" + getDroppedFrames()
+                    + ", failed:" + getFailedFrames() + ", process[" + mProcessLatency + "], endToEnd[" + mEndToEndLatency + "]";
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package example.pnc.msshin.cameratest;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 최근 프리뷰 프레임 N 장을 미리 할당한 슬롯에 복사해 두는 링 버퍼입니다. 셔터를 누른 시점보다 조금 앞선 프레임이나
+ * 그 주변에서 가장 선명한 프레임을 기다리지 않고 꺼낼 수 있습니다.
+ * <ul>
+ * <li>프레임을 전달하는 스레드 하나가 publish() 로 가장 오래된 슬롯을 덮어씁니다. 락을 잡지 않으며 읽는 쪽을 기다리지 않습니다.</li>
+ * <li>슬롯마다 버전(seqlock)이 있어 쓰는 동안은 홀수입니다. 읽는 쪽은 복사 전후 버전이 같을 때만 그 프레임을 씁니다.</li>
+ * <li>publish() 때 밝기 기울기 에너지(이웃 픽셀 밝기 차이 제곱의 평균)를 초점 점수로 구해 둡니다. 흔들리거나 초점이
+ * 나간 프레임일수록 낮습니다.</li>
+ * </ul>
+ * 메모리는 (capacity + readerCount) x 프레임 크기로 고정이며 getFootprintBytes() 로 확인합니다.
+ */
+public class FrameRing {
+    private static final int DEFAULT_READER_COUNT = 2;
+    private static final int FOCUS_SAMPLE_STEP = 4;
+    private static final int MAX_READ_ATTEMPTS = 3;
+
+    public enum Selection {
+        /** 트리거 시각과 타임스탬프가 가장 가까운 프레임 */
+        CLOSEST,
+        /** 트리거 이전 sharpestWindow 안에서 초점 점수가 가장 높은 프레임 */
+        SHARPEST
+    }
+
+    public static class Stats {
+        public final int capacity;
+        public final long footprintBytes;
+        public final long publishedFrames;
+        public final long mismatchedFrames;
+        public final long reads;
+        public final long retries;
+        public final long missedReads;
+        public final CameraMetrics.Latency publishDuration;
+
+        Stats(int capacity, long footprintBytes, long publishedFrames, long mismatchedFrames, long reads, long retries,
+              long missedReads, CameraMetrics.Latency publishDuration) {
+            this.capacity = capacity;
+            this.footprintBytes = footprintBytes;
+            this.publishedFrames = publishedFrames;
+            this.mismatchedFrames = mismatchedFrames;
+            this.reads = reads;
+            this.retries = retries;
+            this.missedReads = missedReads;
+            this.publishDuration = publishDuration;
+        }
+
+        @Override
+        public String toString() {
+            return "capacity:" + capacity + ", footprint:" + footprintBytes + ", published:" + publishedFrames
+                    + "(mismatched " + mismatchedFrames + "), reads:" + reads + "(retries " + retries
+                    + ", missed " + missedReads + "), publish[" + publishDuration + "]";
+        }
+    }
+
+    /**
+     * 링에서 꺼낸 프레임의 복사본입니다. 다 쓰면 release() 해야 다음 읽기에 재사용됩니다.
+     */
+    public final class Snapshot {
+        public final byte[] data;
+        private int mWidth;
+        private int mHeight;
+        private long mTimestampNanos;
+        private long mSequence;
+        private int mFocusScore;
+
+        Snapshot(int frameBytes) {
+            data = new byte[frameBytes];
+        }
+
+        public int getWidth() {
+            return mWidth;
+        }
+
+        public int getHeight() {
+            return mHeight;
+        }
+
+        public long getTimestampNanos() {
+            return mTimestampNanos;
+        }
+
+        public long getSequence() {
+            return mSequence;
+        }
+
+        public int getFocusScore() {
+            return mFocusScore;
+        }
+
+        public void release() {
+            mReaders.offer(this);
+        }
+    }
+
+    private static final class Slot {
+        /** 홀수면 쓰는 중입니다. 0 이면 아직 프레임이 없습니다. */
+        final AtomicLong version = new AtomicLong();
+        final byte[] data;
+        // 아래 필드도 data 와 같이 version 으로 보호합니다.
+        long timestampNanos;
+        long sequence;
+        int focusScore;
+
+        Slot(int frameBytes) {
+            data = new byte[frameBytes];
+        }
+    }
+
+    private final int mWidth;
+    private final int mHeight;
+    private final int mFrameBytes;
+    private final Slot[] mSlots;
+    private final int mReaderCount;
+    private final ConcurrentLinkedQueue<Snapshot> mReaders = new ConcurrentLinkedQueue<>();
+    private final LatencyHistogram mPublishDuration = new LatencyHistogram();
+    private final AtomicLong mReads = new AtomicLong();
+    private final AtomicLong mRetries = new AtomicLong();
+    private final AtomicLong mMissedReads = new AtomicLong();
+    private volatile long mSharpestWindowNanos = TimeUnit.MILLISECONDS.toNanos(300);
+    // 아래 필드는 publish() 를 호출하는 스레드에서만 씁니다.
+    private volatile long mPublishedFrames;
+    private volatile long mMismatchedFrames;
+    private int mNextSlot;
+
+    public FrameRing(int capacity, int width, int height) {
+        this(capacity, width, height, DEFAULT_READER_COUNT);
+    }
+
+    /**
+     * width x height NV21 프레임 capacity 장과 동시에 꺼내 쓸 수 있는 복사본 readerCount 개를 미리 할당합니다.
+     */
+    public FrameRing(int capacity, int width, int height, int readerCount) {
+        if (capacity < 1 || readerCount < 1) {
+            throw new IllegalArgumentException("capacity and readerCount must be positive: " + capacity + ", "
+                    + readerCount);
+        }
+        mWidth = width;
+        mHeight = height;
+        mFrameBytes = width * height * 3 / 2;
+        mSlots = new Slot[capacity];
+        for (int i = 0; i < capacity; i++) {
+            mSlots[i] = new Slot(mFrameBytes);
+        }
+        mReaderCount = readerCount;
+        for (int i = 0; i < readerCount; i++) {
+            mReaders.offer(new Snapshot(mFrameBytes));
+        }
+    }
+
+    /**
+     * SHARPEST 가 트리거 이전 몇 밀리초 안의 프레임을 비교할지입니다. 기본값은 300ms 입니다.
+     */
+    public void setSharpestWindowMillis(long windowMillis) {
+        mSharpestWindowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+    }
+
+    /**
+     * frame 을 가장 오래된 슬롯에 복사합니다. 항상 같은 스레드(카메라 스레드)에서 호출해야 합니다.
+     * 크기가 다른 프레임은 넣지 않습니다.
+     */
+    public void publish(Frame frame) {
+        if (frame.getWidth() != mWidth || frame.getHeight() != mHeight) {
+            mMismatchedFrames++;
+            return;
+        }
+        long start = System.nanoTime();
+        int focusScore = focusScore(frame.data, mWidth, mHeight);
+        Slot slot = mSlots[mNextSlot];
+        mNextSlot = (mNextSlot + 1) % mSlots.length;
+        // incrementAndGet 은 전체 메모리 장벽이므로 아래 쓰기가 버전을 홀수로 바꾸기 전으로 당겨지지 않습니다.
+        slot.version.incrementAndGet();
+        System.arraycopy(frame.data, 0, slot.data, 0, mFrameBytes);
+        slot.timestampNanos = frame.getTimestampNanos();
+        slot.sequence = frame.getSequence();
+        slot.focusScore = focusScore;
+        slot.version.incrementAndGet();
+        mPublishedFrames++;
+        mPublishDuration.record(System.nanoTime() - start);
+    }
+
+    /**
+     * 이웃 픽셀(오른쪽, 아래) 밝기 차이 제곱의 평균입니다. FOCUS_SAMPLE_STEP 간격으로만 봅니다.
+     */
+    static int focusScore(byte[] nv21, int width, int height) {
+        long sum = 0;
+        int count = 0;
+        for (int y = 0; y < height - 1; y += FOCUS_SAMPLE_STEP) {
+            int index = y * width;
+            for (int x = 0; x < width - 1; x += FOCUS_SAMPLE_STEP) {
+                int luma = nv21[index + x] & 0xff;
+                int dx = (nv21[index + x + 1] & 0xff) - luma;
+                int dy = (nv21[index + x + width] & 0xff) - luma;
+                sum += dx * dx + dy * dy;
+                count++;
+            }
+        }
+        return count > 0 ? (int) (sum / count) : 0;
+    }
+
+    /**
+     * triggerNanos(System.nanoTime() 기준) 에 맞는 프레임을 골라 복사본으로 돌려줍니다. 기다리지 않으며,
+     * 링이 비었거나 복사본이 모두 사용 중이면 null 입니다. 고른 프레임이 읽는 사이에 덮어써지면 다시 고릅니다.
+     */
+    public Snapshot acquire(long triggerNanos, Selection selection) {
+        Snapshot snapshot = mReaders.poll();
+        if (snapshot == null) {
+            mMissedReads.incrementAndGet();
+            return null;
+        }
+        mReads.incrementAndGet();
+        for (int attempt = 0; attempt < MAX_READ_ATTEMPTS; attempt++) {
+            int index = select(triggerNanos, selection);
+            if (index < 0) {
+                break;
+            }
+            if (read(mSlots[index], snapshot)) {
+                return snapshot;
+            }
+            mRetries.incrementAndGet();
+        }
+        mMissedReads.incrementAndGet();
+        mReaders.offer(snapshot);
+        return null;
+    }
+
+    private int select(long triggerNanos, Selection selection) {
+        long windowStart = triggerNanos - mSharpestWindowNanos;
+        int best = -1;
+        long bestDistance = Long.MAX_VALUE;
+        int bestScore = -1;
+        for (int i = 0; i < mSlots.length; i++) {
+            Slot slot = mSlots[i];
+            long version = slot.version.get();
+            if (version == 0 || (version & 1) != 0) {
+                continue;
+            }
+            // 버전을 다시 확인하지 않은 값이므로 고르는 데만 쓰고, 복사할 때 read() 에서 검증합니다.
+            long timestamp = slot.timestampNanos;
+            long distance = Math.abs(timestamp - triggerNanos);
+            if (selection == Selection.SHARPEST && timestamp >= windowStart && timestamp <= triggerNanos) {
+                int score = slot.focusScore;
+                if (score > bestScore || (score == bestScore && distance < bestDistance)) {
+                    best = i;
+                    bestScore = score;
+                    bestDistance = distance;
+                }
+            } else if (bestScore < 0 && distance < bestDistance) {
+                // SHARPEST 인데 창 안에 프레임이 없으면 가장 가까운 프레임을 씁니다.
+                best = i;
+                bestDistance = distance;
+            }
+        }
+        return best;
+    }
+
+    private boolean read(Slot slot, Snapshot snapshot) {
+        long version = slot.version.get();
+        if (version == 0 || (version & 1) != 0) {
+            return false;
+        }
+        System.arraycopy(slot.data, 0, snapshot.data, 0, mFrameBytes);
+        snapshot.mWidth = mWidth;
+        snapshot.mHeight = mHeight;
+        snapshot.mTimestampNanos = slot.timestampNanos;
+        snapshot.mSequence = slot.sequence;
+        snapshot.mFocusScore = slot.focusScore;
+        // 같은 값으로 compareAndSet 하면 버전 검증과 함께 메모리 장벽이 생겨 위의 읽기가 검증 뒤로 밀리지 않습니다.
+        return slot.version.compareAndSet(version, version);
+    }
+
+    public int getCapacity() {
+        return mSlots.length;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * 슬롯과 복사본이 차지하는 바이트 수입니다. 생성할 때 모두 할당하므로 바뀌지 않습니다.
+     */
+    public long getFootprintBytes() {
+        return (long) (mSlots.length + mReaderCount) * mFrameBytes;
+    }
+
+    public Stats getStats() {
+        return new Stats(mSlots.length, getFootprintBytes(), mPublishedFrames, mMismatchedFrames, mReads.get(),
+                mRetries.get(), mMissedReads.get(), new CameraMetrics.Latency(mPublishDuration));
+    }
+}
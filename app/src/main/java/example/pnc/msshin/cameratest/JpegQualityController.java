@@ -0,0 +1,133 @@
+package example.pnc.msshin.cameratest;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JPEG 품질을 목표 파일 크기나 목표 인코딩 시간에 맞춰 조절합니다.
+ * 인코딩할 때마다 getQuality()/getDownscale() 로 설정을 받고, 결과를 onEncoded() 로 알려 주면 다음 프레임의 설정이 바뀝니다.
+ * 최저 품질로도 목표를 넘으면 해상도를 절반씩 줄이고, 여유가 충분하면 다시 원래 해상도로 돌아갑니다.
+ */
+public class JpegQualityController {
+    public static final int DEFAULT_QUALITY = 90;
+    private static final int DEFAULT_MIN_QUALITY = 50;
+    private static final int DEFAULT_MAX_QUALITY = 95;
+    /** 목표 대비 측정값의 log2 오차 1 당 조절할 품질 값입니다. */
+    private static final double QUALITY_GAIN = 16;
+    private static final int MAX_QUALITY_STEP = 8;
+    /** 목표의 ±5% 이내는 조절하지 않습니다. */
+    private static final double DEAD_BAND = 0.07;
+    /** 최저 품질에서 목표를 10% 넘으면 해상도를 줄입니다. */
+    private static final double DOWNSCALE_THRESHOLD = 1.1;
+    /** 해상도를 두 배로 늘리면 비용이 약 4배가 되므로, 그래도 목표 안에 들어올 때만 되돌립니다. */
+    private static final double UPSCALE_THRESHOLD = 0.2;
+
+    public enum Mode {
+        FIXED,
+        TARGET_SIZE,
+        TARGET_TIME
+    }
+
+    private final Mode mMode;
+    private final long mTarget;
+    private int mMinQuality = DEFAULT_MIN_QUALITY;
+    private int mMaxQuality = DEFAULT_MAX_QUALITY;
+    private int mMaxDownscale = 1;
+    private int mQuality;
+    private int mDownscale = 1;
+
+    private JpegQualityController(Mode mode, long target, int quality) {
+        mMode = mode;
+        mTarget = target;
+        mQuality = quality;
+    }
+
+    public static JpegQualityController fixed(int quality) {
+        return new JpegQualityController(Mode.FIXED, 0, quality);
+    }
+
+    public static JpegQualityController targetSize(long bytes) {
+        return new JpegQualityController(Mode.TARGET_SIZE, bytes, DEFAULT_QUALITY);
+    }
+
+    public static JpegQualityController targetTime(long time, TimeUnit unit) {
+        return new JpegQualityController(Mode.TARGET_TIME, unit.toNanos(time), DEFAULT_QUALITY);
+    }
+
+    public synchronized JpegQualityController setQualityRange(int minQuality, int maxQuality) {
+        if (minQuality < 1 || maxQuality > 100 || minQuality > maxQuality) {
+            throw new IllegalArgumentException("invalid quality range: " + minQuality + "~" + maxQuality);
+        }
+        mMinQuality = minQuality;
+        mMaxQuality = maxQuality;
+        if (mMode != Mode.FIXED) {
+            mQuality = clamp(mQuality);
+        }
+        return this;
+    }
+
+    /**
+     * 허용할 최대 축소 배율입니다. 1 이면 해상도를 줄이지 않으며, 2 의 거듭제곱이어야 합니다.
+     */
+    public synchronized JpegQualityController setMaxDownscale(int maxDownscale) {
+        if (maxDownscale < 1 || Integer.bitCount(maxDownscale) != 1) {
+            throw new IllegalArgumentException("maxDownscale must be a power of two: " + maxDownscale);
+        }
+        mMaxDownscale = maxDownscale;
+        return this;
+    }
+
+    public Mode getMode() {
+        return mMode;
+    }
+
+    public synchronized int getQuality() {
+        return mQuality;
+    }
+
+    public synchronized int getDownscale() {
+        return mDownscale;
+    }
+
+    /**
+     * quality/downscale 로 인코딩한 결과를 알려 줍니다. 그 사이 설정이 바뀌었으면 오래된 결과이므로 무시합니다.
+     */
+    public synchronized void onEncoded(int quality, int downscale, long bytes, long encodeNanos) {
+        if (mMode == Mode.FIXED || quality != mQuality || downscale != mDownscale) {
+            return;
+        }
+        long measured = mMode == Mode.TARGET_SIZE ? bytes : encodeNanos;
+        if (measured <= 0) {
+            return;
+        }
+        double ratio = (double) measured / mTarget;
+        if (ratio > DOWNSCALE_THRESHOLD && mQuality == mMinQuality && mDownscale < mMaxDownscale) {
+            mDownscale *= 2;
+            mQuality = (mMinQuality + mMaxQuality) / 2;
+            return;
+        }
+        if (ratio < UPSCALE_THRESHOLD && mQuality == mMaxQuality && mDownscale > 1) {
+            mDownscale /= 2;
+            mQuality = (mMinQuality + mMaxQuality) / 2;
+            return;
+        }
+        double error = Math.log(ratio) / Math.log(2);
+        if (Math.abs(error) < DEAD_BAND) {
+            return;
+        }
+        int step = (int) Math.round(error * QUALITY_GAIN);
+        step = Math.max(-MAX_QUALITY_STEP, Math.min(MAX_QUALITY_STEP, step));
+        if (step == 0) {
+            step = error > 0 ? 1 : -1;
+        }
+        mQuality = clamp(mQuality - step);
+    }
+
+    private int clamp(int quality) {
+        return Math.max(mMinQuality, Math.min(mMaxQuality, quality));
+    }
+
+    @Override
+    public synchronized String toString() {
+        return mMode + "(target:" + mTarget + ") quality:" + mQuality + ", downscale:" + mDownscale;
+    }
+}
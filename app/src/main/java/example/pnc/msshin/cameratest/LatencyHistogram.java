@@ -0,0 +1,103 @@
+package example.pnc.msshin.cameratest;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 나노초 단위 지연시간 분포를 기록합니다.
+ * 2의 거듭제곱 구간마다 8개의 하위 구간을 두어 오차는 12.5% 이내이며, 기록 시 객체를 생성하지 않습니다.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong mCount = new AtomicLong();
+    private final AtomicLong mSum = new AtomicLong();
+    private final AtomicLong mMax = new AtomicLong();
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        mBuckets.incrementAndGet(bucketIndex(nanos));
+        mCount.incrementAndGet();
+        mSum.addAndGet(nanos);
+        long max = mMax.get();
+        while (nanos > max && !mMax.compareAndSet(max, nanos)) {
+            max = mMax.get();
+        }
+    }
+
+    public long getCount() {
+        return mCount.get();
+    }
+
+    public long getMeanNanos() {
+        long count = mCount.get();
+        return count > 0 ? mSum.get() / count : 0;
+    }
+
+    public long getMaxNanos() {
+        return mMax.get();
+    }
+
+    /**
+     * percentile(0~100) 에 해당하는 구간의 상한값을 돌려줍니다.
+     */
+    public long getPercentileNanos(double percentile) {
+        long count = mCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(count * percentile / 100.0);
+        if (target < 1) {
+            target = 1;
+        }
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += mBuckets.get(i);
+            if (seen >= target) {
+                return Math.min(bucketUpperBound(i), mMax.get());
+            }
+        }
+        return mMax.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mBuckets.set(i, 0);
+        }
+        mCount.set(0);
+        mSum.set(0);
+        mMax.set(0);
+    }
+
+    static int bucketIndex(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        int msb = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) ((nanos >>> (msb - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+        return Math.min((msb - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub, BUCKET_COUNT - 1);
+    }
+
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int msb = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int sub = index % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub + 1) << (msb - SUB_BUCKET_BITS)) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "count:" + getCount()
+                + ", mean:" + getMeanNanos() / 1000 + "us"
+                + ", p50:" + getPercentileNanos(50) / 1000 + "us"
+                + ", p99:" + getPercentileNanos(99) / 1000 + "us"
+                + ", max:" + getMaxNanos() / 1000 + "us";
+    }
+}
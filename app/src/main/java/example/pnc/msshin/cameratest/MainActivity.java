@@ -3,11 +3,6 @@ package example.pnc.msshin.cameratest;
 import android.Manifest;
 import android.app.Activity;
 import android.content.pm.PackageManager;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.Matrix;
-import android.graphics.Rect;
-import android.graphics.YuvImage;
 import android.hardware.Camera;
 import android.os.Bundle;
 import android.os.Environment;
@@ -18,20 +13,22 @@ import android.view.SurfaceView;
 import android.view.View;
 import android.widget.ImageButton;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 
 public class MainActivity extends Activity implements View.OnClickListener{
     private final String TAG = getClass().getSimpleName();
+    private static final long PREVIEW_JPEG_TARGET_BYTES = 300 * 1024;
     private final int PERMISSION_REQUEST = 101;
 
     private CameraPreview mCameraPreview;
     private SurfaceView mSurfaceView;
     private ImageButton mCameraBtn;
-    private byte[] mPreviewData;
+    /** 인코딩 스레드에서만 사용합니다. */
+    private final Nv21Transform mTransform = new Nv21Transform();
+    /** 프리뷰 저장에만 적용하는 목표 크기입니다. takePicture() 와 다른 저장은 세션의 품질 정책을 그대로 씁니다. */
+    private final JpegQualityController mPreviewQuality =
+            JpegQualityController.targetSize(PREVIEW_JPEG_TARGET_BYTES).setMaxDownscale(2);
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -56,6 +53,23 @@ public class MainActivity extends Activity implements View.OnClickListener{
         }
     }
 
+    /**
+     * 다른 앱으로 전환할 때는 카메라 하드웨어만 반환하고 버퍼와 설정은 남겨 두어 돌아왔을 때 빨리 다시 엽니다.
+     */
+    @Override
+    protected void onPause() {
+        if (mCameraPreview != null) {
+            mCameraPreview.suspend();
+        }
+        super.onPause();
+    }
+
+    @Override
+    protected void onDestroy() {
+        stopCameraSource();
+        super.onDestroy();
+    }
+
     private boolean checkPermission() {
         if (ActivityCompat.checkSelfPermission(this, Manifest.permission.CAMERA) != PackageManager.PERMISSION_GRANTED ||
                 ActivityCompat.checkSelfPermission(this, Manifest.permission.WRITE_EXTERNAL_STORAGE) != PackageManager.PERMISSION_GRANTED) {
@@ -78,15 +92,19 @@ public class MainActivity extends Activity implements View.OnClickListener{
 
     private void startCameraSource() {
         if (mCameraPreview == null) {
-            mCameraPreview = new CameraPreview(this, this, Camera.CameraInfo.CAMERA_FACING_FRONT, mSurfaceView, true, -1);
-            mCameraPreview.setOnPreviewCallback(onPreviewCallback);
+            mCameraPreview = new CameraPreview(this, this, Camera.CameraInfo.CAMERA_FACING_FRONT, mSurfaceView, true, -1, true);
+            mCameraPreview.setStorageDirectory(new File(Environment.getExternalStorageDirectory(), "msshin"));
             mSurfaceView.setVisibility(View.VISIBLE);
+        } else if (mCameraPreview.isSuspended()) {
+            mCameraPreview.resume();
         }
     }
 
     private void stopCameraSource() {
         if (mCameraPreview != null){
-            mCameraPreview.stopCamera();
+            Log.d(TAG, "callback to UI latency - " + mCameraPreview.getCallbackToUiLatency());
+            Log.d(TAG, "camera metrics - " + mCameraPreview.getMetrics().snapshot());
+            mCameraPreview.release();
             mCameraPreview = null;
         }
         if (mSurfaceView != null){
@@ -94,13 +112,6 @@ public class MainActivity extends Activity implements View.OnClickListener{
         }
     }
 
-    private CameraPreview.OnPreviewCallback onPreviewCallback = new CameraPreview.OnPreviewCallback() {
-        @Override
-        public void onPreviewFrame(byte[] data) {
-            mPreviewData = data;
-        }
-    };
-
     @Override
     public void onRequestPermissionsResult(int requestCode, @NonNull String[] permissions, @NonNull int[] grantResults) {
         switch (requestCode) {
@@ -117,44 +128,72 @@ public class MainActivity extends Activity implements View.OnClickListener{
         }
     }
 
+    /**
+     * 변환과 JPEG 인코딩은 인코딩 스레드에서 하고, 끝나면 UI 스레드에서 버튼을 다시 켭니다.
+     */
     private void takePreview() {
         Log.d(TAG, "takePreview()");
-        if (mPreviewData != null){
-            Camera.Parameters parameters = mCameraPreview.getCameraParam();
-            int width = parameters.getPreviewSize().width;
-            int height = parameters.getPreviewSize().height;
-            YuvImage yuv = new YuvImage(mPreviewData, parameters.getPreviewFormat(), width, height, null);
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
-            yuv.compressToJpeg(new Rect(0, 0, width, height), 100, out);
-            byte[] data = out.toByteArray();
-
-            BitmapFactory.Options options = new BitmapFactory.Options();
-            options.inPreferredConfig = Bitmap.Config.ARGB_8888;
-            Bitmap bmp = BitmapFactory.decodeByteArray(data, 0, data.length, options);
-
-            Matrix matrix = new Matrix();
-            matrix.preRotate(-90, 0, 0);
-            Bitmap bmpRotated = Bitmap.createBitmap(bmp, 0, 0, bmp.getWidth(), bmp.getHeight(), matrix, true);
-
-            Matrix sideInversion = new Matrix();
-            sideInversion.setScale(-1, 1);
-            Bitmap bmpInversion = Bitmap.createBitmap(bmpRotated, 0, 0, bmpRotated.getWidth(), bmpRotated.getHeight(), sideInversion, false);
-
-            if (bmpInversion != null) {
-                String path = Environment.getExternalStorageDirectory().getAbsolutePath() + File.separator + "msshin" + File.separator + "picture_test.jpg";
-                try {
-                    FileOutputStream fileOps = new FileOutputStream(path);
-                    bmpInversion.compress(Bitmap.CompressFormat.JPEG, 50, fileOps);
-                    fileOps.close();
-                } catch (FileNotFoundException exception) {
-                    Log.e("FileNotFoundException", exception.getMessage());
-                } catch (IOException exception) {
-                    Log.e("IOException", exception.getMessage());
-                }
+        final CameraPreview cameraPreview = mCameraPreview;
+        final Frame frame = cameraPreview != null ? cameraPreview.acquireLatestFrame() : null;
+        if (frame == null) {
+            return;
+        }
+        mCameraBtn.setEnabled(false);
+        boolean posted = cameraPreview.runOnEncodeThread(new Runnable() {
+            @Override
+            public void run() {
+                final boolean saved = savePreview(cameraPreview, frame);
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Log.d(TAG, "takePreview() - " + (saved ? "saved" : "failed"));
+                        mCameraBtn.setEnabled(true);
+                    }
+                });
             }
+        });
+        if (!posted) {
+            frame.release();
+            mCameraBtn.setEnabled(true);
+            Log.e(TAG, "takePreview() - encoder is busy");
         }
     }
 
+    /**
+     * 인코딩 스레드에서 호출됩니다. frame 은 변환이 끝나면 release 합니다.
+     */
+    private boolean savePreview(CameraPreview cameraPreview, Frame frame) {
+        // -90도 회전 후 좌우 반전을 NV21 상태에서 처리하고 JPEG 인코딩은 한 번만 합니다.
+        byte[] transformed;
+        try {
+            transformed = mTransform.transform(frame.data, frame.getWidth(), frame.getHeight(), 270, true);
+        } finally {
+            frame.release();
+        }
+        int width = mTransform.getOutputWidth();
+        int height = mTransform.getOutputHeight();
+        CaptureSession captureSession = cameraPreview.getCaptureSession();
+        CaptureBuffer out = captureSession.getMemoryManager().acquire();
+        if (out == null) {
+            Log.e(TAG, "takePreview() - capture memory budget exceeded");
+            return false;
+        }
+        try {
+            captureSession.encodeJpeg(transformed, width, height, null, mPreviewQuality, out);
+        } catch (IOException e) {
+            out.release();
+            Log.e(TAG, "takePreview() - " + e.getMessage());
+            return false;
+        }
+
+        // 저장이 끝나면 StorageWriter 가 버퍼를 반환합니다.
+        if (!cameraPreview.getStorageWriter().write("picture_test.jpg", out)) {
+            Log.e(TAG, "takePreview() - storage queue is full");
+            return false;
+        }
+        return true;
+    }
+
     @Override
     public void onClick(View v) {
         switch (v.getId()) {
@@ -0,0 +1,202 @@
+package example.pnc.msshin.cameratest;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+/**
+ * JPEG 프레임을 Motion-JPEG AVI 파일로 씁니다. MediaCodec 없이 JVM 에서도 동작하는 순수 자바 구현입니다.
+ * AVI 는 고정 프레임레이트이므로 빠진 프레임은 크기 0 인 청크로 채워 재생 시간이 어긋나지 않게 합니다.
+ * 헤더의 크기/프레임 수와 idx1 색인은 close() 할 때 씁니다.
+ */
+public class MjpegAviWriter {
+    private static final int AVIF_HASINDEX = 0x10;
+    private static final int AVIIF_KEYFRAME = 0x10;
+    /** RIFF 부터 'movi' 까지의 헤더 길이입니다. 프레임 청크는 이 뒤에 이어집니다. */
+    private static final int HEADER_SIZE = 224;
+
+    private final File mFile;
+    private final int mWidth;
+    private final int mHeight;
+    private final int mFps;
+    private final OutputStream mOut;
+    private final byte[] mChunkHeader = new byte[8];
+    /** 청크마다 [movi 기준 위치, 크기] 입니다. */
+    private int[] mIndex = new int[1024];
+    private int mFrameCount;
+    /** 'movi' fourcc 부터 센 movi 리스트 크기입니다. idx1 의 위치도 이 기준입니다. */
+    private long mMoviSize = 4;
+    private int mMaxFrameSize;
+    private boolean mIsClosed;
+
+    public MjpegAviWriter(File file, int width, int height, int fps) throws IOException {
+        mFile = file;
+        mWidth = width;
+        mHeight = height;
+        mFps = fps;
+        mOut = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+        // 크기 필드는 close() 에서 채우므로 우선 0 으로 씁니다.
+        mOut.write(buildHeader(0, 0, 0, 0));
+    }
+
+    public int getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * JPEG 한 장을 프레임으로 추가합니다.
+     */
+    public void writeFrame(byte[] jpeg, int length) throws IOException {
+        writeChunk(jpeg, length);
+    }
+
+    /**
+     * 이전 프레임을 한 번 더 보여 주도록 빈 프레임을 추가합니다.
+     */
+    public void writeEmptyFrame() throws IOException {
+        writeChunk(null, 0);
+    }
+
+    private void writeChunk(byte[] data, int length) throws IOException {
+        if (mIsClosed) {
+            throw new IOException("writer is closed");
+        }
+        if ((mFrameCount + 1) * 2 > mIndex.length) {
+            mIndex = Arrays.copyOf(mIndex, mIndex.length * 2);
+        }
+        mIndex[mFrameCount * 2] = (int) mMoviSize;
+        mIndex[mFrameCount * 2 + 1] = length;
+        mFrameCount++;
+
+        fourcc(mChunkHeader, 0, "00dc");
+        int32(mChunkHeader, 4, length);
+        mOut.write(mChunkHeader);
+        if (length > 0) {
+            mOut.write(data, 0, length);
+        }
+        int padded = length + (length & 1);
+        if (padded != length) {
+            mOut.write(0);
+        }
+        mMoviSize += 8 + padded;
+        mMaxFrameSize = Math.max(mMaxFrameSize, length);
+    }
+
+    /**
+     * 색인을 쓰고 헤더의 크기 필드를 채운 뒤 파일을 닫습니다.
+     */
+    public void close() throws IOException {
+        if (mIsClosed) {
+            return;
+        }
+        mIsClosed = true;
+        byte[] entry = new byte[16];
+        try {
+            fourcc(entry, 0, "idx1");
+            int32(entry, 4, mFrameCount * 16);
+            mOut.write(entry, 0, 8);
+            for (int i = 0; i < mFrameCount; i++) {
+                fourcc(entry, 0, "00dc");
+                int32(entry, 4, mIndex[i * 2 + 1] > 0 ? AVIIF_KEYFRAME : 0);
+                int32(entry, 8, mIndex[i * 2]);
+                int32(entry, 12, mIndex[i * 2 + 1]);
+                mOut.write(entry);
+            }
+        } finally {
+            mOut.close();
+        }
+
+        long riffSize = HEADER_SIZE - 12 + mMoviSize + 8 + mFrameCount * 16L;
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        try {
+            file.write(buildHeader(riffSize, mMoviSize, mFrameCount, mMaxFrameSize));
+        } finally {
+            file.close();
+        }
+    }
+
+    private byte[] buildHeader(long riffSize, long moviSize, int frameCount, int maxFrameSize) {
+        byte[] h = new byte[HEADER_SIZE];
+        int bufferSize = maxFrameSize + 8;
+        fourcc(h, 0, "RIFF");
+        int32(h, 4, (int) riffSize);
+        fourcc(h, 8, "AVI ");
+        fourcc(h, 12, "LIST");
+        int32(h, 16, 192);
+        fourcc(h, 20, "hdrl");
+
+        fourcc(h, 24, "avih");
+        int32(h, 28, 56);
+        int32(h, 32, 1000000 / mFps);
+        int32(h, 36, bufferSize * mFps);
+        int32(h, 40, 0);
+        int32(h, 44, AVIF_HASINDEX);
+        int32(h, 48, frameCount);
+        int32(h, 52, 0);
+        int32(h, 56, 1);
+        int32(h, 60, bufferSize);
+        int32(h, 64, mWidth);
+        int32(h, 68, mHeight);
+        // 72~87: reserved
+
+        fourcc(h, 88, "LIST");
+        int32(h, 92, 116);
+        fourcc(h, 96, "strl");
+        fourcc(h, 100, "strh");
+        int32(h, 104, 56);
+        fourcc(h, 108, "vids");
+        fourcc(h, 112, "MJPG");
+        int32(h, 116, 0);
+        int32(h, 120, 0);
+        int32(h, 124, 0);
+        int32(h, 128, 1);
+        int32(h, 132, mFps);
+        int32(h, 136, 0);
+        int32(h, 140, frameCount);
+        int32(h, 144, bufferSize);
+        int32(h, 148, -1);
+        int32(h, 152, 0);
+        int16(h, 156, 0);
+        int16(h, 158, 0);
+        int16(h, 160, mWidth);
+        int16(h, 162, mHeight);
+
+        fourcc(h, 164, "strf");
+        int32(h, 168, 40);
+        int32(h, 172, 40);
+        int32(h, 176, mWidth);
+        int32(h, 180, mHeight);
+        int16(h, 184, 1);
+        int16(h, 186, 24);
+        fourcc(h, 188, "MJPG");
+        int32(h, 192, mWidth * mHeight * 3);
+        // 196~211: 해상도/팔레트 정보는 쓰지 않습니다.
+
+        fourcc(h, 212, "LIST");
+        int32(h, 216, (int) moviSize);
+        fourcc(h, 220, "movi");
+        return h;
+    }
+
+    private static void fourcc(byte[] buffer, int offset, String code) {
+        for (int i = 0; i < 4; i++) {
+            buffer[offset + i] = (byte) code.charAt(i);
+        }
+    }
+
+    private static void int32(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) value;
+        buffer[offset + 1] = (byte) (value >> 8);
+        buffer[offset + 2] = (byte) (value >> 16);
+        buffer[offset + 3] = (byte) (value >> 24);
+    }
+
+    private static void int16(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) value;
+        buffer[offset + 1] = (byte) (value >> 8);
+    }
+}
@@ -0,0 +1,428 @@
+package example.pnc.msshin.cameratest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 프리뷰를 HTTP multipart MJPEG 로 내보내는 서버입니다. 브라우저나 VLC 에서 http://기기주소:포트/ 로 볼 수 있습니다.
+ * <ul>
+ * <li>프레임은 한 번만 인코딩하고 모든 클라이언트가 같은 바이트를 보냅니다. 보는 클라이언트가 없으면 인코딩하지 않습니다.</li>
+ * <li>클라이언트마다 보내는 중인 프레임은 하나뿐이며, 다 보내면 그 사이 들어온 프레임 중 가장 최신 것으로 건너뜁니다.
+ * 느린 클라이언트는 fps 만 낮아지고 카메라나 다른 클라이언트를 막지 않습니다.</li>
+ * <li>네트워크 입출력은 selector 스레드 하나가 논블로킹으로 처리합니다.</li>
+ * </ul>
+ * FramePipeline 의 LATEST_ONLY 단계로 붙여 쓰면 인코딩이 밀려도 최신 프레임만 인코딩합니다.
+ */
+public class MjpegStreamServer implements FramePipeline.FrameProcessor {
+    private static final String BOUNDARY = "mjpegframe";
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final int MAX_REQUEST_SIZE = 4096;
+    private static final int DEFAULT_MAX_CLIENTS = 8;
+    private static final long FPS_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+    /**
+     * 커널 송신 버퍼가 크면 느린 클라이언트에게 몇 초 지난 프레임이 쌓이므로, 프레임 하나 정도만 담기게 줄입니다.
+     */
+    private static final int SEND_BUFFER_SIZE = 64 * 1024;
+
+    public static class ClientStats {
+        public final String address;
+        public final long connectedMillis;
+        public final long framesSent;
+        public final long framesSkipped;
+        public final long bytesSent;
+        public final float fps;
+
+        ClientStats(String address, long connectedMillis, long framesSent, long framesSkipped, long bytesSent,
+                    float fps) {
+            this.address = address;
+            this.connectedMillis = connectedMillis;
+            this.framesSent = framesSent;
+            this.framesSkipped = framesSkipped;
+            this.bytesSent = bytesSent;
+            this.fps = fps;
+        }
+
+        @Override
+        public String toString() {
+            return address + " - sent:" + framesSent + ", skipped:" + framesSkipped + ", bytes:" + bytesSent
+                    + String.format(", fps:%.1f", fps) + ", connected:" + connectedMillis + "ms";
+        }
+    }
+
+    /** 인코딩된 프레임 하나입니다. 만든 뒤에는 바뀌지 않으므로 여러 클라이언트가 함께 읽습니다. */
+    private static class StreamFrame {
+        final long sequence;
+        final byte[] part;
+
+        StreamFrame(long sequence, byte[] part) {
+            this.sequence = sequence;
+            this.part = part;
+        }
+    }
+
+    private final FrameEncoder mFrameEncoder;
+    private final int mQuality;
+    private final CaptureMemoryManager mMemoryManager;
+    private final List<Client> mClients = new CopyOnWriteArrayList<>();
+    private final LatencyHistogram mEncodeDuration = new LatencyHistogram();
+    private final AtomicLong mEncodedFrames = new AtomicLong();
+    private int mMaxClients = DEFAULT_MAX_CLIENTS;
+    private volatile StreamFrame mLatestFrame;
+    private volatile boolean mIsRunning;
+    private Selector mSelector;
+    private ServerSocketChannel mServerChannel;
+    private Thread mThread;
+    /** selector 스레드에서 요청 이후 들어오는 데이터를 버릴 때 씁니다. */
+    private final ByteBuffer mDiscard = ByteBuffer.allocate(256);
+    // 아래 필드는 process() 를 호출하는 스레드에서만 사용합니다.
+    private CaptureBuffer mBuffer;
+    private long mSequence;
+
+    public MjpegStreamServer(FrameEncoder frameEncoder, int quality, CaptureMemoryManager memoryManager) {
+        mFrameEncoder = frameEncoder;
+        mQuality = quality;
+        mMemoryManager = memoryManager;
+    }
+
+    /**
+     * 동시에 볼 수 있는 클라이언트 수입니다. 넘으면 503 으로 거절합니다.
+     */
+    public void setMaxClients(int maxClients) {
+        mMaxClients = maxClients;
+    }
+
+    /**
+     * port 에서 연결을 받기 시작합니다. 0 이면 빈 포트를 고르며 getPort() 로 확인합니다.
+     */
+    public synchronized void start(int port) throws IOException {
+        if (mIsRunning) {
+            throw new IllegalStateException("already started");
+        }
+        mSelector = Selector.open();
+        mServerChannel = ServerSocketChannel.open();
+        try {
+            mServerChannel.configureBlocking(false);
+            mServerChannel.socket().setReuseAddress(true);
+            mServerChannel.socket().bind(new InetSocketAddress(port));
+            mServerChannel.register(mSelector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            mServerChannel.close();
+            mSelector.close();
+            throw e;
+        }
+        mIsRunning = true;
+        mThread = new Thread(mSelectLoop, "MjpegServer");
+        mThread.start();
+    }
+
+    public int getPort() {
+        ServerSocketChannel serverChannel = mServerChannel;
+        return serverChannel != null ? serverChannel.socket().getLocalPort() : -1;
+    }
+
+    /**
+     * 모든 연결을 닫고 selector 스레드가 끝날 때까지 기다립니다.
+     */
+    public synchronized void stop() {
+        if (!mIsRunning) {
+            return;
+        }
+        mIsRunning = false;
+        mSelector.wakeup();
+        try {
+            mThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (mBuffer != null) {
+            mBuffer.release();
+            mBuffer = null;
+        }
+        mLatestFrame = null;
+    }
+
+    /**
+     * 프레임을 인코딩해 모든 클라이언트가 보낼 최신 프레임으로 바꿉니다. 스트리밍 중인 클라이언트가 없으면 건너뜁니다.
+     */
+    @Override
+    public synchronized void process(Frame frame) {
+        if (!mIsRunning || !hasStreamingClient()) {
+            return;
+        }
+        if (mBuffer == null) {
+            mBuffer = mMemoryManager.acquire();
+            if (mBuffer == null) {
+                return;
+            }
+        }
+        mBuffer.reset();
+        long start = System.nanoTime();
+        try {
+            mFrameEncoder.encode(frame.data, frame.getWidth(), frame.getHeight(), mQuality, mBuffer);
+        } catch (IOException e) {
+            return;
+        }
+        mEncodeDuration.record(System.nanoTime() - start);
+
+        byte[] header = ("--" + BOUNDARY + "\r\nContent-Type: image/jpeg\r\nContent-Length: " + mBuffer.size()
+                + "\r\n\r\n").getBytes(ASCII);
+        byte[] part = new byte[header.length + mBuffer.size() + 2];
+        System.arraycopy(header, 0, part, 0, header.length);
+        System.arraycopy(mBuffer.getData(), 0, part, header.length, mBuffer.size());
+        part[part.length - 2] = '\r';
+        part[part.length - 1] = '\n';
+        mLatestFrame = new StreamFrame(++mSequence, part);
+        mEncodedFrames.incrementAndGet();
+        mSelector.wakeup();
+    }
+
+    private boolean hasStreamingClient() {
+        for (Client client : mClients) {
+            if (client.mIsStreaming) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public long getEncodedFrames() {
+        return mEncodedFrames.get();
+    }
+
+    public LatencyHistogram getEncodeDuration() {
+        return mEncodeDuration;
+    }
+
+    public List<ClientStats> getClientStats() {
+        long now = System.nanoTime();
+        List<ClientStats> stats = new ArrayList<>();
+        for (Client client : mClients) {
+            stats.add(client.getStats(now));
+        }
+        return stats;
+    }
+
+    private final Runnable mSelectLoop = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                while (mIsRunning) {
+                    mSelector.select();
+                    Iterator<SelectionKey> keys = mSelector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        if (key.isValid() && key.isAcceptable()) {
+                            accept();
+                        } else if (key.isValid()) {
+                            Client client = (Client) key.attachment();
+                            try {
+                                if (key.isReadable()) {
+                                    client.read();
+                                }
+                                if (key.isValid() && key.isWritable()) {
+                                    client.write();
+                                }
+                            } catch (IOException e) {
+                                client.close();
+                            }
+                        }
+                    }
+                    StreamFrame latestFrame = mLatestFrame;
+                    for (Client client : mClients) {
+                        client.offer(latestFrame);
+                    }
+                }
+            } catch (IOException e) {
+                // selector 가 닫혔으므로 아래에서 정리합니다.
+            } finally {
+                for (Client client : mClients) {
+                    client.close();
+                }
+                closeQuietly(mServerChannel);
+                closeQuietly(mSelector);
+            }
+        }
+    };
+
+    /**
+     * 연결 하나를 받습니다. 실패하면 그 연결만 닫습니다. 예외가 selector 루프로 나가면 서버 전체가 멈춥니다.
+     */
+    private void accept() {
+        SocketChannel channel;
+        try {
+            channel = mServerChannel.accept();
+        } catch (IOException e) {
+            // 연결이 받기 전에 끊겼거나 파일 디스크립터가 모자랍니다. 다음 연결은 다시 받습니다.
+            return;
+        }
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            channel.socket().setSendBufferSize(SEND_BUFFER_SIZE);
+            Client client = new Client(channel);
+            client.mKey = channel.register(mSelector, SelectionKey.OP_READ, client);
+            mClients.add(client);
+        } catch (IOException e) {
+            closeQuietly(channel);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            if (closeable != null) {
+                closeable.close();
+            }
+        } catch (IOException e) {
+            // 닫는 중 오류는 무시합니다.
+        }
+    }
+
+    /**
+     * 연결 하나의 상태입니다. 통계 외의 필드는 selector 스레드에서만 사용합니다.
+     */
+    private class Client {
+        private final SocketChannel mChannel;
+        private final String mAddress;
+        private final long mConnectedNanos = System.nanoTime();
+        private final ByteBuffer mRequest = ByteBuffer.allocate(MAX_REQUEST_SIZE);
+        private SelectionKey mKey;
+        private ByteBuffer mPending;
+        private boolean mIsClosing;
+        private long mLastSequence;
+        private long mWindowStartNanos = mConnectedNanos;
+        private int mWindowFrames;
+        private volatile boolean mIsStreaming;
+        private volatile long mFramesSent;
+        private volatile long mFramesSkipped;
+        private volatile long mBytesSent;
+        private volatile float mFps;
+
+        Client(SocketChannel channel) {
+            mChannel = channel;
+            SocketAddress address = channel.socket().getRemoteSocketAddress();
+            mAddress = String.valueOf(address);
+        }
+
+        void read() throws IOException {
+            if (mIsStreaming || mPending != null) {
+                // 요청을 받은 뒤에 들어오는 데이터는 버리고, 연결이 끊겼는지만 봅니다.
+                mDiscard.clear();
+                if (mChannel.read(mDiscard) < 0) {
+                    close();
+                }
+                return;
+            }
+            if (mChannel.read(mRequest) < 0) {
+                close();
+                return;
+            }
+            String request = new String(mRequest.array(), 0, mRequest.position(), ASCII);
+            if (!request.contains("\r\n\r\n")) {
+                if (!mRequest.hasRemaining()) {
+                    respondAndClose("431 Request Header Fields Too Large");
+                }
+                return;
+            }
+            if (!request.startsWith("GET ")) {
+                respondAndClose("405 Method Not Allowed");
+            } else if (countStreaming() >= mMaxClients) {
+                respondAndClose("503 Service Unavailable");
+            } else {
+                send(("HTTP/1.0 200 OK\r\nContent-Type: multipart/x-mixed-replace; boundary=" + BOUNDARY
+                        + "\r\nCache-Control: no-cache, no-store\r\nPragma: no-cache\r\nConnection: close\r\n\r\n")
+                        .getBytes(ASCII));
+            }
+        }
+
+        private void respondAndClose(String status) {
+            mIsClosing = true;
+            send(("HTTP/1.0 " + status + "\r\nContent-Length: 0\r\nConnection: close\r\n\r\n").getBytes(ASCII));
+        }
+
+        private void send(byte[] data) {
+            mPending = ByteBuffer.wrap(data);
+            mKey.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+
+        void write() throws IOException {
+            int written = mChannel.write(mPending);
+            mBytesSent += written;
+            if (mPending.hasRemaining()) {
+                return;
+            }
+            mPending = null;
+            mKey.interestOps(SelectionKey.OP_READ);
+            if (mIsClosing) {
+                close();
+            } else if (!mIsStreaming) {
+                // 응답 헤더를 다 보냈으므로 이제부터 프레임을 받습니다.
+                mIsStreaming = true;
+            } else {
+                mFramesSent++;
+                mWindowFrames++;
+                long now = System.nanoTime();
+                if (now - mWindowStartNanos >= FPS_WINDOW_NANOS) {
+                    mFps = mWindowFrames * 1e9f / (now - mWindowStartNanos);
+                    mWindowStartNanos = now;
+                    mWindowFrames = 0;
+                }
+            }
+        }
+
+        /**
+         * 보내는 중인 프레임이 없고 더 새 프레임이 있으면 그 프레임을 보내기 시작합니다.
+         */
+        void offer(StreamFrame frame) {
+            if (!mIsStreaming || mPending != null || mIsClosing || frame == null || frame.sequence <= mLastSequence) {
+                return;
+            }
+            if (mLastSequence > 0) {
+                mFramesSkipped += frame.sequence - mLastSequence - 1;
+            }
+            mLastSequence = frame.sequence;
+            send(frame.part);
+        }
+
+        private int countStreaming() {
+            int count = 0;
+            for (Client client : mClients) {
+                if (client.mIsStreaming) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        void close() {
+            mIsStreaming = false;
+            mClients.remove(this);
+            if (mKey != null) {
+                mKey.cancel();
+            }
+            closeQuietly(mChannel);
+        }
+
+        ClientStats getStats(long now) {
+            return new ClientStats(mAddress, TimeUnit.NANOSECONDS.toMillis(now - mConnectedNanos), mFramesSent,
+                    mFramesSkipped, mBytesSent, mFps);
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package example.pnc.msshin.cameratest;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * NV21 밝기 평면을 기준 프레임과 비교해 장면이 바뀌었는지 판단합니다. 바뀌지 않은 프레임은 분석 단계에 넘기지 않도록 거를 때 씁니다.
+ * <ul>
+ * <li>sampleStep 간격으로 밝기를 뽑아 블록으로 묶고, 블록마다 기준 프레임과의 평균 절대 차이(SAD)를 구합니다.</li>
+ * <li>차이가 blockThreshold 를 넘는 블록 비율이 changedBlockRatio 이상이면 움직임, 전체 평균 차이가
+ * sceneChangeThreshold 이상이면 장면 전환(조명 변화 등)으로 보고 프레임을 통과시킵니다.</li>
+ * <li>통과한 프레임이 새 기준이 됩니다. 천천히 바뀌는 장면은 누적된 차이가 기준을 넘을 때 통과합니다.</li>
+ * </ul>
+ * 기준 프레임은 뽑은 밝기만 보관하므로 메모리는 (width / sampleStep) x (height / sampleStep) 바이트의 두 배입니다.
+ */
+public class MotionDetector {
+
+    public static class Config {
+        private int mSampleStep = 4;
+        private int mBlockSize = 32;
+        private int mBlockThreshold = 12;
+        private float mChangedBlockRatio = 0.005f;
+        private int mSceneChangeThreshold = 24;
+        private long mMaxGapNanos;
+
+        /**
+         * 가로/세로 몇 픽셀마다 하나씩 비교할지입니다. 클수록 싸지만 작은 움직임을 놓칩니다.
+         */
+        public Config setSampleStep(int sampleStep) {
+            if (sampleStep < 1) {
+                throw new IllegalArgumentException("sampleStep must be positive: " + sampleStep);
+            }
+            mSampleStep = sampleStep;
+            return this;
+        }
+
+        /**
+         * 블록 한 변의 픽셀 수입니다. sampleStep 보다 작으면 sampleStep 으로 맞춥니다.
+         */
+        public Config setBlockSize(int blockSize) {
+            if (blockSize < 1) {
+                throw new IllegalArgumentException("blockSize must be positive: " + blockSize);
+            }
+            mBlockSize = blockSize;
+            return this;
+        }
+
+        /**
+         * 블록이 바뀌었다고 볼 샘플당 평균 밝기 차이(0~255)입니다. 센서 노이즈보다 커야 합니다.
+         */
+        public Config setBlockThreshold(int blockThreshold) {
+            mBlockThreshold = blockThreshold;
+            return this;
+        }
+
+        /**
+         * 바뀐 블록이 전체의 이 비율 이상이면 움직임으로 봅니다.
+         */
+        public Config setChangedBlockRatio(float changedBlockRatio) {
+            mChangedBlockRatio = changedBlockRatio;
+            return this;
+        }
+
+        public Config setSceneChangeThreshold(int sceneChangeThreshold) {
+            mSceneChangeThreshold = sceneChangeThreshold;
+            return this;
+        }
+
+        /**
+         * 변화가 없어도 이 시간마다 한 프레임은 통과시킵니다. 0 이면 변화가 있을 때만 통과합니다.
+         */
+        public Config setMaxGapMillis(long maxGapMillis) {
+            mMaxGapNanos = TimeUnit.MILLISECONDS.toNanos(maxGapMillis);
+            return this;
+        }
+    }
+
+    public static class Stats {
+        public final long processedFrames;
+        public final long passedFrames;
+        public final long gatedFrames;
+        public final float lastChangedBlockRatio;
+        public final int lastMeanDifference;
+        public final CameraMetrics.Latency detectDuration;
+
+        Stats(long processedFrames, long passedFrames, long gatedFrames, float lastChangedBlockRatio,
+              int lastMeanDifference, CameraMetrics.Latency detectDuration) {
+            this.processedFrames = processedFrames;
+            this.passedFrames = passedFrames;
+            this.gatedFrames = gatedFrames;
+            this.lastChangedBlockRatio = lastChangedBlockRatio;
+            this.lastMeanDifference = lastMeanDifference;
+            this.detectDuration = detectDuration;
+        }
+
+        public float getGatedFraction() {
+            return processedFrames > 0 ? (float) gatedFrames / processedFrames : 0;
+        }
+
+        @Override
+        public String toString() {
+            return "processed:" + processedFrames + ", passed:" + passedFrames + ", gated:" + gatedFrames
+                    + String.format(" (%.1f%%)", getGatedFraction() * 100) + ", detect[" + detectDuration + "]";
+        }
+    }
+
+    private final int mSampleStep;
+    private final int mBlockSamples;
+    private final int mBlockThreshold;
+    private final float mChangedBlockRatio;
+    private final int mSceneChangeThreshold;
+    private final long mMaxGapNanos;
+    private final LatencyHistogram mDetectDuration = new LatencyHistogram();
+    private byte[] mReference;
+    private byte[] mCurrent;
+    private int[] mBlockSums;
+    private int mWidth;
+    private int mHeight;
+    private long mLastPassedNanos;
+    private long mProcessedFrames;
+    private long mPassedFrames;
+    private float mLastChangedBlockRatio;
+    private int mLastMeanDifference;
+
+    public MotionDetector(Config config) {
+        mSampleStep = config.mSampleStep;
+        mBlockSamples = Math.max(1, config.mBlockSize / config.mSampleStep);
+        mBlockThreshold = config.mBlockThreshold;
+        mChangedBlockRatio = config.mChangedBlockRatio;
+        mSceneChangeThreshold = config.mSceneChangeThreshold;
+        mMaxGapNanos = config.mMaxGapNanos;
+    }
+
+    public boolean process(Frame frame) {
+        return process(frame.data, frame.getWidth(), frame.getHeight(), frame.getTimestampNanos());
+    }
+
+    /**
+     * 프레임이 기준 프레임과 충분히 다르면 true 를 돌려주고 기준을 이 프레임으로 바꿉니다.
+     * 첫 프레임과 크기가 바뀐 프레임은 항상 통과합니다.
+     */
+    public synchronized boolean process(byte[] nv21, int width, int height, long timestampNanos) {
+        long start = System.nanoTime();
+        int samplesX = width / mSampleStep;
+        int samplesY = height / mSampleStep;
+        boolean isPassed;
+        if (mReference == null || width != mWidth || height != mHeight) {
+            mWidth = width;
+            mHeight = height;
+            mReference = new byte[samplesX * samplesY];
+            mCurrent = new byte[samplesX * samplesY];
+            int blocksX = (samplesX + mBlockSamples - 1) / mBlockSamples;
+            mBlockSums = new int[blocksX];
+            sample(nv21, width, samplesX, samplesY, mReference);
+            mLastChangedBlockRatio = 1;
+            isPassed = true;
+        } else {
+            isPassed = compare(nv21, width, samplesX, samplesY)
+                    || (mMaxGapNanos > 0 && timestampNanos - mLastPassedNanos >= mMaxGapNanos);
+            if (isPassed) {
+                byte[] reference = mReference;
+                mReference = mCurrent;
+                mCurrent = reference;
+            }
+        }
+        mProcessedFrames++;
+        if (isPassed) {
+            mPassedFrames++;
+            mLastPassedNanos = timestampNanos;
+        }
+        mDetectDuration.record(System.nanoTime() - start);
+        return isPassed;
+    }
+
+    private void sample(byte[] nv21, int width, int samplesX, int samplesY, byte[] out) {
+        int offset = mSampleStep / 2;
+        int index = 0;
+        for (int sy = 0; sy < samplesY; sy++) {
+            int row = (offset + sy * mSampleStep) * width + offset;
+            for (int sx = 0; sx < samplesX; sx++) {
+                out[index++] = nv21[row];
+                row += mSampleStep;
+            }
+        }
+    }
+
+    /**
+     * 밝기를 뽑아 mCurrent 에 담으면서 블록별 차이를 셉니다. 블록 한 줄(mBlockSamples 샘플 줄)이 끝날 때마다 판정합니다.
+     */
+    private boolean compare(byte[] nv21, int width, int samplesX, int samplesY) {
+        int offset = mSampleStep / 2;
+        int[] blockSums = mBlockSums;
+        int blocksX = blockSums.length;
+        int blocksY = (samplesY + mBlockSamples - 1) / mBlockSamples;
+        long totalDifference = 0;
+        int changedBlocks = 0;
+        int index = 0;
+        for (int by = 0; by < blocksY; by++) {
+            int rowStart = by * mBlockSamples;
+            int rowEnd = Math.min(rowStart + mBlockSamples, samplesY);
+            for (int bx = 0; bx < blocksX; bx++) {
+                blockSums[bx] = 0;
+            }
+            for (int sy = rowStart; sy < rowEnd; sy++) {
+                int row = (offset + sy * mSampleStep) * width + offset;
+                for (int bx = 0, sx = 0; bx < blocksX; bx++) {
+                    int end = Math.min(sx + mBlockSamples, samplesX);
+                    int sum = 0;
+                    for (; sx < end; sx++) {
+                        byte value = nv21[row];
+                        mCurrent[index] = value;
+                        int difference = (value & 0xff) - (mReference[index] & 0xff);
+                        sum += difference < 0 ? -difference : difference;
+                        index++;
+                        row += mSampleStep;
+                    }
+                    blockSums[bx] += sum;
+                }
+            }
+            int rows = rowEnd - rowStart;
+            for (int bx = 0; bx < blocksX; bx++) {
+                int columns = Math.min(mBlockSamples, samplesX - bx * mBlockSamples);
+                totalDifference += blockSums[bx];
+                if (blockSums[bx] > mBlockThreshold * rows * columns) {
+                    changedBlocks++;
+                }
+            }
+        }
+        mLastChangedBlockRatio = (float) changedBlocks / (blocksX * blocksY);
+        mLastMeanDifference = (int) (totalDifference / Math.max(1, samplesX * samplesY));
+        return mLastChangedBlockRatio >= mChangedBlockRatio || mLastMeanDifference >= mSceneChangeThreshold;
+    }
+
+    /**
+     * 다음 프레임을 무조건 통과시키고 새 기준으로 삼습니다. 카메라를 바꾸거나 다시 시작할 때 부릅니다.
+     */
+    public synchronized void reset() {
+        mReference = null;
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(mProcessedFrames, mPassedFrames, mProcessedFrames - mPassedFrames, mLastChangedBlockRatio,
+                mLastMeanDifference, new CameraMetrics.Latency(mDetectDuration));
+    }
+}
@@ -0,0 +1,182 @@
+package example.pnc.msshin.cameratest;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * NV21 프레임을 ARGB int[] 나 회색조 ARGB int[] 로 바꿉니다. YuvImage → JPEG → BitmapFactory 를 거치지 않으므로
+ * 분석용으로 프레임마다 RGB 가 필요할 때 씁니다. 결과는 Bitmap.setPixels() 에 그대로 넘길 수 있습니다.
+ * <ul>
+ * <li>색 변환은 JFIF(전 범위) BT.601 이며, 픽셀마다 실수 연산 대신 10비트 고정소수점 조회 테이블을 씁니다.</li>
+ * <li>프레임을 짝수 줄 단위 타일로 나눠 ForkJoinPool 에서 병렬로 변환합니다.</li>
+ * </ul>
+ * 결과 버퍼는 호출자가 주며, 여러 스레드에서 동시에 호출해도 됩니다.
+ */
+public class Nv21Converter {
+    /** 타일이 이보다 작으면 더 나누지 않습니다. 너무 잘게 나누면 작업 분배 비용이 변환 비용보다 커집니다. */
+    private static final int MIN_TILE_PIXELS = 64 * 1024;
+    private static final int FRACTION_BITS = 10;
+    private static final int CLAMP_OFFSET = 256;
+    private static final int[] R_V = new int[256];
+    private static final int[] G_V = new int[256];
+    private static final int[] G_U = new int[256];
+    private static final int[] B_U = new int[256];
+    private static final int[] CLAMP = new int[1024];
+    private static final int[] GRAY = new int[256];
+
+    static {
+        int one = 1 << FRACTION_BITS;
+        for (int i = 0; i < 256; i++) {
+            int c = i - 128;
+            R_V[i] = Math.round(1.402f * one * c);
+            G_V[i] = Math.round(0.714136f * one * c);
+            G_U[i] = Math.round(0.344136f * one * c);
+            B_U[i] = Math.round(1.772f * one * c);
+            GRAY[i] = 0xff000000 | (i << 16) | (i << 8) | i;
+        }
+        for (int i = 0; i < CLAMP.length; i++) {
+            CLAMP[i] = Math.max(0, Math.min(255, i - CLAMP_OFFSET));
+        }
+    }
+
+    private final ForkJoinPool mPool;
+    private final boolean mOwnsPool;
+
+    /**
+     * parallelism 개의 스레드를 가진 전용 풀을 만듭니다. 다 쓰면 close() 합니다.
+     */
+    public Nv21Converter(int parallelism) {
+        this(new ForkJoinPool(parallelism), true);
+    }
+
+    /**
+     * 외부 풀을 씁니다. 풀의 종료는 호출한 쪽이 책임집니다.
+     */
+    public Nv21Converter(ForkJoinPool pool) {
+        this(pool, false);
+    }
+
+    private Nv21Converter(ForkJoinPool pool, boolean ownsPool) {
+        mPool = pool;
+        mOwnsPool = ownsPool;
+    }
+
+    public int getParallelism() {
+        return mPool.getParallelism();
+    }
+
+    /**
+     * nv21 을 ARGB 로 바꿔 out 에 씁니다. out 은 width * height 이상이어야 합니다.
+     */
+    public void toArgb(byte[] nv21, int width, int height, int[] out) {
+        convert(nv21, width, height, out, false);
+    }
+
+    /**
+     * 밝기(Y)만 써서 회색조 ARGB(0xffYYYYYY)로 out 에 씁니다. 색차 평면은 읽지 않습니다.
+     */
+    public void toGrayArgb(byte[] nv21, int width, int height, int[] out) {
+        convert(nv21, width, height, out, true);
+    }
+
+    private void convert(byte[] nv21, int width, int height, int[] out, boolean gray) {
+        if ((width & 1) != 0 || (height & 1) != 0) {
+            throw new IllegalArgumentException("NV21 size must be even: " + width + "x" + height);
+        }
+        if (out.length < width * height) {
+            throw new IllegalArgumentException("out is too small: " + out.length);
+        }
+        int tileRows = tileRows(width, height, mPool.getParallelism());
+        if (tileRows >= height) {
+            convertRows(nv21, width, height, out, gray, 0, height);
+        } else {
+            mPool.invoke(new TileTask(nv21, width, height, out, gray, 0, height, tileRows));
+        }
+    }
+
+    /**
+     * 스레드마다 몇 개의 타일이 돌아가도록 나눠 먼저 끝난 스레드가 남은 타일을 가져갈 수 있게 합니다.
+     */
+    static int tileRows(int width, int height, int parallelism) {
+        int minRows = Math.max(2, (MIN_TILE_PIXELS / width) & ~1);
+        int rows = (height / (parallelism * 4)) & ~1;
+        return Math.max(minRows, rows);
+    }
+
+    private static void convertRows(byte[] nv21, int width, int height, int[] out, boolean gray,
+                                    int rowStart, int rowEnd) {
+        if (gray) {
+            for (int i = rowStart * width, end = rowEnd * width; i < end; i++) {
+                out[i] = GRAY[nv21[i] & 0xff];
+            }
+            return;
+        }
+        int frameSize = width * height;
+        int round = 1 << (FRACTION_BITS - 1);
+        for (int y = rowStart; y < rowEnd; y++) {
+            int index = y * width;
+            int uvIndex = frameSize + (y >> 1) * width;
+            for (int x = 0; x < width; x += 2) {
+                int v = nv21[uvIndex++] & 0xff;
+                int u = nv21[uvIndex++] & 0xff;
+                int r = R_V[v] + round;
+                int g = round - G_V[v] - G_U[u];
+                int b = B_U[u] + round;
+                int luma = (nv21[index] & 0xff) << FRACTION_BITS;
+                out[index++] = 0xff000000 | (CLAMP[((luma + r) >> FRACTION_BITS) + CLAMP_OFFSET] << 16)
+                        | (CLAMP[((luma + g) >> FRACTION_BITS) + CLAMP_OFFSET] << 8)
+                        | CLAMP[((luma + b) >> FRACTION_BITS) + CLAMP_OFFSET];
+                luma = (nv21[index] & 0xff) << FRACTION_BITS;
+                out[index++] = 0xff000000 | (CLAMP[((luma + r) >> FRACTION_BITS) + CLAMP_OFFSET] << 16)
+                        | (CLAMP[((luma + g) >> FRACTION_BITS) + CLAMP_OFFSET] << 8)
+                        | CLAMP[((luma + b) >> FRACTION_BITS) + CLAMP_OFFSET];
+            }
+        }
+    }
+
+    /**
+     * 전용 풀이면 종료합니다.
+     */
+    public void close() {
+        if (mOwnsPool) {
+            mPool.shutdown();
+        }
+    }
+
+    private static class TileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final byte[] mNv21;
+        private final int mWidth;
+        private final int mHeight;
+        private final int[] mOut;
+        private final boolean mIsGray;
+        private final int mRowStart;
+        private final int mRowEnd;
+        private final int mTileRows;
+
+        TileTask(byte[] nv21, int width, int height, int[] out, boolean gray, int rowStart, int rowEnd, int tileRows) {
+            mNv21 = nv21;
+            mWidth = width;
+            mHeight = height;
+            mOut = out;
+            mIsGray = gray;
+            mRowStart = rowStart;
+            mRowEnd = rowEnd;
+            mTileRows = tileRows;
+        }
+
+        @Override
+        protected void compute() {
+            int rows = mRowEnd - mRowStart;
+            if (rows <= mTileRows) {
+                convertRows(mNv21, mWidth, mHeight, mOut, mIsGray, mRowStart, mRowEnd);
+                return;
+            }
+            // 색차 한 줄이 두 밝기 줄에 대응하므로 짝수 줄에서 나눕니다.
+            int middle = mRowStart + ((rows / 2) & ~1);
+            invokeAll(new TileTask(mNv21, mWidth, mHeight, mOut, mIsGray, mRowStart, middle, mTileRows),
+                    new TileTask(mNv21, mWidth, mHeight, mOut, mIsGray, middle, mRowEnd, mTileRows));
+        }
+    }
+}
@@ -0,0 +1,616 @@
+package example.pnc.msshin.cameratest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * NV21 을 RGB 로 바꾸지 않고 바로 baseline JPEG(YCbCr 4:2:0)으로 인코딩하는 순수 자바 인코더입니다.
+ * 안드로이드에 의존하지 않으므로 JVM 에서도 같은 결과를 얻을 수 있습니다.
+ * <ul>
+ * <li>DCT 는 정수 연산(libjpeg islow 방식)이며, 양자화는 나눗셈 대신 미리 구한 역수 곱셈으로 합니다.</li>
+ * <li>양자화/허프만 테이블은 JPEG 표준(Annex K) 테이블이고 품질 스케일은 libjpeg 과 같습니다.</li>
+ * <li>프레임을 MCU 줄 단위 스트립으로 나누고, 스트립 경계마다 restart 마커를 넣어 스트립을 ForkJoinPool 에서
+ * 병렬로 인코딩한 뒤 순서대로 이어 붙입니다. 스트립마다 DC 예측이 초기화되므로 스트립은 서로 독립입니다.</li>
+ * </ul>
+ * 스트립 버퍼는 재사용하며, 결과는 호출자가 준 OutputStream(보통 CaptureBuffer)에 씁니다.
+ * 여러 스레드에서 동시에 호출해도 됩니다.
+ */
+public class Nv21JpegEncoder implements FrameEncoder {
+    /** 스트립이 이보다 작으면 더 나누지 않습니다. restart 마커와 작업 분배 비용이 이득보다 커집니다. */
+    private static final int MIN_STRIP_PIXELS = 64 * 1024;
+    private static final int MCU_SIZE = 16;
+    /** MCU 하나(블록 6개)가 만들 수 있는 최대 바이트 수입니다. 블록당 1660비트에 0xff 뒤 0x00 삽입까지 넉넉히 잡습니다. */
+    private static final int MAX_MCU_BYTES = 6 * 512;
+
+    private static final int CONST_BITS = 13;
+    private static final int PASS1_BITS = 2;
+    private static final int FIX_0_298631336 = 2446;
+    private static final int FIX_0_390180644 = 3196;
+    private static final int FIX_0_541196100 = 4433;
+    private static final int FIX_0_765366865 = 6270;
+    private static final int FIX_0_899976223 = 7373;
+    private static final int FIX_1_175875602 = 9633;
+    private static final int FIX_1_501321110 = 12299;
+    private static final int FIX_1_847759065 = 15137;
+    private static final int FIX_1_961570560 = 16069;
+    private static final int FIX_2_053119869 = 16819;
+    private static final int FIX_2_562915447 = 20995;
+    private static final int FIX_3_072711026 = 25172;
+
+    /** 지그재그 순서의 k 번째 계수가 8x8 블록에서 놓이는 위치입니다. */
+    private static final int[] NATURAL_ORDER = {
+            0, 1, 8, 16, 9, 2, 3, 10, 17, 24, 32, 25, 18, 11, 4, 5,
+            12, 19, 26, 33, 40, 48, 41, 34, 27, 20, 13, 6, 7, 14, 21, 28,
+            35, 42, 49, 56, 57, 50, 43, 36, 29, 22, 15, 23, 30, 37, 44, 51,
+            58, 59, 52, 45, 38, 31, 39, 46, 53, 60, 61, 54, 47, 55, 62, 63};
+
+    private static final int[] LUMA_QUANT = {
+            16, 11, 10, 16, 24, 40, 51, 61,
+            12, 12, 14, 19, 26, 58, 60, 55,
+            14, 13, 16, 24, 40, 57, 69, 56,
+            14, 17, 22, 29, 51, 87, 80, 62,
+            18, 22, 37, 56, 68, 109, 103, 77,
+            24, 35, 55, 64, 81, 104, 113, 92,
+            49, 64, 78, 87, 103, 121, 120, 101,
+            72, 92, 95, 98, 112, 100, 103, 99};
+
+    private static final int[] CHROMA_QUANT = {
+            17, 18, 24, 47, 99, 99, 99, 99,
+            18, 21, 26, 66, 99, 99, 99, 99,
+            24, 26, 56, 99, 99, 99, 99, 99,
+            47, 66, 99, 99, 99, 99, 99, 99,
+            99, 99, 99, 99, 99, 99, 99, 99,
+            99, 99, 99, 99, 99, 99, 99, 99,
+            99, 99, 99, 99, 99, 99, 99, 99,
+            99, 99, 99, 99, 99, 99, 99, 99};
+
+    private static final int[] DC_LUMA_BITS = {0, 1, 5, 1, 1, 1, 1, 1, 1, 0, 0, 0, 0, 0, 0, 0};
+    private static final int[] DC_CHROMA_BITS = {0, 3, 1, 1, 1, 1, 1, 1, 1, 1, 1, 0, 0, 0, 0, 0};
+    private static final int[] DC_VALUES = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11};
+    private static final int[] AC_LUMA_BITS = {0, 2, 1, 3, 3, 2, 4, 3, 5, 5, 4, 4, 0, 0, 1, 0x7d};
+    private static final int[] AC_LUMA_VALUES = {
+            0x01, 0x02, 0x03, 0x00, 0x04, 0x11, 0x05, 0x12, 0x21, 0x31, 0x41, 0x06, 0x13, 0x51, 0x61, 0x07,
+            0x22, 0x71, 0x14, 0x32, 0x81, 0x91, 0xa1, 0x08, 0x23, 0x42, 0xb1, 0xc1, 0x15, 0x52, 0xd1, 0xf0,
+            0x24, 0x33, 0x62, 0x72, 0x82, 0x09, 0x0a, 0x16, 0x17, 0x18, 0x19, 0x1a, 0x25, 0x26, 0x27, 0x28,
+            0x29, 0x2a, 0x34, 0x35, 0x36, 0x37, 0x38, 0x39, 0x3a, 0x43, 0x44, 0x45, 0x46, 0x47, 0x48, 0x49,
+            0x4a, 0x53, 0x54, 0x55, 0x56, 0x57, 0x58, 0x59, 0x5a, 0x63, 0x64, 0x65, 0x66, 0x67, 0x68, 0x69,
+            0x6a, 0x73, 0x74, 0x75, 0x76, 0x77, 0x78, 0x79, 0x7a, 0x83, 0x84, 0x85, 0x86, 0x87, 0x88, 0x89,
+            0x8a, 0x92, 0x93, 0x94, 0x95, 0x96, 0x97, 0x98, 0x99, 0x9a, 0xa2, 0xa3, 0xa4, 0xa5, 0xa6, 0xa7,
+            0xa8, 0xa9, 0xaa, 0xb2, 0xb3, 0xb4, 0xb5, 0xb6, 0xb7, 0xb8, 0xb9, 0xba, 0xc2, 0xc3, 0xc4, 0xc5,
+            0xc6, 0xc7, 0xc8, 0xc9, 0xca, 0xd2, 0xd3, 0xd4, 0xd5, 0xd6, 0xd7, 0xd8, 0xd9, 0xda, 0xe1, 0xe2,
+            0xe3, 0xe4, 0xe5, 0xe6, 0xe7, 0xe8, 0xe9, 0xea, 0xf1, 0xf2, 0xf3, 0xf4, 0xf5, 0xf6, 0xf7, 0xf8,
+            0xf9, 0xfa};
+    private static final int[] AC_CHROMA_BITS = {0, 2, 1, 2, 4, 4, 3, 4, 7, 5, 4, 4, 0, 1, 2, 0x77};
+    private static final int[] AC_CHROMA_VALUES = {
+            0x00, 0x01, 0x02, 0x03, 0x11, 0x04, 0x05, 0x21, 0x31, 0x06, 0x12, 0x41, 0x51, 0x07, 0x61, 0x71,
+            0x13, 0x22, 0x32, 0x81, 0x08, 0x14, 0x42, 0x91, 0xa1, 0xb1, 0xc1, 0x09, 0x23, 0x33, 0x52, 0xf0,
+            0x15, 0x62, 0x72, 0xd1, 0x0a, 0x16, 0x24, 0x34, 0xe1, 0x25, 0xf1, 0x17, 0x18, 0x19, 0x1a, 0x26,
+            0x27, 0x28, 0x29, 0x2a, 0x35, 0x36, 0x37, 0x38, 0x39, 0x3a, 0x43, 0x44, 0x45, 0x46, 0x47, 0x48,
+            0x49, 0x4a, 0x53, 0x54, 0x55, 0x56, 0x57, 0x58, 0x59, 0x5a, 0x63, 0x64, 0x65, 0x66, 0x67, 0x68,
+            0x69, 0x6a, 0x73, 0x74, 0x75, 0x76, 0x77, 0x78, 0x79, 0x7a, 0x82, 0x83, 0x84, 0x85, 0x86, 0x87,
+            0x88, 0x89, 0x8a, 0x92, 0x93, 0x94, 0x95, 0x96, 0x97, 0x98, 0x99, 0x9a, 0xa2, 0xa3, 0xa4, 0xa5,
+            0xa6, 0xa7, 0xa8, 0xa9, 0xaa, 0xb2, 0xb3, 0xb4, 0xb5, 0xb6, 0xb7, 0xb8, 0xb9, 0xba, 0xc2, 0xc3,
+            0xc4, 0xc5, 0xc6, 0xc7, 0xc8, 0xc9, 0xca, 0xd2, 0xd3, 0xd4, 0xd5, 0xd6, 0xd7, 0xd8, 0xd9, 0xda,
+            0xe2, 0xe3, 0xe4, 0xe5, 0xe6, 0xe7, 0xe8, 0xe9, 0xea, 0xf2, 0xf3, 0xf4, 0xf5, 0xf6, 0xf7, 0xf8,
+            0xf9, 0xfa};
+
+    private static final HuffmanTable DC_LUMA = new HuffmanTable(DC_LUMA_BITS, DC_VALUES);
+    private static final HuffmanTable DC_CHROMA = new HuffmanTable(DC_CHROMA_BITS, DC_VALUES);
+    private static final HuffmanTable AC_LUMA = new HuffmanTable(AC_LUMA_BITS, AC_LUMA_VALUES);
+    private static final HuffmanTable AC_CHROMA = new HuffmanTable(AC_CHROMA_BITS, AC_CHROMA_VALUES);
+
+    /** SOI, APP0(JFIF 1.01, 종횡비 1:1) */
+    private static final byte[] JFIF_HEADER = {
+            (byte) 0xff, (byte) 0xd8,
+            (byte) 0xff, (byte) 0xe0, 0, 16, 'J', 'F', 'I', 'F', 0, 1, 1, 0, 0, 1, 0, 1, 0, 0};
+    private static final byte[] HUFFMAN_SEGMENT = createHuffmanSegment();
+
+    /** 품질별 양자화 테이블입니다. 처음 쓰일 때 만듭니다. */
+    private static final AtomicReferenceArray<QuantTables> sQuantTables = new AtomicReferenceArray<>(101);
+
+    private final ForkJoinPool mPool;
+    private final boolean mOwnsPool;
+    private final ConcurrentLinkedQueue<StripEncoder> mStripEncoders = new ConcurrentLinkedQueue<>();
+
+    /**
+     * parallelism 개의 스레드를 가진 전용 풀을 만듭니다. 1 이면 풀을 쓰지 않고 호출한 스레드에서 인코딩합니다.
+     * 다 쓰면 close() 합니다.
+     */
+    public Nv21JpegEncoder(int parallelism) {
+        this(parallelism > 1 ? new ForkJoinPool(parallelism) : null, true);
+    }
+
+    /**
+     * 외부 풀을 씁니다. 풀의 종료는 호출한 쪽이 책임집니다.
+     */
+    public Nv21JpegEncoder(ForkJoinPool pool) {
+        this(pool, false);
+    }
+
+    private Nv21JpegEncoder(ForkJoinPool pool, boolean ownsPool) {
+        mPool = pool;
+        mOwnsPool = ownsPool;
+    }
+
+    public int getParallelism() {
+        return mPool != null ? mPool.getParallelism() : 1;
+    }
+
+    @Override
+    public void encode(byte[] nv21, int width, int height, int quality, OutputStream out) throws IOException {
+        if ((width & 1) != 0 || (height & 1) != 0 || width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("NV21 size must be even: " + width + "x" + height);
+        }
+        if (nv21.length < width * height * 3 / 2) {
+            throw new IllegalArgumentException("nv21 is too small: " + nv21.length);
+        }
+        QuantTables tables = getQuantTables(quality);
+        int mcuColumns = (width + MCU_SIZE - 1) / MCU_SIZE;
+        int mcuRows = (height + MCU_SIZE - 1) / MCU_SIZE;
+        int stripRows = stripRows(width, mcuRows, getParallelism());
+        int strips = (mcuRows + stripRows - 1) / stripRows;
+
+        StripEncoder[] encoders = new StripEncoder[strips];
+        for (int i = 0; i < strips; i++) {
+            StripEncoder encoder = mStripEncoders.poll();
+            encoders[i] = encoder != null ? encoder : new StripEncoder();
+        }
+        try {
+            if (strips == 1) {
+                encoders[0].encode(nv21, width, height, tables, 0, mcuRows);
+            } else {
+                mPool.invoke(new StripTask(encoders, nv21, width, height, tables, stripRows, 0, strips));
+            }
+
+            writeHeader(out, width, height, tables, strips > 1 ? mcuColumns * stripRows : 0);
+            for (int i = 0; i < strips; i++) {
+                out.write(encoders[i].mData, 0, encoders[i].mSize);
+                if (i < strips - 1) {
+                    // RSTn 마커는 0~7 을 돌아가며 씁니다.
+                    out.write(0xff);
+                    out.write(0xd0 + (i & 7));
+                }
+            }
+            out.write(0xff);
+            out.write(0xd9);
+        } finally {
+            for (StripEncoder encoder : encoders) {
+                mStripEncoders.offer(encoder);
+            }
+        }
+    }
+
+    /**
+     * 스트립 하나의 MCU 줄 수입니다. 스레드마다 몇 개의 스트립이 돌아가도록 나눕니다.
+     * 스레드가 하나면 프레임 전체가 한 스트립이 되어 restart 마커를 넣지 않습니다.
+     */
+    static int stripRows(int width, int mcuRows, int parallelism) {
+        if (parallelism <= 1) {
+            return mcuRows;
+        }
+        int minRows = Math.max(1, (MIN_STRIP_PIXELS + width * MCU_SIZE - 1) / (width * MCU_SIZE));
+        int rows = (mcuRows + parallelism * 4 - 1) / (parallelism * 4);
+        return Math.max(minRows, rows);
+    }
+
+    private static QuantTables getQuantTables(int quality) {
+        quality = Math.max(1, Math.min(100, quality));
+        QuantTables tables = sQuantTables.get(quality);
+        if (tables == null) {
+            tables = new QuantTables(quality);
+            sQuantTables.compareAndSet(quality, null, tables);
+        }
+        return tables;
+    }
+
+    private static void writeHeader(OutputStream out, int width, int height, QuantTables tables,
+                                     int restartInterval) throws IOException {
+        out.write(JFIF_HEADER);
+        out.write(tables.mSegment);
+        // SOF0: 8비트, Y 는 2x2, Cb/Cr 는 1x1 샘플링(4:2:0)
+        out.write(new byte[]{
+                (byte) 0xff, (byte) 0xc0, 0, 17, 8,
+                (byte) (height >> 8), (byte) height, (byte) (width >> 8), (byte) width, 3,
+                1, 0x22, 0,
+                2, 0x11, 1,
+                3, 0x11, 1});
+        out.write(HUFFMAN_SEGMENT);
+        if (restartInterval > 0) {
+            out.write(new byte[]{(byte) 0xff, (byte) 0xdd, 0, 4,
+                    (byte) (restartInterval >> 8), (byte) restartInterval});
+        }
+        // SOS: Y 는 DC0/AC0, Cb/Cr 는 DC1/AC1
+        out.write(new byte[]{
+                (byte) 0xff, (byte) 0xda, 0, 12, 3,
+                1, 0x00,
+                2, 0x11,
+                3, 0x11,
+                0, 63, 0});
+    }
+
+    private static byte[] createHuffmanSegment() {
+        int length = 2;
+        int[][] bits = {DC_LUMA_BITS, AC_LUMA_BITS, DC_CHROMA_BITS, AC_CHROMA_BITS};
+        int[][] values = {DC_VALUES, AC_LUMA_VALUES, DC_VALUES, AC_CHROMA_VALUES};
+        int[] classAndId = {0x00, 0x10, 0x01, 0x11};
+        for (int[] value : values) {
+            length += 1 + 16 + value.length;
+        }
+        byte[] segment = new byte[2 + length];
+        int index = 0;
+        segment[index++] = (byte) 0xff;
+        segment[index++] = (byte) 0xc4;
+        segment[index++] = (byte) (length >> 8);
+        segment[index++] = (byte) length;
+        for (int t = 0; t < bits.length; t++) {
+            segment[index++] = (byte) classAndId[t];
+            for (int count : bits[t]) {
+                segment[index++] = (byte) count;
+            }
+            for (int value : values[t]) {
+                segment[index++] = (byte) value;
+            }
+        }
+        return segment;
+    }
+
+    /**
+     * 전용 풀이면 종료합니다.
+     */
+    public void close() {
+        if (mOwnsPool && mPool != null) {
+            mPool.shutdown();
+        }
+    }
+
+    /**
+     * 표준 허프만 테이블에서 심볼별 부호와 길이를 미리 구해 둡니다.
+     */
+    private static final class HuffmanTable {
+        final int[] mCodes = new int[256];
+        final int[] mSizes = new int[256];
+
+        HuffmanTable(int[] bits, int[] values) {
+            int code = 0;
+            int index = 0;
+            for (int length = 1; length <= 16; length++) {
+                for (int i = 0; i < bits[length - 1]; i++) {
+                    mCodes[values[index]] = code++;
+                    mSizes[values[index]] = length;
+                    index++;
+                }
+                code <<= 1;
+            }
+        }
+    }
+
+    /**
+     * 한 품질의 DQT 세그먼트와 양자화 역수입니다. 역수는 islow DCT 출력이 8배로 커진 것까지 반영합니다.
+     */
+    private static final class QuantTables {
+        /** 나눗셈 (a + d / 2) / d 를 ((a + d / 2) * reciprocal) >>> 32 로 바꿉니다. a 가 16비트 이내면 정확합니다. */
+        final long[] mLumaReciprocals = new long[64];
+        final long[] mChromaReciprocals = new long[64];
+        final int[] mLumaHalves = new int[64];
+        final int[] mChromaHalves = new int[64];
+        final byte[] mSegment = new byte[4 + 2 * 65];
+
+        QuantTables(int quality) {
+            int scale = quality < 50 ? 5000 / quality : 200 - quality * 2;
+            int index = 0;
+            mSegment[index++] = (byte) 0xff;
+            mSegment[index++] = (byte) 0xdb;
+            mSegment[index++] = 0;
+            mSegment[index++] = (byte) (2 + 2 * 65);
+            index = fill(LUMA_QUANT, scale, 0, mLumaReciprocals, mLumaHalves, index);
+            fill(CHROMA_QUANT, scale, 1, mChromaReciprocals, mChromaHalves, index);
+        }
+
+        private int fill(int[] base, int scale, int id, long[] reciprocals, int[] halves, int index) {
+            mSegment[index++] = (byte) id;
+            for (int k = 0; k < 64; k++) {
+                int natural = NATURAL_ORDER[k];
+                int q = Math.max(1, Math.min(255, (base[natural] * scale + 50) / 100));
+                mSegment[index++] = (byte) q;
+                long divisor = q * 8;
+                reciprocals[k] = ((1L << 32) + divisor - 1) / divisor;
+                halves[k] = (int) (divisor / 2);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * 스트립 하나를 인코딩해 자기 버퍼에 담습니다. 스트립이 끝나면 남은 비트를 1 로 채워 바이트를 맞춥니다.
+     */
+    private static final class StripEncoder {
+        private final int[] mBlock = new int[64];
+        private final int[] mCrBlock = new int[64];
+        private byte[] mData = new byte[64 * 1024];
+        private int mSize;
+        private int mBitBuffer;
+        private int mBitCount;
+
+        void encode(byte[] nv21, int width, int height, QuantTables tables, int mcuRowStart, int mcuRowEnd) {
+            mSize = 0;
+            mBitBuffer = 0;
+            mBitCount = 0;
+            int lumaDc = 0;
+            int cbDc = 0;
+            int crDc = 0;
+            int[] block = mBlock;
+            int[] crBlock = mCrBlock;
+            for (int mcuY = mcuRowStart; mcuY < mcuRowEnd; mcuY++) {
+                int y = mcuY * MCU_SIZE;
+                for (int x = 0; x < width; x += MCU_SIZE) {
+                    // MCU 마다 최대 크기만큼 미리 늘려 두면 비트를 쓸 때마다 용량을 확인하지 않아도 됩니다.
+                    ensureCapacity(mSize + MAX_MCU_BYTES);
+                    for (int i = 0; i < 4; i++) {
+                        loadLuma(nv21, width, height, x + (i & 1) * 8, y + (i >> 1) * 8, block);
+                        forwardDct(block);
+                        lumaDc = encodeBlock(block, lumaDc, tables.mLumaReciprocals, tables.mLumaHalves,
+                                DC_LUMA, AC_LUMA);
+                    }
+                    loadChroma(nv21, width, height, x >> 1, y >> 1, block, crBlock);
+                    forwardDct(block);
+                    cbDc = encodeBlock(block, cbDc, tables.mChromaReciprocals, tables.mChromaHalves,
+                            DC_CHROMA, AC_CHROMA);
+                    forwardDct(crBlock);
+                    crDc = encodeBlock(crBlock, crDc, tables.mChromaReciprocals, tables.mChromaHalves,
+                            DC_CHROMA, AC_CHROMA);
+                }
+            }
+            if (mBitCount > 0) {
+                writeBits((1 << (8 - mBitCount)) - 1, 8 - mBitCount);
+            }
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > mData.length) {
+                mData = Arrays.copyOf(mData, Math.max(capacity, mData.length + (mData.length >> 1)));
+            }
+        }
+
+        /**
+         * 8x8 밝기 블록을 -128 만큼 옮겨 읽습니다. 프레임 밖은 가장자리 픽셀을 반복합니다.
+         */
+        private static void loadLuma(byte[] nv21, int width, int height, int x0, int y0, int[] block) {
+            if (x0 + 8 <= width && y0 + 8 <= height) {
+                for (int row = 0, i = 0; row < 8; row++) {
+                    int index = (y0 + row) * width + x0;
+                    for (int column = 0; column < 8; column++) {
+                        block[i++] = (nv21[index + column] & 0xff) - 128;
+                    }
+                }
+                return;
+            }
+            for (int row = 0, i = 0; row < 8; row++) {
+                int rowIndex = Math.min(y0 + row, height - 1) * width;
+                for (int column = 0; column < 8; column++) {
+                    block[i++] = (nv21[rowIndex + Math.min(x0 + column, width - 1)] & 0xff) - 128;
+                }
+            }
+        }
+
+        /**
+         * 8x8 색차 블록을 V, U 가 번갈아 놓인 평면에서 읽어 Cb(U), Cr(V) 로 나눕니다.
+         */
+        private static void loadChroma(byte[] nv21, int width, int height, int cx0, int cy0, int[] cb, int[] cr) {
+            int chromaWidth = width >> 1;
+            int chromaHeight = height >> 1;
+            int frameSize = width * height;
+            if (cx0 + 8 <= chromaWidth && cy0 + 8 <= chromaHeight) {
+                for (int row = 0, i = 0; row < 8; row++) {
+                    int index = frameSize + (cy0 + row) * width + cx0 * 2;
+                    for (int column = 0; column < 8; column++, i++) {
+                        cr[i] = (nv21[index++] & 0xff) - 128;
+                        cb[i] = (nv21[index++] & 0xff) - 128;
+                    }
+                }
+                return;
+            }
+            for (int row = 0, i = 0; row < 8; row++) {
+                int rowIndex = frameSize + Math.min(cy0 + row, chromaHeight - 1) * width;
+                for (int column = 0; column < 8; column++, i++) {
+                    int index = rowIndex + Math.min(cx0 + column, chromaWidth - 1) * 2;
+                    cr[i] = (nv21[index] & 0xff) - 128;
+                    cb[i] = (nv21[index + 1] & 0xff) - 128;
+                }
+            }
+        }
+
+        /**
+         * libjpeg 의 jfdctint(islow) 와 같은 정수 DCT 입니다. 결과는 실제 DCT 계수의 8배입니다.
+         */
+        private static void forwardDct(int[] data) {
+            for (int i = 0; i < 64; i += 8) {
+                int tmp0 = data[i] + data[i + 7];
+                int tmp7 = data[i] - data[i + 7];
+                int tmp1 = data[i + 1] + data[i + 6];
+                int tmp6 = data[i + 1] - data[i + 6];
+                int tmp2 = data[i + 2] + data[i + 5];
+                int tmp5 = data[i + 2] - data[i + 5];
+                int tmp3 = data[i + 3] + data[i + 4];
+                int tmp4 = data[i + 3] - data[i + 4];
+
+                int tmp10 = tmp0 + tmp3;
+                int tmp13 = tmp0 - tmp3;
+                int tmp11 = tmp1 + tmp2;
+                int tmp12 = tmp1 - tmp2;
+                data[i] = (tmp10 + tmp11) << PASS1_BITS;
+                data[i + 4] = (tmp10 - tmp11) << PASS1_BITS;
+                int z1 = (tmp12 + tmp13) * FIX_0_541196100;
+                data[i + 2] = descale(z1 + tmp13 * FIX_0_765366865, CONST_BITS - PASS1_BITS);
+                data[i + 6] = descale(z1 - tmp12 * FIX_1_847759065, CONST_BITS - PASS1_BITS);
+
+                z1 = tmp4 + tmp7;
+                int z2 = tmp5 + tmp6;
+                int z3 = tmp4 + tmp6;
+                int z4 = tmp5 + tmp7;
+                int z5 = (z3 + z4) * FIX_1_175875602;
+                tmp4 *= FIX_0_298631336;
+                tmp5 *= FIX_2_053119869;
+                tmp6 *= FIX_3_072711026;
+                tmp7 *= FIX_1_501321110;
+                z1 *= -FIX_0_899976223;
+                z2 *= -FIX_2_562915447;
+                z3 = z3 * -FIX_1_961570560 + z5;
+                z4 = z4 * -FIX_0_390180644 + z5;
+                data[i + 7] = descale(tmp4 + z1 + z3, CONST_BITS - PASS1_BITS);
+                data[i + 5] = descale(tmp5 + z2 + z4, CONST_BITS - PASS1_BITS);
+                data[i + 3] = descale(tmp6 + z2 + z3, CONST_BITS - PASS1_BITS);
+                data[i + 1] = descale(tmp7 + z1 + z4, CONST_BITS - PASS1_BITS);
+            }
+            for (int i = 0; i < 8; i++) {
+                int tmp0 = data[i] + data[i + 56];
+                int tmp7 = data[i] - data[i + 56];
+                int tmp1 = data[i + 8] + data[i + 48];
+                int tmp6 = data[i + 8] - data[i + 48];
+                int tmp2 = data[i + 16] + data[i + 40];
+                int tmp5 = data[i + 16] - data[i + 40];
+                int tmp3 = data[i + 24] + data[i + 32];
+                int tmp4 = data[i + 24] - data[i + 32];
+
+                int tmp10 = tmp0 + tmp3;
+                int tmp13 = tmp0 - tmp3;
+                int tmp11 = tmp1 + tmp2;
+                int tmp12 = tmp1 - tmp2;
+                data[i] = descale(tmp10 + tmp11, PASS1_BITS);
+                data[i + 32] = descale(tmp10 - tmp11, PASS1_BITS);
+                int z1 = (tmp12 + tmp13) * FIX_0_541196100;
+                data[i + 16] = descale(z1 + tmp13 * FIX_0_765366865, CONST_BITS + PASS1_BITS);
+                data[i + 48] = descale(z1 - tmp12 * FIX_1_847759065, CONST_BITS + PASS1_BITS);
+
+                z1 = tmp4 + tmp7;
+                int z2 = tmp5 + tmp6;
+                int z3 = tmp4 + tmp6;
+                int z4 = tmp5 + tmp7;
+                int z5 = (z3 + z4) * FIX_1_175875602;
+                tmp4 *= FIX_0_298631336;
+                tmp5 *= FIX_2_053119869;
+                tmp6 *= FIX_3_072711026;
+                tmp7 *= FIX_1_501321110;
+                z1 *= -FIX_0_899976223;
+                z2 *= -FIX_2_562915447;
+                z3 = z3 * -FIX_1_961570560 + z5;
+                z4 = z4 * -FIX_0_390180644 + z5;
+                data[i + 56] = descale(tmp4 + z1 + z3, CONST_BITS + PASS1_BITS);
+                data[i + 40] = descale(tmp5 + z2 + z4, CONST_BITS + PASS1_BITS);
+                data[i + 24] = descale(tmp6 + z2 + z3, CONST_BITS + PASS1_BITS);
+                data[i + 8] = descale(tmp7 + z1 + z4, CONST_BITS + PASS1_BITS);
+            }
+        }
+
+        private static int descale(int value, int bits) {
+            return (value + (1 << (bits - 1))) >> bits;
+        }
+
+        /**
+         * 지그재그 순서로 양자화하면서 바로 허프만 부호를 씁니다. 이번 블록의 DC 값을 돌려줍니다.
+         */
+        private int encodeBlock(int[] block, int previousDc, long[] reciprocals, int[] halves,
+                                HuffmanTable dcTable, HuffmanTable acTable) {
+            int dc = quantize(block[0], reciprocals[0], halves[0]);
+            int difference = dc - previousDc;
+            int size = bitSize(difference);
+            writeBits(dcTable.mCodes[size], dcTable.mSizes[size]);
+            if (size > 0) {
+                writeBits(difference < 0 ? difference - 1 : difference, size);
+            }
+            int run = 0;
+            for (int k = 1; k < 64; k++) {
+                int value = quantize(block[NATURAL_ORDER[k]], reciprocals[k], halves[k]);
+                if (value == 0) {
+                    run++;
+                    continue;
+                }
+                while (run > 15) {
+                    writeBits(acTable.mCodes[0xf0], acTable.mSizes[0xf0]);
+                    run -= 16;
+                }
+                size = bitSize(value);
+                int symbol = (run << 4) | size;
+                writeBits(acTable.mCodes[symbol], acTable.mSizes[symbol]);
+                writeBits(value < 0 ? value - 1 : value, size);
+                run = 0;
+            }
+            if (run > 0) {
+                writeBits(acTable.mCodes[0x00], acTable.mSizes[0x00]);
+            }
+            return dc;
+        }
+
+        private static int quantize(int coefficient, long reciprocal, int half) {
+            if (coefficient < 0) {
+                return -(int) (((-coefficient + half) * reciprocal) >>> 32);
+            }
+            return (int) (((coefficient + half) * reciprocal) >>> 32);
+        }
+
+        private static int bitSize(int value) {
+            return 32 - Integer.numberOfLeadingZeros(value < 0 ? -value : value);
+        }
+
+        /**
+         * value 의 하위 size 비트(최대 16비트)를 씁니다. 0xff 바이트 뒤에는 0x00 을 넣습니다.
+         */
+        private void writeBits(int value, int size) {
+            int buffer = (mBitBuffer << size) | (value & ((1 << size) - 1));
+            int count = mBitCount + size;
+            while (count >= 8) {
+                count -= 8;
+                int b = (buffer >> count) & 0xff;
+                mData[mSize++] = (byte) b;
+                if (b == 0xff) {
+                    mData[mSize++] = 0;
+                }
+            }
+            mBitBuffer = buffer;
+            mBitCount = count;
+        }
+    }
+
+    private static class StripTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final StripEncoder[] mEncoders;
+        private final byte[] mNv21;
+        private final int mWidth;
+        private final int mHeight;
+        private final QuantTables mTables;
+        private final int mStripRows;
+        private final int mStripStart;
+        private final int mStripEnd;
+
+        StripTask(StripEncoder[] encoders, byte[] nv21, int width, int height, QuantTables tables, int stripRows,
+                  int stripStart, int stripEnd) {
+            mEncoders = encoders;
+            mNv21 = nv21;
+            mWidth = width;
+            mHeight = height;
+            mTables = tables;
+            mStripRows = stripRows;
+            mStripStart = stripStart;
+            mStripEnd = stripEnd;
+        }
+
+        @Override
+        protected void compute() {
+            if (mStripEnd - mStripStart == 1) {
+                int mcuRows = (mHeight + MCU_SIZE - 1) / MCU_SIZE;
+                int rowStart = mStripStart * mStripRows;
+                mEncoders[mStripStart].encode(mNv21, mWidth, mHeight, mTables, rowStart,
+                        Math.min(rowStart + mStripRows, mcuRows));
+                return;
+            }
+            int middle = (mStripStart + mStripEnd) >>> 1;
+            invokeAll(new StripTask(mEncoders, mNv21, mWidth, mHeight, mTables, mStripRows, mStripStart, middle),
+                    new StripTask(mEncoders, mNv21, mWidth, mHeight, mTables, mStripRows, middle, mStripEnd));
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package example.pnc.msshin.cameratest;
+
+/**
+ * CaptureRegion 에 따라 NV21 프레임을 잘라내고 크기를 바꿉니다. 결과 버퍼는 다음 호출까지 재사용됩니다.
+ * 한 인스턴스를 여러 스레드에서 동시에 쓰면 안 됩니다.
+ */
+public class Nv21Resampler {
+    private byte[] mOutput;
+    private int mOutputWidth;
+    private int mOutputHeight;
+
+    /**
+     * 결과를 내부 버퍼에 담아 돌려줍니다. 크기는 getOutputWidth()/getOutputHeight() 로 확인합니다.
+     * extraDownscale 은 region 의 출력 크기를 한 번 더 나눌 배율입니다. (JpegQualityController 의 축소 배율)
+     */
+    public byte[] resample(byte[] src, int width, int height, CaptureRegion region, int extraDownscale) {
+        int left = Math.min(region.getLeft(), width - 2) & ~1;
+        int top = Math.min(region.getTop(), height - 2) & ~1;
+        int cropWidth = region.getWidth() > 0 ? Math.min(region.getWidth(), width - left) : width - left;
+        int cropHeight = region.getHeight() > 0 ? Math.min(region.getHeight(), height - top) : height - top;
+        cropWidth = Math.max(cropWidth & ~1, 2);
+        cropHeight = Math.max(cropHeight & ~1, 2);
+
+        int outputWidth;
+        int outputHeight;
+        if (region.getOutputWidth() > 0) {
+            outputWidth = region.getOutputWidth();
+            outputHeight = region.getOutputHeight();
+        } else {
+            outputWidth = cropWidth / region.getDownscale();
+            outputHeight = cropHeight / region.getDownscale();
+        }
+        mOutputWidth = Math.max((outputWidth / extraDownscale) & ~1, 2);
+        mOutputHeight = Math.max((outputHeight / extraDownscale) & ~1, 2);
+
+        int size = mOutputWidth * mOutputHeight * 3 / 2;
+        if (mOutput == null || mOutput.length < size) {
+            mOutput = new byte[size];
+        }
+        Nv21Scaler.scale(src, width, height, left, top, cropWidth, cropHeight, mOutput, mOutputWidth, mOutputHeight,
+                region.getFilter());
+        return mOutput;
+    }
+
+    public int getOutputWidth() {
+        return mOutputWidth;
+    }
+
+    public int getOutputHeight() {
+        return mOutputHeight;
+    }
+}
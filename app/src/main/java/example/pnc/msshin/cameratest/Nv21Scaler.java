@@ -0,0 +1,150 @@
+package example.pnc.msshin.cameratest;
+
+/**
+ * NV21 이미지를 YUV 상태 그대로 잘라내고 크기를 바꿉니다. 결과는 호출자가 준 버퍼에 씁니다.
+ * scale() 은 임의의 영역과 출력 크기를 받으며, 정수 배율 축소는 박스 필터로 블록 평균과 같습니다.
+ */
+public final class Nv21Scaler {
+
+    public enum Filter {
+        /** 출력 픽셀에 해당하는 원본 블록의 평균입니다. 비용은 잘라낸 영역 크기에 비례합니다. */
+        BOX,
+        /** 가까운 네 픽셀의 보간입니다. 비용은 출력 크기에만 비례하지만, 2배 넘게 줄이면 계단 현상이 생깁니다. */
+        BILINEAR
+    }
+
+    private Nv21Scaler() {
+    }
+
+    /**
+     * 원본의 (left, top, cropWidth, cropHeight) 영역을 dstWidth x dstHeight 로 바꿔 dst 에 씁니다.
+     * 색차가 2x2 단위이므로 좌표와 크기는 모두 짝수여야 합니다. 같은 크기면 잘라내기만 합니다.
+     */
+    public static void scale(byte[] src, int width, int height, int left, int top, int cropWidth, int cropHeight,
+                             byte[] dst, int dstWidth, int dstHeight, Filter filter) {
+        if (((left | top | cropWidth | cropHeight | dstWidth | dstHeight) & 1) != 0) {
+            throw new IllegalArgumentException("NV21 region must be even: " + left + "," + top + " "
+                    + cropWidth + "x" + cropHeight + " -> " + dstWidth + "x" + dstHeight);
+        }
+        if (left < 0 || top < 0 || cropWidth <= 0 || cropHeight <= 0 || left + cropWidth > width
+                || top + cropHeight > height) {
+            throw new IllegalArgumentException("region is out of frame: " + left + "," + top + " "
+                    + cropWidth + "x" + cropHeight + " in " + width + "x" + height);
+        }
+        if (dstWidth <= 0 || dstHeight <= 0 || dst.length < dstWidth * dstHeight * 3 / 2) {
+            throw new IllegalArgumentException("invalid output: " + dstWidth + "x" + dstHeight + ", " + dst.length);
+        }
+        int frameSize = width * height;
+        int dstFrameSize = dstWidth * dstHeight;
+        if (cropWidth == dstWidth && cropHeight == dstHeight) {
+            crop(src, width, frameSize, left, top, cropWidth, cropHeight, dst, dstFrameSize);
+        } else if (filter == Filter.BOX) {
+            boxPlane(src, 0, width, left, top, cropWidth, cropHeight, 1, dst, 0, dstWidth, dstHeight);
+            boxPlane(src, frameSize, width, left / 2, top / 2, cropWidth / 2, cropHeight / 2, 2,
+                    dst, dstFrameSize, dstWidth / 2, dstHeight / 2);
+        } else {
+            bilinearPlane(src, 0, width, left, top, cropWidth, cropHeight, 1, dst, 0, dstWidth, dstHeight);
+            bilinearPlane(src, frameSize, width, left / 2, top / 2, cropWidth / 2, cropHeight / 2, 2,
+                    dst, dstFrameSize, dstWidth / 2, dstHeight / 2);
+        }
+    }
+
+    private static void crop(byte[] src, int width, int frameSize, int left, int top, int cropWidth, int cropHeight,
+                             byte[] dst, int dstFrameSize) {
+        for (int y = 0; y < cropHeight; y++) {
+            System.arraycopy(src, (top + y) * width + left, dst, y * cropWidth, cropWidth);
+        }
+        for (int y = 0; y < cropHeight / 2; y++) {
+            System.arraycopy(src, frameSize + (top / 2 + y) * width + left, dst, dstFrameSize + y * cropWidth, cropWidth);
+        }
+    }
+
+    /**
+     * 한 평면을 박스 필터로 바꿉니다. 좌표와 크기는 평면의 픽셀 단위이고, VU 평면은 pixelBytes 가 2 입니다.
+     * 배율이 정수가 아니면 출력 픽셀마다 블록 크기가 한 픽셀씩 다를 수 있습니다.
+     */
+    private static void boxPlane(byte[] src, int srcOffset, int stride, int left, int top, int width, int height,
+                                 int pixelBytes, byte[] dst, int dstOffset, int dstWidth, int dstHeight) {
+        int dstIndex = dstOffset;
+        for (int y = 0; y < dstHeight; y++) {
+            int y0 = y * height / dstHeight;
+            int y1 = Math.max(y0 + 1, (y + 1) * height / dstHeight);
+            int rowStart = srcOffset + (top + y0) * stride + left * pixelBytes;
+            int next = 0;
+            for (int x = 0; x < dstWidth; x++) {
+                int x0 = next;
+                next = (x + 1) * width / dstWidth;
+                int x1 = Math.max(x0 + 1, next);
+                int area = (y1 - y0) * (x1 - x0);
+                int begin = rowStart + x0 * pixelBytes;
+                int end = rowStart + x1 * pixelBytes;
+                if (pixelBytes == 1) {
+                    int sum = 0;
+                    for (int sy = y0; sy < y1; sy++) {
+                        for (int i = begin; i < end; i++) {
+                            sum += src[i] & 0xff;
+                        }
+                        begin += stride;
+                        end += stride;
+                    }
+                    dst[dstIndex++] = (byte) (sum / area);
+                } else {
+                    int sumV = 0;
+                    int sumU = 0;
+                    for (int sy = y0; sy < y1; sy++) {
+                        for (int i = begin; i < end; i += 2) {
+                            sumV += src[i] & 0xff;
+                            sumU += src[i + 1] & 0xff;
+                        }
+                        begin += stride;
+                        end += stride;
+                    }
+                    dst[dstIndex++] = (byte) (sumV / area);
+                    dst[dstIndex++] = (byte) (sumU / area);
+                }
+            }
+        }
+    }
+
+    /**
+     * 한 평면을 쌍선형 보간으로 바꿉니다. 원본 좌표는 16비트 고정소수점으로 누적하고, 가중치는 상위 8비트만 씁니다.
+     */
+    private static void bilinearPlane(byte[] src, int srcOffset, int stride, int left, int top, int width, int height,
+                                      int pixelBytes, byte[] dst, int dstOffset, int dstWidth, int dstHeight) {
+        // 픽셀 중심을 맞추므로 출력 x 의 원본 좌표는 (x + 0.5) * step - 0.5 입니다.
+        int stepX = (int) (((long) width << 16) / dstWidth);
+        int stepY = (int) (((long) height << 16) / dstHeight);
+        int startX = stepX / 2 - (1 << 15);
+        int sy = stepY / 2 - (1 << 15);
+        int dstIndex = dstOffset;
+        for (int y = 0; y < dstHeight; y++, sy += stepY) {
+            int clampedY = Math.max(sy, 0);
+            int y0 = Math.min(clampedY >> 16, height - 1);
+            int y1 = Math.min(y0 + 1, height - 1);
+            int fy = (clampedY >> 8) & 0xff;
+            int row0 = srcOffset + (top + y0) * stride + left * pixelBytes;
+            int row1 = srcOffset + (top + y1) * stride + left * pixelBytes;
+            int sx = startX;
+            for (int x = 0; x < dstWidth; x++, sx += stepX) {
+                int clampedX = Math.max(sx, 0);
+                int x0 = Math.min(clampedX >> 16, width - 1);
+                int x1 = Math.min(x0 + 1, width - 1);
+                int fx = (clampedX >> 8) & 0xff;
+                if (pixelBytes == 1) {
+                    dst[dstIndex++] = lerp(src, row0 + x0, row0 + x1, row1 + x0, row1 + x1, fx, fy);
+                } else {
+                    int p0 = x0 * 2;
+                    int p1 = x1 * 2;
+                    dst[dstIndex++] = lerp(src, row0 + p0, row0 + p1, row1 + p0, row1 + p1, fx, fy);
+                    dst[dstIndex++] = lerp(src, row0 + p0 + 1, row0 + p1 + 1, row1 + p0 + 1, row1 + p1 + 1, fx, fy);
+                }
+            }
+        }
+    }
+
+    private static byte lerp(byte[] src, int topLeft, int topRight, int bottomLeft, int bottomRight, int fx, int fy) {
+        int upper = (src[topLeft] & 0xff) * (256 - fx) + (src[topRight] & 0xff) * fx;
+        int lower = (src[bottomLeft] & 0xff) * (256 - fx) + (src[bottomRight] & 0xff) * fx;
+        return (byte) ((upper * (256 - fy) + lower * fy + (1 << 15)) >> 16);
+    }
+}
@@ -0,0 +1,130 @@
+package example.pnc.msshin.cameratest;
+
+/**
+ * NV21 프레임을 Bitmap 변환 없이 YUV 상태 그대로 회전(시계 방향 0/90/180/270)하고 좌우 반전합니다.
+ * 좌우 반전은 회전한 결과 이미지 기준으로 적용됩니다. 결과 버퍼는 다음 호출까지 재사용됩니다.
+ */
+public class Nv21Transform {
+    private byte[] mOutput;
+    private int mOutputWidth;
+    private int mOutputHeight;
+
+    /**
+     * 변환 결과를 내부 버퍼에 담아 돌려줍니다. 크기는 getOutputWidth()/getOutputHeight() 로 확인합니다.
+     */
+    public byte[] transform(byte[] src, int width, int height, int rotation, boolean mirror) {
+        int size = width * height * 3 / 2;
+        if (mOutput == null || mOutput.length < size) {
+            mOutput = new byte[size];
+        }
+        boolean isSwapped = isSwapped(rotation);
+        mOutputWidth = isSwapped ? height : width;
+        mOutputHeight = isSwapped ? width : height;
+        transform(src, width, height, rotation, mirror, mOutput);
+        return mOutput;
+    }
+
+    public int getOutputWidth() {
+        return mOutputWidth;
+    }
+
+    public int getOutputHeight() {
+        return mOutputHeight;
+    }
+
+    public static void transform(byte[] src, int width, int height, int rotation, boolean mirror, byte[] dst) {
+        if ((width & 1) != 0 || (height & 1) != 0) {
+            throw new IllegalArgumentException("NV21 size must be even: " + width + "x" + height);
+        }
+        rotation = normalizeRotation(rotation);
+        if (rotation == 0 && !mirror) {
+            System.arraycopy(src, 0, dst, 0, width * height * 3 / 2);
+            return;
+        }
+        int frameSize = width * height;
+        transformPlane(src, 0, width, height, 1, rotation, mirror, dst, 0);
+        transformPlane(src, frameSize, width / 2, height / 2, 2, rotation, mirror, dst, frameSize);
+    }
+
+    public static boolean isSwapped(int rotation) {
+        rotation = normalizeRotation(rotation);
+        return rotation == 90 || rotation == 270;
+    }
+
+    static int normalizeRotation(int rotation) {
+        rotation = ((rotation % 360) + 360) % 360;
+        if (rotation % 90 != 0) {
+            throw new IllegalArgumentException("rotation must be a multiple of 90: " + rotation);
+        }
+        return rotation;
+    }
+
+    /**
+     * 한 평면을 변환합니다. Y 평면은 픽셀당 1바이트, VU 평면은 2바이트(V,U) 단위로 옮깁니다.
+     * 출력 한 줄은 원본에서 일정한 간격(step)으로 읽히므로 줄마다 시작 위치와 간격만 계산합니다.
+     */
+    private static void transformPlane(byte[] src, int srcOffset, int width, int height, int pixelBytes,
+                                       int rotation, boolean mirror, byte[] dst, int dstOffset) {
+        boolean isSwapped = rotation == 90 || rotation == 270;
+        int outWidth = isSwapped ? height : width;
+        int outHeight = isSwapped ? width : height;
+        int step;
+        switch (rotation) {
+            case 90:
+                step = -width;
+                break;
+            case 180:
+                step = -1;
+                break;
+            case 270:
+                step = width;
+                break;
+            default:
+                step = 1;
+                break;
+        }
+        int firstX = 0;
+        if (mirror) {
+            firstX = outWidth - 1;
+            step = -step;
+        }
+        step *= pixelBytes;
+
+        int out = dstOffset;
+        for (int y = 0; y < outHeight; y++) {
+            int sx;
+            int sy;
+            switch (rotation) {
+                case 90:
+                    sx = y;
+                    sy = height - 1 - firstX;
+                    break;
+                case 180:
+                    sx = width - 1 - firstX;
+                    sy = height - 1 - y;
+                    break;
+                case 270:
+                    sx = width - 1 - y;
+                    sy = firstX;
+                    break;
+                default:
+                    sx = firstX;
+                    sy = y;
+                    break;
+            }
+            int in = srcOffset + (sy * width + sx) * pixelBytes;
+            if (pixelBytes == 1) {
+                for (int x = 0; x < outWidth; x++) {
+                    dst[out++] = src[in];
+                    in += step;
+                }
+            } else {
+                for (int x = 0; x < outWidth; x++) {
+                    dst[out++] = src[in];
+                    dst[out++] = src[in + 1];
+                    in += step;
+                }
+            }
+        }
+    }
+}
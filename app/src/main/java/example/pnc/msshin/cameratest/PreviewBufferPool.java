@@ -0,0 +1,188 @@
+package example.pnc.msshin.cameratest;
+
+/**
+ * 카메라 프리뷰 콜백에 사용하는 NV21 버퍼를 여러 개 돌려가며 관리합니다.
+ * 버퍼마다 하나의 Frame 을 미리 만들어 두고, 마지막 홀더가 release 할 때 카메라에 반환합니다.
+ */
+public class PreviewBufferPool {
+
+    public interface Recycler {
+        void recycle(byte[] buffer);
+    }
+
+    private final Frame[] mFrames;
+    private final int mWidth;
+    private final int mHeight;
+    private final int mFormat;
+    private final int mBufferSize;
+    private Recycler mRecycler;
+    private int mQueuedCount;
+    private long mDeliveredFrames;
+    private long mStarvationCount;
+    private long mDroppedFrames;
+    private long mFrameIntervalNanos;
+    private long mLastFrameNanos;
+
+    public PreviewBufferPool(int bufferCount, int width, int height, int format, int bitsPerPixel) {
+        if (bufferCount < 1) {
+            throw new IllegalArgumentException("bufferCount must be positive: " + bufferCount);
+        }
+        mWidth = width;
+        mHeight = height;
+        mFormat = format;
+        mBufferSize = calculateBufferSize(width, height, bitsPerPixel);
+        mFrames = new Frame[bufferCount];
+        for (int i = 0; i < bufferCount; i++) {
+            mFrames[i] = new Frame(this, new byte[mBufferSize]);
+        }
+    }
+
+    /**
+     * 프리뷰 포맷의 bitsPerPixel 로부터 한 프레임에 필요한 버퍼 크기를 계산합니다.
+     */
+    public static int calculateBufferSize(int width, int height, int bitsPerPixel) {
+        return (int) ((long) width * height * bitsPerPixel / 8);
+    }
+
+    public int getBufferCount() {
+        return mFrames.length;
+    }
+
+    public int getBufferSize() {
+        return mBufferSize;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public int getFormat() {
+        return mFormat;
+    }
+
+    /**
+     * 예상 프레임 간격을 지정하면 프레임 간격이 벌어진 만큼을 드롭된 프레임으로 집계합니다.
+     */
+    public synchronized void setFrameIntervalNanos(long frameIntervalNanos) {
+        mFrameIntervalNanos = frameIntervalNanos;
+    }
+
+    /**
+     * 사용 중이 아닌 모든 버퍼를 recycler(카메라)에 넘깁니다.
+     */
+    public synchronized void start(Recycler recycler) {
+        mRecycler = recycler;
+        mQueuedCount = 0;
+        mLastFrameNanos = 0;
+        for (Frame frame : mFrames) {
+            if (frame.getRefCount() == 0) {
+                mQueuedCount++;
+                recycler.recycle(frame.data);
+            }
+        }
+    }
+
+    /**
+     * 이후 release 되는 버퍼는 recycler 로 넘기지 않습니다. 다음 start() 가 사용 중이 아닌 버퍼를 모두 다시 넘깁니다.
+     */
+    public synchronized void stop() {
+        mRecycler = null;
+        mQueuedCount = 0;
+    }
+
+    /**
+     * 카메라가 버퍼를 돌려줬을 때 호출합니다. 돌려받은 Frame 의 참조는 호출한 쪽이 가지며 처리 후 release 해야 합니다.
+     */
+    public synchronized Frame onFrameDelivered(byte[] buffer, long timestampNanos) {
+        Frame frame = find(buffer);
+        if (frame == null) {
+            return null;
+        }
+        frame.reset(mWidth, mHeight, mFormat, timestampNanos, mDeliveredFrames++);
+        if (mQueuedCount > 0) {
+            mQueuedCount--;
+        }
+        if (mQueuedCount == 0) {
+            mStarvationCount++;
+        }
+        if (mFrameIntervalNanos > 0 && mLastFrameNanos > 0) {
+            long missed = (timestampNanos - mLastFrameNanos + mFrameIntervalNanos / 2) / mFrameIntervalNanos - 1;
+            if (missed > 0) {
+                mDroppedFrames += missed;
+            }
+        }
+        mLastFrameNanos = timestampNanos;
+        return frame;
+    }
+
+    /**
+     * 프레임을 콜백 밖에서도 계속 사용하려면 acquire 하고, 다 쓰면 release 합니다.
+     */
+    public boolean acquire(byte[] buffer) {
+        Frame frame = find(buffer);
+        return frame != null && frame.retain();
+    }
+
+    public void release(byte[] buffer) {
+        Frame frame = find(buffer);
+        if (frame != null) {
+            frame.release();
+        }
+    }
+
+    /**
+     * recycler 는 락 안에서 부릅니다. stop() 이 끝난 뒤에는 이미 release 중이던 버퍼도 recycler 로 넘어가지 않습니다.
+     */
+    synchronized void recycle(Frame frame) {
+        if (mRecycler == null) {
+            return;
+        }
+        mQueuedCount++;
+        mRecycler.recycle(frame.data);
+    }
+
+    public synchronized Stats getStats() {
+        int inFlight = 0;
+        for (Frame frame : mFrames) {
+            if (frame.getRefCount() > 0) {
+                inFlight++;
+            }
+        }
+        return new Stats(mFrames.length, inFlight, mDeliveredFrames, mStarvationCount, mDroppedFrames);
+    }
+
+    private Frame find(byte[] buffer) {
+        for (Frame frame : mFrames) {
+            if (frame.data == buffer) {
+                return frame;
+            }
+        }
+        return null;
+    }
+
+    public static class Stats {
+        public final int bufferCount;
+        public final int inFlight;
+        public final long deliveredFrames;
+        public final long starvationCount;
+        public final long droppedFrames;
+
+        Stats(int bufferCount, int inFlight, long deliveredFrames, long starvationCount, long droppedFrames) {
+            this.bufferCount = bufferCount;
+            this.inFlight = inFlight;
+            this.deliveredFrames = deliveredFrames;
+            this.starvationCount = starvationCount;
+            this.droppedFrames = droppedFrames;
+        }
+
+        @Override
+        public String toString() {
+            return "buffers:" + bufferCount + ", inFlight:" + inFlight + ", delivered:" + deliveredFrames
+                    + ", starvation:" + starvationCount + ", dropped:" + droppedFrames;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package example.pnc.msshin.cameratest;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FrameDump 로 기록한 파일을 다시 재생합니다. 기록된 타임스탬프 간격을 그대로 따르며, 끝에 닿으면 처음부터 반복합니다.
+ * 돌려받은 버퍼가 없으면 실제 카메라처럼 그 프레임을 건너뜁니다.
+ */
+public class ReplayCameraSource implements CameraSource {
+    private static final int BITS_PER_PIXEL_NV21 = 12;
+
+    private final File mFile;
+    private final boolean mIsLooping;
+    private final CameraConfig mConfig;
+    private final PreviewBufferPool mBufferPool;
+    private final ArrayBlockingQueue<byte[]> mFreeBuffers;
+    private final byte[] mSkipBuffer;
+    private Thread mReplayThread;
+    private volatile boolean mIsRunning;
+    private FrameListener mListener;
+
+    public ReplayCameraSource(File file, int bufferCount, boolean looping) throws IOException {
+        mFile = file;
+        mIsLooping = looping;
+        int[] header;
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            header = FrameDump.readHeader(in);
+        } finally {
+            in.close();
+        }
+        int width = header[0];
+        int height = header[1];
+        mConfig = new CameraConfig(width, height, header[2], width, height, 0, 0, "fixed", 0);
+        mBufferPool = new PreviewBufferPool(bufferCount, width, height, header[2], BITS_PER_PIXEL_NV21);
+        mFreeBuffers = new ArrayBlockingQueue<>(bufferCount);
+        mSkipBuffer = new byte[FrameDump.frameSize(width, height)];
+    }
+
+    @Override
+    public synchronized void start(FrameListener listener) {
+        if (mReplayThread != null) {
+            return;
+        }
+        mListener = listener;
+        mBufferPool.start(new PreviewBufferPool.Recycler() {
+            @Override
+            public void recycle(byte[] buffer) {
+                mFreeBuffers.offer(buffer);
+            }
+        });
+        mIsRunning = true;
+        mReplayThread = new Thread(mReplayLoop, "ReplayCamera");
+        mReplayThread.start();
+    }
+
+    @Override
+    public void stop() {
+        Thread replayThread;
+        synchronized (this) {
+            replayThread = mReplayThread;
+            mReplayThread = null;
+        }
+        if (replayThread == null) {
+            return;
+        }
+        mIsRunning = false;
+        replayThread.interrupt();
+        try {
+            replayThread.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        mBufferPool.stop();
+        mFreeBuffers.clear();
+    }
+
+    @Override
+    public CameraConfig getConfig() {
+        return mConfig;
+    }
+
+    @Override
+    public PreviewBufferPool.Stats getBufferStats() {
+        return mBufferPool.getStats();
+    }
+
+    private final Runnable mReplayLoop = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                do {
+                    replayOnce();
+                } while (mIsLooping && mIsRunning);
+            } catch (IOException | InterruptedException e) {
+                // stop() 으로 인터럽트되었거나 파일을 읽을 수 없으면 재생을 끝냅니다.
+            }
+        }
+    };
+
+    private void replayOnce() throws IOException, InterruptedException {
+        int frameSize = FrameDump.frameSize(mConfig.previewWidth, mConfig.previewHeight);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile), 1 << 16));
+        try {
+            FrameDump.readHeader(in);
+            long firstRecorded = -1;
+            long startNanos = System.nanoTime();
+            while (mIsRunning) {
+                long recorded;
+                try {
+                    recorded = in.readLong();
+                } catch (EOFException e) {
+                    return;
+                }
+                if (firstRecorded < 0) {
+                    firstRecorded = recorded;
+                }
+                long presentNanos = startNanos + (recorded - firstRecorded);
+                long waitNanos = presentNanos - System.nanoTime();
+                if (waitNanos > 0) {
+                    TimeUnit.NANOSECONDS.sleep(waitNanos);
+                }
+                byte[] buffer = mFreeBuffers.poll();
+                in.readFully(buffer != null ? buffer : mSkipBuffer, 0, frameSize);
+                if (buffer == null) {
+                    continue;
+                }
+                Frame frame = mBufferPool.onFrameDelivered(buffer, presentNanos);
+                if (frame == null) {
+                    continue;
+                }
+                try {
+                    mListener.onFrame(frame);
+                } finally {
+                    frame.release();
+                }
+            }
+        } finally {
+            in.close();
+        }
+    }
+}
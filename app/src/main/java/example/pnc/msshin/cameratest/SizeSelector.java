@@ -0,0 +1,56 @@
+package example.pnc.msshin.cameratest;
+
+/**
+ * 카메라 해상도 선택 로직입니다. Camera.Size 에 의존하지 않도록 너비/높이 배열로 다룹니다.
+ */
+public final class SizeSelector {
+    public static final double PREVIEW_ASPECT_TOLERANCE = 0.1;
+    public static final double PICTURE_ASPECT_TOLERANCE = 0.05;
+
+    private SizeSelector() {
+    }
+
+    /**
+     * 목표 비율과 맞는 크기 중 높이가 가장 가까운 크기의 인덱스를 돌려줍니다.
+     * 비율이 맞는 크기가 없으면 비율을 무시하고 높이만으로 고르며, 후보가 없으면 -1 입니다.
+     */
+    public static int findOptimalSize(int[] widths, int[] heights, int targetWidth, int targetHeight) {
+        double targetRatio = (double) targetWidth / targetHeight;
+        int optimalIndex = -1;
+        double minDiff = Double.MAX_VALUE;
+
+        for (int i = 0; i < widths.length; i++) {
+            double ratio = (double) widths[i] / heights[i];
+            if (Math.abs(ratio - targetRatio) > PREVIEW_ASPECT_TOLERANCE) continue;
+            if (Math.abs(heights[i] - targetHeight) < minDiff) {
+                optimalIndex = i;
+                minDiff = Math.abs(heights[i] - targetHeight);
+            }
+        }
+
+        if (optimalIndex < 0) {
+            minDiff = Double.MAX_VALUE;
+            for (int i = 0; i < widths.length; i++) {
+                if (Math.abs(heights[i] - targetHeight) < minDiff) {
+                    optimalIndex = i;
+                    minDiff = Math.abs(heights[i] - targetHeight);
+                }
+            }
+        }
+        return optimalIndex;
+    }
+
+    /**
+     * width x height 와 비율이 같은 크기가 sizes 에 하나라도 있는지 확인합니다.
+     */
+    public static boolean hasMatchingAspectRatio(int width, int height, int[] widths, int[] heights, double tolerance) {
+        double ratio = (double) width / height;
+        for (int i = widths.length - 1; i >= 0; --i) {
+            double candidateRatio = (double) widths[i] / heights[i];
+            if (Math.abs(ratio - candidateRatio) < tolerance) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,344 @@
+package example.pnc.msshin.cameratest;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 이미지 파일을 전용 스레드 하나에서 순서대로 저장합니다.
+ * 임시 파일에 쓴 뒤 이름을 바꾸므로 저장 중인 파일이 다른 곳에 보이지 않으며,
+ * 큐에 쌓인 요청은 한 번에 묶어서 처리하고 결과도 묶어서 Listener 에 알립니다.
+ */
+public class StorageWriter {
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    public enum SyncPolicy {
+        /** fsync 하지 않습니다. */
+        NONE,
+        /** 파일마다 fsync 합니다. */
+        PER_FILE,
+        /** 한 묶음을 모두 쓴 뒤 fsync 합니다. */
+        PER_BATCH
+    }
+
+    public interface Listener {
+        /**
+         * 저장 스레드에서 한 묶음이 끝날 때마다 호출됩니다.
+         */
+        void onFilesWritten(List<File> files);
+
+        void onWriteFailed(File file, IOException e);
+    }
+
+    public static class Stats {
+        public final int queueDepth;
+        public final int maxQueueDepth;
+        public final long filesWritten;
+        public final long bytesWritten;
+        public final long failedFiles;
+        public final long droppedFiles;
+        public final double throughputMBps;
+
+        Stats(int queueDepth, int maxQueueDepth, long filesWritten, long bytesWritten, long failedFiles,
+              long droppedFiles, double throughputMBps) {
+            this.queueDepth = queueDepth;
+            this.maxQueueDepth = maxQueueDepth;
+            this.filesWritten = filesWritten;
+            this.bytesWritten = bytesWritten;
+            this.failedFiles = failedFiles;
+            this.droppedFiles = droppedFiles;
+            this.throughputMBps = throughputMBps;
+        }
+
+        @Override
+        public String toString() {
+            return "queue:" + queueDepth + "(max " + maxQueueDepth + "), files:" + filesWritten
+                    + ", bytes:" + bytesWritten + ", failed:" + failedFiles + ", dropped:" + droppedFiles
+                    + ", throughput:" + String.format("%.1f", throughputMBps) + "MB/s";
+        }
+    }
+
+    private static final WriteRequest END_OF_QUEUE = new WriteRequest(null, null, null, 0, null);
+
+    private final File mDirectory;
+    private final int mMaxBatchSize;
+    private final SyncPolicy mSyncPolicy;
+    private final Listener mListener;
+    private final ArrayBlockingQueue<WriteRequest> mQueue;
+    private final Thread mWriterThread;
+    private final AtomicLong mFileSequence = new AtomicLong();
+    private final AtomicLong mTempSequence = new AtomicLong();
+    private final AtomicLong mDroppedFiles = new AtomicLong();
+    /** 닫힌 뒤에 큐에 들어간 요청이 저장도 반환도 되지 않는 일이 없도록 close() 와 요청 추가를 직렬화합니다. */
+    private final Object mEnqueueLock = new Object();
+    private volatile int mMaxQueueDepth;
+    private boolean mIsClosed;
+    private long mFilesWritten;
+    private long mBytesWritten;
+    private long mFailedFiles;
+    private long mWriteNanos;
+
+    public StorageWriter(File directory, int queueCapacity, int maxBatchSize, SyncPolicy syncPolicy, Listener listener) {
+        mDirectory = directory;
+        mMaxBatchSize = maxBatchSize;
+        mSyncPolicy = syncPolicy;
+        mListener = listener;
+        mQueue = new ArrayBlockingQueue<>(queueCapacity);
+        mWriterThread = new Thread(mWriteLoop, "StorageWriter");
+        mWriterThread.start();
+    }
+
+    public File getDirectory() {
+        return mDirectory;
+    }
+
+    /**
+     * 같은 밀리초에 여러 장을 저장해도 겹치지 않는 파일 이름을 만듭니다.
+     */
+    public String nextFileName() {
+        return String.format("%d_%d.jpg", System.currentTimeMillis(), mFileSequence.getAndIncrement());
+    }
+
+    /**
+     * 저장을 요청합니다. 큐가 가득 찼거나 닫힌 뒤이면 저장하지 않고 false 를 돌려줍니다.
+     * data 는 저장이 끝날 때까지 변경하면 안 됩니다.
+     */
+    public boolean write(String fileName, byte[] data) {
+        return enqueue(fileName, data, data.length, null);
+    }
+
+    /**
+     * CaptureBuffer 의 내용을 복사하지 않고 저장합니다. 버퍼는 저장이 끝나거나 요청이 거절되면 자동으로 release 됩니다.
+     */
+    public boolean write(String fileName, CaptureBuffer buffer) {
+        return enqueue(fileName, buffer.getData(), buffer.size(), buffer);
+    }
+
+    private boolean enqueue(String fileName, byte[] data, int length, CaptureBuffer buffer) {
+        // 같은 이름을 연달아 저장해도 임시 파일이 겹치지 않도록 요청마다 번호를 붙입니다.
+        File tempFile = new File(mDirectory, "." + fileName + "." + mTempSequence.getAndIncrement() + TEMP_SUFFIX);
+        WriteRequest request = new WriteRequest(new File(mDirectory, fileName), tempFile, data, length, buffer);
+        boolean isQueued;
+        synchronized (mEnqueueLock) {
+            isQueued = !mIsClosed && mQueue.offer(request);
+        }
+        if (!isQueued) {
+            request.release();
+            mDroppedFiles.incrementAndGet();
+            return false;
+        }
+        int depth = mQueue.size();
+        if (depth > mMaxQueueDepth) {
+            mMaxQueueDepth = depth;
+        }
+        return true;
+    }
+
+    /**
+     * 이미 요청된 파일을 모두 저장한 뒤 저장 스레드를 종료합니다.
+     */
+    public void close() {
+        synchronized (mEnqueueLock) {
+            if (mIsClosed) {
+                return;
+            }
+            mIsClosed = true;
+        }
+        // 이 뒤로는 요청이 큐에 들어가지 않으므로 END_OF_QUEUE 가 마지막입니다.
+        try {
+            mQueue.put(END_OF_QUEUE);
+        } catch (InterruptedException e) {
+            mWriterThread.interrupt();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void awaitClosed(long timeout, TimeUnit unit) throws InterruptedException {
+        mWriterThread.join(unit.toMillis(timeout));
+    }
+
+    public synchronized Stats getStats() {
+        double seconds = mWriteNanos / 1e9;
+        double throughput = seconds > 0 ? mBytesWritten / (1024.0 * 1024.0) / seconds : 0;
+        return new Stats(mQueue.size(), mMaxQueueDepth, mFilesWritten, mBytesWritten, mFailedFiles,
+                mDroppedFiles.get(), throughput);
+    }
+
+    private final Runnable mWriteLoop = new Runnable() {
+        @Override
+        public void run() {
+            List<WriteRequest> batch = new ArrayList<>(mMaxBatchSize);
+            boolean isRunning = true;
+            while (isRunning) {
+                try {
+                    batch.add(mQueue.take());
+                } catch (InterruptedException e) {
+                    dropQueued();
+                    return;
+                }
+                mQueue.drainTo(batch, mMaxBatchSize - 1);
+                if (batch.remove(END_OF_QUEUE)) {
+                    isRunning = false;
+                    mQueue.drainTo(batch);
+                }
+                if (!batch.isEmpty()) {
+                    try {
+                        writeBatch(batch);
+                    } finally {
+                        for (WriteRequest request : batch) {
+                            request.release();
+                        }
+                    }
+                }
+                batch.clear();
+            }
+        }
+    };
+
+    /**
+     * 저장 스레드가 중간에 끝날 때 남은 요청의 버퍼를 반환합니다.
+     */
+    private void dropQueued() {
+        List<WriteRequest> remaining = new ArrayList<>();
+        mQueue.drainTo(remaining);
+        for (WriteRequest request : remaining) {
+            if (request != END_OF_QUEUE) {
+                request.release();
+                mDroppedFiles.incrementAndGet();
+            }
+        }
+    }
+
+    private void notifyFilesWritten(List<File> files) {
+        try {
+            mListener.onFilesWritten(files);
+        } catch (RuntimeException ignored) {
+            // 리스너 오류로 하나뿐인 저장 스레드가 끝나면 이후 요청은 저장되지 않고 쌓이기만 하므로 무시합니다.
+        }
+    }
+
+    private void notifyWriteFailed(File file, IOException e) {
+        try {
+            mListener.onWriteFailed(file, e);
+        } catch (RuntimeException ignored) {
+            // notifyFilesWritten() 과 같은 이유로 무시합니다.
+        }
+    }
+
+    private void writeBatch(List<WriteRequest> batch) {
+        long start = System.nanoTime();
+        long bytes = 0;
+        int failed = 0;
+        List<File> written = new ArrayList<>(batch.size());
+        List<FileOutputStream> unsynced = new ArrayList<>();
+        List<WriteRequest> pending = new ArrayList<>();
+
+        if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+            IOException e = new IOException("cannot create " + mDirectory.getAbsolutePath());
+            for (WriteRequest request : batch) {
+                notifyWriteFailed(request.file, e);
+            }
+            synchronized (this) {
+                mFailedFiles += batch.size();
+            }
+            return;
+        }
+
+        for (WriteRequest request : batch) {
+            FileOutputStream out = null;
+            try {
+                out = new FileOutputStream(request.tempFile);
+                out.write(request.data, 0, request.length);
+                if (mSyncPolicy == SyncPolicy.PER_FILE) {
+                    out.getFD().sync();
+                }
+                if (mSyncPolicy == SyncPolicy.PER_BATCH) {
+                    unsynced.add(out);
+                    pending.add(request);
+                    out = null;
+                } else {
+                    out.close();
+                    out = null;
+                    commit(request);
+                    written.add(request.file);
+                    bytes += request.length;
+                }
+            } catch (IOException e) {
+                failed++;
+                request.tempFile.delete();
+                notifyWriteFailed(request.file, e);
+            } finally {
+                closeQuietly(out);
+            }
+        }
+
+        for (int i = 0; i < unsynced.size(); i++) {
+            WriteRequest request = pending.get(i);
+            FileOutputStream out = unsynced.get(i);
+            try {
+                out.getFD().sync();
+                out.close();
+                commit(request);
+                written.add(request.file);
+                bytes += request.length;
+            } catch (IOException e) {
+                failed++;
+                closeQuietly(out);
+                request.tempFile.delete();
+                notifyWriteFailed(request.file, e);
+            }
+        }
+
+        synchronized (this) {
+            mFilesWritten += written.size();
+            mBytesWritten += bytes;
+            mFailedFiles += failed;
+            mWriteNanos += System.nanoTime() - start;
+        }
+        if (!written.isEmpty()) {
+            notifyFilesWritten(written);
+        }
+    }
+
+    private static void commit(WriteRequest request) throws IOException {
+        if (!request.tempFile.renameTo(request.file)) {
+            throw new IOException("rename failed: " + request.file.getAbsolutePath());
+        }
+    }
+
+    private static void closeQuietly(FileOutputStream out) {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static class WriteRequest {
+        final File file;
+        final File tempFile;
+        final byte[] data;
+        final int length;
+        final CaptureBuffer buffer;
+
+        WriteRequest(File file, File tempFile, byte[] data, int length, CaptureBuffer buffer) {
+            this.file = file;
+            this.tempFile = tempFile;
+            this.data = data;
+            this.length = length;
+            this.buffer = buffer;
+        }
+
+        void release() {
+            if (buffer != null) {
+                buffer.release();
+            }
+        }
+    }
+}
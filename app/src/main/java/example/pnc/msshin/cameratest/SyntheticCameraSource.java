@@ -0,0 +1,147 @@
+package example.pnc.msshin.cameratest;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 가로 그라데이션 위로 사각형이 움직이는 NV21 프레임을 일정한 fps 로 만들어 냅니다.
+ * 실제 카메라처럼 PreviewBufferPool 의 버퍼를 돌려 쓰며, 돌려받은 버퍼가 없으면 그 프레임은 건너뜁니다.
+ */
+public class SyntheticCameraSource implements CameraSource {
+    private static final int BITS_PER_PIXEL_NV21 = 12;
+    private static final int BOX_SIZE_DIVISOR = 8;
+
+    private final CameraConfig mConfig;
+    private final PreviewBufferPool mBufferPool;
+    private final ConcurrentLinkedQueue<byte[]> mFreeBuffers = new ConcurrentLinkedQueue<>();
+    private final byte[] mGradientRow;
+    private final AtomicLong mFailedFrames = new AtomicLong();
+    private ScheduledExecutorService mScheduler;
+    private FrameListener mListener;
+    private long mTick;
+    private volatile long mStartDelayNanos;
+
+    public SyntheticCameraSource(int width, int height, int fps, int bufferCount) {
+        mConfig = new CameraConfig(width, height, CameraConfig.FORMAT_NV21, width, height,
+                fps * 1000, fps * 1000, "fixed", 0);
+        mBufferPool = new PreviewBufferPool(bufferCount, width, height, CameraConfig.FORMAT_NV21, BITS_PER_PIXEL_NV21);
+        mBufferPool.setFrameIntervalNanos(mConfig.getFrameIntervalNanos());
+        mGradientRow = new byte[width];
+        for (int x = 0; x < width; x++) {
+            mGradientRow[x] = (byte) (x * 255 / Math.max(1, width - 1));
+        }
+    }
+
+    /**
+     * start() 후 첫 프레임까지 기다릴 시간입니다. 실제 카메라를 열고 프리뷰를 시작하는 시간을 흉내낼 때 씁니다.
+     */
+    public void setStartDelayMillis(long startDelayMillis) {
+        mStartDelayNanos = TimeUnit.MILLISECONDS.toNanos(startDelayMillis);
+    }
+
+    @Override
+    public synchronized void start(FrameListener listener) {
+        if (mScheduler != null) {
+            return;
+        }
+        mListener = listener;
+        mBufferPool.start(new PreviewBufferPool.Recycler() {
+            @Override
+            public void recycle(byte[] buffer) {
+                mFreeBuffers.offer(buffer);
+            }
+        });
+        mScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, "SyntheticCamera");
+            }
+        });
+        mScheduler.scheduleAtFixedRate(mProduce, mStartDelayNanos, mConfig.getFrameIntervalNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void stop() {
+        ScheduledExecutorService scheduler;
+        synchronized (this) {
+            scheduler = mScheduler;
+            mScheduler = null;
+        }
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        mBufferPool.stop();
+        mFreeBuffers.clear();
+    }
+
+    @Override
+    public CameraConfig getConfig() {
+        return mConfig;
+    }
+
+    @Override
+    public PreviewBufferPool.Stats getBufferStats() {
+        return mBufferPool.getStats();
+    }
+
+    /**
+     * 리스너가 RuntimeException 을 던진 프레임 수입니다. 예외가 나도 다음 프레임을 계속 만듭니다.
+     */
+    public long getFailedFrames() {
+        return mFailedFrames.get();
+    }
+
+    private final Runnable mProduce = new Runnable() {
+        @Override
+        public void run() {
+            long tick = mTick++;
+            byte[] buffer = mFreeBuffers.poll();
+            if (buffer == null) {
+                return;
+            }
+            fill(buffer, tick);
+            Frame frame = mBufferPool.onFrameDelivered(buffer, System.nanoTime());
+            if (frame == null) {
+                return;
+            }
+            try {
+                mListener.onFrame(frame);
+            } catch (RuntimeException e) {
+                // 예외가 빠져나가면 scheduleAtFixedRate 가 이후 실행을 조용히 취소해 프레임이 끊깁니다.
+                mFailedFrames.incrementAndGet();
+            } finally {
+                frame.release();
+            }
+        }
+    };
+
+    /**
+     * tick 마다 한 픽셀씩 대각선으로 움직이는 밝은 사각형을 그립니다. 색차는 회색(128)으로 채웁니다.
+     */
+    private void fill(byte[] nv21, long tick) {
+        int width = mConfig.previewWidth;
+        int height = mConfig.previewHeight;
+        int box = Math.max(1, Math.min(width, height) / BOX_SIZE_DIVISOR);
+        int boxX = (int) (tick % Math.max(1, width - box));
+        int boxY = (int) (tick % Math.max(1, height - box));
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            System.arraycopy(mGradientRow, 0, nv21, row, width);
+            if (y >= boxY && y < boxY + box) {
+                Arrays.fill(nv21, row + boxX, row + boxX + box, (byte) 255);
+            }
+        }
+        Arrays.fill(nv21, width * height, width * height + width * height / 2, (byte) 128);
+    }
+}
@@ -0,0 +1,174 @@
+package example.pnc.msshin.cameratest;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 프리뷰 프레임을 JPEG 으로 인코딩해 MjpegAviWriter 로 녹화합니다. FramePipeline 단계로 붙여 쓰므로
+ * 인코딩이 느려도 카메라 스레드는 멈추지 않고, 단계의 큐가 넘친 프레임은 버려집니다.
+ * 파일은 고정 fps 이며 프레임 타임스탬프로 위치를 정합니다.
+ * <ul>
+ * <li>같은 위치에 이미 프레임이 있으면 건너뜁니다. (카메라가 녹화 fps 보다 빠를 때)</li>
+ * <li>위치가 비면 빈 프레임으로 채워 앞 프레임이 그만큼 더 보이게 합니다. (드롭이나 인코딩 실패)</li>
+ * </ul>
+ */
+public class VideoRecorder implements FramePipeline.FrameProcessor {
+
+    public static class Stats {
+        public final long recordedFrames;
+        public final long repeatedFrames;
+        public final long skippedFrames;
+        public final long failedFrames;
+        public final long droppedFrames;
+        public final long bytesWritten;
+        public final long durationMillis;
+        public final CameraMetrics.Latency encodeDuration;
+
+        Stats(long recordedFrames, long repeatedFrames, long skippedFrames, long failedFrames, long droppedFrames,
+              long bytesWritten, long durationMillis, CameraMetrics.Latency encodeDuration) {
+            this.recordedFrames = recordedFrames;
+            this.repeatedFrames = repeatedFrames;
+            this.skippedFrames = skippedFrames;
+            this.failedFrames = failedFrames;
+            this.droppedFrames = droppedFrames;
+            this.bytesWritten = bytesWritten;
+            this.durationMillis = durationMillis;
+            this.encodeDuration = encodeDuration;
+        }
+
+        @Override
+        public String toString() {
+            return "recorded:" + recordedFrames + ", repeated:" + repeatedFrames + ", skipped:" + skippedFrames
+                    + ", failed:" + failedFrames + ", dropped:" + droppedFrames + ", bytes:" + bytesWritten
+                    + ", duration:" + durationMillis + "ms, encode[" + encodeDuration + "]";
+        }
+    }
+
+    private final File mFile;
+    private final int mFps;
+    private final int mQuality;
+    private final long mFrameIntervalNanos;
+    private final FrameEncoder mFrameEncoder;
+    private final CaptureMemoryManager mMemoryManager;
+    private final LatencyHistogram mEncodeDuration = new LatencyHistogram();
+    private volatile FramePipeline.Stage mStage;
+    private MjpegAviWriter mWriter;
+    private CaptureBuffer mBuffer;
+    private int mWidth;
+    private int mHeight;
+    private long mStartTimestampNanos;
+    private long mRecordedFrames;
+    private long mRepeatedFrames;
+    private long mSkippedFrames;
+    private long mFailedFrames;
+    private long mBytesWritten;
+    private IOException mError;
+    private boolean mIsClosed;
+
+    /**
+     * 인코딩 버퍼는 녹화하는 동안 memoryManager 에서 하나 빌려 계속 재사용합니다.
+     */
+    public VideoRecorder(File file, int fps, int quality, FrameEncoder frameEncoder, CaptureMemoryManager memoryManager) {
+        if (fps < 1) {
+            throw new IllegalArgumentException("fps must be positive: " + fps);
+        }
+        mFile = file;
+        mFps = fps;
+        mQuality = quality;
+        mFrameIntervalNanos = 1000000000L / fps;
+        mFrameEncoder = frameEncoder;
+        mMemoryManager = memoryManager;
+    }
+
+    public File getFile() {
+        return mFile;
+    }
+
+    void setStage(FramePipeline.Stage stage) {
+        mStage = stage;
+    }
+
+    /**
+     * 첫 프레임의 크기와 타임스탬프로 녹화를 시작하며, 크기가 다른 프레임은 기록하지 않습니다.
+     */
+    @Override
+    public synchronized void process(Frame frame) {
+        if (mIsClosed || mError != null) {
+            return;
+        }
+        try {
+            if (mWriter == null) {
+                mBuffer = mMemoryManager.acquire();
+                if (mBuffer == null) {
+                    throw new IOException("no capture buffer for recording");
+                }
+                mWidth = frame.getWidth();
+                mHeight = frame.getHeight();
+                mStartTimestampNanos = frame.getTimestampNanos();
+                mWriter = new MjpegAviWriter(mFile, mWidth, mHeight, mFps);
+            }
+            if (frame.getWidth() != mWidth || frame.getHeight() != mHeight) {
+                mSkippedFrames++;
+                return;
+            }
+            long position = (frame.getTimestampNanos() - mStartTimestampNanos + mFrameIntervalNanos / 2)
+                    / mFrameIntervalNanos;
+            if (position < mWriter.getFrameCount()) {
+                mSkippedFrames++;
+                return;
+            }
+            while (mWriter.getFrameCount() < position) {
+                mWriter.writeEmptyFrame();
+                mRepeatedFrames++;
+            }
+
+            mBuffer.reset();
+            long start = System.nanoTime();
+            try {
+                mFrameEncoder.encode(frame.data, mWidth, mHeight, mQuality, mBuffer);
+            } catch (IOException e) {
+                // 이 위치는 다음 프레임이 빈 프레임으로 채웁니다.
+                mFailedFrames++;
+                return;
+            }
+            mEncodeDuration.record(System.nanoTime() - start);
+            mWriter.writeFrame(mBuffer.getData(), mBuffer.size());
+            mRecordedFrames++;
+            mBytesWritten += mBuffer.size();
+        } catch (IOException e) {
+            mError = e;
+        }
+    }
+
+    /**
+     * 기록 중 발생한 첫 오류를 돌려줍니다. 오류가 나면 이후 프레임은 기록하지 않습니다.
+     */
+    public synchronized IOException getError() {
+        return mError;
+    }
+
+    public synchronized Stats getStats() {
+        FramePipeline.Stage stage = mStage;
+        long frameCount = mWriter != null ? mWriter.getFrameCount() : 0;
+        return new Stats(mRecordedFrames, mRepeatedFrames, mSkippedFrames, mFailedFrames,
+                stage != null ? stage.getDroppedFrames() : 0, mBytesWritten, frameCount * 1000 / mFps,
+                new CameraMetrics.Latency(mEncodeDuration));
+    }
+
+    /**
+     * 파일의 색인과 헤더를 마무리합니다. 한 프레임도 받지 못했으면 파일을 만들지 않습니다.
+     */
+    public synchronized void close() throws IOException {
+        if (mIsClosed) {
+            return;
+        }
+        mIsClosed = true;
+        if (mBuffer != null) {
+            mBuffer.release();
+            mBuffer = null;
+        }
+        if (mWriter != null) {
+            mWriter.close();
+        }
+    }
+}
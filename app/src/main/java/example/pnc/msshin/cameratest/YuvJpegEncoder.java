@@ -0,0 +1,22 @@
+package example.pnc.msshin.cameratest;
+
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.graphics.YuvImage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * 안드로이드 YuvImage 를 이용하는 기본 인코더입니다.
+ */
+public class YuvJpegEncoder implements FrameEncoder {
+
+    @Override
+    public void encode(byte[] nv21, int width, int height, int quality, OutputStream out) throws IOException {
+        YuvImage yuv = new YuvImage(nv21, ImageFormat.NV21, width, height, null);
+        if (!yuv.compressToJpeg(new Rect(0, 0, width, height), quality, out)) {
+            throw new IOException("compressToJpeg failed: " + width + "x" + height);
+        }
+    }
+}
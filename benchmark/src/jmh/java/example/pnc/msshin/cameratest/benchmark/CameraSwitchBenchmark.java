@@ -0,0 +1,98 @@
+package example.pnc.msshin.cameratest.benchmark;
+
+import example.pnc.msshin.cameratest.CameraSessionManager;
+import example.pnc.msshin.cameratest.CameraSource;
+import example.pnc.msshin.cameratest.Frame;
+import example.pnc.msshin.cameratest.FrameEncoder;
+import example.pnc.msshin.cameratest.SyntheticCameraSource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 합성 카메라 두 개(후면 1280x720, 전면 640x480, 30fps)를 번갈아 쓸 때 전환 후 첫 프레임까지의 시간을 측정합니다.
+ * warmSwitch 는 두 카메라를 열어 둔 채 활성만 넘기고, coldSwitch 는 지금 카메라를 닫고 다른 카메라를 새로 엽니다.
+ * openDelayMillis 는 카메라를 열고 첫 프레임이 나올 때까지의 시간으로, 0 이면 여는 비용이 없는 경우입니다.
+ */
+@State(Scope.Benchmark)
+public class CameraSwitchBenchmark {
+    private static final String BACK = "back";
+    private static final String FRONT = "front";
+
+    @Param({"0", "300"})
+    public long openDelayMillis;
+
+    private CameraSessionManager mManager;
+    private SyntheticCameraSource mBackSource;
+    private SyntheticCameraSource mFrontSource;
+    private volatile int mExpectedWidth;
+    private volatile CountDownLatch mFirstFrame;
+
+    @Setup
+    public void setUp() {
+        mManager = new CameraSessionManager(new FrameEncoder() {
+            @Override
+            public void encode(byte[] nv21, int width, int height, int quality, OutputStream out) throws IOException {
+                out.write(nv21, 0, SyntheticFrames.nv21Size(width, height));
+            }
+        }, null);
+        mManager.setActiveFrameListener(new CameraSource.FrameListener() {
+            @Override
+            public void onFrame(Frame frame) {
+                CountDownLatch firstFrame = mFirstFrame;
+                if (firstFrame != null && frame.getWidth() == mExpectedWidth) {
+                    firstFrame.countDown();
+                }
+            }
+        });
+        mBackSource = new SyntheticCameraSource(1280, 720, 30, 4);
+        mFrontSource = new SyntheticCameraSource(640, 480, 30, 4);
+        mBackSource.setStartDelayMillis(openDelayMillis);
+        mFrontSource.setStartDelayMillis(openDelayMillis);
+        mManager.openCamera(BACK, mBackSource);
+        mManager.openCamera(FRONT, mFrontSource);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mManager.close();
+    }
+
+    @Benchmark
+    public boolean warmSwitch() throws InterruptedException {
+        String target = BACK.equals(mManager.getActiveCameraId()) ? FRONT : BACK;
+        CountDownLatch firstFrame = expect(target);
+        mManager.switchTo(target);
+        return firstFrame.await(2, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    public boolean coldSwitch() throws InterruptedException {
+        String current = mManager.getActiveCameraId();
+        String target = BACK.equals(current) ? FRONT : BACK;
+        CountDownLatch firstFrame = expect(target);
+        // 지금 카메라를 닫으면 활성 카메라가 없어지므로 다시 연 카메라가 활성이 됩니다.
+        mManager.closeCamera(target);
+        mManager.closeCamera(current);
+        mManager.openCamera(target, BACK.equals(target) ? mBackSource : mFrontSource);
+        boolean switched = firstFrame.await(2, TimeUnit.SECONDS);
+        mManager.openCamera(current, BACK.equals(current) ? mBackSource : mFrontSource);
+        return switched;
+    }
+
+    private CountDownLatch expect(String cameraId) {
+        CountDownLatch firstFrame = new CountDownLatch(1);
+        mExpectedWidth = BACK.equals(cameraId) ? 1280 : 640;
+        mFirstFrame = firstFrame;
+        return firstFrame;
+    }
+}
@@ -0,0 +1,76 @@
+package example.pnc.msshin.cameratest.benchmark;
+
+import example.pnc.msshin.cameratest.CaptureSession;
+import example.pnc.msshin.cameratest.FrameEncoder;
+import example.pnc.msshin.cameratest.SyntheticCameraSource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 합성 카메라가 30fps 로 프레임을 보내는 동안 CaptureSession.takePicture() 의 지연을 측정합니다.
+ * 인코더는 NV21 을 그대로 복사하므로 인코딩 비용을 뺀 촬영 경로(최신 프레임 획득, 콜백, 출력 복사)만 측정됩니다.
+ */
+@State(Scope.Benchmark)
+public class CaptureSessionBenchmark {
+
+    @Param({SyntheticFrames.HD, SyntheticFrames.FHD})
+    public String resolution;
+
+    private SyntheticCameraSource mSource;
+    private CaptureSession mSession;
+
+    @Setup
+    public void setUp() throws InterruptedException {
+        mSource = new SyntheticCameraSource(SyntheticFrames.width(resolution), SyntheticFrames.height(resolution), 30, 4);
+        mSession = new CaptureSession(new FrameEncoder() {
+            @Override
+            public void encode(byte[] nv21, int width, int height, int quality, OutputStream out) throws IOException {
+                out.write(nv21, 0, SyntheticFrames.nv21Size(width, height));
+            }
+        }, null);
+        mSource.start(mSession);
+        takePicture();
+    }
+
+    @TearDown
+    public void tearDown() {
+        mSource.stop();
+        mSession.close();
+    }
+
+    @Benchmark
+    public int takePicture() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicInteger size = new AtomicInteger();
+        mSession.takePicture(new CaptureSession.OnCaptureListener() {
+            @Override
+            public void onCapturedData(byte[] data) {
+                size.set(data.length);
+                latch.countDown();
+            }
+
+            @Override
+            public void onTimeOut() {
+                latch.countDown();
+            }
+
+            @Override
+            public void onSkipped() {
+                latch.countDown();
+            }
+        }, 1000);
+        latch.await(2, TimeUnit.SECONDS);
+        return size.get();
+    }
+}
@@ -0,0 +1,59 @@
+package example.pnc.msshin.cameratest.benchmark;
+
+import example.pnc.msshin.cameratest.Frame;
+import example.pnc.msshin.cameratest.PreviewBufferPool;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayDeque;
+
+/**
+ * CameraPreview 의 프리뷰 콜백이 프레임마다 하는 일(버퍼 수신, 최신 프레임 교체, 반환)을 측정합니다.
+ * 카메라 대신 큐가 버퍼를 돌려주며, 정상 상태에서 프레임당 할당이 0 이어야 합니다.
+ */
+@State(Scope.Thread)
+public class FrameDeliveryBenchmark {
+
+    @Param({SyntheticFrames.HD, SyntheticFrames.FHD, SyntheticFrames.UHD})
+    public String resolution;
+
+    private final ArrayDeque<byte[]> mCameraQueue = new ArrayDeque<>();
+    private PreviewBufferPool mPool;
+    private Frame mLatestFrame;
+    private long mTimestampNanos;
+
+    @Setup
+    public void setUp() {
+        int width = SyntheticFrames.width(resolution);
+        int height = SyntheticFrames.height(resolution);
+        mPool = new PreviewBufferPool(4, width, height, 17, 12);
+        mPool.start(new PreviewBufferPool.Recycler() {
+            @Override
+            public void recycle(byte[] buffer) {
+                mCameraQueue.addLast(buffer);
+            }
+        });
+        for (byte[] buffer : mCameraQueue) {
+            SyntheticFrames.fillNv21(buffer, width, height, 1);
+        }
+    }
+
+    @Benchmark
+    public long deliverFrame() {
+        mTimestampNanos += 33333333L;
+        Frame frame = mPool.onFrameDelivered(mCameraQueue.pollFirst(), mTimestampNanos);
+        frame.retain();
+        Frame oldFrame = mLatestFrame;
+        mLatestFrame = frame;
+        if (oldFrame != null) {
+            oldFrame.release();
+        }
+        long checksum = frame.data[frame.data.length / 2];
+        frame.release();
+        return checksum;
+    }
+}
@@ -0,0 +1,73 @@
+package example.pnc.msshin.cameratest.benchmark;
+
+import example.pnc.msshin.cameratest.CameraConfig;
+import example.pnc.msshin.cameratest.Frame;
+import example.pnc.msshin.cameratest.FrameRing;
+import example.pnc.msshin.cameratest.PreviewBufferPool;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * FrameRing 에 프레임을 넣는 비용(복사 + 초점 점수, 카메라 스레드에서 프레임마다 발생)과
+ * 트리거 시각에 맞는 프레임을 골라 복사본으로 꺼내는 비용을 측정합니다.
+ */
+@State(Scope.Thread)
+public class FrameRingBenchmark {
+
+    @Param({SyntheticFrames.HD, SyntheticFrames.FHD})
+    public String resolution;
+
+    @Param({"8"})
+    public int capacity;
+
+    private FrameRing mRing;
+    private Frame mFrame;
+    private long mTimestampNanos;
+
+    @Setup
+    public void setUp() {
+        int width = SyntheticFrames.width(resolution);
+        int height = SyntheticFrames.height(resolution);
+        mRing = new FrameRing(capacity, width, height);
+        PreviewBufferPool pool = new PreviewBufferPool(1, width, height, CameraConfig.FORMAT_NV21, 12);
+        final byte[][] buffer = new byte[1][];
+        pool.start(new PreviewBufferPool.Recycler() {
+            @Override
+            public void recycle(byte[] data) {
+                buffer[0] = data;
+            }
+        });
+        SyntheticFrames.fillNv21(buffer[0], width, height, 1);
+        mFrame = pool.onFrameDelivered(buffer[0], System.nanoTime());
+        for (int i = 0; i < capacity; i++) {
+            mRing.publish(mFrame);
+        }
+        mTimestampNanos = mFrame.getTimestampNanos();
+    }
+
+    @Benchmark
+    public FrameRing publish() {
+        mRing.publish(mFrame);
+        return mRing;
+    }
+
+    @Benchmark
+    public int acquireClosest() {
+        FrameRing.Snapshot snapshot = mRing.acquire(mTimestampNanos, FrameRing.Selection.CLOSEST);
+        int score = snapshot.getFocusScore();
+        snapshot.release();
+        return score;
+    }
+
+    @Benchmark
+    public int acquireSharpest() {
+        FrameRing.Snapshot snapshot = mRing.acquire(mTimestampNanos, FrameRing.Selection.SHARPEST);
+        int score = snapshot.getFocusScore();
+        snapshot.release();
+        return score;
+    }
+}
@@ -0,0 +1,62 @@
+package example.pnc.msshin.cameratest.benchmark;
+
+import example.pnc.msshin.cameratest.FrameEncoder;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * JVM 에서 YuvJpegEncoder 대신 쓰는 ImageIO 기반 인코더입니다. NV21 을 BGR 로 바꾼 뒤 인코딩합니다.
+ */
+final class ImageIoJpegEncoder implements FrameEncoder {
+    private final ImageWriter mWriter = ImageIO.getImageWritersByFormatName("jpeg").next();
+    private BufferedImage mImage;
+
+    @Override
+    public void encode(byte[] nv21, int width, int height, int quality, OutputStream out) throws IOException {
+        if (mImage == null || mImage.getWidth() != width || mImage.getHeight() != height) {
+            mImage = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        }
+        toBgr(nv21, width, height, ((DataBufferByte) mImage.getRaster().getDataBuffer()).getData());
+
+        ImageWriteParam param = mWriter.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(quality / 100f);
+        ImageOutputStream stream = ImageIO.createImageOutputStream(out);
+        try {
+            mWriter.setOutput(stream);
+            mWriter.write(null, new IIOImage(mImage, null, null), param);
+        } finally {
+            stream.close();
+        }
+    }
+
+    private static void toBgr(byte[] nv21, int width, int height, byte[] bgr) {
+        int frameSize = width * height;
+        for (int y = 0; y < height; y++) {
+            int uvRow = frameSize + (y >> 1) * width;
+            for (int x = 0; x < width; x++) {
+                int luma = (nv21[y * width + x] & 0xff) - 16;
+                int v = (nv21[uvRow + (x & ~1)] & 0xff) - 128;
+                int u = (nv21[uvRow + (x & ~1) + 1] & 0xff) - 128;
+                int c = 298 * Math.max(luma, 0);
+                int i = (y * width + x) * 3;
+                bgr[i] = clamp((c + 516 * u + 128) >> 8);
+                bgr[i + 1] = clamp((c - 100 * u - 208 * v + 128) >> 8);
+                bgr[i + 2] = clamp((c + 409 * v + 128) >> 8);
+            }
+        }
+    }
+
+    private static byte clamp(int value) {
+        return (byte) (value < 0 ? 0 : value > 255 ? 255 : value);
+    }
+}
@@ -0,0 +1,85 @@
+package example.pnc.msshin.cameratest.benchmark;
+
+import example.pnc.msshin.cameratest.CaptureBuffer;
+import example.pnc.msshin.cameratest.CaptureSession;
+import example.pnc.msshin.cameratest.JpegQualityController;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+
+/**
+ * 합성 프레임을 JpegQualityController 를 거쳐 인코딩하면서 품질이 목표 파일 크기로 수렴하는지 봅니다.
+ * 파일 크기와 품질/축소 배율의 합계를 보조 카운터(Output)로 결과에 남기며,
+ * targetBytes 가 0 이면 품질 100 고정과 비교합니다.
+ */
+@State(Scope.Thread)
+public class JpegQualityControllerBenchmark {
+
+    @Param({SyntheticFrames.HD})
+    public String resolution;
+
+    @Param({"0", "200000", "20000"})
+    public long targetBytes;
+
+    private CaptureBuffer mOut;
+    private CaptureSession mSession;
+    private byte[][] mFrames;
+    private int mWidth;
+    private int mHeight;
+    private int mIndex;
+
+    @Setup
+    public void setUp() {
+        mWidth = SyntheticFrames.width(resolution);
+        mHeight = SyntheticFrames.height(resolution);
+        mFrames = new byte[4][];
+        for (int i = 0; i < mFrames.length; i++) {
+            mFrames[i] = SyntheticFrames.createNv21(mWidth, mHeight, i);
+        }
+        mSession = new CaptureSession(new ImageIoJpegEncoder(), null);
+        mSession.setQualityController(targetBytes > 0
+                ? JpegQualityController.targetSize(targetBytes).setMaxDownscale(4)
+                : JpegQualityController.fixed(100));
+        mOut = mSession.getMemoryManager().acquire();
+    }
+
+    /**
+     * 결과에 함께 기록되는 합계입니다. 반복을 거치며 더해지므로 encodes 로 나누면 인코딩 한 번의 평균이 됩니다.
+     * 처리량 모드에서만 보고됩니다.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Output {
+        public long encodes;
+        public long jpegBytes;
+        public long quality;
+        public long downscale;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            encodes = 0;
+            jpegBytes = 0;
+            quality = 0;
+            downscale = 0;
+        }
+    }
+
+    @Benchmark
+    public int encode(Output output) throws IOException {
+        mOut.reset();
+        JpegQualityController controller = mSession.getQualityController();
+        output.quality += controller.getQuality();
+        output.downscale += controller.getDownscale();
+        mSession.encodeJpeg(mFrames[mIndex++ & 3], mWidth, mHeight, mOut);
+        output.jpegBytes += mOut.size();
+        output.encodes++;
+        return mOut.size();
+    }
+}
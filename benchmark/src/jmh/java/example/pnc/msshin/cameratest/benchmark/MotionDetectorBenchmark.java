@@ -0,0 +1,57 @@
+package example.pnc.msshin.cameratest.benchmark;
+
+import example.pnc.msshin.cameratest.MotionDetector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * MotionDetector 가 프리뷰 프레임마다 더하는 비용을 측정합니다.
+ * staticScene 은 같은 프레임이 계속 들어와 모두 걸러지는 경우, changingScene 은 두 프레임이 번갈아 들어와 모두 통과하는 경우입니다.
+ */
+@State(Scope.Thread)
+public class MotionDetectorBenchmark {
+
+    @Param({SyntheticFrames.HD, SyntheticFrames.FHD, SyntheticFrames.UHD})
+    public String resolution;
+
+    @Param({"2", "4", "8"})
+    public int sampleStep;
+
+    private int mWidth;
+    private int mHeight;
+    private byte[][] mFrames;
+    private MotionDetector mDetector;
+    private long mTimestamp;
+
+    @Setup
+    public void setUp() {
+        mWidth = SyntheticFrames.width(resolution);
+        mHeight = SyntheticFrames.height(resolution);
+        byte[] frame = SyntheticFrames.createNv21(mWidth, mHeight, 1);
+        // 화면의 1/16 을 차지하는 물체가 나타난 프레임입니다.
+        byte[] moved = frame.clone();
+        for (int y = mHeight / 4; y < mHeight / 2; y++) {
+            for (int x = mWidth / 4; x < mWidth / 2; x++) {
+                moved[y * mWidth + x] = (byte) (255 - (moved[y * mWidth + x] & 0xff));
+            }
+        }
+        mFrames = new byte[][]{frame, moved};
+        mDetector = new MotionDetector(new MotionDetector.Config().setSampleStep(sampleStep));
+        mDetector.process(mFrames[0], mWidth, mHeight, 0);
+    }
+
+    @Benchmark
+    public boolean staticScene() {
+        return mDetector.process(mFrames[0], mWidth, mHeight, mTimestamp += 33000000L);
+    }
+
+    @Benchmark
+    public boolean changingScene() {
+        mTimestamp += 33000000L;
+        return mDetector.process(mFrames[(int) (mTimestamp / 33000000L) & 1], mWidth, mHeight, mTimestamp);
+    }
+}
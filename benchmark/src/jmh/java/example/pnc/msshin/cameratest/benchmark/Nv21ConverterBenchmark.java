@@ -0,0 +1,79 @@
+package example.pnc.msshin.cameratest.benchmark;
+
+import example.pnc.msshin.cameratest.Nv21Converter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Nv21Converter 의 ARGB/회색조 변환이 스레드 수에 따라 어떻게 빨라지는지 측정합니다.
+ * floatArgb 는 픽셀마다 실수 연산을 하는 단일 스레드 변환으로, threads 와 관계없는 기준값입니다.
+ * threads 가 실제 코어 수보다 많으면 더 빨라지지 않습니다.
+ */
+@State(Scope.Thread)
+public class Nv21ConverterBenchmark {
+
+    @Param({SyntheticFrames.FHD, SyntheticFrames.UHD})
+    public String resolution;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    private int mWidth;
+    private int mHeight;
+    private byte[] mFrame;
+    private int[] mArgb;
+    private Nv21Converter mConverter;
+
+    @Setup
+    public void setUp() {
+        mWidth = SyntheticFrames.width(resolution);
+        mHeight = SyntheticFrames.height(resolution);
+        mFrame = SyntheticFrames.createNv21(mWidth, mHeight, 1);
+        mArgb = new int[mWidth * mHeight];
+        mConverter = new Nv21Converter(threads);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mConverter.close();
+    }
+
+    @Benchmark
+    public int[] toArgb() {
+        mConverter.toArgb(mFrame, mWidth, mHeight, mArgb);
+        return mArgb;
+    }
+
+    @Benchmark
+    public int[] toGrayArgb() {
+        mConverter.toGrayArgb(mFrame, mWidth, mHeight, mArgb);
+        return mArgb;
+    }
+
+    @Benchmark
+    public int[] floatArgb() {
+        int frameSize = mWidth * mHeight;
+        for (int y = 0; y < mHeight; y++) {
+            int uvRow = frameSize + (y >> 1) * mWidth;
+            for (int x = 0; x < mWidth; x++) {
+                float luma = mFrame[y * mWidth + x] & 0xff;
+                float v = (mFrame[uvRow + (x & ~1)] & 0xff) - 128f;
+                float u = (mFrame[uvRow + (x & ~1) + 1] & 0xff) - 128f;
+                int r = clamp(luma + 1.402f * v);
+                int g = clamp(luma - 0.344f * u - 0.714f * v);
+                int b = clamp(luma + 1.772f * u);
+                mArgb[y * mWidth + x] = 0xff000000 | (r << 16) | (g << 8) | b;
+            }
+        }
+        return mArgb;
+    }
+
+    private static int clamp(float value) {
+        return value < 0 ? 0 : value > 255 ? 255 : (int) value;
+    }
+}
@@ -0,0 +1,66 @@
+package example.pnc.msshin.cameratest.benchmark;
+
+import example.pnc.msshin.cameratest.Nv21JpegEncoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Nv21JpegEncoder 가 스레드 수(스트립 병렬 인코딩)에 따라 어떻게 빨라지는지 측정합니다.
+ * threads=1 은 restart 마커 없이 한 스레드에서 인코딩하는 경우이고, imageIo 는 threads 와 관계없는 기준값입니다.
+ * threads 가 실제 코어 수보다 많으면 더 빨라지지 않습니다.
+ */
+@State(Scope.Thread)
+public class Nv21JpegEncoderBenchmark {
+
+    @Param({SyntheticFrames.HD, SyntheticFrames.FHD})
+    public String resolution;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    @Param({"90"})
+    public int quality;
+
+    private int mWidth;
+    private int mHeight;
+    private byte[] mFrame;
+    private final ByteArrayOutputStream mOut = new ByteArrayOutputStream(1024 * 1024);
+    private Nv21JpegEncoder mEncoder;
+    private ImageIoJpegEncoder mImageIoEncoder;
+
+    @Setup
+    public void setUp() {
+        mWidth = SyntheticFrames.width(resolution);
+        mHeight = SyntheticFrames.height(resolution);
+        mFrame = SyntheticFrames.createNv21(mWidth, mHeight, 1);
+        mEncoder = new Nv21JpegEncoder(threads);
+        mImageIoEncoder = new ImageIoJpegEncoder();
+    }
+
+    @TearDown
+    public void tearDown() {
+        mEncoder.close();
+    }
+
+    @Benchmark
+    public int encode() throws IOException {
+        mOut.reset();
+        mEncoder.encode(mFrame, mWidth, mHeight, quality, mOut);
+        return mOut.size();
+    }
+
+    @Benchmark
+    public int imageIo() throws IOException {
+        mOut.reset();
+        mImageIoEncoder.encode(mFrame, mWidth, mHeight, quality, mOut);
+        return mOut.size();
+    }
+}
@@ -0,0 +1,58 @@
+package example.pnc.msshin.cameratest.benchmark;
+
+import example.pnc.msshin.cameratest.CaptureRegion;
+import example.pnc.msshin.cameratest.Nv21Resampler;
+import example.pnc.msshin.cameratest.Nv21Scaler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * takePicture(region) 과 프리뷰 영역 콜백이 인코딩 전에 하는 NV21 잘라내기/축소 비용을 측정합니다.
+ * scaleFullFrame 은 프레임 전체를 output 크기로, cropCenter 는 가운데 output 크기만큼 잘라냅니다.
+ * BILINEAR 와 잘라내기는 output 크기에 비례하고, BOX 는 읽는 원본 영역 크기에 비례합니다.
+ */
+@State(Scope.Thread)
+public class Nv21ResampleBenchmark {
+
+    @Param({SyntheticFrames.FHD, SyntheticFrames.UHD})
+    public String resolution;
+
+    @Param({"320x180", "640x360", "1280x720"})
+    public String output;
+
+    @Param({"BOX", "BILINEAR"})
+    public Nv21Scaler.Filter filter;
+
+    private int mWidth;
+    private int mHeight;
+    private byte[] mFrame;
+    private final Nv21Resampler mResampler = new Nv21Resampler();
+    private CaptureRegion mScaleRegion;
+    private CaptureRegion mCropRegion;
+
+    @Setup
+    public void setUp() {
+        mWidth = SyntheticFrames.width(resolution);
+        mHeight = SyntheticFrames.height(resolution);
+        mFrame = SyntheticFrames.createNv21(mWidth, mHeight, 1);
+        int outputWidth = SyntheticFrames.width(output);
+        int outputHeight = SyntheticFrames.height(output);
+        mScaleRegion = new CaptureRegion().setOutputSize(outputWidth, outputHeight).setFilter(filter);
+        mCropRegion = new CaptureRegion().setCrop((mWidth - outputWidth) / 2, (mHeight - outputHeight) / 2,
+                outputWidth, outputHeight).setFilter(filter);
+    }
+
+    @Benchmark
+    public byte[] scaleFullFrame() {
+        return mResampler.resample(mFrame, mWidth, mHeight, mScaleRegion, 1);
+    }
+
+    @Benchmark
+    public byte[] cropCenter() {
+        return mResampler.resample(mFrame, mWidth, mHeight, mCropRegion, 1);
+    }
+}
@@ -0,0 +1,108 @@
+package example.pnc.msshin.cameratest.benchmark;
+
+import example.pnc.msshin.cameratest.Nv21Transform;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * NV21 회전/좌우 반전 비용을 측정합니다.
+ * argbRotateMirror 는 기존 takePreview() 의 Bitmap 경로(ARGB 변환, 회전, 반전마다 새 버퍼 할당)를 JVM 에서 흉내낸 기준값입니다.
+ */
+@State(Scope.Thread)
+public class Nv21TransformBenchmark {
+
+    @Param({SyntheticFrames.HD, SyntheticFrames.FHD, SyntheticFrames.UHD})
+    public String resolution;
+
+    @Param({"0", "90", "180", "270"})
+    public int rotation;
+
+    @Param({"false", "true"})
+    public boolean mirror;
+
+    private int mWidth;
+    private int mHeight;
+    private byte[] mFrame;
+    private Nv21Transform mTransform;
+
+    @Setup
+    public void setUp() {
+        mWidth = SyntheticFrames.width(resolution);
+        mHeight = SyntheticFrames.height(resolution);
+        mFrame = SyntheticFrames.createNv21(mWidth, mHeight, 1);
+        mTransform = new Nv21Transform();
+    }
+
+    @Benchmark
+    public byte[] nv21Transform() {
+        return mTransform.transform(mFrame, mWidth, mHeight, rotation, mirror);
+    }
+
+    @Benchmark
+    public int[] argbRotateMirror() {
+        int[] argb = new int[mWidth * mHeight];
+        int frameSize = mWidth * mHeight;
+        for (int y = 0; y < mHeight; y++) {
+            int uvRow = frameSize + (y >> 1) * mWidth;
+            for (int x = 0; x < mWidth; x++) {
+                float luma = mFrame[y * mWidth + x] & 0xff;
+                float v = (mFrame[uvRow + (x & ~1)] & 0xff) - 128f;
+                float u = (mFrame[uvRow + (x & ~1) + 1] & 0xff) - 128f;
+                int r = clamp(luma + 1.402f * v);
+                int g = clamp(luma - 0.344f * u - 0.714f * v);
+                int b = clamp(luma + 1.772f * u);
+                argb[y * mWidth + x] = 0xff000000 | (r << 16) | (g << 8) | b;
+            }
+        }
+
+        boolean isSwapped = rotation == 90 || rotation == 270;
+        int outWidth = isSwapped ? mHeight : mWidth;
+        int outHeight = isSwapped ? mWidth : mHeight;
+        int[] rotated = new int[argb.length];
+        for (int y = 0; y < mHeight; y++) {
+            for (int x = 0; x < mWidth; x++) {
+                int ox;
+                int oy;
+                switch (rotation) {
+                    case 90:
+                        ox = mHeight - 1 - y;
+                        oy = x;
+                        break;
+                    case 180:
+                        ox = mWidth - 1 - x;
+                        oy = mHeight - 1 - y;
+                        break;
+                    case 270:
+                        ox = y;
+                        oy = mWidth - 1 - x;
+                        break;
+                    default:
+                        ox = x;
+                        oy = y;
+                        break;
+                }
+                rotated[oy * outWidth + ox] = argb[y * mWidth + x];
+            }
+        }
+        if (!mirror) {
+            return rotated;
+        }
+
+        int[] mirrored = new int[rotated.length];
+        for (int y = 0; y < outHeight; y++) {
+            int row = y * outWidth;
+            for (int x = 0; x < outWidth; x++) {
+                mirrored[row + outWidth - 1 - x] = rotated[row + x];
+            }
+        }
+        return mirrored;
+    }
+
+    private static int clamp(float value) {
+        return value < 0 ? 0 : value > 255 ? 255 : (int) value;
+    }
+}
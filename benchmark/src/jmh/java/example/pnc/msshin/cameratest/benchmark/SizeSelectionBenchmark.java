@@ -0,0 +1,72 @@
+package example.pnc.msshin.cameratest.benchmark;
+
+import example.pnc.msshin.cameratest.CameraCapabilities;
+import example.pnc.msshin.cameratest.SizeSelector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * createCamera() 의 해상도 선택 로직(getOptimalPreviewSize, checkSupportedPictureSizeAtPreviewSize)을 측정합니다.
+ * 지원 해상도 목록은 일반적인 후면 카메라 드라이버가 돌려주는 목록을 본떴습니다.
+ * cached* 는 같은 선택을 정렬/비율 색인된 CameraCapabilities 로 했을 때입니다.
+ */
+@State(Scope.Thread)
+public class SizeSelectionBenchmark {
+    private static final int[][] PREVIEW_SIZES = {
+            {3840, 2160}, {2560, 1440}, {1920, 1080}, {1600, 1200}, {1440, 1080}, {1280, 960},
+            {1280, 720}, {1056, 864}, {1024, 768}, {960, 720}, {800, 600}, {800, 480},
+            {720, 480}, {640, 480}, {640, 360}, {480, 360}, {352, 288}, {320, 240}, {176, 144},
+    };
+    private static final int[][] PICTURE_SIZES = {
+            {4032, 3024}, {4032, 2268}, {4000, 3000}, {3264, 2448}, {3264, 1836}, {3024, 3024},
+            {2976, 2976}, {2880, 2160}, {2592, 1944}, {2560, 1920}, {2560, 1440}, {2448, 2448},
+            {2160, 2160}, {2048, 1536}, {2048, 1152}, {1920, 1920}, {1920, 1080}, {1440, 1080},
+            {1280, 960}, {1280, 768}, {1280, 720}, {1024, 768}, {800, 600}, {800, 480},
+            {720, 480}, {640, 480}, {352, 288}, {320, 240}, {176, 144},
+    };
+
+    private final int[] mPreviewWidths = column(PREVIEW_SIZES, 0);
+    private final int[] mPreviewHeights = column(PREVIEW_SIZES, 1);
+    private final int[] mPictureWidths = column(PICTURE_SIZES, 0);
+    private final int[] mPictureHeights = column(PICTURE_SIZES, 1);
+    private final CameraCapabilities mCapabilities = CameraCapabilities.create(0, mPreviewWidths, mPreviewHeights,
+            mPictureWidths, mPictureHeights, new int[]{15000, 30000}, new int[]{30000, 30000}, new String[]{"auto"});
+
+    @Benchmark
+    public int optimalPreviewSize() {
+        return SizeSelector.findOptimalSize(mPreviewWidths, mPreviewHeights, 1080, 1920);
+    }
+
+    @Benchmark
+    public int filterPictureSizes() {
+        int usable = 0;
+        for (int i = mPictureWidths.length - 1; i >= 0; --i) {
+            if (SizeSelector.hasMatchingAspectRatio(mPictureWidths[i], mPictureHeights[i],
+                    mPreviewWidths, mPreviewHeights, SizeSelector.PICTURE_ASPECT_TOLERANCE)) {
+                usable++;
+            }
+        }
+        return usable;
+    }
+
+    @Benchmark
+    public int cachedOptimalPreviewSize() {
+        return mCapabilities.findOptimalPreviewSize(1080, 1920);
+    }
+
+    @Benchmark
+    public int cachedSettings() {
+        return mCapabilities.findOptimalPreviewSize(1920, 1080) + mCapabilities.getLargestPictureIndex()
+                + mCapabilities.getBestFpsRangeIndex();
+    }
+
+    private static int[] column(int[][] sizes, int index) {
+        int[] values = new int[sizes.length];
+        for (int i = 0; i < sizes.length; i++) {
+            values[i] = sizes[i][index];
+        }
+        return values;
+    }
+}
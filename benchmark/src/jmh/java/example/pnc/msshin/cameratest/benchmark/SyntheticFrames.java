@@ -0,0 +1,54 @@
+package example.pnc.msshin.cameratest.benchmark;
+
+import java.util.Random;
+
+/**
+ * 벤치마크용 NV21 프레임을 만듭니다. 해상도는 "가로x세로" 문자열로 받습니다.
+ */
+final class SyntheticFrames {
+    static final String HD = "1280x720";
+    static final String FHD = "1920x1080";
+    static final String UHD = "3840x2160";
+
+    private SyntheticFrames() {
+    }
+
+    static int width(String resolution) {
+        return Integer.parseInt(resolution.substring(0, resolution.indexOf('x')));
+    }
+
+    static int height(String resolution) {
+        return Integer.parseInt(resolution.substring(resolution.indexOf('x') + 1));
+    }
+
+    static int nv21Size(int width, int height) {
+        return width * height * 3 / 2;
+    }
+
+    /**
+     * 가로 그라디언트에 노이즈를 섞은 Y 평면과 완만하게 변하는 VU 평면을 채웁니다.
+     */
+    static byte[] createNv21(int width, int height, long seed) {
+        byte[] frame = new byte[nv21Size(width, height)];
+        fillNv21(frame, width, height, seed);
+        return frame;
+    }
+
+    static void fillNv21(byte[] frame, int width, int height, long seed) {
+        Random random = new Random(seed);
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            for (int x = 0; x < width; x++) {
+                frame[row + x] = (byte) ((x * 255 / width + random.nextInt(16)) & 0xff);
+            }
+        }
+        int frameSize = width * height;
+        for (int y = 0; y < height / 2; y++) {
+            int row = frameSize + y * width;
+            for (int x = 0; x < width; x += 2) {
+                frame[row + x] = (byte) (128 + (y * 64 / height));
+                frame[row + x + 1] = (byte) (128 - (x * 64 / width));
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package example.pnc.msshin.cameratest;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 무작위 프리뷰 크기 목록에서 CameraCapabilities.findOptimalPreviewSize 가 SizeSelector.findOptimalSize 와 같은 크기를 고르는지 확인합니다.
+ * 높이 차이가 같은 후보와 허용 오차 경계에 걸친 비율이 자주 나오도록 흔한 크기와 그 변형을 섞습니다.
+ */
+public class CameraCapabilitiesTest {
+    private static final int[][] COMMON_SIZES = {
+            {176, 144}, {320, 240}, {352, 288}, {480, 320}, {640, 360}, {640, 480}, {720, 480}, {768, 432},
+            {800, 480}, {864, 480}, {960, 540}, {960, 720}, {1024, 768}, {1280, 720}, {1280, 960}, {1440, 1080},
+            {1920, 1080}, {2048, 1536}};
+
+    private static int[] randomSize(Random random) {
+        int[] size = COMMON_SIZES[random.nextInt(COMMON_SIZES.length)];
+        switch (random.nextInt(4)) {
+            case 0:
+                // 너비만 조금 바꿔 비율이 묶음 경계(±0.1) 근처에 오게 합니다.
+                return new int[]{size[0] + random.nextInt(161) - 80, size[1]};
+            case 1:
+                return new int[]{16 + random.nextInt(2000), 16 + random.nextInt(1500)};
+            default:
+                return size;
+        }
+    }
+
+    @Test
+    public void findOptimalPreviewSizeMatchesSizeSelector() {
+        Random random = new Random(20140623);
+        for (int round = 0; round < 20000; round++) {
+            int count = 1 + random.nextInt(24);
+            int[] widths = new int[count];
+            int[] heights = new int[count];
+            for (int i = 0; i < count; i++) {
+                int[] size = randomSize(random);
+                widths[i] = size[0];
+                heights[i] = size[1];
+            }
+            CameraCapabilities capabilities = CameraCapabilities.create(0, widths, heights,
+                    new int[0], new int[0], new int[0], new int[0], new String[0]);
+            for (int t = 0; t < 4; t++) {
+                int[] target = randomSize(random);
+                int expected = SizeSelector.findOptimalSize(widths, heights, target[0], target[1]);
+                int actual = capabilities.findOptimalPreviewSize(target[0], target[1]);
+                String name = "round " + round + " target " + target[0] + "x" + target[1];
+                assertEquals(name, widths[expected], capabilities.getPreviewWidth(actual));
+                assertEquals(name, heights[expected], capabilities.getPreviewHeight(actual));
+            }
+        }
+    }
+
+    @Test
+    public void emptyPreviewListHasNoOptimalSize() {
+        CameraCapabilities capabilities = CameraCapabilities.create(0, new int[0], new int[0],
+                new int[0], new int[0], new int[0], new int[0], new String[0]);
+        assertEquals(-1, capabilities.findOptimalPreviewSize(1280, 720));
+    }
+}
@@ -0,0 +1,203 @@
+package example.pnc.msshin.cameratest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 합성 카메라 두 대를 열어 둔 채 전환하면서 전환 지연과 카메라별 프레임 수를 확인합니다.
+ * 카메라마다 프리뷰 크기를 다르게 해서 활성 프레임 리스너가 받은 프레임이 어느 카메라 것인지 구분합니다.
+ */
+public class CameraSessionManagerTest {
+    private static final int FPS = 60;
+    private static final long FRAME_INTERVAL_MILLIS = 1000 / FPS;
+
+    /** start()/stop() 횟수를 세어 열린 채 남은 소스가 있는지 확인합니다. */
+    private static class CountingSource implements CameraSource {
+        static final AtomicInteger sRunning = new AtomicInteger();
+        private final SyntheticCameraSource mSource;
+        private boolean mIsRunning;
+
+        CountingSource(int width, int height) {
+            mSource = new SyntheticCameraSource(width, height, FPS, 4);
+        }
+
+        @Override
+        public synchronized void start(FrameListener listener) {
+            if (!mIsRunning) {
+                mIsRunning = true;
+                sRunning.incrementAndGet();
+                mSource.start(listener);
+            }
+        }
+
+        @Override
+        public synchronized void stop() {
+            if (mIsRunning) {
+                mIsRunning = false;
+                sRunning.decrementAndGet();
+                mSource.stop();
+            }
+        }
+
+        @Override
+        public CameraConfig getConfig() {
+            return mSource.getConfig();
+        }
+
+        @Override
+        public PreviewBufferPool.Stats getBufferStats() {
+            return mSource.getBufferStats();
+        }
+    }
+
+    private Nv21JpegEncoder mEncoder;
+    private CameraSessionManager mManager;
+
+    @Before
+    public void setUp() {
+        CountingSource.sRunning.set(0);
+        mEncoder = new Nv21JpegEncoder(1);
+        mManager = new CameraSessionManager(mEncoder, null);
+    }
+
+    @After
+    public void tearDown() {
+        mManager.close();
+        mEncoder.close();
+        assertEquals(0, CountingSource.sRunning.get());
+    }
+
+    private long deliveredFrames(String cameraId) {
+        for (CameraSessionManager.CameraStats stats : mManager.getStats().cameras) {
+            if (stats.cameraId.equals(cameraId)) {
+                return stats.metrics.deliveredFrames;
+            }
+        }
+        throw new AssertionError("camera is not open: " + cameraId);
+    }
+
+    private void awaitFrames(String cameraId, long frames) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (deliveredFrames(cameraId) < frames) {
+            assertTrue(cameraId + " delivered " + deliveredFrames(cameraId), System.nanoTime() < deadline);
+            Thread.sleep(FRAME_INTERVAL_MILLIS);
+        }
+    }
+
+    @Test
+    public void switchHandsOffToWarmCamera() throws InterruptedException {
+        final AtomicReference<String> switchedId = new AtomicReference<>();
+        final AtomicLong switchLatency = new AtomicLong();
+        final CountDownLatch switched = new CountDownLatch(1);
+        mManager.setListener(new CameraSessionManager.Listener() {
+            @Override
+            public void onSwitched(String cameraId, long latencyNanos) {
+                switchedId.set(cameraId);
+                switchLatency.set(latencyNanos);
+                switched.countDown();
+            }
+        });
+        final AtomicInteger backFrames = new AtomicInteger();
+        final AtomicInteger frontFrames = new AtomicInteger();
+        mManager.setActiveFrameListener(new CameraSource.FrameListener() {
+            @Override
+            public void onFrame(Frame frame) {
+                (frame.getWidth() == 64 ? backFrames : frontFrames).incrementAndGet();
+            }
+        });
+
+        mManager.openCamera("back", new CountingSource(64, 48));
+        mManager.openCamera("front", new CountingSource(32, 24));
+        assertEquals("back", mManager.getActiveCameraId());
+        assertEquals(2, CountingSource.sRunning.get());
+        awaitFrames("back", 5);
+        awaitFrames("front", 5);
+        assertTrue(backFrames.get() > 0);
+        assertEquals(0, frontFrames.get());
+
+        assertFalse(mManager.switchTo("back"));
+        assertTrue(mManager.switchTo("front"));
+        assertEquals("front", mManager.getActiveCameraId());
+        assertTrue(switched.await(5, TimeUnit.SECONDS));
+        assertEquals("front", switchedId.get());
+        // 이미 프레임을 보내고 있으므로 다음 프레임에서 전환이 끝납니다. 스케줄 지연을 감안해 여유를 둡니다.
+        long latencyMillis = TimeUnit.NANOSECONDS.toMillis(switchLatency.get());
+        assertTrue("switch latency " + latencyMillis + "ms", latencyMillis <= FRAME_INTERVAL_MILLIS * 10);
+
+        // 비활성이 된 카메라도 계속 프레임을 받고, 활성 리스너에는 새 카메라의 프레임만 전달됩니다.
+        long backDelivered = deliveredFrames("back");
+        long frontDelivered = deliveredFrames("front");
+        Thread.sleep(FRAME_INTERVAL_MILLIS);
+        int backAfterSwitch = backFrames.get();
+        int frontAfterSwitch = frontFrames.get();
+        awaitFrames("back", backDelivered + 5);
+        awaitFrames("front", frontDelivered + 5);
+        assertEquals(backAfterSwitch, backFrames.get());
+        assertTrue(frontFrames.get() > frontAfterSwitch);
+
+        CameraSessionManager.Stats stats = mManager.getStats();
+        assertEquals(1, stats.switchLatency.count);
+        assertEquals(2, stats.cameras.size());
+        for (CameraSessionManager.CameraStats camera : stats.cameras) {
+            assertEquals(camera.cameraId, camera.cameraId.equals("front"), camera.active);
+            assertEquals(camera.cameraId, 1, camera.metrics.timeToFirstFrame.count);
+        }
+    }
+
+    @Test
+    public void closingActiveCameraLeavesNoActiveCamera() throws InterruptedException {
+        mManager.openCamera("back", new CountingSource(64, 48));
+        mManager.openCamera("front", new CountingSource(32, 24));
+        mManager.closeCamera("back");
+        assertEquals(null, mManager.getActiveCameraId());
+        assertEquals(1, CountingSource.sRunning.get());
+        assertTrue(mManager.switchTo("front"));
+        awaitFrames("front", 3);
+    }
+
+    @Test
+    public void concurrentOpensOfSameIdLeaveOneSourceRunning() throws Exception {
+        final int threads = 4;
+        for (int round = 0; round < 20; round++) {
+            final CyclicBarrier start = new CyclicBarrier(threads);
+            final AtomicInteger errors = new AtomicInteger();
+            List<Thread> openers = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                Thread opener = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                            mManager.openCamera("back", new CountingSource(32, 24));
+                        } catch (Exception e) {
+                            errors.incrementAndGet();
+                        }
+                    }
+                });
+                opener.start();
+                openers.add(opener);
+            }
+            for (Thread opener : openers) {
+                opener.join(10000);
+            }
+            assertEquals(0, errors.get());
+            assertEquals("round " + round, 1, CountingSource.sRunning.get());
+            assertEquals(1, mManager.getCameraIds().size());
+            assertEquals("back", mManager.getActiveCameraId());
+        }
+    }
+}
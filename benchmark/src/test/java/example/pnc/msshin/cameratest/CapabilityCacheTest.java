@@ -0,0 +1,102 @@
+package example.pnc.msshin.cameratest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 저장한 CameraCapabilities 를 새 CapabilityCache 로 다시 읽어 같은 값과 같은 크기 선택이 나오는지,
+ * 빌드 fingerprint 가 바뀌면 파일을 버리는지 확인합니다.
+ */
+public class CapabilityCacheTest {
+    private static final String FINGERPRINT = "vendor/device:7.0/NRD90M/1:user/release-keys";
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("capabilities", ".bin");
+        mFile.delete();
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    /** 1280x720 과 1280x960 이 높이 차이가 같아 목록 순서로 골라야 하도록 둡니다. */
+    private static CameraCapabilities createCapabilities(int cameraId) {
+        return CameraCapabilities.create(cameraId,
+                new int[]{1920, 1280, 640, 1280, 320}, new int[]{1080, 960, 480, 720, 240},
+                new int[]{4032, 1920}, new int[]{3024, 1080},
+                new int[]{15000, 30000, 7500}, new int[]{30000, 30000, 30000},
+                new String[]{"auto", "continuous-picture"});
+    }
+
+    private static void assertSameCapabilities(CameraCapabilities expected, CameraCapabilities actual) {
+        assertEquals(expected.getCameraId(), actual.getCameraId());
+        assertEquals(expected.getPreviewSizeCount(), actual.getPreviewSizeCount());
+        for (int i = 0; i < expected.getPreviewSizeCount(); i++) {
+            assertEquals(expected.getPreviewWidth(i), actual.getPreviewWidth(i));
+            assertEquals(expected.getPreviewHeight(i), actual.getPreviewHeight(i));
+        }
+        assertEquals(expected.getPictureSizeCount(), actual.getPictureSizeCount());
+        for (int i = 0; i < expected.getPictureSizeCount(); i++) {
+            assertEquals(expected.getPictureWidth(i), actual.getPictureWidth(i));
+            assertEquals(expected.getPictureHeight(i), actual.getPictureHeight(i));
+        }
+        assertEquals(expected.getFpsRangeCount(), actual.getFpsRangeCount());
+        for (int i = 0; i < expected.getFpsRangeCount(); i++) {
+            assertEquals(expected.getFpsMin(i), actual.getFpsMin(i));
+            assertEquals(expected.getFpsMax(i), actual.getFpsMax(i));
+        }
+        assertTrue(actual.supportsFocusMode("continuous-picture"));
+        assertFalse(actual.supportsFocusMode("macro"));
+        for (int[] target : new int[][]{{1280, 840}, {1280, 720}, {4, 3}, {100, 100}}) {
+            assertEquals(expected.findOptimalPreviewSize(target[0], target[1]),
+                    actual.findOptimalPreviewSize(target[0], target[1]));
+        }
+    }
+
+    @Test
+    public void savedCapabilitiesAreReadBack() {
+        CapabilityCache cache = new CapabilityCache(mFile, FINGERPRINT);
+        assertNull(cache.get(0));
+        CameraCapabilities back = createCapabilities(0);
+        CameraCapabilities front = createCapabilities(1);
+        cache.put(back);
+        cache.put(front);
+        assertTrue(mFile.exists());
+
+        CapabilityCache reloaded = new CapabilityCache(mFile, FINGERPRINT);
+        assertNotNull(reloaded.get(0));
+        assertSameCapabilities(back, reloaded.get(0));
+        assertSameCapabilities(front, reloaded.get(1));
+        // 높이 차이가 같으면 카메라가 먼저 알려준 1280x960 입니다. 다시 읽어도 순서가 남아 있어야 합니다.
+        int index = reloaded.get(0).findOptimalPreviewSize(1280, 840);
+        assertEquals(960, reloaded.get(0).getPreviewHeight(index));
+    }
+
+    @Test
+    public void changedFingerprintDiscardsCache() {
+        new CapabilityCache(mFile, FINGERPRINT).put(createCapabilities(0));
+        assertTrue(mFile.exists());
+
+        CapabilityCache updated = new CapabilityCache(mFile, FINGERPRINT + "-ota");
+        assertNull(updated.get(0));
+        assertFalse(mFile.exists());
+        // 새 fingerprint 로 다시 저장한 뒤에는 예전 fingerprint 로 읽을 수 없습니다.
+        updated.put(createCapabilities(0));
+        assertNotNull(new CapabilityCache(mFile, FINGERPRINT + "-ota").get(0));
+        assertNull(new CapabilityCache(mFile, FINGERPRINT).get(0));
+    }
+}
@@ -0,0 +1,183 @@
+package example.pnc.msshin.cameratest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 인코딩 Executor 를 쓰는 촬영이 거절되어도 프레임을 돌려주고 리스너가 한 번은 불리는지 확인합니다.
+ * 연사를 동시에 바꿔 끼워도 멈추지 않고 남는 연사가 없는지도 확인합니다.
+ */
+public class CaptureSessionTest {
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+
+    private static class CountingListener implements CaptureSession.OnCaptureListener {
+        final AtomicInteger captured = new AtomicInteger();
+        final AtomicInteger skipped = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(1);
+
+        @Override
+        public void onCapturedData(byte[] data) {
+            captured.incrementAndGet();
+            done.countDown();
+        }
+
+        @Override
+        public void onTimeOut() {
+            done.countDown();
+        }
+
+        @Override
+        public void onSkipped() {
+            skipped.incrementAndGet();
+            done.countDown();
+        }
+    }
+
+    private PreviewBufferPool mPool;
+    private final BlockingQueue<byte[]> mCamera = new LinkedBlockingQueue<>();
+    private Nv21JpegEncoder mEncoder;
+    private ThreadPoolExecutor mExecutor;
+    private CaptureSession mSession;
+
+    @Before
+    public void setUp() {
+        mPool = new PreviewBufferPool(2, WIDTH, HEIGHT, CameraConfig.FORMAT_NV21, 12);
+        mPool.start(new PreviewBufferPool.Recycler() {
+            @Override
+            public void recycle(byte[] buffer) {
+                mCamera.add(buffer);
+            }
+        });
+        mEncoder = new Nv21JpegEncoder(1);
+        // CameraPreview 와 같이 대기열이 찼거나 종료된 뒤의 요청은 거절합니다.
+        mExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(1),
+                new ThreadPoolExecutor.AbortPolicy());
+        mSession = new CaptureSession(mEncoder, mExecutor);
+    }
+
+    @After
+    public void tearDown() {
+        mSession.close();
+        mExecutor.shutdownNow();
+        mEncoder.close();
+    }
+
+    private void deliverFrame() throws InterruptedException {
+        // 연사가 인코딩하는 동안 버퍼를 잡고 있으므로 돌아올 때까지 기다립니다.
+        byte[] buffer = mCamera.poll(5, TimeUnit.SECONDS);
+        Arrays.fill(buffer, (byte) 128);
+        Frame frame = mPool.onFrameDelivered(buffer, System.nanoTime());
+        mSession.onFrame(frame);
+        frame.release();
+    }
+
+    @Test
+    public void captureIsEncodedOnExecutor() throws InterruptedException {
+        deliverFrame();
+        CountingListener listener = new CountingListener();
+        mSession.takePicture(listener, 1000);
+        assertTrue(listener.done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, listener.captured.get());
+        // 리스너는 인코딩 작업이 프레임을 놓기 전에 불리므로 작업이 끝날 때까지 기다립니다.
+        mExecutor.shutdown();
+        assertTrue(mExecutor.awaitTermination(5, TimeUnit.SECONDS));
+        mSession.clearLatestFrame();
+        assertEquals(0, mPool.getStats().inFlight);
+    }
+
+    @Test
+    public void rejectedCaptureIsSkippedAndReleasesFrame() throws InterruptedException {
+        deliverFrame();
+        mExecutor.shutdown();
+        assertTrue(mExecutor.awaitTermination(5, TimeUnit.SECONDS));
+        CountingListener listener = new CountingListener();
+        mSession.takePicture(listener, 1000);
+        assertEquals(1, listener.skipped.get());
+        assertEquals(0, listener.captured.get());
+        mSession.clearLatestFrame();
+        assertEquals(0, mPool.getStats().inFlight);
+    }
+
+    @Test
+    public void rejectedRingCaptureIsSkippedAndReturnsSnapshot() throws InterruptedException {
+        FrameRing ring = new FrameRing(2, WIDTH, HEIGHT, 1);
+        mSession.setFrameRing(ring);
+        deliverFrame();
+        mExecutor.shutdown();
+        CountingListener listener = new CountingListener();
+        mSession.takePicture(listener, System.nanoTime(), FrameRing.Selection.CLOSEST, null);
+        assertEquals(1, listener.skipped.get());
+        // 복사본이 하나뿐이므로 돌려받지 못했으면 다시 꺼낼 수 없습니다.
+        FrameRing.Snapshot snapshot = ring.acquire(System.nanoTime(), FrameRing.Selection.CLOSEST);
+        assertTrue(snapshot != null);
+        snapshot.release();
+    }
+
+    @Test
+    public void concurrentBurstStartsLeaveNoBurstRunning() throws Exception {
+        final int threads = 4;
+        final BurstCapture.Listener listener = new BurstCapture.Listener() {
+            @Override
+            public void onBurstFrame(int index, long timestampNanos, byte[] jpeg) {
+            }
+
+            @Override
+            public void onBurstComplete(BurstCapture.Stats stats) {
+            }
+        };
+        for (int round = 0; round < 20; round++) {
+            final CyclicBarrier start = new CyclicBarrier(threads);
+            final List<BurstCapture> bursts = new CopyOnWriteArrayList<>();
+            List<Thread> starters = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                Thread starter = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                        } catch (Exception e) {
+                            return;
+                        }
+                        // 한 장짜리 연사는 첫 프레임에서 끝나므로 onFrame() 의 정리와 startBurst() 가 겹칩니다.
+                        bursts.add(mSession.startBurst(new BurstCapture.Config().setFrameCount(1), listener));
+                    }
+                });
+                starter.start();
+                starters.add(starter);
+            }
+            for (int i = 0; i < threads; i++) {
+                deliverFrame();
+            }
+            for (Thread starter : starters) {
+                starter.join(10000);
+            }
+            assertEquals(threads, bursts.size());
+            mSession.stopBurst();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            for (BurstCapture burst : bursts) {
+                while (!burst.isCompleted()) {
+                    assertTrue("round " + round, System.nanoTime() < deadline);
+                    Thread.sleep(1);
+                }
+            }
+        }
+    }
+}
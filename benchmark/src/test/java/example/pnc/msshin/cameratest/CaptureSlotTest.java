@@ -0,0 +1,213 @@
+package example.pnc.msshin.cameratest;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 촬영 요청이 프레임, 타임아웃, 취소(건너뜀)가 동시에 일어나도 정확히 한 번만 끝나는지 반복해서 확인합니다.
+ * 프레임으로 끝난 요청은 비동기 인코딩처럼 프레임을 retain 했다가 놓으므로, 끝난 뒤 프리뷰 버퍼가 모두 돌아와야 합니다.
+ */
+public class CaptureSlotTest {
+    private static final int ITERATIONS = 3000;
+
+    private static class CountingCallback implements CaptureRequest.Callback {
+        final AtomicInteger frames = new AtomicInteger();
+        final AtomicInteger timeOuts = new AtomicInteger();
+        final AtomicInteger skips = new AtomicInteger();
+        final CountDownLatch resolved = new CountDownLatch(1);
+        private final BlockingQueue<Frame> mRetained;
+
+        CountingCallback(BlockingQueue<Frame> retained) {
+            mRetained = retained;
+        }
+
+        @Override
+        public void onFrame(Frame frame) {
+            if (frame.retain()) {
+                mRetained.add(frame);
+            }
+            frames.incrementAndGet();
+            resolved.countDown();
+        }
+
+        @Override
+        public void onTimeOut() {
+            timeOuts.incrementAndGet();
+            resolved.countDown();
+        }
+
+        @Override
+        public void onSkipped() {
+            skips.incrementAndGet();
+            resolved.countDown();
+        }
+
+        int total() {
+            return frames.get() + timeOuts.get() + skips.get();
+        }
+    }
+
+    @Test
+    public void frameTimeoutAndCancelResolveExactlyOnce() throws Exception {
+        final PreviewBufferPool pool = new PreviewBufferPool(2, 16, 16, CameraConfig.FORMAT_NV21, 12);
+        final BlockingQueue<byte[]> camera = new LinkedBlockingQueue<>();
+        pool.start(new PreviewBufferPool.Recycler() {
+            @Override
+            public void recycle(byte[] buffer) {
+                camera.add(buffer);
+            }
+        });
+        // 콜백이 retain 한 프레임을 인코딩 스레드처럼 나중에 놓습니다.
+        final BlockingQueue<Frame> retained = new LinkedBlockingQueue<>();
+        Thread encoder = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        Frame frame = retained.take();
+                        if (frame.data.length == 0) {
+                            return;
+                        }
+                        frame.release();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        encoder.start();
+
+        final CaptureSlot slot = new CaptureSlot();
+        final CyclicBarrier start = new CyclicBarrier(3);
+        final List<CountingCallback> callbacks = new ArrayList<>(ITERATIONS);
+        final AtomicInteger errors = new AtomicInteger();
+        Thread deliverer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < ITERATIONS; i++) {
+                        byte[] buffer = camera.poll(5, TimeUnit.SECONDS);
+                        start.await();
+                        Frame frame = pool.onFrameDelivered(buffer, i + 1);
+                        slot.deliver(frame);
+                        frame.release();
+                        start.await();
+                    }
+                } catch (Exception e) {
+                    errors.incrementAndGet();
+                }
+            }
+        });
+        Thread canceller = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < ITERATIONS; i++) {
+                        start.await();
+                        if ((i & 1) == 0) {
+                            Thread.yield();
+                        }
+                        slot.cancel();
+                        start.await();
+                    }
+                } catch (Exception e) {
+                    errors.incrementAndGet();
+                }
+            }
+        });
+        deliverer.start();
+        canceller.start();
+
+        for (int i = 0; i < ITERATIONS; i++) {
+            CountingCallback callback = new CountingCallback(retained);
+            callbacks.add(callback);
+            // 0ms 타임아웃은 스케줄러 스레드에서 곧바로 실행되어 전달/취소와 경쟁합니다.
+            slot.submit(new CaptureRequest(callback), i % 2);
+            start.await();
+            start.await();
+            assertTrue("request " + i + " never resolved", callback.resolved.await(5, TimeUnit.SECONDS));
+        }
+        deliverer.join(10000);
+        canceller.join(10000);
+        assertEquals(0, errors.get());
+
+        // 늦게 도착한 타임아웃이 두 번째 콜백을 부르지 않는지 스케줄러가 한 번 더 돌 시간을 줍니다.
+        Thread.sleep(50);
+        int frames = 0;
+        int timeOuts = 0;
+        int skips = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            CountingCallback callback = callbacks.get(i);
+            assertEquals("request " + i, 1, callback.total());
+            frames += callback.frames.get();
+            timeOuts += callback.timeOuts.get();
+            skips += callback.skips.get();
+        }
+        assertFalse(slot.hasPending());
+
+        retained.add(new Frame(pool, new byte[0]));
+        encoder.join(10000);
+        assertEquals(0, pool.getStats().inFlight);
+        assertEquals(2, camera.size());
+        // 세 가지 결과가 모두 실제로 경쟁에서 이겼는지 확인합니다. 한쪽만 이기면 경쟁을 만들지 못한 것입니다.
+        assertTrue("frames:" + frames + ", timeOuts:" + timeOuts + ", skips:" + skips,
+                frames > 0 && skips > 0 && frames + timeOuts + skips == ITERATIONS);
+    }
+
+    @Test
+    public void newRequestSkipsPrevious() throws Exception {
+        BlockingQueue<Frame> retained = new LinkedBlockingQueue<>();
+        CaptureSlot slot = new CaptureSlot();
+        CountingCallback first = new CountingCallback(retained);
+        CountingCallback second = new CountingCallback(retained);
+        slot.submit(new CaptureRequest(first), 10000);
+        slot.submit(new CaptureRequest(second), 10000);
+        assertEquals(1, first.skips.get());
+        assertEquals(0, second.total());
+
+        PreviewBufferPool pool = new PreviewBufferPool(1, 16, 16, CameraConfig.FORMAT_NV21, 12);
+        final byte[][] buffer = new byte[1][];
+        pool.start(new PreviewBufferPool.Recycler() {
+            @Override
+            public void recycle(byte[] data) {
+                buffer[0] = data;
+            }
+        });
+        Frame frame = pool.onFrameDelivered(buffer[0], 1);
+        assertTrue(slot.deliver(frame));
+        assertFalse(slot.deliver(frame));
+        frame.release();
+        assertEquals(1, second.frames.get());
+        assertEquals(1, first.total());
+
+        // 타임아웃이 취소되었으므로 나중에 다시 불리지 않습니다.
+        slot.cancel();
+        assertEquals(1, second.total());
+        retained.take().release();
+        assertEquals(0, pool.getStats().inFlight);
+    }
+
+    @Test
+    public void timeoutResolvesPendingRequest() throws Exception {
+        CaptureSlot slot = new CaptureSlot();
+        CountingCallback callback = new CountingCallback(new LinkedBlockingQueue<Frame>());
+        slot.submit(new CaptureRequest(callback), 20);
+        assertTrue(callback.resolved.await(5, TimeUnit.SECONDS));
+        assertEquals(1, callback.timeOuts.get());
+        assertFalse(slot.hasPending());
+        slot.cancel();
+        assertEquals(1, callback.total());
+    }
+}
@@ -0,0 +1,87 @@
+package example.pnc.msshin.cameratest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * 프레임을 기록하고 닫은 뒤 파일을 다시 읽어, 닫힌 뒤 들어온 프레임이 파일을 덮어쓰지 않는지 확인합니다.
+ */
+public class FrameDumpTest {
+    private static final int WIDTH = 32;
+    private static final int HEIGHT = 24;
+
+    private final List<byte[]> mFree = new ArrayList<>();
+    private PreviewBufferPool mPool;
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mPool = new PreviewBufferPool(1, WIDTH, HEIGHT, CameraConfig.FORMAT_NV21, 12);
+        mPool.start(new PreviewBufferPool.Recycler() {
+            @Override
+            public void recycle(byte[] buffer) {
+                mFree.add(buffer);
+            }
+        });
+        mFile = File.createTempFile("framedump", ".nv21");
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    private void process(FrameDump dump, int value) {
+        byte[] buffer = mFree.remove(0);
+        Arrays.fill(buffer, (byte) value);
+        Frame frame = mPool.onFrameDelivered(buffer, value);
+        dump.process(frame);
+        frame.release();
+    }
+
+    @Test
+    public void framesAfterCloseDoNotTruncateDump() throws IOException {
+        FrameDump dump = new FrameDump(mFile);
+        for (int i = 0; i < 3; i++) {
+            process(dump, i);
+        }
+        dump.close();
+        long length = mFile.length();
+        process(dump, 9);
+        dump.close();
+
+        assertNull(dump.getError());
+        assertEquals(3, dump.getFrameCount());
+        assertEquals(length, mFile.length());
+        int frameSize = FrameDump.frameSize(WIDTH, HEIGHT);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+        try {
+            assertArrayEquals(new int[]{WIDTH, HEIGHT, CameraConfig.FORMAT_NV21}, FrameDump.readHeader(in));
+            for (int i = 0; i < 3; i++) {
+                assertEquals(i, in.readLong());
+                byte[] data = new byte[frameSize];
+                in.readFully(data);
+                byte[] expected = new byte[frameSize];
+                Arrays.fill(expected, (byte) i);
+                assertArrayEquals(expected, data);
+            }
+            assertEquals(-1, in.read());
+        } finally {
+            in.close();
+        }
+    }
+}
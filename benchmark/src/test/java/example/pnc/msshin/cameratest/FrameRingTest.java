@@ -0,0 +1,162 @@
+package example.pnc.msshin.cameratest;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 프레임을 순번 값 하나로 채워 링에 쓰면서 여러 스레드가 동시에 꺼내고, 꺼낸 복사본이 한 프레임으로만 이루어졌는지 확인합니다.
+ * seqlock 검증이 빠지면 덮어쓰는 중인 슬롯을 복사해 앞뒤 프레임 값이 섞인 복사본이 나옵니다.
+ */
+public class FrameRingTest {
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+    private static final int FRAMES = 3000;
+    private static final int READERS = 3;
+
+    private static PreviewBufferPool startPool(int bufferCount, final List<byte[]> free) {
+        PreviewBufferPool pool = new PreviewBufferPool(bufferCount, WIDTH, HEIGHT, CameraConfig.FORMAT_NV21, 12);
+        pool.start(new PreviewBufferPool.Recycler() {
+            @Override
+            public void recycle(byte[] buffer) {
+                free.add(buffer);
+            }
+        });
+        return pool;
+    }
+
+    /**
+     * 순번 sequence 의 프레임을 (byte) sequence 로 채워 넣습니다. 타임스탬프는 sequence + 1 입니다.
+     */
+    private static void publish(FrameRing ring, PreviewBufferPool pool, List<byte[]> free, long sequence) {
+        byte[] buffer = free.remove(free.size() - 1);
+        Arrays.fill(buffer, (byte) sequence);
+        Frame frame = pool.onFrameDelivered(buffer, sequence + 1);
+        assertEquals(sequence, frame.getSequence());
+        ring.publish(frame);
+        frame.release();
+    }
+
+    @Test
+    public void concurrentReadersNeverSeeTornFrames() throws InterruptedException {
+        final FrameRing ring = new FrameRing(2, WIDTH, HEIGHT, READERS);
+        final List<byte[]> free = new ArrayList<>();
+        final PreviewBufferPool pool = startPool(1, free);
+        final AtomicLong published = new AtomicLong();
+        final AtomicInteger torn = new AtomicInteger();
+        final AtomicInteger snapshots = new AtomicInteger();
+        final String[] firstTorn = new String[1];
+
+        List<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < READERS; r++) {
+            final FrameRing.Selection selection = r == 0 ? FrameRing.Selection.SHARPEST : FrameRing.Selection.CLOSEST;
+            Thread reader = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    while (published.get() < FRAMES) {
+                        FrameRing.Snapshot snapshot = ring.acquire(published.get(), selection);
+                        if (snapshot == null) {
+                            continue;
+                        }
+                        byte expected = (byte) snapshot.getSequence();
+                        boolean isTorn = snapshot.getTimestampNanos() != snapshot.getSequence() + 1;
+                        for (byte value : snapshot.data) {
+                            if (value != expected) {
+                                isTorn = true;
+                                break;
+                            }
+                        }
+                        if (isTorn && torn.getAndIncrement() == 0) {
+                            firstTorn[0] = "sequence " + snapshot.getSequence();
+                        }
+                        snapshots.incrementAndGet();
+                        snapshot.release();
+                    }
+                }
+            });
+            reader.start();
+            readers.add(reader);
+        }
+
+        for (long sequence = 0; sequence < FRAMES; sequence++) {
+            publish(ring, pool, free, sequence);
+            published.set(sequence + 1);
+        }
+        for (Thread reader : readers) {
+            reader.join(10000);
+        }
+
+        assertEquals(firstTorn[0], 0, torn.get());
+        assertTrue(snapshots.get() > 0);
+        FrameRing.Stats stats = ring.getStats();
+        assertEquals(FRAMES, stats.publishedFrames);
+        assertTrue(stats.reads >= snapshots.get());
+        // 읽기마다 복사본을 돌려주었으므로 모두 다시 쓸 수 있어야 합니다.
+        List<FrameRing.Snapshot> all = new ArrayList<>();
+        for (int i = 0; i < READERS; i++) {
+            FrameRing.Snapshot snapshot = ring.acquire(FRAMES, FrameRing.Selection.CLOSEST);
+            assertNotNull(snapshot);
+            all.add(snapshot);
+        }
+        assertNull(ring.acquire(FRAMES, FrameRing.Selection.CLOSEST));
+        for (FrameRing.Snapshot snapshot : all) {
+            snapshot.release();
+        }
+    }
+
+    @Test
+    public void closestAndSharpestSelectTheRightFrame() {
+        FrameRing ring = new FrameRing(4, WIDTH, HEIGHT, 1);
+        List<byte[]> free = new ArrayList<>();
+        PreviewBufferPool pool = startPool(1, free);
+        assertNull(ring.acquire(1, FrameRing.Selection.CLOSEST));
+        for (long sequence = 0; sequence < 6; sequence++) {
+            publish(ring, pool, free, sequence);
+        }
+        // 링에는 순번 2~5 (타임스탬프 3~6) 가 남아 있습니다.
+        FrameRing.Snapshot snapshot = ring.acquire(4, FrameRing.Selection.CLOSEST);
+        assertEquals(3, snapshot.getSequence());
+        assertEquals(WIDTH, snapshot.getWidth());
+        snapshot.release();
+        snapshot = ring.acquire(100, FrameRing.Selection.CLOSEST);
+        assertEquals(5, snapshot.getSequence());
+        snapshot.release();
+
+        // 값이 모두 같은 프레임은 초점 점수가 0 이므로, 창 안에 세로 줄무늬 프레임을 넣으면 그 프레임이 골라집니다.
+        byte[] buffer = free.remove(0);
+        for (int i = 0; i < WIDTH * HEIGHT; i++) {
+            buffer[i] = (byte) ((i & 1) * 200);
+        }
+        Frame frame = pool.onFrameDelivered(buffer, 7);
+        ring.publish(frame);
+        frame.release();
+        publish(ring, pool, free, 7);
+        snapshot = ring.acquire(8, FrameRing.Selection.SHARPEST);
+        assertEquals(6, snapshot.getSequence());
+        assertTrue(snapshot.getFocusScore() > 0);
+        // 복사본이 하나뿐이므로 돌려주기 전에는 읽을 수 없습니다.
+        assertNull(ring.acquire(8, FrameRing.Selection.CLOSEST));
+        snapshot.release();
+    }
+
+    @Test
+    public void mismatchedFrameSizeIsSkipped() {
+        FrameRing ring = new FrameRing(2, WIDTH / 2, HEIGHT / 2, 1);
+        List<byte[]> free = new ArrayList<>();
+        PreviewBufferPool pool = startPool(1, free);
+        publish(ring, pool, free, 0);
+        FrameRing.Stats stats = ring.getStats();
+        assertEquals(0, stats.publishedFrames);
+        assertEquals(1, stats.mismatchedFrames);
+        assertNull(ring.acquire(1, FrameRing.Selection.CLOSEST));
+    }
+}
@@ -0,0 +1,180 @@
+package example.pnc.msshin.cameratest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 합성 카메라 프레임을 localhost 의 MjpegStreamServer 로 내보내고 소켓으로 받아 확인합니다.
+ */
+public class MjpegStreamServerTest {
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+    private static final int TIMEOUT_MILLIS = 5000;
+
+    private SyntheticCameraSource mSource;
+    private FramePipeline mPipeline;
+    private Nv21JpegEncoder mEncoder;
+    private MjpegStreamServer mServer;
+    private final List<Socket> mSockets = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        mEncoder = new Nv21JpegEncoder(1);
+        mServer = new MjpegStreamServer(mEncoder, 80, new CaptureMemoryManager(1024 * 1024, 64 * 1024));
+        mServer.start(0);
+        mPipeline = new FramePipeline();
+        mPipeline.addStage("stream", mServer, 1, FramePipeline.DeliveryMode.LATEST_ONLY);
+        mSource = new SyntheticCameraSource(WIDTH, HEIGHT, 60, 4);
+        mSource.start(new CameraSource.FrameListener() {
+            @Override
+            public void onFrame(Frame frame) {
+                mPipeline.dispatch(frame);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        for (Socket socket : mSockets) {
+            socket.close();
+        }
+        mSource.stop();
+        mPipeline.close();
+        mServer.stop();
+        mEncoder.close();
+    }
+
+    private Socket connect() throws IOException {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), mServer.getPort());
+        socket.setSoTimeout(TIMEOUT_MILLIS);
+        mSockets.add(socket);
+        return socket;
+    }
+
+    private Socket request(String method) throws IOException {
+        Socket socket = connect();
+        OutputStream out = socket.getOutputStream();
+        out.write((method + " / HTTP/1.0\r\nHost: localhost\r\n\r\n").getBytes(ASCII));
+        out.flush();
+        return socket;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c < 0) {
+                throw new IOException("closed after " + line);
+            }
+            if (c != '\r') {
+                line.append((char) c);
+            }
+        }
+        return line.toString();
+    }
+
+    /**
+     * 빈 줄까지 읽고 첫 줄(상태 줄 또는 경계)을 포함한 헤더를 돌려줍니다.
+     */
+    private static List<String> readHeaders(InputStream in) throws IOException {
+        List<String> headers = new ArrayList<>();
+        String line;
+        while (!(line = readLine(in)).isEmpty()) {
+            headers.add(line);
+        }
+        return headers;
+    }
+
+    private static BufferedImage readPart(DataInputStream in) throws IOException {
+        List<String> headers = readHeaders(in);
+        assertEquals("--mjpegframe", headers.get(0));
+        assertTrue(headers.toString(), headers.contains("Content-Type: image/jpeg"));
+        int length = -1;
+        for (String header : headers) {
+            if (header.startsWith("Content-Length: ")) {
+                length = Integer.parseInt(header.substring("Content-Length: ".length()));
+            }
+        }
+        assertTrue(headers.toString(), length > 0);
+        byte[] jpeg = new byte[length];
+        in.readFully(jpeg);
+        assertEquals("", readLine(in));
+        return ImageIO.read(new ByteArrayInputStream(jpeg));
+    }
+
+    @Test
+    public void everyClientReceivesDecodableFrames() throws IOException {
+        Socket first = request("GET");
+        Socket second = request("GET");
+        for (Socket socket : new Socket[]{first, second}) {
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            List<String> headers = readHeaders(in);
+            assertEquals("HTTP/1.0 200 OK", headers.get(0));
+            assertTrue(headers.toString(),
+                    headers.contains("Content-Type: multipart/x-mixed-replace; boundary=mjpegframe"));
+            for (int i = 0; i < 3; i++) {
+                BufferedImage image = readPart(in);
+                assertNotNull(image);
+                assertEquals(WIDTH, image.getWidth());
+                assertEquals(HEIGHT, image.getHeight());
+            }
+        }
+        assertTrue(mServer.getEncodedFrames() >= 3);
+        assertEquals(2, mServer.getClientStats().size());
+    }
+
+    @Test
+    public void rejectsNonGetAndClientsOverLimit() throws IOException {
+        mServer.setMaxClients(1);
+        Socket streaming = request("GET");
+        assertEquals("HTTP/1.0 200 OK", readHeaders(streaming.getInputStream()).get(0));
+
+        Socket overLimit = request("GET");
+        assertEquals("HTTP/1.0 503 Service Unavailable", readHeaders(overLimit.getInputStream()).get(0));
+        assertEquals(-1, overLimit.getInputStream().read());
+
+        Socket post = request("POST");
+        assertEquals("HTTP/1.0 405 Method Not Allowed", readHeaders(post.getInputStream()).get(0));
+        assertEquals(-1, post.getInputStream().read());
+
+        assertNotNull(readPart(new DataInputStream(streaming.getInputStream())));
+    }
+
+    @Test
+    public void keepsServingAfterClientsResetConnections() throws IOException {
+        // 받기 전후로 RST 로 끊긴 연결이 있어도 selector 스레드가 멈추지 않아야 합니다.
+        for (int i = 0; i < 50; i++) {
+            Socket socket = new Socket(InetAddress.getLoopbackAddress(), mServer.getPort());
+            socket.setSoLinger(true, 0);
+            if ((i & 1) == 0) {
+                socket.getOutputStream().write("GET / HTTP/1.0\r\n\r\n".getBytes(ASCII));
+            }
+            socket.close();
+        }
+        DataInputStream in = new DataInputStream(request("GET").getInputStream());
+        assertEquals("HTTP/1.0 200 OK", readHeaders(in).get(0));
+        BufferedImage image = readPart(in);
+        assertNotNull(image);
+        assertEquals(WIDTH, image.getWidth());
+    }
+}
@@ -0,0 +1,148 @@
+package example.pnc.msshin.cameratest;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Nv21Converter 의 ARGB 결과를 실수로 계산한 JFIF(전 범위) BT.601 과 비교해 채널마다 오차가 1 이내인지 확인합니다.
+ * 타일 경계가 홀수 색차 줄에 걸리도록 여러 타일로 나뉘는 크기와 병렬도를 포함합니다.
+ * 회색조 결과는 한 바이트 회색이 아니라 0xffYYYYYY 인 ARGB 입니다.
+ */
+public class Nv21ConverterTest {
+    private static final int[][] SIZES = {{2, 2}, {6, 10}, {64, 2}, {256, 1022}, {642, 362}, {1280, 720}};
+    private static final int[] PARALLELISMS = {1, 3, 4};
+
+    private static byte[] randomNv21(int width, int height, long seed) {
+        byte[] nv21 = new byte[width * height * 3 / 2];
+        new Random(seed).nextBytes(nv21);
+        return nv21;
+    }
+
+    private static int clamp(double value) {
+        return (int) Math.round(Math.max(0, Math.min(255, value)));
+    }
+
+    /**
+     * 채널마다 실수 기준값과의 최대 오차를 돌려줍니다. 알파는 항상 0xff 여야 합니다.
+     */
+    private static int maxError(byte[] nv21, int width, int height, int[] argb) {
+        int frameSize = width * height;
+        int maxError = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int luma = nv21[y * width + x] & 0xff;
+                int chroma = frameSize + (y / 2) * width + (x / 2) * 2;
+                int v = (nv21[chroma] & 0xff) - 128;
+                int u = (nv21[chroma + 1] & 0xff) - 128;
+                int[] expected = {clamp(luma + 1.402 * v), clamp(luma - 0.344136 * u - 0.714136 * v),
+                        clamp(luma + 1.772 * u)};
+                int pixel = argb[y * width + x];
+                assertEquals(x + "," + y, 0xff, pixel >>> 24);
+                int[] actual = {pixel >> 16 & 0xff, pixel >> 8 & 0xff, pixel & 0xff};
+                for (int c = 0; c < 3; c++) {
+                    maxError = Math.max(maxError, Math.abs(expected[c] - actual[c]));
+                }
+            }
+        }
+        return maxError;
+    }
+
+    @Test
+    public void argbIsWithinOneOfFloatReference() {
+        for (int parallelism : PARALLELISMS) {
+            Nv21Converter converter = new Nv21Converter(parallelism);
+            try {
+                for (int[] size : SIZES) {
+                    int width = size[0];
+                    int height = size[1];
+                    String name = width + "x" + height + " parallelism " + parallelism;
+                    byte[] nv21 = randomNv21(width, height, width * 31 + height);
+                    // 결과 버퍼가 더 커도 width * height 뒤는 건드리지 않아야 합니다.
+                    int[] argb = new int[width * height + 4];
+                    Arrays.fill(argb, 0x12345678);
+                    converter.toArgb(nv21, width, height, argb);
+                    int error = maxError(nv21, width, height, argb);
+                    assertTrue(name + " error " + error, error <= 1);
+                    for (int i = width * height; i < argb.length; i++) {
+                        assertEquals(name, 0x12345678, argb[i]);
+                    }
+                }
+            } finally {
+                converter.close();
+            }
+        }
+    }
+
+    @Test
+    public void largeSizesAreSplitIntoTiles() {
+        // 256x1022 는 4 스레드에서 510 줄째(색차 255 줄째)에서 처음 나뉩니다. 한 타일로 끝나면 경계를 확인하지 못합니다.
+        assertTrue(Nv21Converter.tileRows(256, 1022, 4) < 1022);
+        assertTrue(Nv21Converter.tileRows(1280, 720, 3) < 720);
+    }
+
+    @Test
+    public void externalPoolGivesSameResultAsSingleThread() {
+        int width = 642;
+        int height = 362;
+        byte[] nv21 = randomNv21(width, height, 3);
+        Nv21Converter single = new Nv21Converter(1);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        Nv21Converter shared = new Nv21Converter(pool);
+        try {
+            int[] expected = new int[width * height];
+            int[] actual = new int[width * height];
+            single.toArgb(nv21, width, height, expected);
+            shared.toArgb(nv21, width, height, actual);
+            assertTrue(Arrays.equals(expected, actual));
+            shared.close();
+            // 외부 풀은 close() 해도 종료되지 않습니다.
+            assertFalse(pool.isShutdown());
+        } finally {
+            single.close();
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void grayIsLumaPackedAsArgb() {
+        for (int[] size : SIZES) {
+            int width = size[0];
+            int height = size[1];
+            // 색차 평면을 읽지 않으므로 밝기 평면만 넘겨도 됩니다.
+            byte[] luma = new byte[width * height];
+            new Random(width + height).nextBytes(luma);
+            Nv21Converter converter = new Nv21Converter(4);
+            try {
+                int[] gray = new int[width * height];
+                converter.toGrayArgb(luma, width, height, gray);
+                for (int i = 0; i < gray.length; i++) {
+                    int y = luma[i] & 0xff;
+                    assertEquals(width + "x" + height + " at " + i, 0xff000000 | y << 16 | y << 8 | y, gray[i]);
+                }
+            } finally {
+                converter.close();
+            }
+        }
+    }
+
+    @Test
+    public void oddSizeIsRejected() {
+        Nv21Converter converter = new Nv21Converter(1);
+        try {
+            converter.toArgb(new byte[15 * 10 * 2], 15, 10, new int[15 * 10]);
+            fail("accepted 15x10");
+        } catch (IllegalArgumentException expected) {
+            // 색차가 2x2 단위라 홀수 크기는 NV21 이 아닙니다.
+        } finally {
+            converter.close();
+        }
+    }
+}
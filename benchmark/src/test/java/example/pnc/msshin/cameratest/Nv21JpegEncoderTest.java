@@ -0,0 +1,183 @@
+package example.pnc.msshin.cameratest;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 합성 NV21 을 스트립 하나와 여러 개로 인코딩해 ImageIO 로 디코딩하고, 크기와 원본 대비 PSNR 을 확인합니다.
+ * MCU(16x16) 배수가 아닌 크기도 포함합니다.
+ */
+public class Nv21JpegEncoderTest {
+    private static final int[][] SIZES = {{640, 480}, {642, 362}, {1280, 720}, {16, 16}, {18, 10}};
+    private static final int QUALITY = 90;
+    /** 부드러운 합성 이미지를 품질 90 으로 인코딩했을 때의 휘도 PSNR 하한(dB)입니다. */
+    private static final double MIN_LUMA_PSNR = 38;
+    /** 색차는 4:2:0 으로 줄였다가 디코더가 보간하므로 RGB 로 비교하면 조금 낮습니다. */
+    private static final double MIN_RGB_PSNR = 30;
+
+    /**
+     * 휘도는 물결 무늬와 밝은 사각형, 색차는 가로/세로 그라데이션입니다.
+     */
+    private static byte[] createNv21(int width, int height) {
+        byte[] nv21 = new byte[width * height * 3 / 2];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int luma = (int) (128 + 60 * Math.sin(x / 11.0) * Math.cos(y / 7.0));
+                if (x > width / 4 && x < width / 2 && y > height / 4 && y < height / 2) {
+                    luma = 230;
+                }
+                nv21[y * width + x] = (byte) luma;
+            }
+        }
+        int frameSize = width * height;
+        for (int y = 0; y < height / 2; y++) {
+            for (int x = 0; x < width / 2; x++) {
+                int index = frameSize + y * width + x * 2;
+                nv21[index] = (byte) (96 + 64 * x / Math.max(1, width / 2 - 1));
+                nv21[index + 1] = (byte) (160 - 64 * y / Math.max(1, height / 2 - 1));
+            }
+        }
+        return nv21;
+    }
+
+    private static byte[] encode(Nv21JpegEncoder encoder, byte[] nv21, int width, int height) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encoder.encode(nv21, width, height, QUALITY, out);
+        return out.toByteArray();
+    }
+
+    private static BufferedImage decode(byte[] jpeg, int width, int height) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(jpeg));
+        assertNotNull("not decodable", image);
+        assertEquals(width, image.getWidth());
+        assertEquals(height, image.getHeight());
+        return image;
+    }
+
+    private static int countRestartMarkers(byte[] jpeg) {
+        int count = 0;
+        for (int i = 0; i < jpeg.length - 1; i++) {
+            if ((jpeg[i] & 0xff) == 0xff && (jpeg[i + 1] & 0xff) >= 0xd0 && (jpeg[i + 1] & 0xff) <= 0xd7) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static double psnr(double squaredError, long samples) {
+        return squaredError == 0 ? Double.POSITIVE_INFINITY
+                : 10 * Math.log10(255.0 * 255.0 * samples / squaredError);
+    }
+
+    private static double lumaPsnr(byte[] nv21, BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        double error = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int rgb = image.getRGB(x, y);
+                double luma = 0.299 * (rgb >> 16 & 0xff) + 0.587 * (rgb >> 8 & 0xff) + 0.114 * (rgb & 0xff);
+                double diff = luma - (nv21[y * width + x] & 0xff);
+                error += diff * diff;
+            }
+        }
+        return psnr(error, (long) width * height);
+    }
+
+    /**
+     * JFIF(BT.601 전 범위) 식으로 원본 NV21 을 RGB 로 바꿔 비교합니다.
+     */
+    private static double rgbPsnr(byte[] nv21, BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int frameSize = width * height;
+        double error = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int luma = nv21[y * width + x] & 0xff;
+                int chroma = frameSize + (y / 2) * width + (x / 2) * 2;
+                int v = (nv21[chroma] & 0xff) - 128;
+                int u = (nv21[chroma + 1] & 0xff) - 128;
+                double[] expected = {luma + 1.402 * v, luma - 0.344136 * u - 0.714136 * v, luma + 1.772 * u};
+                int rgb = image.getRGB(x, y);
+                int[] actual = {rgb >> 16 & 0xff, rgb >> 8 & 0xff, rgb & 0xff};
+                for (int c = 0; c < 3; c++) {
+                    double diff = Math.max(0, Math.min(255, expected[c])) - actual[c];
+                    error += diff * diff;
+                }
+            }
+        }
+        return psnr(error, 3L * frameSize);
+    }
+
+    @Test
+    public void singleAndMultipleStripsDecodeToSameImage() throws IOException {
+        Nv21JpegEncoder single = new Nv21JpegEncoder(1);
+        Nv21JpegEncoder parallel = new Nv21JpegEncoder(4);
+        try {
+            for (int[] size : SIZES) {
+                int width = size[0];
+                int height = size[1];
+                String name = width + "x" + height;
+                byte[] nv21 = createNv21(width, height);
+
+                byte[] oneStrip = encode(single, nv21, width, height);
+                byte[] strips = encode(parallel, nv21, width, height);
+                int mcuRows = (height + 15) / 16;
+                int expectedStrips = (mcuRows + Nv21JpegEncoder.stripRows(width, mcuRows, 4) - 1)
+                        / Nv21JpegEncoder.stripRows(width, mcuRows, 4);
+                assertEquals(name, 0, countRestartMarkers(oneStrip));
+                assertEquals(name, expectedStrips - 1, countRestartMarkers(strips));
+
+                BufferedImage oneStripImage = decode(oneStrip, width, height);
+                BufferedImage stripsImage = decode(strips, width, height);
+                double lumaPsnr = lumaPsnr(nv21, oneStripImage);
+                double rgbPsnr = rgbPsnr(nv21, oneStripImage);
+                assertTrue(name + " luma PSNR " + lumaPsnr, lumaPsnr >= MIN_LUMA_PSNR);
+                assertTrue(name + " RGB PSNR " + rgbPsnr, rgbPsnr >= MIN_RGB_PSNR);
+                // restart 마커는 DC 예측만 초기화하므로 계수가 같고, 디코딩 결과도 픽셀 단위로 같아야 합니다.
+                assertArrayEquals(name,
+                        oneStripImage.getRGB(0, 0, width, height, null, 0, width),
+                        stripsImage.getRGB(0, 0, width, height, null, 0, width));
+            }
+        } finally {
+            single.close();
+            parallel.close();
+        }
+    }
+
+    @Test
+    public void largeFrameIsSplitIntoStrips() throws IOException {
+        Nv21JpegEncoder parallel = new Nv21JpegEncoder(4);
+        try {
+            byte[] jpeg = encode(parallel, createNv21(1280, 720), 1280, 720);
+            assertTrue(countRestartMarkers(jpeg) > 0);
+            decode(jpeg, 1280, 720);
+        } finally {
+            parallel.close();
+        }
+    }
+
+    @Test
+    public void oddSizeIsRejected() throws IOException {
+        Nv21JpegEncoder encoder = new Nv21JpegEncoder(1);
+        try {
+            encoder.encode(new byte[15 * 10 * 2], 15, 10, QUALITY, new ByteArrayOutputStream());
+            fail("accepted 15x10");
+        } catch (IllegalArgumentException expected) {
+            // 색차가 2x2 단위라 홀수 크기는 NV21 이 아닙니다.
+        }
+    }
+}
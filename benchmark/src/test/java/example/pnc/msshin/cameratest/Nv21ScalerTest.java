@@ -0,0 +1,252 @@
+package example.pnc.msshin.cameratest;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Nv21Scaler.scale() 의 박스/쌍선형 축소와 Nv21Resampler 를 픽셀 하나씩 계산하는 기준 구현과 비교합니다.
+ * Y 평면과 VU 평면을 따로 계산하며, 색차 좌표가 홀수인 영역과 정수가 아닌 배율을 포함합니다.
+ */
+public class Nv21ScalerTest {
+
+    private static byte[] randomNv21(int width, int height, long seed) {
+        byte[] nv21 = new byte[width * height * 3 / 2];
+        new Random(seed).nextBytes(nv21);
+        return nv21;
+    }
+
+    /**
+     * 평면 하나의 (x, y) 표본입니다. channel 은 Y 평면이면 0, VU 평면이면 V 가 0, U 가 1 입니다.
+     */
+    private static int sample(byte[] nv21, int width, int height, boolean chroma, int channel, int x, int y) {
+        return chroma ? nv21[width * height + y * width + x * 2 + channel] & 0xff : nv21[y * width + x] & 0xff;
+    }
+
+    private static void store(byte[] nv21, int width, int height, boolean chroma, int channel, int x, int y,
+                              int value) {
+        if (chroma) {
+            nv21[width * height + y * width + x * 2 + channel] = (byte) value;
+        } else {
+            nv21[y * width + x] = (byte) value;
+        }
+    }
+
+    /**
+     * 예전 Nv21Scaler.downscale() 과 같은 정수 배율 블록 평균입니다. 2배 박스 축소가 예전과 같은지 비교할 때 씁니다.
+     */
+    private static byte[] referenceDownscale(byte[] src, int width, int height, int factor) {
+        int dstWidth = width / factor;
+        int dstHeight = height / factor;
+        byte[] dst = new byte[dstWidth * dstHeight * 3 / 2];
+        for (int y = 0; y < dstHeight; y++) {
+            for (int x = 0; x < dstWidth; x++) {
+                int sum = 0;
+                for (int dy = 0; dy < factor; dy++) {
+                    for (int dx = 0; dx < factor; dx++) {
+                        sum += sample(src, width, height, false, 0, x * factor + dx, y * factor + dy);
+                    }
+                }
+                store(dst, dstWidth, dstHeight, false, 0, x, y, sum / (factor * factor));
+            }
+        }
+        for (int y = 0; y < dstHeight / 2; y++) {
+            for (int x = 0; x < dstWidth / 2; x++) {
+                for (int channel = 0; channel < 2; channel++) {
+                    int sum = 0;
+                    for (int dy = 0; dy < factor; dy++) {
+                        for (int dx = 0; dx < factor; dx++) {
+                            sum += sample(src, width, height, true, channel, x * factor + dx, y * factor + dy);
+                        }
+                    }
+                    store(dst, dstWidth, dstHeight, true, channel, x, y, sum / (factor * factor));
+                }
+            }
+        }
+        return dst;
+    }
+
+    /**
+     * 출력 픽셀 (x, y) 는 원본 [x * w / dw, (x + 1) * w / dw) 범위의 평균이며, 범위가 비면 한 픽셀을 씁니다.
+     */
+    private static int boxSample(byte[] src, int width, int height, boolean chroma, int channel, int left, int top,
+                                 int cropWidth, int cropHeight, int dstWidth, int dstHeight, int x, int y) {
+        int x0 = x * cropWidth / dstWidth;
+        int x1 = Math.max(x0 + 1, (x + 1) * cropWidth / dstWidth);
+        int y0 = y * cropHeight / dstHeight;
+        int y1 = Math.max(y0 + 1, (y + 1) * cropHeight / dstHeight);
+        int sum = 0;
+        for (int sy = y0; sy < y1; sy++) {
+            for (int sx = x0; sx < x1; sx++) {
+                sum += sample(src, width, height, chroma, channel, left + sx, top + sy);
+            }
+        }
+        return sum / ((x1 - x0) * (y1 - y0));
+    }
+
+    /**
+     * 픽셀 중심을 맞춘 원본 좌표 (x + 0.5) * w / dw - 0.5 를 16비트 고정소수점으로 구하고, 가중치는 상위 8비트만 씁니다.
+     * 가장자리 밖 좌표는 가장자리 픽셀로 고정합니다.
+     */
+    private static int bilinearSample(byte[] src, int width, int height, boolean chroma, int channel, int left,
+                                      int top, int cropWidth, int cropHeight, int dstWidth, int dstHeight,
+                                      int x, int y) {
+        int stepX = (int) (((long) cropWidth << 16) / dstWidth);
+        int stepY = (int) (((long) cropHeight << 16) / dstHeight);
+        int sx = Math.max(stepX / 2 - (1 << 15) + x * stepX, 0);
+        int sy = Math.max(stepY / 2 - (1 << 15) + y * stepY, 0);
+        int x0 = Math.min(sx >> 16, cropWidth - 1);
+        int y0 = Math.min(sy >> 16, cropHeight - 1);
+        int x1 = Math.min(x0 + 1, cropWidth - 1);
+        int y1 = Math.min(y0 + 1, cropHeight - 1);
+        int fx = (sx >> 8) & 0xff;
+        int fy = (sy >> 8) & 0xff;
+        int upper = sample(src, width, height, chroma, channel, left + x0, top + y0) * (256 - fx)
+                + sample(src, width, height, chroma, channel, left + x1, top + y0) * fx;
+        int lower = sample(src, width, height, chroma, channel, left + x0, top + y1) * (256 - fx)
+                + sample(src, width, height, chroma, channel, left + x1, top + y1) * fx;
+        return (upper * (256 - fy) + lower * fy + (1 << 15)) >> 16;
+    }
+
+    /**
+     * 같은 좌표를 실수로 계산한 보간입니다. 고정소수점 오차의 상한을 확인하는 데 씁니다.
+     */
+    private static double exactBilinear(byte[] src, int width, int height, boolean chroma, int channel, int left,
+                                        int top, int cropWidth, int cropHeight, int dstWidth, int dstHeight,
+                                        int x, int y) {
+        double sx = Math.min(Math.max((x + 0.5) * cropWidth / dstWidth - 0.5, 0), cropWidth - 1);
+        double sy = Math.min(Math.max((y + 0.5) * cropHeight / dstHeight - 0.5, 0), cropHeight - 1);
+        int x0 = (int) sx;
+        int y0 = (int) sy;
+        int x1 = Math.min(x0 + 1, cropWidth - 1);
+        int y1 = Math.min(y0 + 1, cropHeight - 1);
+        double fx = sx - x0;
+        double fy = sy - y0;
+        double upper = sample(src, width, height, chroma, channel, left + x0, top + y0) * (1 - fx)
+                + sample(src, width, height, chroma, channel, left + x1, top + y0) * fx;
+        double lower = sample(src, width, height, chroma, channel, left + x0, top + y1) * (1 - fx)
+                + sample(src, width, height, chroma, channel, left + x1, top + y1) * fx;
+        return upper * (1 - fy) + lower * fy;
+    }
+
+    private static byte[] referenceScale(byte[] src, int width, int height, int left, int top, int cropWidth,
+                                         int cropHeight, int dstWidth, int dstHeight, Nv21Scaler.Filter filter) {
+        byte[] dst = new byte[dstWidth * dstHeight * 3 / 2];
+        for (int plane = 0; plane < 3; plane++) {
+            boolean chroma = plane > 0;
+            int channel = chroma ? plane - 1 : 0;
+            int divisor = chroma ? 2 : 1;
+            for (int y = 0; y < dstHeight / divisor; y++) {
+                for (int x = 0; x < dstWidth / divisor; x++) {
+                    int value = filter == Nv21Scaler.Filter.BOX
+                            ? boxSample(src, width, height, chroma, channel, left / divisor, top / divisor,
+                            cropWidth / divisor, cropHeight / divisor, dstWidth / divisor, dstHeight / divisor, x, y)
+                            : bilinearSample(src, width, height, chroma, channel, left / divisor, top / divisor,
+                            cropWidth / divisor, cropHeight / divisor, dstWidth / divisor, dstHeight / divisor, x, y);
+                    store(dst, dstWidth, dstHeight, chroma, channel, x, y, value);
+                }
+            }
+        }
+        return dst;
+    }
+
+    private static byte[] scale(byte[] src, int width, int height, int[] region, Nv21Scaler.Filter filter) {
+        byte[] dst = new byte[region[4] * region[5] * 3 / 2];
+        Nv21Scaler.scale(src, width, height, region[0], region[1], region[2], region[3], dst, region[4], region[5],
+                filter);
+        return dst;
+    }
+
+    /** [left, top, cropWidth, cropHeight, dstWidth, dstHeight] 입니다. 축소, 확대, 정수가 아닌 배율을 섞었습니다. */
+    private static final int[][] REGIONS = {
+            {0, 0, 48, 36, 24, 18}, {0, 0, 48, 36, 16, 12}, {0, 0, 48, 36, 30, 22}, {2, 6, 30, 18, 10, 6},
+            {6, 2, 22, 14, 8, 6}, {10, 10, 38, 26, 38, 26}, {4, 4, 10, 6, 20, 12}, {0, 30, 48, 6, 2, 2}};
+
+    @Test
+    public void twoTimesBoxMatchesOldDownscale() {
+        int[][] sizes = {{640, 480}, {48, 36}, {4, 4}};
+        for (int[] size : sizes) {
+            int width = size[0];
+            int height = size[1];
+            byte[] src = randomNv21(width, height, width);
+            for (int factor : new int[]{2, 4}) {
+                if (width / factor % 2 != 0 || height / factor % 2 != 0) {
+                    continue;
+                }
+                int[] region = {0, 0, width, height, width / factor, height / factor};
+                assertArrayEquals(width + "x" + height + " / " + factor, referenceDownscale(src, width, height, factor),
+                        scale(src, width, height, region, Nv21Scaler.Filter.BOX));
+            }
+        }
+    }
+
+    @Test
+    public void boxMatchesReference() {
+        byte[] src = randomNv21(48, 36, 3);
+        for (int[] region : REGIONS) {
+            assertArrayEquals(Arrays.toString(region),
+                    referenceScale(src, 48, 36, region[0], region[1], region[2], region[3], region[4], region[5],
+                            Nv21Scaler.Filter.BOX),
+                    scale(src, 48, 36, region, Nv21Scaler.Filter.BOX));
+        }
+    }
+
+    @Test
+    public void bilinearMatchesReference() {
+        byte[] src = randomNv21(48, 36, 7);
+        for (int[] region : REGIONS) {
+            String name = Arrays.toString(region);
+            byte[] actual = scale(src, 48, 36, region, Nv21Scaler.Filter.BILINEAR);
+            assertArrayEquals(name,
+                    referenceScale(src, 48, 36, region[0], region[1], region[2], region[3], region[4], region[5],
+                            Nv21Scaler.Filter.BILINEAR),
+                    actual);
+            // 가중치를 8비트로 자르면 축마다 1 미만씩 어긋나므로, 반올림까지 더해 실수 보간과 2.5 이내입니다.
+            for (int y = 0; y < region[5]; y++) {
+                for (int x = 0; x < region[4]; x++) {
+                    double expected = exactBilinear(src, 48, 36, false, 0, region[0], region[1], region[2], region[3],
+                            region[4], region[5], x, y);
+                    int value = actual[y * region[4] + x] & 0xff;
+                    assertTrue(name + " at " + x + "," + y + ": " + value + " vs " + expected,
+                            Math.abs(value - expected) <= 2.5);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void resamplerMatchesScale() {
+        int width = 48;
+        int height = 36;
+        byte[] src = randomNv21(width, height, 13);
+        Nv21Resampler resampler = new Nv21Resampler();
+
+        // 홀수 좌표와 크기는 짝수로 내리고, 출력은 extraDownscale 로 한 번 더 나눕니다.
+        byte[] actual = resampler.resample(src, width, height,
+                new CaptureRegion().setCrop(7, 5, 31, 21).setDownscale(2), 2);
+        assertEquals(6, resampler.getOutputWidth());
+        assertEquals(4, resampler.getOutputHeight());
+        byte[] expected = referenceScale(src, width, height, 6, 4, 30, 20, 6, 4, Nv21Scaler.Filter.BOX);
+        assertArrayEquals(expected, Arrays.copyOf(actual, expected.length));
+
+        // 프레임 밖으로 나간 영역은 프레임 안으로 줄입니다.
+        actual = resampler.resample(src, width, height, new CaptureRegion().setCrop(40, 30, 100, 100)
+                .setOutputSize(12, 10).setFilter(Nv21Scaler.Filter.BILINEAR), 1);
+        assertEquals(12, resampler.getOutputWidth());
+        assertEquals(10, resampler.getOutputHeight());
+        expected = referenceScale(src, width, height, 40, 30, 8, 6, 12, 10, Nv21Scaler.Filter.BILINEAR);
+        assertArrayEquals(expected, Arrays.copyOf(actual, expected.length));
+
+        // 영역을 주지 않으면 프레임 전체입니다.
+        actual = resampler.resample(src, width, height, new CaptureRegion().setDownscale(3), 1);
+        assertEquals(16, resampler.getOutputWidth());
+        assertEquals(12, resampler.getOutputHeight());
+        expected = referenceDownscale(src, width, height, 3);
+        assertArrayEquals(expected, Arrays.copyOf(actual, expected.length));
+    }
+}
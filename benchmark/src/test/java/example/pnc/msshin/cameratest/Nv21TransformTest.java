@@ -0,0 +1,203 @@
+package example.pnc.msshin.cameratest;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Nv21Transform 의 회전/반전과 Nv21Scaler 의 잘라내기를 픽셀 하나씩 좌표를 계산하는 기준 구현과 비교합니다.
+ * 색차 평면의 가로/세로가 홀수인 크기(예: 6x10)와 짝수인 크기를 모두 확인합니다.
+ */
+public class Nv21TransformTest {
+    private static final int[][] SIZES = {{2, 2}, {6, 10}, {10, 6}, {8, 4}, {16, 12}, {22, 14}, {30, 18}};
+    private static final int[] ROTATIONS = {0, 90, 180, 270};
+
+    private static byte[] randomNv21(int width, int height, long seed) {
+        byte[] nv21 = new byte[width * height * 3 / 2];
+        new Random(seed).nextBytes(nv21);
+        return nv21;
+    }
+
+    /**
+     * 시계 방향으로 rotation 만큼 돌린 뒤 좌우 반전한 이미지의 (x, y) 가 원본의 어느 픽셀인지 계산합니다.
+     */
+    private static int[] sourcePoint(int x, int y, int width, int height, int rotation, boolean mirror) {
+        int outWidth = rotation == 90 || rotation == 270 ? height : width;
+        if (mirror) {
+            x = outWidth - 1 - x;
+        }
+        switch (rotation) {
+            case 90:
+                return new int[]{y, height - 1 - x};
+            case 180:
+                return new int[]{width - 1 - x, height - 1 - y};
+            case 270:
+                return new int[]{width - 1 - y, x};
+            default:
+                return new int[]{x, y};
+        }
+    }
+
+    private static byte[] referenceTransform(byte[] src, int width, int height, int rotation, boolean mirror) {
+        boolean isSwapped = rotation == 90 || rotation == 270;
+        int outWidth = isSwapped ? height : width;
+        int outHeight = isSwapped ? width : height;
+        int frameSize = width * height;
+        byte[] dst = new byte[frameSize * 3 / 2];
+        for (int y = 0; y < outHeight; y++) {
+            for (int x = 0; x < outWidth; x++) {
+                int[] p = sourcePoint(x, y, width, height, rotation, mirror);
+                dst[y * outWidth + x] = src[p[1] * width + p[0]];
+            }
+        }
+        int chromaWidth = width / 2;
+        int chromaHeight = height / 2;
+        for (int y = 0; y < outHeight / 2; y++) {
+            for (int x = 0; x < outWidth / 2; x++) {
+                int[] p = sourcePoint(x, y, chromaWidth, chromaHeight, rotation, mirror);
+                int in = frameSize + p[1] * width + p[0] * 2;
+                int out = frameSize + y * outWidth + x * 2;
+                dst[out] = src[in];
+                dst[out + 1] = src[in + 1];
+            }
+        }
+        return dst;
+    }
+
+    private static byte[] referenceCrop(byte[] src, int width, int height, int left, int top,
+                                        int cropWidth, int cropHeight) {
+        int frameSize = width * height;
+        int cropFrameSize = cropWidth * cropHeight;
+        byte[] dst = new byte[cropFrameSize * 3 / 2];
+        for (int y = 0; y < cropHeight; y++) {
+            for (int x = 0; x < cropWidth; x++) {
+                dst[y * cropWidth + x] = src[(top + y) * width + left + x];
+            }
+        }
+        for (int y = 0; y < cropHeight / 2; y++) {
+            for (int x = 0; x < cropWidth / 2; x++) {
+                int in = frameSize + (top / 2 + y) * width + (left / 2 + x) * 2;
+                int out = cropFrameSize + y * cropWidth + x * 2;
+                dst[out] = src[in];
+                dst[out + 1] = src[in + 1];
+            }
+        }
+        return dst;
+    }
+
+    @Test
+    public void rotateAndMirrorMatchReference() {
+        Nv21Transform transform = new Nv21Transform();
+        for (int[] size : SIZES) {
+            int width = size[0];
+            int height = size[1];
+            byte[] src = randomNv21(width, height, width * 31 + height);
+            for (int rotation : ROTATIONS) {
+                for (boolean mirror : new boolean[]{false, true}) {
+                    String name = width + "x" + height + " rotation " + rotation + (mirror ? " mirror" : "");
+                    byte[] expected = referenceTransform(src, width, height, rotation, mirror);
+                    byte[] actual = transform.transform(src, width, height, rotation, mirror);
+                    int outWidth = Nv21Transform.isSwapped(rotation) ? height : width;
+                    int outHeight = Nv21Transform.isSwapped(rotation) ? width : height;
+                    assertEquals(name, outWidth, transform.getOutputWidth());
+                    assertEquals(name, outHeight, transform.getOutputHeight());
+                    assertArrayEquals(name, expected, Arrays.copyOf(actual, expected.length));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void staticTransformWritesIntoGivenBuffer() {
+        int width = 6;
+        int height = 10;
+        byte[] src = randomNv21(width, height, 7);
+        byte[] dst = new byte[src.length];
+        Nv21Transform.transform(src, width, height, 90, true, dst);
+        assertArrayEquals(referenceTransform(src, width, height, 90, true), dst);
+    }
+
+    @Test
+    public void rotationIsNormalized() {
+        int width = 10;
+        int height = 6;
+        byte[] src = randomNv21(width, height, 3);
+        byte[] expected = referenceTransform(src, width, height, 270, false);
+        byte[] dst = new byte[src.length];
+        Nv21Transform.transform(src, width, height, -90, false, dst);
+        assertArrayEquals(expected, dst);
+        Nv21Transform.transform(src, width, height, 630, false, dst);
+        assertArrayEquals(expected, dst);
+        assertTrue(Nv21Transform.isSwapped(-90));
+        assertFalse(Nv21Transform.isSwapped(540));
+    }
+
+    @Test
+    public void oddLumaSizeIsRejected() {
+        int[][] oddSizes = {{5, 4}, {4, 5}, {7, 9}};
+        for (int[] size : oddSizes) {
+            try {
+                Nv21Transform.transform(new byte[size[0] * size[1] * 2], size[0], size[1], 90, false,
+                        new byte[size[0] * size[1] * 2]);
+                fail("accepted " + size[0] + "x" + size[1]);
+            } catch (IllegalArgumentException expected) {
+                // 색차가 2x2 단위라 홀수 크기는 NV21 이 아닙니다.
+            }
+        }
+    }
+
+    @Test
+    public void invalidRotationIsRejected() {
+        try {
+            Nv21Transform.transform(new byte[24], 4, 4, 45, false, new byte[24]);
+            fail("accepted rotation 45");
+        } catch (IllegalArgumentException expected) {
+            // 90 의 배수만 지원합니다.
+        }
+    }
+
+    @Test
+    public void cropMatchesReference() {
+        int width = 30;
+        int height = 18;
+        byte[] src = randomNv21(width, height, 11);
+        // 색차 좌표가 홀수인 영역(left/2, top/2 가 홀수)과 프레임 끝에 붙은 영역을 포함합니다.
+        int[][] regions = {{0, 0, 30, 18}, {2, 2, 6, 10}, {6, 4, 10, 6}, {20, 8, 10, 10}, {0, 16, 2, 2}};
+        for (int[] region : regions) {
+            String name = region[0] + "," + region[1] + " " + region[2] + "x" + region[3];
+            byte[] expected = referenceCrop(src, width, height, region[0], region[1], region[2], region[3]);
+            byte[] actual = new byte[expected.length];
+            Nv21Scaler.scale(src, width, height, region[0], region[1], region[2], region[3], actual,
+                    region[2], region[3], Nv21Scaler.Filter.BOX);
+            assertArrayEquals(name, expected, actual);
+
+            Nv21Resampler resampler = new Nv21Resampler();
+            byte[] resampled = resampler.resample(src, width, height,
+                    new CaptureRegion().setCrop(region[0], region[1], region[2], region[3]), 1);
+            assertEquals(name, region[2], resampler.getOutputWidth());
+            assertEquals(name, region[3], resampler.getOutputHeight());
+            assertArrayEquals(name, expected, Arrays.copyOf(resampled, expected.length));
+        }
+    }
+
+    @Test
+    public void cropThenRotateMatchesReference() {
+        int width = 22;
+        int height = 14;
+        byte[] src = randomNv21(width, height, 5);
+        byte[] cropped = referenceCrop(src, width, height, 2, 2, 10, 6);
+        Nv21Transform transform = new Nv21Transform();
+        for (int rotation : ROTATIONS) {
+            byte[] expected = referenceTransform(cropped, 10, 6, rotation, true);
+            byte[] actual = transform.transform(cropped, 10, 6, rotation, true);
+            assertArrayEquals("rotation " + rotation, expected, Arrays.copyOf(actual, expected.length));
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package example.pnc.msshin.cameratest;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 카메라 대신 버퍼를 돌려주는 생산자 스레드로 PreviewBufferPool 과 Frame 의 재사용과 참조 카운트를 확인합니다.
+ */
+public class PreviewBufferPoolTest {
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+    private static final int BUFFER_COUNT = 3;
+
+    private static PreviewBufferPool createPool() {
+        return new PreviewBufferPool(BUFFER_COUNT, WIDTH, HEIGHT, CameraConfig.FORMAT_NV21, 12);
+    }
+
+    @Test
+    public void startQueuesEveryBuffer() {
+        PreviewBufferPool pool = createPool();
+        final BlockingQueue<byte[]> camera = new LinkedBlockingQueue<>();
+        pool.start(new PreviewBufferPool.Recycler() {
+            @Override
+            public void recycle(byte[] buffer) {
+                camera.add(buffer);
+            }
+        });
+
+        assertEquals(BUFFER_COUNT, camera.size());
+        Set<byte[]> distinct = Collections.newSetFromMap(new IdentityHashMap<byte[], Boolean>());
+        for (byte[] buffer : camera) {
+            assertEquals(WIDTH * HEIGHT * 3 / 2, buffer.length);
+            distinct.add(buffer);
+        }
+        assertEquals(BUFFER_COUNT, distinct.size());
+    }
+
+    @Test
+    public void lastReleaseRecyclesBuffer() {
+        PreviewBufferPool pool = createPool();
+        final BlockingQueue<byte[]> camera = new LinkedBlockingQueue<>();
+        pool.start(new PreviewBufferPool.Recycler() {
+            @Override
+            public void recycle(byte[] buffer) {
+                camera.add(buffer);
+            }
+        });
+        byte[] buffer = camera.poll();
+
+        Frame frame = pool.onFrameDelivered(buffer, 1);
+        assertNotNull(frame);
+        assertSame(buffer, frame.data);
+        assertEquals(1, frame.getRefCount());
+        assertTrue(frame.retain());
+        assertTrue(pool.acquire(buffer));
+        assertEquals(3, frame.getRefCount());
+
+        frame.release();
+        pool.release(buffer);
+        assertFalse(camera.contains(buffer));
+        frame.release();
+        assertEquals(0, frame.getRefCount());
+        assertTrue(camera.contains(buffer));
+
+        // 반환된 프레임은 다시 붙잡을 수 없고, 추가 release 는 무시됩니다.
+        assertFalse(frame.retain());
+        frame.release();
+        assertEquals(0, frame.getRefCount());
+        assertEquals(BUFFER_COUNT, camera.size());
+    }
+
+    @Test
+    public void unknownBufferIsIgnored() {
+        PreviewBufferPool pool = createPool();
+        byte[] foreign = new byte[pool.getBufferSize()];
+        assertNull(pool.onFrameDelivered(foreign, 1));
+        assertFalse(pool.acquire(foreign));
+        pool.release(foreign);
+    }
+
+    @Test
+    public void releaseAfterStopDropsBuffer() {
+        PreviewBufferPool pool = createPool();
+        final BlockingQueue<byte[]> camera = new LinkedBlockingQueue<>();
+        PreviewBufferPool.Recycler recycler = new PreviewBufferPool.Recycler() {
+            @Override
+            public void recycle(byte[] buffer) {
+                camera.add(buffer);
+            }
+        };
+        pool.start(recycler);
+        byte[] buffer = camera.poll();
+        Frame frame = pool.onFrameDelivered(buffer, 1);
+
+        pool.stop();
+        camera.clear();
+        frame.release();
+        assertTrue(camera.isEmpty());
+        assertEquals(0, pool.getStats().inFlight);
+
+        // 다시 시작하면 버려졌던 버퍼도 카메라로 돌아갑니다.
+        pool.start(recycler);
+        assertEquals(BUFFER_COUNT, camera.size());
+        assertTrue(camera.contains(buffer));
+    }
+
+    @Test
+    public void producerAndConsumersBalanceRefCounts() throws Exception {
+        final int frameCount = 20000;
+        final int consumerCount = 3;
+        final PreviewBufferPool pool = createPool();
+        final BlockingQueue<byte[]> camera = new ArrayBlockingQueue<>(BUFFER_COUNT);
+        final Set<byte[]> buffers = Collections.newSetFromMap(new IdentityHashMap<byte[], Boolean>());
+        pool.start(new PreviewBufferPool.Recycler() {
+            @Override
+            public void recycle(byte[] buffer) {
+                synchronized (buffers) {
+                    buffers.add(buffer);
+                }
+                // 카메라에 같은 버퍼가 두 번 들어가면 용량을 넘으므로 add 가 실패합니다.
+                camera.add(buffer);
+            }
+        });
+
+        final List<BlockingQueue<Frame>> inboxes = new ArrayList<>();
+        final AtomicInteger consumed = new AtomicInteger();
+        final AtomicInteger errors = new AtomicInteger();
+        Thread[] consumers = new Thread[consumerCount];
+        for (int i = 0; i < consumerCount; i++) {
+            final BlockingQueue<Frame> inbox = new LinkedBlockingQueue<>();
+            inboxes.add(inbox);
+            consumers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        while (true) {
+                            Frame frame = inbox.take();
+                            if (frame.data.length == 0) {
+                                return;
+                            }
+                            long sequence = frame.getSequence();
+                            if ((frame.data[0] & 0xff) != (sequence & 0xff) || frame.getRefCount() <= 0) {
+                                errors.incrementAndGet();
+                            }
+                            consumed.incrementAndGet();
+                            frame.release();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            consumers[i].start();
+        }
+
+        // 생산자: 카메라처럼 큐에서 빈 버퍼를 꺼내 채우고 전달합니다. 소비자마다 참조를 하나씩 넘깁니다.
+        for (int i = 0; i < frameCount; i++) {
+            byte[] buffer = camera.poll(5, TimeUnit.SECONDS);
+            assertNotNull("pool starved at frame " + i, buffer);
+            buffer[0] = (byte) i;
+            Frame frame = pool.onFrameDelivered(buffer, i + 1);
+            assertEquals(i, frame.getSequence());
+            for (int c = 1; c < consumerCount; c++) {
+                assertTrue(frame.retain());
+            }
+            for (BlockingQueue<Frame> inbox : inboxes) {
+                inbox.add(frame);
+            }
+        }
+        Frame poison = new Frame(pool, new byte[0]);
+        for (BlockingQueue<Frame> inbox : inboxes) {
+            inbox.add(poison);
+        }
+        for (Thread consumer : consumers) {
+            consumer.join(10000);
+        }
+
+        assertEquals(0, errors.get());
+        assertEquals(frameCount * consumerCount, consumed.get());
+        assertEquals(BUFFER_COUNT, buffers.size());
+        assertEquals(BUFFER_COUNT, camera.size());
+        PreviewBufferPool.Stats stats = pool.getStats();
+        assertEquals(0, stats.inFlight);
+        assertEquals(frameCount, stats.deliveredFrames);
+    }
+}
@@ -0,0 +1,39 @@
+package example.pnc.msshin.cameratest;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 리스너가 예외를 던져도 합성 카메라가 다음 프레임을 계속 만드는지 확인합니다.
+ */
+public class SyntheticCameraSourceTest {
+    @Test
+    public void keepsProducingAfterListenerThrows() throws InterruptedException {
+        SyntheticCameraSource source = new SyntheticCameraSource(32, 24, 60, 2);
+        final AtomicInteger frames = new AtomicInteger();
+        final CountDownLatch produced = new CountDownLatch(5);
+        source.start(new CameraSource.FrameListener() {
+            @Override
+            public void onFrame(Frame frame) {
+                if (frames.getAndIncrement() == 0) {
+                    throw new IllegalStateException("first frame");
+                }
+                produced.countDown();
+            }
+        });
+        try {
+            assertTrue(produced.await(5, TimeUnit.SECONDS));
+        } finally {
+            source.stop();
+        }
+        assertEquals(1, source.getFailedFrames());
+        // 예외가 난 프레임의 버퍼도 돌려받았어야 합니다.
+        assertEquals(0, source.getBufferStats().inFlight);
+    }
+}
@@ -0,0 +1,247 @@
+package example.pnc.msshin.cameratest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 합성 프레임을 녹화한 AVI 를 RIFF 청크 단위로 다시 읽어 헤더의 크기/프레임 수, 프레임 청크, idx1 색인이 서로 맞는지 확인합니다.
+ */
+public class VideoRecorderTest {
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+    private static final int FPS = 30;
+    private static final long INTERVAL_NANOS = 1000000000L / FPS;
+    private static final int AVIIF_KEYFRAME = 0x10;
+
+    /** 프레임 청크 하나입니다. offset 은 'movi' fourcc 기준입니다. */
+    private static class Chunk {
+        final int offset;
+        final byte[] data;
+
+        Chunk(int offset, byte[] data) {
+            this.offset = offset;
+            this.data = data;
+        }
+    }
+
+    /** 파일을 읽으며 헤더 값과 청크를 모아 둡니다. */
+    private static class Avi {
+        int avihFrameCount;
+        int strhLength;
+        int width;
+        int height;
+        final List<Chunk> chunks = new ArrayList<>();
+        /** 항목마다 [flags, offset, size] 입니다. */
+        final List<int[]> index = new ArrayList<>();
+    }
+
+    private final List<byte[]> mFree = new ArrayList<>();
+    private PreviewBufferPool mPool;
+    private Nv21JpegEncoder mEncoder;
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mPool = new PreviewBufferPool(1, WIDTH, HEIGHT, CameraConfig.FORMAT_NV21, 12);
+        mPool.start(new PreviewBufferPool.Recycler() {
+            @Override
+            public void recycle(byte[] buffer) {
+                mFree.add(buffer);
+            }
+        });
+        mEncoder = new Nv21JpegEncoder(1);
+        mFile = File.createTempFile("recording", ".avi");
+    }
+
+    @After
+    public void tearDown() {
+        mEncoder.close();
+        mFile.delete();
+    }
+
+    private void process(VideoRecorder recorder, long timestampNanos, int luma) {
+        byte[] buffer = mFree.remove(0);
+        Arrays.fill(buffer, 0, WIDTH * HEIGHT, (byte) luma);
+        Arrays.fill(buffer, WIDTH * HEIGHT, buffer.length, (byte) 128);
+        Frame frame = mPool.onFrameDelivered(buffer, timestampNanos);
+        recorder.process(frame);
+        frame.release();
+    }
+
+    private static int int32(byte[] data, int offset) {
+        return (data[offset] & 0xff) | (data[offset + 1] & 0xff) << 8 | (data[offset + 2] & 0xff) << 16
+                | (data[offset + 3] & 0xff) << 24;
+    }
+
+    private static String fourcc(byte[] data, int offset) {
+        return new String(data, offset, 4, ASCII);
+    }
+
+    /**
+     * RIFF 트리를 따라가며 avih/strh 값, movi 의 00dc 청크, idx1 항목을 읽습니다. 청크 크기가 어긋나면 여기서 실패합니다.
+     */
+    private static Avi parse(byte[] file) {
+        Avi avi = new Avi();
+        assertEquals("RIFF", fourcc(file, 0));
+        assertEquals(file.length - 8, int32(file, 4));
+        assertEquals("AVI ", fourcc(file, 8));
+        int moviStart = -1;
+        int position = 12;
+        while (position < file.length) {
+            String id = fourcc(file, position);
+            int size = int32(file, position + 4);
+            int body = position + 8;
+            assertTrue(id + " overruns file", body + size <= file.length);
+            if (id.equals("LIST") && fourcc(file, body).equals("hdrl")) {
+                assertEquals("avih", fourcc(file, body + 4));
+                avi.avihFrameCount = int32(file, body + 12 + 16);
+                avi.width = int32(file, body + 12 + 32);
+                avi.height = int32(file, body + 12 + 36);
+                int strl = body + 12 + int32(file, body + 8);
+                assertEquals("LIST", fourcc(file, strl));
+                assertEquals("strl", fourcc(file, strl + 8));
+                assertEquals("strh", fourcc(file, strl + 12));
+                assertEquals("vids", fourcc(file, strl + 20));
+                assertEquals("MJPG", fourcc(file, strl + 24));
+                avi.strhLength = int32(file, strl + 20 + 32);
+            } else if (id.equals("LIST") && fourcc(file, body).equals("movi")) {
+                moviStart = body;
+                int chunk = body + 4;
+                while (chunk < body + size) {
+                    assertEquals("00dc", fourcc(file, chunk));
+                    int length = int32(file, chunk + 4);
+                    avi.chunks.add(new Chunk(chunk - moviStart, Arrays.copyOfRange(file, chunk + 8, chunk + 8 + length)));
+                    chunk += 8 + length + (length & 1);
+                }
+                assertEquals(body + size, chunk);
+            } else if (id.equals("idx1")) {
+                for (int entry = body; entry < body + size; entry += 16) {
+                    assertEquals("00dc", fourcc(file, entry));
+                    avi.index.add(new int[]{int32(file, entry + 4), int32(file, entry + 8), int32(file, entry + 12)});
+                }
+            }
+            position = body + size + (size & 1);
+        }
+        assertEquals(file.length, position);
+        assertTrue("no movi list", moviStart > 0);
+        return avi;
+    }
+
+    private byte[] readFile() throws IOException {
+        RandomAccessFile file = new RandomAccessFile(mFile, "r");
+        try {
+            byte[] data = new byte[(int) file.length()];
+            file.readFully(data);
+            return data;
+        } finally {
+            file.close();
+        }
+    }
+
+    private static void assertIndexMatchesChunks(Avi avi) {
+        assertEquals(avi.chunks.size(), avi.index.size());
+        for (int i = 0; i < avi.chunks.size(); i++) {
+            Chunk chunk = avi.chunks.get(i);
+            int[] entry = avi.index.get(i);
+            assertEquals("frame " + i, chunk.data.length > 0 ? AVIIF_KEYFRAME : 0, entry[0]);
+            assertEquals("frame " + i, chunk.offset, entry[1]);
+            assertEquals("frame " + i, chunk.data.length, entry[2]);
+        }
+    }
+
+    @Test
+    public void recordedFramesMatchHeaderAndIndex() throws IOException {
+        VideoRecorder recorder = new VideoRecorder(mFile, FPS, 80, mEncoder,
+                new CaptureMemoryManager(1024 * 1024, 16 * 1024));
+        long start = 1000000000L;
+        // 0, 1, 2 다음 3, 4 가 빠지고 5 가 오며, 5 와 같은 위치의 프레임은 건너뜁니다.
+        int[] positions = {0, 1, 2, 5};
+        for (int position : positions) {
+            process(recorder, start + position * INTERVAL_NANOS, 40 * (position + 1));
+        }
+        process(recorder, start + 5 * INTERVAL_NANOS + INTERVAL_NANOS / 4, 0);
+        recorder.close();
+        assertNull(recorder.getError());
+
+        VideoRecorder.Stats stats = recorder.getStats();
+        assertEquals(4, stats.recordedFrames);
+        assertEquals(2, stats.repeatedFrames);
+        assertEquals(1, stats.skippedFrames);
+
+        Avi avi = parse(readFile());
+        assertEquals(6, avi.chunks.size());
+        assertEquals(6, avi.avihFrameCount);
+        assertEquals(6, avi.strhLength);
+        assertEquals(WIDTH, avi.width);
+        assertEquals(HEIGHT, avi.height);
+        assertIndexMatchesChunks(avi);
+        long bytes = 0;
+        for (int i = 0; i < avi.chunks.size(); i++) {
+            byte[] jpeg = avi.chunks.get(i).data;
+            bytes += jpeg.length;
+            if (i == 3 || i == 4) {
+                assertEquals("frame " + i, 0, jpeg.length);
+                continue;
+            }
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(jpeg));
+            assertNotNull("frame " + i, image);
+            assertEquals(WIDTH, image.getWidth());
+            assertEquals(HEIGHT, image.getHeight());
+        }
+        assertEquals(stats.bytesWritten, bytes);
+    }
+
+    @Test
+    public void oddSizedChunksArePadded() throws IOException {
+        MjpegAviWriter writer = new MjpegAviWriter(mFile, WIDTH, HEIGHT, FPS);
+        int[] lengths = {3, 0, 8, 1};
+        for (int length : lengths) {
+            if (length == 0) {
+                writer.writeEmptyFrame();
+                continue;
+            }
+            byte[] data = new byte[length + 5];
+            Arrays.fill(data, (byte) length);
+            writer.writeFrame(data, length);
+        }
+        writer.close();
+
+        Avi avi = parse(readFile());
+        assertEquals(lengths.length, avi.avihFrameCount);
+        assertIndexMatchesChunks(avi);
+        for (int i = 0; i < lengths.length; i++) {
+            byte[] expected = new byte[lengths[i]];
+            Arrays.fill(expected, (byte) lengths[i]);
+            assertTrue("frame " + i, Arrays.equals(expected, avi.chunks.get(i).data));
+        }
+    }
+
+    @Test
+    public void recorderWithoutFramesCreatesNoFile() throws IOException {
+        mFile.delete();
+        VideoRecorder recorder = new VideoRecorder(mFile, FPS, 80, mEncoder,
+                new CaptureMemoryManager(1024 * 1024, 16 * 1024));
+        recorder.close();
+        assertFalse(mFile.exists());
+    }
+}